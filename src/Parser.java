@@ -6,8 +6,17 @@
  *     Implements an XML well-formedness checker using the custom
  *     MyStack class created in Assignment 2. The parser:
  *
- *       • Reads an XML file line-by-line.
+ *       • Scans an XML file's bytes in a single pass.
+ *       • Reads gzip- and zlib-compressed files directly, inflating
+ *         them on a separate thread.
+ *       • Detects the file's encoding from its byte order mark or
+ *         XML declaration; files not in UTF-8 are transcoded.
  *       • Extracts XML tags (<tag>, </tag>, <tag/>, <?...?>).
+ *       • Skips comments, CDATA sections and DOCTYPE declarations.
+ *       • Optionally checks attributes for well-formedness and
+ *         repeated names.
+ *       • Optionally checks that namespace prefixes are declared.
+ *       • Optionally checks entity and character references.
  *       • Uses a stack to ensure correct tag nesting.
  *       • Validates opening/closing tag matching.
  *       • Detects self-closing tags.
@@ -15,247 +24,910 @@
  *       • Detects unexpected closing tags.
  *       • Detects unclosed tags at end-of-file.
  *       • Ensures exactly one root element exists.
+ *       • Stops early when a resource limit (depth, tag length,
+ *         line length, tag count, error count) is exceeded.
+ *       • Optionally stops at the first (or Nth) error, or only
+ *         counts errors, for fast valid/invalid gatekeeping.
+ *       • Optionally follows a file that is still being written.
+ *       • Optionally indexes every element's byte range, so later
+ *         runs can jump straight to an element by path.
+ *       • Optionally extracts elements and attribute values matching
+ *         path queries (an XPath subset) in the same pass.
+ *       • Optionally converts record elements to JSON Lines in the
+ *         same pass.
+ *       • Optionally writes a re-indented, normalized copy of the
+ *         file for line-by-line comparison.
+ *       • Optionally writes a repaired copy of the file: missing
+ *         closing tags inserted, stray ones dropped, and elements left
+ *         open closed at end-of-file.
+ *       • Optionally splits the file into well-formed shards of N
+ *         elements each at a chosen depth.
+ *       • Optionally gathers document statistics (tag counts, depths,
+ *         fan-out, attributes, text volume, parent/child structure).
+ *       • Optionally compares two files element by element in one
+ *         streaming pass, listing changed, added and removed elements.
+ *       • Optionally runs as a server on a local port, validating files
+ *         and documents sent by clients on warm worker threads, and
+ *         load-tests such a server.
  *
  * USAGE (after export as JAR):
- *     java -jar Parser.jar <input.xml>
+ *     java -jar Parser.jar [options] <input.xml> [more.xml ...]
+ *     java -jar Parser.jar [options] --serve PORT
+ *
+ *     Errors report the line, byte column and byte offset of the
+ *     offending tag; "--locate OFFSET" then shows that spot directly.
+ *
+ * OPTIONS:
+ *     --fail-fast           stop each file at its first error
+ *     --stop-after N        stop each file after N errors
+ *     --count-only          print only the error count per file
+ *     --check-attributes    report malformed and repeated attributes
+ *     --check-namespaces    report undeclared namespace prefixes
+ *     --check-references    report bad entity and character references
+ *     --format F            error output: text (default), jsonl
+ *                           (JSON Lines) or binary
+ *     --locate OFFSET       print the text around a byte offset
+ *     --index               save an element index to <input.xml>.idx
+ *                           (none if a resource limit stops the scan)
+ *     --find PATH           print where the element at PATH (e.g.
+ *                           /root/Driver[3]) lies, using the index
+ *     --query PATH          print every match of PATH, e.g. //Driver/@id
+ *                           or //Driver/* (may be repeated)
+ *     --json NAME           write each NAME element (e.g. Driver) as a
+ *                           line of JSON to <input.xml>.jsonl
+ *     --pretty              write a normalized, re-indented copy to
+ *                           <input.xml>.pretty.xml
+ *     --indent N            spaces per level for --pretty (default 2)
+ *     --repair              write a copy with its nesting repaired to
+ *                           <input.xml>.fixed.xml, printing each fix
+ *     --split N             copy every N elements at --split-depth to
+ *                           <input>-0001.xml, <input>-0002.xml, ...
+ *                           with their ancestors' tags around them
+ *     --split-depth D       depth of the elements to split between
+ *                           (default 2, the root's children)
+ *     --stats               print each file's element statistics, and
+ *                           their total for several files
+ *     --diff                compare two files instead of validating,
+ *                           printing each changed, added or removed
+ *                           element by path
+ *     --diff-key NAME       identify elements in --diff by attribute
+ *                           NAME (e.g. id) instead of by position
+ *     --serve PORT          validate requests from clients on local
+ *                           TCP port PORT (0 = any free port) until
+ *                           stopped; see xmlparser.ValidationServer
+ *     --workers N           documents --serve validates at once
+ *                           (default: the number of processors)
+ *     --request-timeout MS  longest a --serve request may take
+ *                           (default 30000)
+ *     --load-test PORT      send the input files round-robin to the
+ *                           server on PORT and print the latencies
+ *     --requests N          requests made by --load-test (default 1000)
+ *     --pipeline N          most --load-test requests in flight at
+ *                           once (default 8)
+ *     --metrics             print how much markup the scanner skipped
+ *                           and the throughput per encoding
+ *     --follow              keep validating a file as it grows, until
+ *                           its root element closes (Enter prints the
+ *                           elements still open)
+ *     --idle-timeout S      with --follow, give up after S seconds
+ *                           without growth
+ *     --checkpoint-interval N
+ *                           save progress to <input.xml>.chk every N
+ *                           bytes; a rerun resumes from the last save
+ *     --cache FILE          reuse results for unchanged files, stored
+ *                           in FILE between runs; a file counts as
+ *                           unchanged if its size, modification time
+ *                           and 1 MiB of sampled content match
+ *     --cache-full-hash     with --cache, compare the whole content
+ *                           and ignore modification times; catches any
+ *                           change, but each lookup reads the whole file
+ *     --cache-max-entries N most results kept in the cache
+ *     --cache-max-bytes N   most bytes of results kept in the cache
+ *     --max-depth N         deepest allowed element nesting
+ *     --max-tag-length N    longest allowed tag, in bytes
+ *     --max-line-length N   longest allowed line, in bytes
+ *     --max-tags N          most tags processed per document
+ *     --max-errors N        most errors reported per document
  *
  * ---------------------------------------------------------------
  */
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import implementations.MyStack;
+import xmlparser.BinaryErrorReporter;
+import xmlparser.CompressedInput;
+import xmlparser.DiffListener;
+import xmlparser.DocumentStats;
+import xmlparser.ElementIndex;
+import xmlparser.ElementIndexBuilder;
+import xmlparser.ErrorLocator;
+import xmlparser.ErrorMode;
+import xmlparser.ErrorReporter;
+import xmlparser.FollowValidator;
+import xmlparser.JsonLinesConverter;
+import xmlparser.JsonLinesErrorReporter;
+import xmlparser.MultiHandler;
+import xmlparser.ParserLimits;
+import xmlparser.PathQueryEngine;
+import xmlparser.RecordingErrorReporter;
+import xmlparser.RepairListener;
+import xmlparser.ResultCache;
+import xmlparser.ResumableValidator;
+import xmlparser.ScanMetrics;
+import xmlparser.TextErrorReporter;
+import xmlparser.Transcoder;
+import xmlparser.ValidationClient;
+import xmlparser.ValidationServer;
+import xmlparser.XmlEncoding;
+import xmlparser.XmlError;
+import xmlparser.XmlDiff;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlFormatter;
+import xmlparser.XmlHandler;
+import xmlparser.XmlRepairer;
+import xmlparser.XmlSplitter;
+import xmlparser.XmlTokenizer;
+import xmlparser.XmlValidator;
 
 public class Parser {
 
+    private static final String USAGE =
+            "Usage: java -jar Parser.jar [options] <input.xml> [more.xml ...]";
+
+    // Settings taken from the command line
+    private final ParserLimits limits = new ParserLimits();
+    private ErrorMode mode = ErrorMode.REPORT_ALL;
+    private long stopAfter = Long.MAX_VALUE;
+    private long locate = -1;
+    private boolean follow;
+    private boolean showMetrics;
+    private boolean checkAttributes;
+    private boolean checkNamespaces;
+    private boolean checkReferences;
+    private boolean buildIndex;
+    private String findPath;
+    private final List<String> queries = new ArrayList<>();
+    private boolean showStats;
+    private boolean diff;
+    private String diffKey;
+    private int servePort = -1;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private long requestTimeout = 30000;
+    private int loadTestPort = -1;
+    private int requests = 1000;
+    private int pipeline = 8;
+    private String jsonRecord;
+    private boolean pretty;
+    private boolean repair;
+    private int indent = 2;
+    private long splitSize;
+    private int splitDepth = 2;
+    private long idleTimeout;
+    private long checkpointInterval;
+    private String format = "text";
+    private String cacheFile;
+    private long cacheMaxEntries = ResultCache.DEFAULT_MAX_ENTRIES;
+    private long cacheMaxBytes = ResultCache.DEFAULT_MAX_BYTES;
+    private boolean cacheFullHash;
+    private final List<String> fileNames = new ArrayList<>();
+
+    private ErrorReporter reporter;
+    private ResultCache cache;
+    private final ScanMetrics metrics = new ScanMetrics();
+    private final Transcoder transcoder = new Transcoder();
+    private final DocumentStats totalStats = new DocumentStats();
+    private DocumentStats fileStats;   // of the file validated last
+
     /**
      * Program entry point.
      * Ensures command-line arguments are correct and initiates parsing.
+     * With more than one input file a summary line is printed at the end.
+     * Exits with status 1 if any file was invalid or unreadable.
      */
     public static void main(String[] args) {
 
-        // Must provide exactly 1 argument: the XML file name.
-        if (args.length == 0) {
-            System.out.println("Usage: java -jar Parser.jar <input.xml>");
+        Parser parser = new Parser();
+
+        try {
+            if (!parser.parseArgs(args)) {
+                return;
+            }
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Error: " + ex.getMessage());
             return;
         }
 
-        String fileName = args[0];
-
-        // Read file lines into memory.
-        List<String> lines = readFile(fileName);
-
-        // Null means file could not be opened.
-        if (lines == null) {
-            System.out.println("Error: Couldn't read file: " + fileName);
+        if (parser.fileNames.isEmpty() && parser.servePort < 0) {
+            System.out.println(USAGE);
             return;
         }
 
-        // Begin parsing.
-        parseXML(lines);
+        if (parser.run() > 0) {
+            System.exit(1);
+        }
     }
 
     /**
-     * Reads an XML file into a List<String>,
-     * one trimmed line per entry.
+     * Reads the options, then at least 1 argument: the XML file name(s).
+     *
+     * @return false if the arguments were unusable (already reported)
+     * @throws IllegalArgumentException if an option value is invalid
      */
-    private static List<String> readFile(String fileName) {
+    private boolean parseArgs(String[] args) throws IllegalArgumentException {
 
-        List<String> list = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                fileNames.add(arg);
+                continue;
+            }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            // Options without a value
+            if (arg.equals("--fail-fast")) {
+                mode = ErrorMode.FAIL_FAST;
+                continue;
+            }
+            if (arg.equals("--count-only")) {
+                mode = ErrorMode.COUNT_ONLY;
+                continue;
+            }
+            if (arg.equals("--follow")) {
+                follow = true;
+                continue;
+            }
+            if (arg.equals("--check-attributes")) {
+                checkAttributes = true;
+                continue;
+            }
+            if (arg.equals("--check-namespaces")) {
+                checkNamespaces = true;
+                continue;
+            }
+            if (arg.equals("--check-references")) {
+                checkReferences = true;
+                continue;
+            }
+            if (arg.equals("--index")) {
+                buildIndex = true;
+                continue;
+            }
+            if (arg.equals("--repair")) {
+                repair = true;
+                continue;
+            }
+            if (arg.equals("--pretty")) {
+                pretty = true;
+                continue;
+            }
+            if (arg.equals("--diff")) {
+                diff = true;
+                continue;
+            }
+            if (arg.equals("--stats")) {
+                showStats = true;
+                continue;
+            }
+            if (arg.equals("--metrics")) {
+                showMetrics = true;
+                continue;
+            }
+            if (arg.equals("--cache-full-hash")) {
+                cacheFullHash = true;
+                continue;
+            }
 
-            String line;
+            if (i + 1 >= args.length) {
+                System.out.println("Error: Missing value for " + arg);
+                return false;
+            }
 
-            // Read file line-by-line
-            while ((line = br.readLine()) != null) {
-                list.add(line.trim());  // remove leading/trailing spaces
+            // Options with a text value
+            if (arg.equals("--format")) {
+                format = args[++i];
+                continue;
+            }
+            if (arg.equals("--cache")) {
+                cacheFile = args[++i];
+                continue;
+            }
+            if (arg.equals("--find")) {
+                findPath = args[++i];
+                continue;
+            }
+            if (arg.equals("--json")) {
+                jsonRecord = args[++i];
+                continue;
+            }
+            if (arg.equals("--diff-key")) {
+                diffKey = args[++i];
+                continue;
+            }
+            if (arg.equals("--query")) {
+                queries.add(args[++i]);
+                continue;
             }
 
-        } catch (IOException ex) {
-            return null; // signals failure
+            // Options with a numeric value. The option is looked up before
+            // its value is parsed, so an unknown one is reported as such.
+            String text = args[++i];
+            switch (arg) {
+                case "--max-depth":         limits.setMaxDepth(toInt(number(arg, text))); break;
+                case "--max-tag-length":    limits.setMaxTagLength(toInt(number(arg, text))); break;
+                case "--max-line-length":
+                    limits.setMaxLineLength(toInt(number(arg, text)));
+                    break;
+                case "--max-tags":          limits.setMaxTags(number(arg, text)); break;
+                case "--max-errors":        limits.setMaxErrors(number(arg, text)); break;
+                case "--locate":            locate = number(arg, text); break;
+                case "--idle-timeout":      idleTimeout = number(arg, text); break;
+                case "--cache-max-entries": cacheMaxEntries = positive(arg, text); break;
+                case "--cache-max-bytes":   cacheMaxBytes = positive(arg, text); break;
+                case "--indent":            indent = toInt(atLeast(arg, text, 0)); break;
+                case "--split":             splitSize = positive(arg, text); break;
+                case "--split-depth":       splitDepth = toInt(atLeast(arg, text, 2)); break;
+                case "--serve":             servePort = toInt(atLeast(arg, text, 0)); break;
+                case "--workers":           workers = toInt(positive(arg, text)); break;
+                case "--request-timeout":   requestTimeout = positive(arg, text); break;
+                case "--load-test":         loadTestPort = toInt(atLeast(arg, text, 0)); break;
+                case "--requests":          requests = toInt(positive(arg, text)); break;
+                case "--pipeline":          pipeline = toInt(positive(arg, text)); break;
+                case "--checkpoint-interval":
+                    checkpointInterval = positive(arg, text);
+                    break;
+                case "--stop-after":
+                    mode = ErrorMode.FIRST_N;
+                    stopAfter = positive(arg, text);
+                    break;
+                default:
+                    System.out.println("Error: Unknown option " + arg);
+                    System.out.println(USAGE);
+                    return false;
+            }
         }
-
-        return list;
+        return true;
     }
 
     /**
-     * Main XML parsing logic using MyStack<String>.
-     * Follows assignment rules:
-     *   - Opening tags push onto stack
-     *   - Closing tags pop from stack
-     *   - Ensures proper nesting order
-     *   - Handles processing instructions and self-closing tags
+     * Carries out the command.
+     *
+     * @return the number of invalid or unreadable files
      */
-    private static void parseXML(List<String> lines) {
-
-        MyStack<String> stack = new MyStack<>();
+    private int run() {
+
+        // Jump to a byte offset instead of validating.
+        if (locate >= 0) {
+            for (String fileName : fileNames) {
+                try {
+                    System.out.println(ErrorLocator.excerpt(fileName, locate, 80));
+                } catch (IOException | IllegalArgumentException ex) {
+                    System.out.println("Error: " + fileName + ": " + ex.getMessage());
+                }
+            }
+            return 0;
+        }
 
-        boolean hasRoot = false;  // has first root-level opening tag appeared?
-        String rootName = null;   // name of root element
-        int rootCount = 0;        // count number of root elements
-        int lineNum = 0;          // current line number
+        // Look elements up in the index instead of validating.
+        if (findPath != null) {
+            int missing = 0;
+            for (String fileName : fileNames) {
+                try {
+                    if (!find(fileName)) {
+                        missing++;
+                    }
+                } catch (IOException | IllegalArgumentException ex) {
+                    System.out.println("Error: " + fileName + ": " + ex.getMessage());
+                    missing++;
+                }
+            }
+            return missing;
+        }
 
-        // Process each line
-        for (String line : lines) {
-            lineNum++;
+        // Validate for clients until stopped.
+        if (servePort >= 0) {
+            try (ValidationServer server = new ValidationServer(servePort, workers,
+                    requestTimeout, limits, mode, stopAfter)) {
+                server.setCheckAttributes(checkAttributes);
+                server.setCheckNamespaces(checkNamespaces);
+                server.setCheckReferences(checkReferences);
+                System.out.println("Serving on port " + server.getPort() + " with " + workers
+                        + " worker(s)");
+                server.serve();
+                return 0;
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println("Error: " + ex.getMessage());
+                return 1;
+            }
+        }
 
-            // Extract all <...> tags appearing inside this line.
-            List<String> tags = extractTags(line);
+        // Measure a server's latency instead of validating.
+        if (loadTestPort >= 0) {
+            try {
+                loadTest();
+                return 0;
+            } catch (IOException ex) {
+                System.out.println("Error: " + ex.getMessage());
+                return 1;
+            }
+        }
 
-            // Process each tag found
-            for (String tag : tags) {
+        // Compare two files instead of validating.
+        if (diff) {
+            if (fileNames.size() != 2) {
+                System.out.println("Error: --diff takes exactly two files");
+                return 1;
+            }
+            try {
+                return diff(fileNames.get(0), fileNames.get(1)) > 0 ? 1 : 0;
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println("Error: " + ex.getMessage());
+                return 1;
+            }
+        }
 
-                // Skip XML processing instructions like <?xml version="1.0"?>
-                if (tag.startsWith("<?") && tag.endsWith("?>")) {
-                    continue;
-                }
+        switch (format) {
+            case "text":   reporter = new TextErrorReporter(System.out); break;
+            case "jsonl":  reporter = new JsonLinesErrorReporter(System.out); break;
+            case "binary": reporter = new BinaryErrorReporter(System.out); break;
+            default:
+                System.out.println("Error: Unknown format " + format);
+                return 1;
+        }
 
-                // Skip self-closing tags (<tag/> or <tag attr="x" />)
-                if (isSelfClosing(tag)) {
-                    continue;
-                }
+        // Validate a growing file as it is written.
+        if (follow) {
+            if (fileNames.size() != 1) {
+                System.out.println("Error: --follow takes exactly one file");
+                return 1;
+            }
+            try {
+                return follow(fileNames.get(0)) > 0 ? 1 : 0;
+            } catch (IOException ex) {
+                System.out.println("Error: " + ex.getMessage());
+                return 1;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+        }
 
-                // ---------------------------------------------------------
-                //  CLOSING TAG: </tag>
-                // ---------------------------------------------------------
-                if (tag.startsWith("</")) {
+        if (cacheFile != null) {
+            cache = new ResultCache(Paths.get(cacheFile), cacheMaxEntries, cacheMaxBytes);
+            cache.setFullHash(cacheFullHash);
+        }
 
-                    // Extract name inside closing tag.
-                    String closingName = tag.substring(2, tag.length() - 1);
+        // Headers and summaries would corrupt structured output.
+        boolean batch = fileNames.size() > 1;
+        boolean plain = format.equals("text");
+        int invalid = 0;
 
-                    // If stack is empty → no matching opening tag exists.
-                    if (stack.isEmpty()) {
-                        printError(lineNum,
-                                "Closing tag </" + closingName + "> has no matching opening tag");
-                        continue;
-                    }
+        for (String fileName : fileNames) {
 
-                    // Pop most recent opening tag
-                    String openingName = stack.pop();
+            if (batch && plain && mode != ErrorMode.COUNT_ONLY) {
+                System.out.println("== " + fileName);
+            }
 
-                    // If names differ → mismatched tags
-                    if (!openingName.equals(closingName)) {
-                        printError(lineNum,
-                                "Tag <" + openingName + ">is closed by </" + closingName + ">");
-                    }
+            try {
+                reporter.startDocument(fileName);
+                fileStats = null;
+                long errors = validateFile(fileName);
+                reporter.endDocument(errors);
+                reporter.flush();
 
-                    continue; // closing tag handled
+                if (plain && mode == ErrorMode.COUNT_ONLY) {
+                    System.out.println(fileName + ": " + errors + " error(s)");
                 }
-
-                // ---------------------------------------------------------
-                //  OPENING TAG: <tag> or <tag attr="value">
-                // ---------------------------------------------------------
-                if (tag.startsWith("<") && tag.endsWith(">")) {
-
-                    // Extract tag name without attributes
-                    String openingName = extractTagName(tag);
-
-                    // First root-level tag detected
-                    if (!hasRoot) {
-                        hasRoot = true;
-                        rootName = openingName;
-                        rootCount = 1;
-
-                    // If stack is empty but root already exists → another root
-                    } else if (stack.isEmpty()) {
-                        rootCount++;
-                        printError(lineNum,
-                            "Multiple root elements detected: <" + rootName +
-                            "> and <" + openingName + ">.");
-                    }
-
-                    // Push opening tag onto the stack
-                    stack.push(openingName);
+                if (plain && fileStats != null) {
+                    System.out.println(fileStats);
                 }
+                if (errors > 0) {
+                    invalid++;
+                }
+
+            } catch (IOException ex) {
+                endUnreadDocument();
+                System.out.println("Error: Couldn't read file: " + fileName + " ("
+                        + ex.getClass().getSimpleName() + ": " + ex.getMessage() + ")");
+                invalid++;
             }
         }
 
-        // ---------------------------------------------------------
-        //  AFTER REACHING END OF FILE
-        // ---------------------------------------------------------
-        // Any tags left on stack were never closed.
-        while (!stack.isEmpty()) {
-            String unclosed = stack.pop();
-            printError(lineNum,
-                    "Tag <" + unclosed + "> was never closed.");
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException ex) {
+                System.out.println("Error: Couldn't save cache: " + ex.getMessage());
+            }
         }
 
-        // If no root element ever appeared → invalid XML
-        if (!hasRoot) {
-            printError(1, "No root element found in document.");
+        if (batch && plain) {
+            System.out.println("Checked " + fileNames.size() + " files: "
+                    + (fileNames.size() - invalid) + " valid, " + invalid + " invalid"
+                    + (cache == null ? "" : "; cache: " + cache.getHits() + " hits, "
+                            + cache.getMisses() + " misses"));
+        }
+        if (showStats && batch && plain) {
+            System.out.println("== Total");
+            System.out.println(totalStats);
         }
+        if (showMetrics && plain) {
+            System.out.println(metrics);
+            String throughput = transcoder.getThroughput();
+            if (!throughput.isEmpty()) {
+                System.out.println(throughput);
+            }
+        }
+
+        return invalid;
     }
 
     /**
-     * Extracts every "<...>" tag substring from the given line.
+     * Validates one file, answering from the result cache when the file
+     * is unchanged, and checkpointing it every checkpointInterval bytes
+     * (resuming from an earlier run's checkpoint) when that is > 0.
+     *
+     * @return the number of errors found
      */
-    private static List<String> extractTags(String line) {
+    private long validateFile(String fileName) throws IOException {
 
-        List<String> tags = new ArrayList<>();
+        Path path = Paths.get(fileName);
+        String settings = cache == null ? null : settings();
 
-        int start = 0;
+        // Extra consumers of the scan. A cached result does not rebuild a
+        // missing or stale index, answer queries, convert to JSON, format,
+        // repair, split or gather statistics.
+        ElementIndexBuilder builder = null;
+        if (buildIndex && ElementIndex.open(path) == null) {
+            builder = new ElementIndexBuilder();
+        }
+        PathQueryEngine engine = null;
+        if (!queries.isEmpty()) {
+            engine = new PathQueryEngine(queries.toArray(new String[0]), this::printMatch);
+        }
+        DocumentStats stats = null;
+        if (showStats) {
+            stats = new DocumentStats();
+        }
+        // Shards are copied from the file by offset, so only files read as
+        // they are can be split. Repairs copy the inflated file, so it need
+        // only be UTF-8.
+        boolean split = splitSize > 0;
+        if (split && (CompressedInput.isCompressed(path) || !XmlEncoding.detect(path).isUtf8())) {
+            System.out.println("Error: " + fileName
+                    + ": only uncompressed UTF-8 files can be split");
+            split = false;
+        }
+        boolean repairing = repair;
+        if (repairing) {
+            try (InputStream in = CompressedInput.open(path)) {
+                repairing = XmlEncoding.detect(in).isUtf8();
+            }
+            if (!repairing) {
+                System.out.println("Error: " + fileName + ": only UTF-8 files can be repaired");
+            }
+        }
+        boolean fullScan = builder != null || engine != null || stats != null
+                || jsonRecord != null || pretty || repairing || split;
+
+        if (cache != null && !fullScan) {
+            ResultCache.Result cached = cache.lookup(path, settings);
+            if (cached != null) {
+                for (XmlError error : cached.getErrors()) {
+                    reporter.report(error);
+                }
+                return cached.getErrorCount();
+            }
+        }
 
-        // Repeatedly find '<' then '>' pairs
-        while ((start = line.indexOf("<", start)) != -1) {
-            int end = line.indexOf(">", start);
+        RecordingErrorReporter recorder = null;
+        ErrorReporter target = reporter;
+        if (cache != null) {
+            recorder = new RecordingErrorReporter(reporter);
+            target = recorder;
+        }
 
-            // Malformed line with no closing '>'
-            if (end == -1) {
-                break;
+        long errors;
+        boolean complete = true;  // were all of the file's errors reported?
+        // Checkpoints hold file offsets, so only files read as they are
+        // can be resumed.
+        if (checkpointInterval > 0 && !fullScan && !CompressedInput.isCompressed(path)
+                && XmlEncoding.detect(path).isUtf8()) {
+            ResumableValidator validator = new ResumableValidator(
+                    limits, target, mode, stopAfter, checkpointInterval);
+            validator.setMetrics(metrics);
+            validator.setCheckAttributes(checkAttributes);
+            validator.setCheckNamespaces(checkNamespaces);
+            validator.setCheckReferences(checkReferences);
+            validator.setSettings(settings());
+            errors = validator.validate(path);
+            complete = validator.getResumedFrom() < 0;
+        } else {
+            // The file's bytes are streamed into the tokenizer, inflated
+            // and as UTF-8.
+            try (InputStream in = transcoder.open(CompressedInput.open(path));
+                    OutputStream json = jsonRecord == null ? null
+                            : Files.newOutputStream(JsonLinesConverter.sidecarFor(path));
+                    OutputStream formatted = pretty
+                            ? Files.newOutputStream(XmlFormatter.sidecarFor(path)) : null;
+                    FileChannel source = split ? FileChannel.open(path) : null;
+                    InputStream original = repairing ? CompressedInput.open(path) : null;
+                    OutputStream fixed = repairing
+                            ? Files.newOutputStream(XmlRepairer.sidecarFor(path)) : null) {
+                XmlTokenizer tokenizer = new XmlTokenizer(in, limits);
+                tokenizer.setMetrics(metrics);
+                XmlValidator validator = new XmlValidator(limits, target, mode, stopAfter);
+                validator.setCheckAttributes(checkAttributes);
+                validator.setCheckNamespaces(checkNamespaces);
+                validator.setCheckReferences(checkReferences);
+                if (fullScan) {
+                    List<XmlHandler> handlers = new ArrayList<>();
+                    handlers.add(validator);
+                    if (builder != null) {
+                        handlers.add(builder);
+                    }
+                    if (engine != null) {
+                        handlers.add(engine);
+                    }
+                    if (stats != null) {
+                        handlers.add(stats);
+                    }
+                    if (json != null) {
+                        handlers.add(new JsonLinesConverter(jsonRecord, json));
+                    }
+                    if (formatted != null) {
+                        handlers.add(new XmlFormatter(formatted, indent));
+                    }
+                    if (fixed != null) {
+                        handlers.add(new XmlRepairer(original, fixed, this::printRepair));
+                    }
+                    XmlSplitter splitter = null;
+                    if (source != null) {
+                        splitter = new XmlSplitter(source, path, splitDepth, splitSize);
+                        handlers.add(splitter);
+                    }
+                    new XmlEventScanner(tokenizer,
+                            new MultiHandler(handlers.toArray(new XmlHandler[0]))).parse();
+                    errors = validator.getErrorCount();
+                    if (splitter != null && format.equals("text")) {
+                        System.out.println(fileName + ": " + splitter.getElementCount()
+                                + " element(s) split into " + splitter.getShardCount()
+                                + " shard(s)");
+                    }
+                } else {
+                    errors = validator.validate(tokenizer);
+                }
+                // An index is trusted as complete while the file is
+                // unchanged, so one cut short by a limit is not saved, and
+                // the stale one it was to replace is removed.
+                if (builder != null && validator.isLimitExceeded()) {
+                    Files.deleteIfExists(ElementIndex.sidecarFor(path));
+                } else if (builder != null) {
+                    builder.build(Files.size(path), Files.getLastModifiedTime(path).toMillis())
+                            .write(ElementIndex.sidecarFor(path));
+                }
+                if (stats != null) {
+                    totalStats.merge(stats);
+                    fileStats = stats;
+                }
             }
+        }
 
-            tags.add(line.substring(start, end + 1));
-            start = end + 1; // continue searching after this tag
+        // A resumed run only reported the errors after its checkpoint, so
+        // its error list is incomplete and must not be cached.
+        if (recorder != null && complete) {
+            cache.store(path, settings, errors, recorder.getErrors());
         }
+        return errors;
+    }
 
-        return tags;
+    /**
+     * Ends the report of a file that could not be read to the end, so the
+     * errors found before the failure are printed under its own header
+     * instead of the next file's.
+     */
+    private void endUnreadDocument() {
+        try {
+            reporter.endDocument(-1);
+            reporter.flush();
+        } catch (IOException ex) {
+            // Nothing more can be reported for this file.
+        }
     }
 
     /**
-     * Detects self-closing tags (<tag/> or <tag ... />).
+     * Describes every setting that can change a file's result, so cached
+     * results and checkpoints are only reused under the same settings.
      */
-    private static boolean isSelfClosing(String tag) {
+    private String settings() {
+        return mode + "/" + stopAfter + "/" + checkAttributes + "/" + checkNamespaces
+                + "/" + checkReferences + "/" + limits.getMaxDepth()
+                + "/" + limits.getMaxTagLength()
+                + "/" + limits.getMaxLineLength() + "/" + limits.getMaxTags()
+                + "/" + limits.getMaxErrors();
+    }
 
-        if (!tag.startsWith("<") || !tag.endsWith(">")) return false;
+    /**
+     * Prints one match of a --query path.
+     */
+    private void printMatch(int query, String element, String value, int line, long offset) {
+        System.out.println("[Line " + line + ", Byte " + offset + "] " + queries.get(query)
+                + (value == null ? " <" + element + ">" : " = " + value));
+    }
 
-        // Remove < > and trim
-        String inner = tag.substring(1, tag.length() - 1).trim();
+    /**
+     * Prints one fix made by --repair.
+     */
+    private void printRepair(String fix, int line, long offset) {
+        System.out.println("[Line " + line + ", Byte " + offset + "] " + fix);
+    }
 
-        // A trailing slash indicates self-closing
-        return inner.endsWith("/");
+    /**
+     * Sends the input files to the server at loadTestPort, with up to
+     * pipeline requests in flight, and prints the throughput and the
+     * median, 99th percentile and worst latency.
+     */
+    private void loadTest() throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (String fileName : fileNames) {
+            paths.add(Paths.get(fileName).toAbsolutePath().toString());
+        }
+        long started = System.nanoTime();
+        long[] latencies;
+        try (ValidationClient client = new ValidationClient(loadTestPort)) {
+            latencies = client.loadTest(paths, requests, pipeline);
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%d requests, pipeline %d: %.0f requests/s, p50 %.3f ms, "
+                + "p99 %.3f ms, max %.3f ms%n", requests, pipeline, requests / seconds,
+                ValidationClient.percentile(latencies, 50) / 1e6,
+                ValidationClient.percentile(latencies, 99) / 1e6,
+                latencies[latencies.length - 1] / 1e6);
     }
 
     /**
-     * Extracts only the tag name, removing attributes and slashes.
-     * Example: <Driver code="123"> → "Driver"
+     * Compares two files, printing each difference and then their count.
+     *
+     * @return the number of differences
      */
-    private static String extractTagName(String tag) {
+    private long diff(String oldName, String newName) throws IOException {
+        // Each stream is read in turn, so each needs its own transcoder.
+        try (InputStream oldIn = new Transcoder().open(CompressedInput.open(Paths.get(oldName)));
+                InputStream newIn = new Transcoder().open(
+                        CompressedInput.open(Paths.get(newName)))) {
+            XmlDiff comparison = new XmlDiff(diffKey, this::printDifference);
+            long differences = comparison.compare(new XmlTokenizer(oldIn, limits),
+                    new XmlTokenizer(newIn, limits));
+            System.out.println(differences == 0 ? "No differences"
+                    : differences + " difference(s)");
+            return differences;
+        }
+    }
 
-        // Remove < >
-        String inner = tag.substring(1, tag.length() - 1).trim();
+    /**
+     * Prints one difference found by --diff.
+     */
+    private void printDifference(DiffListener.Change change, String path) {
+        System.out.println(change.name().toLowerCase() + " " + path);
+    }
 
-        // Remove trailing slash if present (<tag/>)
-        if (inner.endsWith("/")) {
-            inner = inner.substring(0, inner.length() - 1).trim();
+    /**
+     * Prints where the element at findPath lies in a file, using the
+     * file's element index.
+     *
+     * @return false if the file has no usable index or no such element
+     */
+    private boolean find(String fileName) throws IOException {
+        ElementIndex index = ElementIndex.open(Paths.get(fileName));
+        if (index == null) {
+            System.out.println("Error: " + fileName + ": no index; validate it with --index first");
+            return false;
+        }
+        int element = index.select(findPath);
+        if (element < 0) {
+            System.out.println(fileName + ": " + findPath + " not found");
+            return false;
         }
+        System.out.println(fileName + ": " + findPath + " at bytes " + index.getStart(element)
+                + "-" + index.getEnd(element) + ", depth " + index.getDepth(element) + ", "
+                + (index.getSubtreeEnd(element) - element - 1) + " descendant(s)");
+        return true;
+    }
+
+    /**
+     * Follows a growing file, validating appended bytes as they arrive,
+     * until its root element closes or it stops growing for idleTimeout
+     * seconds (0 = wait forever). Pressing Enter prints the elements that
+     * are still open.
+     *
+     * @return the number of errors found
+     */
+    private long follow(String fileName) throws IOException, InterruptedException {
+
+        try (FollowValidator follower = new FollowValidator(
+                Paths.get(fileName), limits, reporter, mode, stopAfter)) {
+
+            follower.setCheckAttributes(checkAttributes);
+            follower.setCheckNamespaces(checkNamespaces);
+            follower.setCheckReferences(checkReferences);
+            long lastGrowth = System.currentTimeMillis();
+            long lastOffset = -1;
+
+            while (true) {
+                follower.poll();
+                if (follower.isComplete()) {
+                    break;
+                }
+
+                // Open-element stack on demand
+                if (System.in.available() > 0) {
+                    while (System.in.available() > 0) {
+                        System.in.read();
+                    }
+                    System.out.println("Open elements at byte " + follower.getOffset() + ": "
+                            + String.join(" > ", follower.getOpenElements()));
+                }
+
+                long now = System.currentTimeMillis();
+                if (follower.getOffset() != lastOffset) {
+                    lastOffset = follower.getOffset();
+                    lastGrowth = now;
+                } else if (idleTimeout > 0 && now - lastGrowth >= idleTimeout * 1000) {
+                    break;
+                }
 
-        // Remove everything after first space (attributes)
-        int spaceIndex = inner.indexOf(' ');
-        if (spaceIndex != -1) {
-            inner = inner.substring(0, spaceIndex);
+                follower.awaitChange(1000);
+            }
+
+            return follower.finish();
         }
+    }
 
-        return inner;
+    /**
+     * Parses a numeric option value.
+     */
+    private static long number(String option, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(option + " takes a number: " + value);
+        }
     }
 
     /**
-     * Prints formatted error messages.
+     * Narrows an option value to an int, rejecting out-of-range values.
      */
-    private static void printError(int lineNum, String msg) {
-        System.out.println("[Line " + lineNum + "] " + msg);
+    private static int toInt(long value) {
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Value too large: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses an option value, rejecting zero and negative values.
+     */
+    private static long positive(String option, String text) {
+        long value = number(option, text);
+        if (value <= 0) {
+            throw new IllegalArgumentException(option + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Parses an option value, rejecting values below a minimum.
+     */
+    private static long atLeast(String option, String text, long min) {
+        long value = number(option, text);
+        if (value < min) {
+            throw new IllegalArgumentException(option + " must be at least " + min + ": " + value);
+        }
+        return value;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package exceptions;
+
+public class LimitExceededException extends Exception
+{
+	/**
+	 *  Raised by the XML parser when a configured resource limit (depth, tag
+	 *  length, line length, tag count or error count) is exceeded.
+	 */
+	private static final long serialVersionUID = -3160447725402375824L;
+
+	public LimitExceededException()
+	{
+		super();
+	}
+
+	/**
+	 * @param message error message specific to the limit that was exceeded.
+	 */
+	public LimitExceededException( String message )
+	{
+		super( message );
+	}
+}
@@ -0,0 +1,47 @@
+package exceptions;
+
+public class StopParsingException extends Exception
+{
+	/**
+	 *  Raised by an XML event handler to end parsing of the current document
+	 *  early, e.g. once enough errors have been seen. It is not an error in
+	 *  itself: the parse simply ends as if the input had run out.
+	 */
+	private static final long serialVersionUID = 4127703580651429836L;
+
+	private final boolean wholeDocument;
+
+	public StopParsingException()
+	{
+		super();
+		wholeDocument = false;
+	}
+
+	/**
+	 * @param message reason for stopping.
+	 */
+	public StopParsingException( String message )
+	{
+		this( message, false );
+	}
+
+	/**
+	 * @param message reason for stopping.
+	 * @param wholeDocument true if the scan must end for every handler
+	 *        sharing it (see MultiHandler), e.g. when a resource limit is
+	 *        exceeded, rather than for the throwing handler only.
+	 */
+	public StopParsingException( String message, boolean wholeDocument )
+	{
+		super( message );
+		this.wholeDocument = wholeDocument;
+	}
+
+	/**
+	 * @return true if the scan must end for every handler sharing it.
+	 */
+	public boolean isWholeDocument()
+	{
+		return wholeDocument;
+	}
+}
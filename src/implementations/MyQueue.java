@@ -2,7 +2,7 @@ package implementations;
 
 import utilities.QueueADT;
 import utilities.Iterator;
-import utilities.EmptyQueueException;
+import exceptions.EmptyQueueException;
 
 /**
  * A queue implementation using MyDLL (Doubly Linked List) as the underlying data structure.
@@ -0,0 +1,223 @@
+package xmlparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Checks the attributes of a tag in place, as name="value" pairs, and
+ * finds repeated attribute names.
+ *
+ * Names are never copied: they are kept as ranges of the tokenizer's
+ * buffer in a small open-addressing hash table. The table is reused for
+ * every tag; instead of being cleared, each tag gets a new generation
+ * number and slots from older generations count as empty. So checking a
+ * tag allocates nothing unless it has a problem to describe.
+ */
+public class AttributeChecker {
+
+    /** The attributes are well-formed. */
+    public static final int OK = 0;
+
+    /** The attributes are not name="value" pairs; see getProblem(). */
+    public static final int MALFORMED = 1;
+
+    /** An attribute name is repeated; see getAttributeName(). */
+    public static final int DUPLICATE = 2;
+
+    private int[] generations = new int[32];
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int generation;
+    private int count;              // names in the table this generation
+
+    private String problem;
+    private byte[] nameBuf;
+    private int nameStart;
+    private int nameEnd;
+
+    /**
+     * Checks the attributes in buf[start, end), as returned by the
+     * tokenizer for a start or self-closing tag. Stops at the first
+     * problem.
+     *
+     * @param buf the buffer holding the attributes
+     * @param start the index of the attributes, right after the tag name
+     * @param end the index just past the attributes
+     * @return OK, MALFORMED or DUPLICATE
+     */
+    public int check(byte[] buf, int start, int end) {
+        if (++generation == 0) {
+            // Wrapped around: old stamps could look current again.
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+        count = 0;
+
+        int p = start;
+        while (true) {
+            // Attributes are separated from the name and from each other
+            // by whitespace.
+            int q = skipWhitespace(buf, p, end);
+            if (q == end) {
+                return OK;
+            }
+            if (q == p) {
+                return malformed("missing whitespace before attribute");
+            }
+            p = q;
+
+            // name
+            int ns = p;
+            while (p < end && isNameByte(buf[p])) {
+                p++;
+            }
+            if (p == ns) {
+                return malformed("unexpected '" + (char) (buf[p] & 0xFF) + "'");
+            }
+            int ne = p;
+            byte first = buf[ns];
+            if ((first >= '0' && first <= '9') || first == '-' || first == '.') {
+                return malformed("name " + string(buf, ns, ne) + " starts with '"
+                        + (char) first + "'");
+            }
+            if (!add(buf, ns, ne)) {
+                nameBuf = buf;
+                nameStart = ns;
+                nameEnd = ne;
+                return DUPLICATE;
+            }
+
+            // =
+            p = skipWhitespace(buf, p, end);
+            if (p == end || buf[p] != '=') {
+                return malformed("attribute " + string(buf, ns, ne)
+                        + " has no value");
+            }
+            p = skipWhitespace(buf, p + 1, end);
+
+            // "value" or 'value'
+            if (p == end || (buf[p] != '"' && buf[p] != '\'')) {
+                return malformed("value of " + string(buf, ns, ne)
+                        + " is not quoted");
+            }
+            byte quote = buf[p++];
+            while (p < end && buf[p] != quote) {
+                if (buf[p] == '<') {
+                    return malformed("'<' in value of " + string(buf, ns, ne));
+                }
+                p++;
+            }
+            if (p == end) {
+                return malformed("value of " + string(buf, ns, ne)
+                        + " is not closed");
+            }
+            p++;
+        }
+    }
+
+    /**
+     * @return the description of the last MALFORMED result
+     */
+    public String getProblem() {
+        return problem;
+    }
+
+    /**
+     * @return the repeated name of the last DUPLICATE result
+     */
+    public String getAttributeName() {
+        return string(nameBuf, nameStart, nameEnd);
+    }
+
+    /**
+     * Adds the name in buf[start, end) to the table.
+     *
+     * @return false if the tag already has an attribute of that name
+     */
+    private boolean add(byte[] buf, int start, int end) {
+        if ((count + 1) * 2 > generations.length) {
+            grow(buf);
+        }
+        int mask = generations.length - 1;
+        int i = hash(buf, start, end) & mask;
+        while (generations[i] == generation) {
+            if (equalRanges(buf, starts[i], ends[i], start, end)) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        generations[i] = generation;
+        starts[i] = start;
+        ends[i] = end;
+        count++;
+        return true;
+    }
+
+    /**
+     * Doubles the table, re-inserting the names of the current tag.
+     */
+    private void grow(byte[] buf) {
+        int[] oldGenerations = generations;
+        int[] oldStarts = starts;
+        int[] oldEnds = ends;
+        int n = oldGenerations.length * 2;
+        generations = new int[n];
+        starts = new int[n];
+        ends = new int[n];
+        for (int j = 0; j < oldGenerations.length; j++) {
+            if (oldGenerations[j] == generation) {
+                int i = hash(buf, oldStarts[j], oldEnds[j]) & (n - 1);
+                while (generations[i] == generation) {
+                    i = (i + 1) & (n - 1);
+                }
+                generations[i] = generation;
+                starts[i] = oldStarts[j];
+                ends[i] = oldEnds[j];
+            }
+        }
+    }
+
+    private int malformed(String description) {
+        problem = description;
+        return MALFORMED;
+    }
+
+    private static boolean equalRanges(byte[] b, int s1, int e1, int s2, int e2) {
+        if (e1 - s1 != e2 - s2) {
+            return false;
+        }
+        for (int i = 0; i < e1 - s1; i++) {
+            if (b[s1 + i] != b[s2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] b, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns true for the bytes allowed in an attribute name.
+     */
+    private static boolean isNameByte(byte c) {
+        return c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '=' && c != '"'
+                && c != '\'' && c != '<' && c != '>' && c != '/';
+    }
+
+    private static int skipWhitespace(byte[] b, int p, int end) {
+        while (p < end && (b[p] == ' ' || b[p] == '\t' || b[p] == '\n' || b[p] == '\r')) {
+            p++;
+        }
+        return p;
+    }
+
+    private static String string(byte[] b, int start, int end) {
+        return new String(b, start, end - start, StandardCharsets.UTF_8);
+    }
+}
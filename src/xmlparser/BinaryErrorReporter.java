@@ -0,0 +1,67 @@
+package xmlparser;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes errors in a compact binary format that never formats a message.
+ * The stream is a sequence of tagged records:
+ *
+ *   'D' source(UTF)               start of a document
+ *   'E' error (see XmlError.writeTo)
+ *   'Z' errorCount(long)          end of a document; -1 if reading it
+ *                                 failed part way through
+ *
+ * Records can be read back with XmlError.readFrom() after the 'E' tag.
+ */
+public class BinaryErrorReporter extends BufferedErrorReporter {
+
+    /** Tag of a start-of-document record. */
+    public static final int DOCUMENT = 'D';
+
+    /** Tag of an error record. */
+    public static final int ERROR = 'E';
+
+    /** Tag of an end-of-document record. */
+    public static final int END = 'Z';
+
+    private final DataOutputStream data = new DataOutputStream(buffer);
+
+    /**
+     * Constructs a reporter writing to the given stream.
+     *
+     * @param out the underlying stream
+     */
+    public BinaryErrorReporter(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Writes a start-of-document record.
+     */
+    @Override
+    public void startDocument(String source) throws IOException {
+        data.writeByte(DOCUMENT);
+        data.writeUTF(source);
+    }
+
+    /**
+     * Writes an error record.
+     */
+    @Override
+    public void report(XmlError error) throws IOException {
+        data.writeByte(ERROR);
+        error.writeTo(data);
+        flushIfFull();
+    }
+
+    /**
+     * Writes an end-of-document record.
+     */
+    @Override
+    public void endDocument(long errorCount) throws IOException {
+        data.writeByte(END);
+        data.writeLong(errorCount);
+    }
+}
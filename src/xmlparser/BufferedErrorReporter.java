@@ -0,0 +1,103 @@
+package xmlparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base class for reporters that collect their output in memory and write
+ * it to the underlying stream in large pieces. The underlying stream is
+ * locked only while a whole buffer is written, so several reporters can
+ * share one stream (e.g. System.out) without their records interleaving.
+ *
+ * Closing a reporter flushes it but leaves the underlying stream open.
+ */
+public abstract class BufferedErrorReporter implements ErrorReporter {
+
+    /** Buffered bytes that trigger an automatic flush. */
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private final OutputStream out;
+
+    /** Pending output not yet written to the underlying stream. */
+    protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+
+    /**
+     * Constructs a reporter writing to the given stream.
+     *
+     * @param out the underlying stream
+     */
+    protected BufferedErrorReporter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Appends text to the buffer as UTF-8. Plain ASCII, which covers
+     * almost every error message, is copied without any encoder.
+     *
+     * @param text the text to append
+     */
+    protected void writeText(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = text.subSequence(i, length).toString()
+                        .getBytes(StandardCharsets.UTF_8);
+                buffer.write(bytes, 0, bytes.length);
+                return;
+            }
+            buffer.write(c);
+        }
+    }
+
+    /**
+     * Flushes the buffer once it has grown past the threshold, bounding
+     * the memory used by a document with very many errors.
+     *
+     * @throws IOException if writing fails
+     */
+    protected void flushIfFull() throws IOException {
+        if (buffer.size() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Does nothing; subclasses override to write a document header.
+     */
+    @Override
+    public void startDocument(String source) throws IOException {
+    }
+
+    /**
+     * Does nothing; subclasses override to write a document trailer.
+     */
+    @Override
+    public void endDocument(long errorCount) throws IOException {
+    }
+
+    /**
+     * Writes the whole buffer to the underlying stream in one locked write.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        synchronized (out) {
+            buffer.writeTo(out);
+            out.flush();
+        }
+        buffer.reset();
+    }
+
+    /**
+     * Flushes pending output. The underlying stream is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
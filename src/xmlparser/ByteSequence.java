@@ -0,0 +1,118 @@
+package xmlparser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence view of a range of bytes, such as a tag name inside the
+ * tokenizer's buffer. Nothing is copied while the range is pure ASCII,
+ * which is the common case for XML names; a range holding other UTF-8
+ * is decoded into a String the first time its characters are needed.
+ *
+ * The view is reused: it changes whenever its owner moves on, so call
+ * toString() to keep the content.
+ */
+public final class ByteSequence implements CharSequence {
+
+    private byte[] buf;
+    private int start;
+    private int end;
+    private int ascii;          // 1 = ASCII, 0 = not, -1 = not yet checked
+    private String decoded;     // the decoded range when not ASCII
+
+    /**
+     * Constructs an empty view.
+     */
+    public ByteSequence() {
+        this.buf = new byte[0];
+    }
+
+    /**
+     * Points the view at buf[start, end).
+     *
+     * @param buf the buffer
+     * @param start index of the first byte
+     * @param end index just past the last byte
+     */
+    public void set(byte[] buf, int start, int end) {
+        this.buf = buf;
+        this.start = start;
+        this.end = end;
+        this.ascii = -1;
+        this.decoded = null;
+    }
+
+    /**
+     * @return the number of bytes in the range
+     */
+    public int byteLength() {
+        return end - start;
+    }
+
+    /**
+     * Compares the content with a String without decoding it.
+     *
+     * @param s the String to compare with
+     * @return true if the content equals s
+     */
+    public boolean contentEquals(String s) {
+        if (isAscii()) {
+            int n = end - start;
+            if (s.length() != n) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                if (s.charAt(i) != buf[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return decoded.equals(s);
+    }
+
+    @Override
+    public int length() {
+        return isAscii() ? end - start : decoded.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (isAscii()) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index " + index);
+            }
+            return (char) buf[start + index];
+        }
+        return decoded.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString().subSequence(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return isAscii()
+                ? new String(buf, start, end - start, StandardCharsets.US_ASCII)
+                : decoded;
+    }
+
+    /**
+     * Checks once per range whether every byte is ASCII, decoding the
+     * range if not.
+     */
+    private boolean isAscii() {
+        if (ascii < 0) {
+            ascii = 1;
+            for (int i = start; i < end; i++) {
+                if (buf[i] < 0) {
+                    ascii = 0;
+                    decoded = new String(buf, start, end - start, StandardCharsets.UTF_8);
+                    break;
+                }
+            }
+        }
+        return ascii == 1;
+    }
+}
@@ -0,0 +1,66 @@
+package xmlparser;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk byte searches for the scanners. Bytes are examined eight at a
+ * time as one long ("SWAR": SIMD within a register), which finds a rare
+ * byte such as '&' in long runs of text several times faster than a
+ * byte-by-byte loop.
+ */
+final class Bytes {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private Bytes() {
+    }
+
+    /**
+     * Returns the index of the first occurrence of a byte in b[from, to).
+     *
+     * @param b the bytes to search
+     * @param from the first index to look at
+     * @param to the index to stop before
+     * @param value the byte to find
+     * @return its index, or to if it does not occur
+     */
+    static int indexOf(byte[] b, int from, int to, byte value) {
+        long pattern = (value & 0xFFL) * ONES;
+        int p = from;
+        while (p + 8 <= to) {
+            // A byte of x is zero where the word holds the value; the
+            // lowest set high bit below marks the first such byte.
+            long x = (long) LONGS.get(b, p) ^ pattern;
+            long found = (x - ONES) & ~x & HIGHS;
+            if (found != 0) {
+                return p + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            p += 8;
+        }
+        while (p < to && b[p] != value) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * Reads the eight bytes at b[p] as one long, b[p] in its lowest byte.
+     */
+    static long word(byte[] b, int p) {
+        return (long) LONGS.get(b, p);
+    }
+
+    /**
+     * Checks whether any byte of a word is ' ' or below: whitespace, or
+     * another control character.
+     */
+    static boolean hasSpace(long word) {
+        return ((word - 0x21 * ONES) & ~word & HIGHS) != 0;
+    }
+}
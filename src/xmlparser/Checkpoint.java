@@ -0,0 +1,224 @@
+package xmlparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A snapshot of the validator state at a tag boundary: the byte offset
+ * to continue from, the line bookkeeping needed to keep positions exact,
+ * the open-tag stack, the namespace bindings in scope, the root-element
+ * and DOCTYPE state and the counters. Together
+ * with the size and modification time of the file it belongs to and the
+ * validation settings it was taken under, this is all a later run needs
+ * to resume validation instead of starting over.
+ *
+ * Checkpoints are stored in a small sidecar file next to the document
+ * (see sidecarFor()), replaced atomically each time one is written.
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x58434B50;   // "XCKP"
+    private static final int VERSION = 4;
+
+    /** Size of the document when the checkpoint was taken. */
+    final long fileSize;
+
+    /** Modification time of the document when the checkpoint was taken. */
+    final long fileModified;
+
+    /** The validation settings in force, as given to ResumableValidator. */
+    final String settings;
+
+    /** Byte offset just past the last tag processed. */
+    final long offset;
+
+    /** 1-based line at that offset. */
+    final int line;
+
+    /** Byte offset of the start of that line. */
+    final long lineStart;
+
+    /** Whether the root element had been seen, and its name. */
+    final boolean hasRoot;
+    final String rootName;
+
+    /** Whether a DOCTYPE declaration came before the offset, so unknown
+     *  entities may be declared in its internal subset. */
+    final boolean hasDoctype;
+
+    /** Errors found and tags processed up to the offset. */
+    final long errorCount;
+    final long tagCount;
+
+    /** Open element names, outermost first. */
+    final String[] openElements;
+
+    /** Namespace bindings in scope, outermost first, with the depth of
+     *  the element that declared each; empty if namespaces are not checked. */
+    final int[] bindingDepths;
+    final String[] bindingPrefixes;
+    final String[] bindingUris;
+
+    /**
+     * Constructs a checkpoint from its fields.
+     */
+    Checkpoint(long fileSize, long fileModified, String settings, long offset, int line,
+            long lineStart, boolean hasRoot, String rootName, boolean hasDoctype,
+            long errorCount, long tagCount, String[] openElements, int[] bindingDepths,
+            String[] bindingPrefixes, String[] bindingUris) {
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+        this.settings = settings;
+        this.offset = offset;
+        this.line = line;
+        this.lineStart = lineStart;
+        this.hasRoot = hasRoot;
+        this.rootName = rootName;
+        this.hasDoctype = hasDoctype;
+        this.errorCount = errorCount;
+        this.tagCount = tagCount;
+        this.openElements = openElements;
+        this.bindingDepths = bindingDepths;
+        this.bindingPrefixes = bindingPrefixes;
+        this.bindingUris = bindingUris;
+    }
+
+    /**
+     * Returns a copy of this checkpoint stamped with the document's size
+     * and modification time and the settings it was taken under.
+     */
+    Checkpoint forFile(long size, long modified, String settings) {
+        return new Checkpoint(size, modified, settings, offset, line, lineStart,
+                hasRoot, rootName, hasDoctype, errorCount, tagCount, openElements,
+                bindingDepths, bindingPrefixes, bindingUris);
+    }
+
+    /**
+     * @return the byte offset validation resumes from
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of errors found before the offset
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns the sidecar file used for a document's checkpoints.
+     *
+     * @param file the document
+     * @return the document's path with ".chk" appended
+     */
+    public static Path sidecarFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".chk");
+    }
+
+    /**
+     * Writes this checkpoint to the sidecar file, replacing any previous
+     * one atomically so a crash mid-write never leaves a torn checkpoint.
+     *
+     * @param sidecar the sidecar file
+     * @throws IOException if writing fails
+     */
+    public void write(Path sidecar) throws IOException {
+        Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(fileModified);
+            out.writeUTF(settings);
+            out.writeLong(offset);
+            out.writeInt(line);
+            out.writeLong(lineStart);
+            out.writeBoolean(hasRoot);
+            out.writeBoolean(rootName != null);
+            if (rootName != null) {
+                out.writeUTF(rootName);
+            }
+            out.writeBoolean(hasDoctype);
+            out.writeLong(errorCount);
+            out.writeLong(tagCount);
+            out.writeInt(openElements.length);
+            for (String name : openElements) {
+                out.writeUTF(name);
+            }
+            out.writeInt(bindingDepths.length);
+            for (int i = 0; i < bindingDepths.length; i++) {
+                out.writeInt(bindingDepths[i]);
+                out.writeUTF(bindingPrefixes[i]);
+                out.writeUTF(bindingUris[i]);
+            }
+        }
+        Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint from a sidecar file.
+     *
+     * @param sidecar the sidecar file
+     * @return the checkpoint, or null if there is none or it is unreadable
+     */
+    public static Checkpoint read(Path sidecar) {
+        if (!Files.isRegularFile(sidecar)) {
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(sidecar);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = in.readLong();
+            long fileModified = in.readLong();
+            String settings = in.readUTF();
+            long offset = in.readLong();
+            int line = in.readInt();
+            long lineStart = in.readLong();
+            boolean hasRoot = in.readBoolean();
+            String rootName = in.readBoolean() ? in.readUTF() : null;
+            boolean hasDoctype = in.readBoolean();
+            long errorCount = in.readLong();
+            long tagCount = in.readLong();
+            int depth = in.readInt();
+            if (depth < 0) {
+                return null;
+            }
+            String[] openElements = new String[depth];
+            for (int i = 0; i < depth; i++) {
+                openElements[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                return null;
+            }
+            int[] bindingDepths = new int[count];
+            String[] bindingPrefixes = new String[count];
+            String[] bindingUris = new String[count];
+            for (int i = 0; i < count; i++) {
+                bindingDepths[i] = in.readInt();
+                bindingPrefixes[i] = in.readUTF();
+                bindingUris[i] = in.readUTF();
+            }
+            return new Checkpoint(fileSize, fileModified, settings, offset, line, lineStart,
+                    hasRoot, rootName, hasDoctype, errorCount, tagCount, openElements,
+                    bindingDepths, bindingPrefixes, bindingUris);
+        } catch (IOException ex) {
+            // A damaged checkpoint only costs a restart from byte 0.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package xmlparser;
+
+import java.io.IOException;
+
+/**
+ * Receives the validator state at regular byte intervals, so it can be
+ * saved and validation later resumed from that point.
+ */
+public interface CheckpointListener {
+
+    /**
+     * Called at a tag boundary once at least the configured number of
+     * bytes has been validated since the previous checkpoint. All errors
+     * found before the checkpoint have been flushed by then.
+     *
+     * @param checkpoint the validator state
+     * @throws IOException if saving the checkpoint fails
+     */
+    public void checkpoint(Checkpoint checkpoint) throws IOException;
+}
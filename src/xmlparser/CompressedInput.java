@@ -0,0 +1,106 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Opens documents that may be stored compressed. The format is told by
+ * the first bytes, not the file name, so a ".gz" file that is not
+ * compressed still opens, and vice versa:
+ *
+ * - gzip (1F 8B), as written by gzip(1), possibly several members;
+ * - zlib (78 xx with a valid header check), as written by Deflater.
+ *
+ * Compressed data is inflated on a thread of its own (see
+ * PipelinedInputStream), so inflation overlaps with validation. Anything
+ * else is read as it is. Only codecs built into the JDK are supported.
+ */
+public final class CompressedInput {
+
+    private static final int GZIP_MAGIC_1 = 0x1F;
+    private static final int GZIP_MAGIC_2 = 0x8B;
+    private static final int ZLIB_DEFLATE = 0x78;
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Opens a document, inflating it in the background if it is compressed.
+     *
+     * @param file the document
+     * @return the document's uncompressed bytes
+     * @throws IOException if the file cannot be opened or its header is bad
+     */
+    public static InputStream open(Path file) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(Files.newInputStream(file), 2);
+        try {
+            byte[] magic = new byte[2];
+            int n = XmlEncoding.readHead(in, magic);
+            in.unread(magic, 0, n);
+            if (n < 2) {
+                return in;
+            }
+            String name = "inflate " + file.getFileName();
+            if (isGzip(magic[0], magic[1])) {
+                return new PipelinedInputStream(
+                        new GZIPInputStream(in, INFLATE_BUFFER_SIZE), name);
+            }
+            if (isZlib(magic[0], magic[1])) {
+                InputStream zlib = new InflaterInputStream(in, new Inflater(), INFLATE_BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                };
+                return new PipelinedInputStream(zlib, name);
+            }
+            return in;
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Tells whether a file is stored compressed, i.e. whether its byte
+     * offsets differ from those of the document inside it.
+     *
+     * @param file the document
+     * @return true if open() would inflate it
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        byte[] magic = new byte[2];
+        try (InputStream in = Files.newInputStream(file)) {
+            if (XmlEncoding.readHead(in, magic) < 2) {
+                return false;
+            }
+        }
+        return isGzip(magic[0], magic[1]) || isZlib(magic[0], magic[1]);
+    }
+
+    private static boolean isGzip(byte b0, byte b1) {
+        return (b0 & 0xFF) == GZIP_MAGIC_1 && (b1 & 0xFF) == GZIP_MAGIC_2;
+    }
+
+    /**
+     * A zlib header: deflate with a window of at most 32 KiB, and a check
+     * value making the first two bytes a multiple of 31. An XML document
+     * cannot start this way, since 'x' (0x78) is not allowed before '<'.
+     */
+    private static boolean isZlib(byte b0, byte b1) {
+        int header = (b0 & 0xFF) << 8 | (b1 & 0xFF);
+        return (b0 & 0xFF) == ZLIB_DEFLATE && header % 31 == 0;
+    }
+}
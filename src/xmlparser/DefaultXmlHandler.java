@@ -0,0 +1,53 @@
+package xmlparser;
+
+import java.io.IOException;
+
+import exceptions.StopParsingException;
+
+/**
+ * XmlHandler that ignores every event. Extend it and override only the
+ * events of interest.
+ */
+public abstract class DefaultXmlHandler implements XmlHandler {
+
+    protected XmlTokenizer locator;
+
+    /**
+     * Keeps the locator in the protected field.
+     */
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        this.locator = locator;
+    }
+
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException {
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException {
+    }
+
+    @Override
+    public void endElement(String name) throws IOException, StopParsingException {
+    }
+
+    @Override
+    public void processingInstruction(String target, byte[] buf, int start, int end)
+            throws IOException, StopParsingException {
+    }
+
+    @Override
+    public void text(byte[] buf, int start, int end) throws IOException, StopParsingException {
+    }
+
+    @Override
+    public void error(XmlError error) throws IOException, StopParsingException {
+    }
+
+    @Override
+    public void endDocument() throws IOException, StopParsingException {
+    }
+}
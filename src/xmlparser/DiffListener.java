@@ -0,0 +1,31 @@
+package xmlparser;
+
+import java.io.IOException;
+
+/**
+ * Receives each difference an XmlDiff finds between two documents.
+ */
+public interface DiffListener {
+
+    /**
+     * The kinds of difference.
+     */
+    public enum Change {
+        /** The element's own name, attributes or text differ. */
+        CHANGED,
+        /** The element is only in the new document. */
+        ADDED,
+        /** The element is only in the old document. */
+        REMOVED
+    }
+
+    /**
+     * Called for each differing element. Elements inside an added or
+     * removed one are not reported separately.
+     *
+     * @param change how the element differs
+     * @param path the element's path, e.g. /root/Driver[3]/name[1]
+     * @throws IOException if the listener fails to write
+     */
+    public void difference(Change change, String path) throws IOException;
+}
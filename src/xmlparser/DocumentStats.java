@@ -0,0 +1,476 @@
+package xmlparser;
+
+import java.util.Arrays;
+
+/**
+ * XmlHandler that gathers statistics about the documents it sees, for
+ * capacity planning, in the same pass as validation (see MultiHandler):
+ *
+ * - element counts by tag name, and the bytes of text directly inside
+ *   each tag (the bytes between tags, so including whitespace and any
+ *   comments there)
+ * - a histogram of element depths
+ * - a fan-out histogram: how many elements have 0, 1, 2-3, 4-7, ...
+ *   child elements
+ * - attribute cardinality: how often each attribute name occurs, and a
+ *   histogram of attributes per element
+ * - the inferred structure: every (parent tag, child tag) pair seen, with
+ *   its count
+ *
+ * Every counter is a primitive array or a primitive open-addressing table
+ * keyed by a name id from the collector's own NameTable; a tokenizer name
+ * id is translated with one array lookup. One collector may be fed any
+ * number of documents one after another, and collectors filled by
+ * different files or threads can be combined with merge().
+ */
+public class DocumentStats extends DefaultXmlHandler {
+
+    private static final int FAN_OUT_BUCKETS = 33;   // 0, 1, 2-3, 4-7, ... 2^31-
+    private static final int ROOT = -1;              // parent id of the root element
+
+    private final NameTable names = new NameTable();
+
+    // By name id of this collector
+    private long[] elements = new long[64];
+    private long[] textBytes = new long[64];
+    private long[] attributes = new long[64];        // by attribute name id
+    private int[][] lastAttributes = new int[64][];  // attribute name ids last seen on a tag
+
+    private long[] depths = new long[16];
+    private final long[] fanOut = new long[FAN_OUT_BUCKETS];
+    private long[] attributesPerElement = new long[8];
+
+    // (parent id + 1) << 32 | child id -> count, open addressing
+    private long[] edgeKeys = new long[256];
+    private long[] edgeCounts = new long[256];
+    private int edgeCount;
+    private int[] lastEdges = new int[64];           // by child id: slot of its last edge
+
+    private long documents;
+    private long elementTotal;
+    private long textTotal;
+
+    // Per document
+    private NameTable tokenizerNames;
+    private int[] localIds = new int[64];            // tokenizer name id -> own id + 1
+    private int[] open = new int[64];                // own name id of each open element
+    private int[] children = new int[64];            // child elements of each open element
+    private int depth;
+    private long lastTagEnd;
+
+    @Override
+    public void startDocument(XmlTokenizer locator) {
+        this.locator = locator;
+        documents++;
+        depth = 0;
+        lastTagEnd = -1;
+        if (tokenizerNames != locator.getNameTable()) {
+            tokenizerNames = locator.getNameTable();
+            Arrays.fill(localIds, 0);
+        }
+    }
+
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+        int id = element(buf, attributesStart, attributesEnd);
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+            children = Arrays.copyOf(children, depth * 2);
+        }
+        open[depth] = id;
+        children[depth] = 0;
+        depth++;
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+        element(buf, attributesStart, attributesEnd);
+        fanOut[0]++;
+    }
+
+    @Override
+    public void endElement(String name) {
+        text();
+        if (depth > 0) {
+            depth--;
+            fanOut[bucket(children[depth])]++;
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, byte[] buf, int start, int end) {
+        text();
+    }
+
+    /**
+     * Counts the element at the current tag.
+     *
+     * @return its name id in this collector
+     */
+    private int element(byte[] buf, int attributesStart, int attributesEnd) {
+        text();
+        int id = localId(locator.getNameId());
+        elementTotal++;
+        elements = count(elements, id);
+
+        int level = depth + 1;
+        if (level >= depths.length) {
+            depths = Arrays.copyOf(depths, Math.max(level + 1, depths.length * 2));
+        }
+        depths[level]++;
+
+        int parent = depth == 0 ? ROOT : open[depth - 1];
+        if (depth > 0) {
+            children[depth - 1]++;
+        }
+        long edge = ((long) (parent + 1)) << 32 | id;
+        if (id >= lastEdges.length) {
+            lastEdges = Arrays.copyOf(lastEdges, Math.max(id + 1, lastEdges.length * 2));
+        }
+        int slot = lastEdges[id];
+        if (edgeKeys[slot] == edge && edgeCounts[slot] != 0) {
+            edgeCounts[slot]++;
+        } else {
+            lastEdges[id] = addEdge(edge, 1);
+        }
+
+        int n = countAttributes(id, buf, attributesStart, attributesEnd);
+        if (n >= attributesPerElement.length) {
+            attributesPerElement = Arrays.copyOf(attributesPerElement,
+                    Math.max(n + 1, attributesPerElement.length * 2));
+        }
+        attributesPerElement[n]++;
+        return id;
+    }
+
+    /**
+     * Adds the bytes since the previous tag to the open element's text.
+     */
+    private void text() {
+        long start = locator.getTagOffset();
+        if (depth > 0 && lastTagEnd >= 0 && start > lastTagEnd) {
+            long bytes = start - lastTagEnd;
+            int id = open[depth - 1];
+            textBytes = ensure(textBytes, id);
+            textBytes[id] += bytes;
+            textTotal += bytes;
+        }
+        lastTagEnd = locator.getTagEndOffset();
+    }
+
+    /**
+     * Translates a tokenizer name id to this collector's.
+     */
+    private int localId(int tokenizerId) {
+        if (tokenizerId >= localIds.length) {
+            localIds = Arrays.copyOf(localIds, Math.max(tokenizerId + 1, localIds.length * 2));
+        }
+        int id = localIds[tokenizerId] - 1;
+        if (id < 0) {
+            id = names.intern(tokenizerNames.getName(tokenizerId));
+            localIds[tokenizerId] = id + 1;
+        }
+        return id;
+    }
+
+    /**
+     * Counts the attribute names in b[start, end). Elements with the same
+     * tag usually have the same attributes in the same order, so each
+     * name is first compared with the one in that position last time,
+     * and only hashed if it differs.
+     *
+     * @param element the element's name id
+     * @return the number of attributes
+     */
+    private int countAttributes(int element, byte[] b, int start, int end) {
+        if (element >= lastAttributes.length) {
+            lastAttributes = Arrays.copyOf(lastAttributes,
+                    Math.max(element + 1, lastAttributes.length * 2));
+        }
+        int[] last = lastAttributes[element];
+        if (last == null) {
+            last = lastAttributes[element] = new int[4];
+        }
+        int n = 0;
+        int p = start;
+        while (p < end) {
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            int nameStart = p;
+            while (p < end && b[p] != '=' && !isSpace(b[p])) {
+                p++;
+            }
+            if (p == nameStart) {
+                break;
+            }
+            int nameEnd = p;
+            while (p < end && b[p] != '"' && b[p] != '\'') {
+                p++;
+            }
+            if (p == end) {
+                break;
+            }
+            byte quote = b[p++];
+            p = Bytes.indexOf(b, p, end, quote) + 1;
+            int id;
+            if (n < last.length && last[n] > 0
+                    && names.matches(last[n] - 1, b, nameStart, nameEnd)) {
+                id = last[n] - 1;
+            } else {
+                id = names.intern(b, nameStart, nameEnd);
+                if (n >= last.length) {
+                    last = lastAttributes[element] = Arrays.copyOf(last, n * 2);
+                }
+                last[n] = id + 1;
+            }
+            attributes = count(attributes, id);
+            n++;
+        }
+        return n;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Returns the fan-out bucket of a child count: 0, 1, 2-3, 4-7, ...
+     */
+    private static int bucket(int n) {
+        return n == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(n);
+    }
+
+    private static long[] ensure(long[] counts, int id) {
+        return id < counts.length ? counts
+                : Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+    }
+
+    private static long[] count(long[] counts, int id) {
+        long[] c = ensure(counts, id);
+        c[id]++;
+        return c;
+    }
+
+    /**
+     * Adds to the count of a (parent, child) edge.
+     *
+     * @return the edge's slot
+     */
+    private int addEdge(long key, long n) {
+        int i = findEdge(key);
+        if (edgeCounts[i] != 0) {
+            edgeCounts[i] += n;
+            return i;
+        }
+        edgeKeys[i] = key;
+        edgeCounts[i] = n;
+        if (++edgeCount * 2 > edgeKeys.length) {
+            long[] keys = edgeKeys;
+            long[] counts = edgeCounts;
+            edgeKeys = new long[keys.length * 2];
+            edgeCounts = new long[keys.length * 2];
+            edgeCount = 0;
+            for (int j = 0; j < keys.length; j++) {
+                if (counts[j] != 0) {
+                    addEdge(keys[j], counts[j]);
+                }
+            }
+            i = findEdge(key);
+        }
+        return i;
+    }
+
+    /**
+     * Returns the slot holding an edge, or the empty slot it would take.
+     */
+    private int findEdge(long key) {
+        int mask = edgeKeys.length - 1;
+        int i = (int) (key ^ key >>> 29) * 0x9E3779B9 & mask;
+        while (edgeCounts[i] != 0 && edgeKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Adds another collector's counts to this one. Names are matched by
+     * text, so the two may have seen different documents in any order.
+     * Synchronized, so several threads can merge into one report; the
+     * other collector must no longer be in use.
+     *
+     * @param other the counts to add
+     */
+    public synchronized void merge(DocumentStats other) {
+        int[] map = new int[other.names.size()];
+        for (int id = 0; id < map.length; id++) {
+            map[id] = names.intern(other.names.getName(id));
+        }
+        for (int id = 0; id < other.elements.length && id < map.length; id++) {
+            elements = ensure(elements, map[id]);
+            elements[map[id]] += other.elements[id];
+        }
+        for (int id = 0; id < other.textBytes.length && id < map.length; id++) {
+            textBytes = ensure(textBytes, map[id]);
+            textBytes[map[id]] += other.textBytes[id];
+        }
+        for (int id = 0; id < other.attributes.length && id < map.length; id++) {
+            attributes = ensure(attributes, map[id]);
+            attributes[map[id]] += other.attributes[id];
+        }
+        depths = add(depths, other.depths);
+        attributesPerElement = add(attributesPerElement, other.attributesPerElement);
+        for (int i = 0; i < FAN_OUT_BUCKETS; i++) {
+            fanOut[i] += other.fanOut[i];
+        }
+        for (int i = 0; i < other.edgeKeys.length; i++) {
+            if (other.edgeCounts[i] != 0) {
+                long key = other.edgeKeys[i];
+                int parent = (int) (key >>> 32) - 1;
+                int child = (int) key;
+                long mapped = (long) (parent == ROOT ? 0 : map[parent] + 1) << 32 | map[child];
+                addEdge(mapped, other.edgeCounts[i]);
+            }
+        }
+        documents += other.documents;
+        elementTotal += other.elementTotal;
+        textTotal += other.textTotal;
+    }
+
+    private static long[] add(long[] into, long[] from) {
+        long[] sum = into.length >= from.length ? into : Arrays.copyOf(into, from.length);
+        for (int i = 0; i < from.length; i++) {
+            sum[i] += from[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of documents counted
+     */
+    public long getDocumentCount() {
+        return documents;
+    }
+
+    /**
+     * @return the number of elements counted
+     */
+    public long getElementCount() {
+        return elementTotal;
+    }
+
+    /**
+     * @param name a tag name
+     * @return the number of elements with that name
+     */
+    public long getElementCount(String name) {
+        int id = names.find(name);
+        return id < 0 || id >= elements.length ? 0 : elements[id];
+    }
+
+    /**
+     * @param parent a tag name, or null for the root element
+     * @param child a tag name
+     * @return how many times a child element was found in a parent
+     */
+    public long getEdgeCount(String parent, String child) {
+        int p = parent == null ? ROOT : names.find(parent);
+        int c = names.find(child);
+        if (c < 0 || (parent != null && p < 0)) {
+            return 0;
+        }
+        return getEdgeCount(((long) (p + 1)) << 32 | c);
+    }
+
+    private long getEdgeCount(long key) {
+        return edgeCounts[findEdge(key)];
+    }
+
+    /**
+     * @return the deepest element depth seen; the root is at depth 1
+     */
+    public int getMaxDepth() {
+        for (int d = depths.length - 1; d > 0; d--) {
+            if (depths[d] != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the bytes of text between tags inside the root elements
+     */
+    public long getTextBytes() {
+        return textTotal;
+    }
+
+    /**
+     * Describes every statistic, one section per kind.
+     */
+    @Override
+    public synchronized String toString() {
+        String nl = System.lineSeparator();
+        StringBuilder out = new StringBuilder();
+        out.append(documents).append(" document(s), ").append(elementTotal)
+                .append(" element(s), max depth ").append(getMaxDepth()).append(", ")
+                .append(textTotal).append(" text byte(s)").append(nl);
+
+        out.append("Elements (count, text bytes):").append(nl);
+        for (int id = 0; id < names.size(); id++) {
+            long n = id < elements.length ? elements[id] : 0;
+            if (n > 0) {
+                out.append("  ").append(names.getName(id)).append(' ').append(n).append(", ")
+                        .append(id < textBytes.length ? textBytes[id] : 0).append(nl);
+            }
+        }
+
+        out.append("Depths:");
+        for (int d = 1; d < depths.length; d++) {
+            if (depths[d] != 0) {
+                out.append(' ').append(d).append('=').append(depths[d]);
+            }
+        }
+        out.append(nl).append("Child elements per element:");
+        for (int b = 0; b < FAN_OUT_BUCKETS; b++) {
+            if (fanOut[b] != 0) {
+                long low = b == 0 ? 0 : 1L << (b - 1);
+                long high = b == 0 ? 0 : (1L << b) - 1;
+                out.append(' ').append(low == high ? String.valueOf(low) : low + "-" + high)
+                        .append('=').append(fanOut[b]);
+            }
+        }
+        out.append(nl).append("Attributes per element:");
+        for (int n = 0; n < attributesPerElement.length; n++) {
+            if (attributesPerElement[n] != 0) {
+                out.append(' ').append(n).append('=').append(attributesPerElement[n]);
+            }
+        }
+        out.append(nl).append("Attributes (count):").append(nl);
+        for (int id = 0; id < names.size(); id++) {
+            long n = id < attributes.length ? attributes[id] : 0;
+            if (n > 0) {
+                out.append("  @").append(names.getName(id)).append(' ').append(n).append(nl);
+            }
+        }
+
+        // Edges in order of first appearance of the parent, then the child
+        long[] keys = new long[edgeCount];
+        int n = 0;
+        for (int i = 0; i < edgeKeys.length; i++) {
+            if (edgeCounts[i] != 0) {
+                keys[n++] = edgeKeys[i];
+            }
+        }
+        Arrays.sort(keys);
+        out.append("Structure (parent > child, count):");
+        for (long key : keys) {
+            int parent = (int) (key >>> 32) - 1;
+            out.append(nl).append("  ")
+                    .append(parent == ROOT ? "(root)" : names.getName(parent)).append(" > ")
+                    .append(names.getName((int) key)).append(' ')
+                    .append(getEdgeCount(key));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,385 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Random-access index of a document's elements, built during validation
+ * by ElementIndexBuilder. Elements are numbered 0, 1, 2, ... in document
+ * order (the order of their start tags), and for each one the index keeps,
+ * in primitive columns:
+ *
+ * - the byte offsets of its start tag's '<' and just past its end tag's '>'
+ * - its depth (1 for the root element)
+ * - its interned tag name id
+ * - the ordinal just past its last descendant, so its subtree is the
+ *   ordinal range [element, subtreeEnd)
+ *
+ * A second column lists the ordinals grouped by name, which makes "the
+ * Nth Driver" an array lookup and a path step a binary search.
+ *
+ * The index is saved in a sidecar file next to the document (see
+ * sidecarFor()). Columns are stored at fixed positions, so open() maps the
+ * file into memory and reads them in place instead of loading them. An
+ * index is only opened while the document's size and modification time
+ * still match. Offsets are those of the bytes the tokenizer saw, i.e. of
+ * the inflated, UTF-8 document.
+ */
+public final class ElementIndex {
+
+    private static final int MAGIC = 0x58494458;   // "XIDX"
+    private static final int VERSION = 1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final long fileSize;
+    private final long fileModified;
+    private final int count;
+    private final String[] names;
+    private final Map<String, Integer> nameIds = new HashMap<String, Integer>();
+
+    private final LongBuffer starts;
+    private final LongBuffer ends;
+    private final IntBuffer tagIds;
+    private final IntBuffer depths;
+    private final IntBuffer subtreeEnds;
+    private final IntBuffer byName;       // ordinals, grouped by name id
+    private final IntBuffer nameStarts;   // where each name's group starts in byName
+
+    /**
+     * Constructs an index over the given columns.
+     */
+    ElementIndex(long fileSize, long fileModified, int count, String[] names,
+            LongBuffer starts, LongBuffer ends, IntBuffer tagIds, IntBuffer depths,
+            IntBuffer subtreeEnds, IntBuffer byName, IntBuffer nameStarts) {
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+        this.count = count;
+        this.names = names;
+        this.starts = starts;
+        this.ends = ends;
+        this.tagIds = tagIds;
+        this.depths = depths;
+        this.subtreeEnds = subtreeEnds;
+        this.byName = byName;
+        this.nameStarts = nameStarts;
+        for (int id = 0; id < names.length; id++) {
+            nameIds.put(names[id], id);
+        }
+    }
+
+    /**
+     * Returns the sidecar file that holds the index of a document.
+     *
+     * @param file the document
+     * @return the path of its index
+     */
+    public static Path sidecarFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".idx");
+    }
+
+    /**
+     * @return the number of elements in the document
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param element an element ordinal
+     * @return the byte offset of its start tag
+     */
+    public long getStart(int element) {
+        return starts.get(element);
+    }
+
+    /**
+     * @param element an element ordinal
+     * @return the byte offset just past its end tag (past its start tag if
+     *         it is self-closing, the end of the document if unclosed)
+     */
+    public long getEnd(int element) {
+        return ends.get(element);
+    }
+
+    /**
+     * @param element an element ordinal
+     * @return its depth; the root element has depth 1
+     */
+    public int getDepth(int element) {
+        return depths.get(element);
+    }
+
+    /**
+     * @param element an element ordinal
+     * @return its tag name
+     */
+    public String getName(int element) {
+        return names[tagIds.get(element)];
+    }
+
+    /**
+     * @param element an element ordinal
+     * @return the ordinal just past its last descendant
+     */
+    public int getSubtreeEnd(int element) {
+        return subtreeEnds.get(element);
+    }
+
+    /**
+     * Counts the elements with a given name.
+     *
+     * @param name the tag name
+     * @return how many elements have it
+     */
+    public int count(String name) {
+        Integer id = nameIds.get(name);
+        return id == null ? 0 : nameStarts.get(id + 1) - nameStarts.get(id);
+    }
+
+    /**
+     * Finds the Nth element with a given name, in document order.
+     *
+     * @param name the tag name
+     * @param n the 0-based position among the elements with that name
+     * @return the element's ordinal, or -1 if there are not that many
+     */
+    public int find(String name, int n) {
+        Integer id = nameIds.get(name);
+        if (id == null || n < 0 || n >= count(name)) {
+            return -1;
+        }
+        return byName.get(nameStarts.get(id) + n);
+    }
+
+    /**
+     * Finds the element at a path of child steps, each optionally followed
+     * by a 1-based position among its same-named siblings, e.g.
+     * "/XMLDATA/Submission[3]/Driver". A step without a position takes the
+     * first match. The elements under the path are the subtree
+     * [element, getSubtreeEnd(element)).
+     *
+     * Each step is a binary search in the ordinals of its name, plus a
+     * walk over the same-named elements before the match.
+     *
+     * @param path the path, starting with '/'
+     * @return the element's ordinal, or -1 if there is no such element
+     * @throws IllegalArgumentException if the path is malformed
+     */
+    public int select(String path) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path must start with '/': " + path);
+        }
+        int parent = -1;
+        int from = 0;
+        int to = count;
+        int depth = 1;
+        for (String step : path.substring(1).split("/", -1)) {
+            String name = step;
+            int position = 1;
+            int bracket = step.indexOf('[');
+            if (bracket >= 0) {
+                if (!step.endsWith("]")) {
+                    throw new IllegalArgumentException("Bad step: " + step);
+                }
+                name = step.substring(0, bracket);
+                try {
+                    position = Integer.parseInt(step.substring(bracket + 1, step.length() - 1));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Bad position: " + step);
+                }
+            }
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty step in " + path);
+            }
+            parent = child(name, position, from, to, depth);
+            if (parent < 0) {
+                return -1;
+            }
+            from = parent + 1;
+            to = subtreeEnds.get(parent);
+            depth++;
+        }
+        return parent;
+    }
+
+    /**
+     * Finds the position'th element with the given name and depth among
+     * the ordinals [from, to).
+     */
+    private int child(String name, int position, int from, int to, int depth) {
+        Integer id = nameIds.get(name);
+        if (id == null || position < 1) {
+            return -1;
+        }
+        int lo = nameStarts.get(id);
+        int hi = nameStarts.get(id + 1);
+
+        // First ordinal >= from in this name's group
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (byName.get(mid) < from) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int end = nameStarts.get(id + 1);
+        for (int i = lo; i < end; i++) {
+            int element = byName.get(i);
+            if (element >= to) {
+                break;
+            }
+            if (depths.get(element) == depth && --position == 0) {
+                return element;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the index to its sidecar file, replacing any previous one
+     * atomically. Columns are copied in bulk through one buffer.
+     *
+     * @param sidecar the file to write
+     * @throws IOException if writing fails
+     */
+    public void write(Path sidecar) throws IOException {
+        Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            byte[][] encoded = new byte[names.length][];
+            int headerSize = 32;
+            for (int id = 0; id < names.length; id++) {
+                encoded[id] = names[id].getBytes(StandardCharsets.UTF_8);
+                headerSize += 4 + encoded[id].length;
+            }
+            ByteBuffer header = ByteBuffer.allocate((headerSize + 7) & ~7);
+            header.putInt(MAGIC).putInt(VERSION).putLong(fileSize).putLong(fileModified)
+                    .putInt(count).putInt(names.length);
+            for (byte[] name : encoded) {
+                header.putInt(name.length).put(name);
+            }
+            // The padding aligns the columns, so they can be viewed in place.
+            header.position(header.capacity());
+            header.flip();
+            writeFully(out, header);
+
+            writeLongs(out, buffer, starts, count);
+            writeLongs(out, buffer, ends, count);
+            writeInts(out, buffer, tagIds, count);
+            writeInts(out, buffer, depths, count);
+            writeInts(out, buffer, subtreeEnds, count);
+            writeInts(out, buffer, byName, count);
+            writeInts(out, buffer, nameStarts, names.length + 1);
+        }
+        Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeLongs(FileChannel out, ByteBuffer buffer, LongBuffer column, int n)
+            throws IOException {
+        for (int i = 0; i < n; ) {
+            int chunk = Math.min(n - i, buffer.capacity() / 8);
+            LongBuffer from = column.duplicate();
+            from.position(i).limit(i + chunk);
+            buffer.clear();
+            buffer.asLongBuffer().put(from);
+            buffer.limit(chunk * 8);
+            writeFully(out, buffer);
+            i += chunk;
+        }
+    }
+
+    private static void writeInts(FileChannel out, ByteBuffer buffer, IntBuffer column, int n)
+            throws IOException {
+        for (int i = 0; i < n; ) {
+            int chunk = Math.min(n - i, buffer.capacity() / 4);
+            IntBuffer from = column.duplicate();
+            from.position(i).limit(i + chunk);
+            buffer.clear();
+            buffer.asIntBuffer().put(from);
+            buffer.limit(chunk * 4);
+            writeFully(out, buffer);
+            i += chunk;
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Opens the index of a document by mapping its sidecar file. The
+     * header and each column are mapped as regions of their own, since
+     * one mapping cannot exceed 2 GiB and the sidecar of a large document
+     * does.
+     *
+     * @param file the document
+     * @return the index, or null if there is none, it is damaged or cannot
+     *         be mapped, or the document changed since it was written
+     * @throws IOException if the document cannot be inspected
+     */
+    public static ElementIndex open(Path file) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        try (FileChannel channel = FileChannel.open(sidecarFor(file), StandardOpenOption.READ)) {
+            ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, 32);
+            if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION
+                    || fixed.getLong() != size || fixed.getLong() != modified) {
+                return null;
+            }
+            int count = fixed.getInt();
+            int nameCount = fixed.getInt();
+
+            // The columns fill the end of the file, after the name table.
+            long position = channel.size() - 32L * count - 4L * (nameCount + 1);
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+            header.position(32);
+            String[] names = new String[nameCount];
+            for (int id = 0; id < names.length; id++) {
+                byte[] bytes = new byte[header.getInt()];
+                header.get(bytes);
+                names[id] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (((header.position() + 7) & ~7) != position) {
+                return null;
+            }
+
+            LongBuffer starts = map(channel, position, count, 8).asLongBuffer();
+            LongBuffer ends = map(channel, position += 8L * count, count, 8).asLongBuffer();
+            IntBuffer tagIds = map(channel, position += 8L * count, count, 4).asIntBuffer();
+            IntBuffer depths = map(channel, position += 4L * count, count, 4).asIntBuffer();
+            IntBuffer subtreeEnds = map(channel, position += 4L * count, count, 4).asIntBuffer();
+            IntBuffer byName = map(channel, position += 4L * count, count, 4).asIntBuffer();
+            IntBuffer nameStarts = map(channel, position += 4L * count, nameCount + 1, 4)
+                    .asIntBuffer();
+            return new ElementIndex(size, modified, count, names, starts, ends, tagIds, depths,
+                    subtreeEnds, byName, nameStarts);
+        } catch (IOException | RuntimeException ex) {
+            // Missing, truncated, corrupt or too large to map: as good as
+            // no index.
+            return null;
+        }
+    }
+
+    /**
+     * Maps a column of n values of the given width, starting at position.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, int n, int width)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, (long) n * width);
+    }
+}
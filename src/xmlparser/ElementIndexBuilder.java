@@ -0,0 +1,128 @@
+package xmlparser;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * XmlHandler that records every element's offsets, depth and name id as
+ * the document is scanned, so an ElementIndex comes out of the same pass
+ * as validation (see MultiHandler). Columns are growable primitive arrays;
+ * nothing is allocated per element.
+ *
+ * A closing tag ends the innermost open element, whatever its name, as
+ * in XmlValidator; elements still open at the end of the document end
+ * there.
+ */
+public class ElementIndexBuilder extends DefaultXmlHandler {
+
+    private long[] starts = new long[1024];
+    private long[] ends = new long[1024];
+    private int[] tagIds = new int[1024];
+    private int[] depths = new int[1024];
+    private int[] subtreeEnds = new int[1024];
+    private int count;
+
+    private int[] open = new int[64];   // ordinals of the open elements
+    private int depth;
+
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+        int element = add();
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        open[depth++] = element;
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+        int element = add();
+        ends[element] = locator.getTagEndOffset();
+        subtreeEnds[element] = count;
+    }
+
+    @Override
+    public void endElement(String name) {
+        if (depth > 0) {
+            int element = open[--depth];
+            ends[element] = locator.getTagEndOffset();
+            subtreeEnds[element] = count;
+        }
+    }
+
+    /**
+     * Ends the elements still open at the end of the document.
+     */
+    @Override
+    public void endDocument() {
+        while (depth > 0) {
+            int element = open[--depth];
+            ends[element] = locator.getOffset();
+            subtreeEnds[element] = count;
+        }
+    }
+
+    /**
+     * Records the element at the current tag.
+     *
+     * @return its ordinal
+     */
+    private int add() {
+        if (count == starts.length) {
+            int n = count * 2;
+            starts = Arrays.copyOf(starts, n);
+            ends = Arrays.copyOf(ends, n);
+            tagIds = Arrays.copyOf(tagIds, n);
+            depths = Arrays.copyOf(depths, n);
+            subtreeEnds = Arrays.copyOf(subtreeEnds, n);
+        }
+        int element = count++;
+        starts[element] = locator.getTagOffset();
+        tagIds[element] = locator.getNameId();
+        depths[element] = depth + 1;
+        return element;
+    }
+
+    /**
+     * @return the number of elements recorded so far
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Builds the index of the document scanned, grouping the ordinals by
+     * name with a counting sort.
+     *
+     * @param fileSize the document file's size, to detect later changes
+     * @param fileModified its modification time in milliseconds
+     * @return the index
+     */
+    public ElementIndex build(long fileSize, long fileModified) {
+        NameTable table = locator.getNameTable();
+        String[] names = new String[table.size()];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = table.getName(id);
+        }
+
+        int[] nameStarts = new int[names.length + 1];
+        for (int i = 0; i < count; i++) {
+            nameStarts[tagIds[i] + 1]++;
+        }
+        for (int id = 0; id < names.length; id++) {
+            nameStarts[id + 1] += nameStarts[id];
+        }
+        int[] next = Arrays.copyOf(nameStarts, names.length);
+        int[] byName = new int[count];
+        for (int i = 0; i < count; i++) {
+            byName[next[tagIds[i]]++] = i;
+        }
+
+        return new ElementIndex(fileSize, fileModified, count, names,
+                LongBuffer.wrap(starts, 0, count).slice(), LongBuffer.wrap(ends, 0, count).slice(),
+                IntBuffer.wrap(tagIds, 0, count).slice(), IntBuffer.wrap(depths, 0, count).slice(),
+                IntBuffer.wrap(subtreeEnds, 0, count).slice(), IntBuffer.wrap(byName),
+                IntBuffer.wrap(nameStarts));
+    }
+}
@@ -0,0 +1,111 @@
+package xmlparser;
+
+/**
+ * The kinds of well-formedness error the parser reports.
+ * Each kind knows how to format its own message from the tag names
+ * involved, so callers can defer (or skip) building message strings.
+ */
+public enum ErrorKind {
+
+    /** A closing tag appeared while no element was open. */
+    UNMATCHED_CLOSE {
+        @Override
+        public String format(String first, String second) {
+            return "Closing tag </" + first + "> has no matching opening tag";
+        }
+    },
+
+    /** A closing tag did not match the most recently opened element. */
+    MISMATCHED_TAG {
+        @Override
+        public String format(String first, String second) {
+            return "Tag <" + first + ">is closed by </" + second + ">";
+        }
+    },
+
+    /** A second element appeared at root level. */
+    MULTIPLE_ROOTS {
+        @Override
+        public String format(String first, String second) {
+            return "Multiple root elements detected: <" + first + "> and <" + second + ">.";
+        }
+    },
+
+    /** An element was still open at end-of-file. */
+    UNCLOSED_TAG {
+        @Override
+        public String format(String first, String second) {
+            return "Tag <" + first + "> was never closed.";
+        }
+    },
+
+    /** The document contained no element at all. */
+    NO_ROOT {
+        @Override
+        public String format(String first, String second) {
+            return "No root element found in document.";
+        }
+    },
+
+    /** A resource limit was exceeded; first holds the limit's description. */
+    LIMIT_EXCEEDED {
+        @Override
+        public String format(String first, String second) {
+            return "Parsing stopped: " + first;
+        }
+    },
+
+    /** A tag's attributes were not name="value" pairs; second says why. */
+    MALFORMED_ATTRIBUTE {
+        @Override
+        public String format(String first, String second) {
+            return "Malformed attribute in <" + first + ">: " + second;
+        }
+    },
+
+    /** An attribute name appeared twice in one tag. */
+    DUPLICATE_ATTRIBUTE {
+        @Override
+        public String format(String first, String second) {
+            return "Attribute " + second + " is repeated in <" + first + ">";
+        }
+    },
+
+    /** A namespace prefix was used without being declared; second is the prefix. */
+    UNDECLARED_PREFIX {
+        @Override
+        public String format(String first, String second) {
+            return "Namespace prefix " + second + " used in <" + first + "> is not declared";
+        }
+    },
+
+    /** A bad entity or character reference; first is the reference, second says why. */
+    BAD_REFERENCE {
+        @Override
+        public String format(String first, String second) {
+            return "Bad reference " + first + ": " + second;
+        }
+    },
+
+    /**
+     * The xml or xmlns prefix, or the namespace either stands for, was
+     * misused (redeclared, bound elsewhere, or a prefix unbound); second
+     * is the prefix.
+     */
+    RESERVED_PREFIX {
+        @Override
+        public String format(String first, String second) {
+            return "Namespace prefix " + (second.isEmpty() ? "(default)" : second)
+                    + " is misused in <" + first + ">";
+        }
+    };
+
+    /**
+     * Builds the human-readable message for an error of this kind.
+     *
+     * @param first the first tag name involved, or null if none
+     * @param second the second tag name involved, or null if none
+     * @return the formatted message
+     */
+    public abstract String format(String first, String second);
+}
@@ -0,0 +1,70 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Random-access "jump to error" helper. Given the byte offset carried by
+ * an XmlError, it seeks straight to that position and returns the
+ * surrounding bytes, so an error can be inspected inside a huge file (or
+ * a huge single line) without reading anything before it.
+ */
+public final class ErrorLocator {
+
+    private ErrorLocator() {
+    }
+
+    /**
+     * Returns a two-line excerpt around a byte offset: the text of the line
+     * containing it, clipped to radius bytes either side, and a second line
+     * with a caret under the offset.
+     *
+     * @param fileName the file to read
+     * @param offset the 0-based byte offset to show
+     * @param radius the most bytes to show on each side of the offset
+     * @return the excerpt
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the offset is outside the file
+     */
+    public static String excerpt(String fileName, long offset, int radius)
+            throws IOException, IllegalArgumentException {
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+
+            long length = file.length();
+            if (offset < 0 || offset >= length) {
+                throw new IllegalArgumentException(
+                        "Offset " + offset + " is outside the file (length " + length + ")");
+            }
+
+            long from = Math.max(0, offset - radius);
+            int size = (int) (Math.min(length, offset + radius + 1) - from);
+            byte[] window = new byte[size];
+            file.seek(from);
+            file.readFully(window);
+
+            // Clip the window to the line holding the offset.
+            int at = (int) (offset - from);
+            int start = at;
+            while (start > 0 && window[start - 1] != '\n') {
+                start--;
+            }
+            int end = at;
+            while (end < size && window[end] != '\n' && window[end] != '\r') {
+                end++;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(new String(window, start, end - start, StandardCharsets.UTF_8)
+                    .replace('\t', ' '));
+            sb.append('\n');
+            int caret = new String(window, start, at - start, StandardCharsets.UTF_8).length();
+            for (int i = 0; i < caret; i++) {
+                sb.append(' ');
+            }
+            sb.append('^');
+            return sb.toString();
+        }
+    }
+}
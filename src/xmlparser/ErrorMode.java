@@ -0,0 +1,17 @@
+package xmlparser;
+
+/**
+ * Controls how much work the parser does once it starts finding errors.
+ *
+ *   - REPORT_ALL: scan to end-of-file and print every error (default)
+ *   - FAIL_FAST:  print the first error and stop parsing immediately
+ *   - FIRST_N:    print the first N errors and stop parsing
+ *   - COUNT_ONLY: scan to end-of-file counting errors, without ever
+ *                 formatting or printing an error message
+ */
+public enum ErrorMode {
+    REPORT_ALL,
+    FAIL_FAST,
+    FIRST_N,
+    COUNT_ONLY
+}
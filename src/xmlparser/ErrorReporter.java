@@ -0,0 +1,46 @@
+package xmlparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for the errors found while validating documents.
+ * Implementations buffer their output and only write it out on flush(),
+ * so a reporter can be given to each concurrent validator without their
+ * output interleaving.
+ */
+public interface ErrorReporter extends Closeable {
+
+    /**
+     * Called before the first error of a document is reported.
+     *
+     * @param source the name of the document, usually its file name
+     * @throws IOException if the reporter fails to write
+     */
+    public void startDocument(String source) throws IOException;
+
+    /**
+     * Records one error of the current document.
+     *
+     * @param error the error found
+     * @throws IOException if the reporter fails to write
+     */
+    public void report(XmlError error) throws IOException;
+
+    /**
+     * Called once the current document has been validated, or once it
+     * could not be read any further.
+     *
+     * @param errorCount the total number of errors found in it, or -1 if
+     *        reading it failed part way through
+     * @throws IOException if the reporter fails to write
+     */
+    public void endDocument(long errorCount) throws IOException;
+
+    /**
+     * Writes all buffered output to the underlying stream in one piece.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException;
+}
@@ -0,0 +1,202 @@
+package xmlparser;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates a file that is still being appended to ("tail -f" style).
+ *
+ * The file is opened once and a single XmlTokenizer, XmlEventScanner and
+ * XmlValidator are kept for its whole lifetime, so each poll only reads
+ * the bytes appended since the previous one; the MyStack nesting state, line number and
+ * byte offset simply carry over. Validating a file that grows to n bytes
+ * therefore costs O(n) in total instead of O(n^2) for repeated full runs.
+ *
+ * Errors are reported as soon as the tags causing them have been written.
+ * The document is complete once its root element has been closed; call
+ * finish() to report whatever is still open if the producer gives up.
+ * A file that is truncated or replaced (as by log rotation) while being
+ * followed ends the run with an IOException rather than being mixed into
+ * the document read so far.
+ */
+public class FollowValidator implements Closeable {
+
+    private final Path file;
+    private final FileInputStream in;
+    private final XmlTokenizer tokenizer;
+    private final XmlValidator validator;
+    private final XmlEventScanner scanner;
+    private final ErrorReporter reporter;
+    private final Object fileKey;     // identity of the file opened; may be null
+    private WatchService watcher;     // created on first awaitChange()
+
+    /**
+     * Opens the file for following.
+     *
+     * @param file the file to follow
+     * @param limits the resource limits to enforce
+     * @param reporter the destination for errors; flushed after every poll
+     * @param mode how many errors to look for
+     * @param stopAfter number of errors after which FIRST_N mode stops
+     * @throws IOException if the file cannot be opened
+     */
+    public FollowValidator(Path file, ParserLimits limits, ErrorReporter reporter,
+            ErrorMode mode, long stopAfter) throws IOException {
+        this.file = file;
+        this.in = new FileInputStream(file.toFile());
+        this.tokenizer = new XmlTokenizer(in, limits);
+        this.validator = new XmlValidator(limits, reporter, mode, stopAfter);
+        this.scanner = new XmlEventScanner(tokenizer, validator);
+        this.reporter = reporter;
+        this.fileKey = fileKey(file);
+    }
+
+    /**
+     * Chooses whether attributes are checked (see XmlValidator).
+     *
+     * @param check true to check attributes
+     */
+    public void setCheckAttributes(boolean check) {
+        validator.setCheckAttributes(check);
+    }
+
+    /**
+     * Chooses whether namespace prefixes are checked (see XmlValidator).
+     *
+     * @param check true to check namespaces
+     */
+    public void setCheckNamespaces(boolean check) {
+        validator.setCheckNamespaces(check);
+    }
+
+    /**
+     * Chooses whether references are checked (see XmlValidator).
+     *
+     * @param check true to check references
+     */
+    public void setCheckReferences(boolean check) {
+        validator.setCheckReferences(check);
+    }
+
+    /**
+     * Validates whatever has been appended since the last poll.
+     *
+     * @return the number of errors found so far
+     * @throws IOException if the file shrank or was replaced, or reading or
+     *         reporting fails
+     */
+    public long poll() throws IOException {
+        if (in.getChannel().size() < tokenizer.getOffset()) {
+            throw new IOException("File was truncated while being followed: " + file);
+        }
+        if (fileKey != null && !fileKey.equals(fileKey(file))) {
+            throw new IOException("File was replaced while being followed: " + file);
+        }
+        tokenizer.resume();
+        scanner.feed();
+        reporter.flush();
+        return validator.getErrorCount();
+    }
+
+    /**
+     * @return the file system's identity for whatever file is at the path
+     *         now, or null if there is none or the file system has none
+     */
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Waits until the file may have changed, or the timeout passes.
+     * Uses a WatchService on the file's directory; spurious wake-ups are
+     * harmless since a poll with nothing new to read is cheap.
+     *
+     * @param timeoutMillis the longest time to wait
+     * @throws IOException if the directory cannot be watched
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitChange(long timeoutMillis) throws IOException, InterruptedException {
+        if (watcher == null) {
+            watcher = FileSystems.getDefault().newWatchService();
+            Path dir = file.toAbsolutePath().getParent();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        try {
+            WatchKey key = watcher.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // Drain the events; any change is followed by a poll.
+                    event.kind();
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // Closed from another thread; let the caller notice.
+        }
+    }
+
+    /**
+     * @return true once the root element has been closed, or a limit or
+     *         the error mode has ended validation
+     */
+    public boolean isComplete() {
+        return validator.isRootClosed() || validator.isStopped();
+    }
+
+    /**
+     * @return the names of the elements still open, outermost first
+     */
+    public String[] getOpenElements() {
+        return validator.getOpenElements();
+    }
+
+    /**
+     * @return the byte offset validated up to so far
+     */
+    public long getOffset() {
+        return tokenizer.getOffset();
+    }
+
+    /**
+     * Treats the current end of the file as the end of the document,
+     * reporting unclosed tags and a missing root.
+     *
+     * @return the total number of errors found
+     * @throws IOException if reporting fails
+     */
+    public long finish() throws IOException {
+        scanner.finish();
+        reporter.flush();
+        return validator.getErrorCount();
+    }
+
+    /**
+     * Closes the file and the watch service.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (watcher != null) {
+                watcher.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
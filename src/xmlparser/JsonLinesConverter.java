@@ -0,0 +1,572 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import exceptions.StopParsingException;
+
+/**
+ * XmlHandler that converts every record element (e.g. each Driver) into
+ * one line of JSON, in the same pass as validation (see MultiHandler).
+ * An element becomes:
+ *
+ *   - a string, if it has neither attributes nor child elements
+ *   - otherwise an object holding "@name" for each attribute, a key per
+ *     child element name (an array if the name repeats) and "#text" for
+ *     its text, if any is not whitespace
+ *
+ * A record is always an object, so
+ *
+ *   <Driver id="7"><a>x</a><b/><b>y</b></Driver>
+ *
+ * becomes {"@id":"7","a":"x","b":["","y"]}. References in text and
+ * attribute values are expanded; CDATA is copied as it is.
+ *
+ * Only the record being read is held: its elements, attributes and text
+ * go into primitive arrays and one byte pool that are reused for the
+ * next record, so memory is bounded by the largest record. Each record
+ * is written as JSON into a reusable byte buffer, which is flushed to the
+ * output once it holds 64 KiB. Records inside another record are part of
+ * it; a record left open at the end of the document is not written.
+ */
+public class JsonLinesConverter extends DefaultXmlHandler {
+
+    private static final int FLUSH_SIZE = 64 * 1024;
+    private static final byte[] TEXT_KEY = "\"#text\":".getBytes(StandardCharsets.UTF_8);
+
+    private final String recordName;
+    private final OutputStream out;
+    private long records;
+
+    // The elements of the current record; element 0 is the record
+    private int[] names = new int[64];          // tokenizer name id
+    private int[] parents = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] lastChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] firstAttributes = new int[64];
+    private int[] attributeCounts = new int[64];
+    private int[] firstTexts = new int[64];
+    private int[] lastTexts = new int[64];
+    private boolean[] written = new boolean[64];
+    private int elements;
+    private int current = -1;                   // innermost open element, -1 outside records
+
+    // Attributes: [name start, name end, value start, value end) in pool
+    private int[] attributes = new int[64];
+    private int attributeCount;
+
+    // Text pieces: start and end in pool, CDATA flag, next piece
+    private int[] textStarts = new int[64];
+    private int[] textEnds = new int[64];
+    private boolean[] textCdata = new boolean[64];
+    private int[] textNext = new int[64];
+    private int textCount;
+
+    private byte[] pool = new byte[4096];
+    private int poolSize;
+
+    private byte[] buf = new byte[FLUSH_SIZE + 4096];
+    private int size;
+    private byte[][] keys = new byte[64][];     // "name": by tokenizer name id
+    private final byte[] ascii = new byte[1];
+
+    /**
+     * Constructs a converter.
+     *
+     * @param recordName the name of the elements to write as records
+     * @param out where the JSON Lines go; not closed
+     */
+    public JsonLinesConverter(String recordName, OutputStream out) {
+        this.recordName = recordName;
+        this.out = out;
+    }
+
+    /**
+     * Returns the file that conversion of a document writes to.
+     *
+     * @param file the document
+     * @return the path of its JSON Lines file
+     */
+    public static Path sidecarFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".jsonl");
+    }
+
+    /**
+     * @return the number of records written so far
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        super.startDocument(locator);
+        locator.setReportText(true);
+        current = -1;
+        keys = new byte[64][];
+    }
+
+    @Override
+    public void startElement(String name, byte[] b, int attributesStart, int attributesEnd)
+            throws IOException {
+        if (current >= 0 || name.equals(recordName)) {
+            current = add(b, attributesStart, attributesEnd);
+        }
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] b, int attributesStart, int attributesEnd)
+            throws IOException {
+        if (current >= 0 || name.equals(recordName)) {
+            if (add(b, attributesStart, attributesEnd) == 0) {
+                writeRecord();
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String name) throws IOException {
+        if (current == 0) {
+            writeRecord();
+        } else if (current > 0) {
+            current = parents[current];
+        }
+    }
+
+    @Override
+    public void text(byte[] b, int start, int end) {
+        if (current < 0 || start == end) {
+            return;
+        }
+        boolean cdata = locator.isCdataText();
+        int last = lastTexts[current];
+        // A piece split by the tokenizer's buffer continues the last one.
+        if (last >= 0 && textEnds[last] == poolSize && textCdata[last] == cdata) {
+            textEnds[last] += end - start;
+        } else {
+            if (textCount == textStarts.length) {
+                int n = textCount * 2;
+                textStarts = Arrays.copyOf(textStarts, n);
+                textEnds = Arrays.copyOf(textEnds, n);
+                textCdata = Arrays.copyOf(textCdata, n);
+                textNext = Arrays.copyOf(textNext, n);
+            }
+            int piece = textCount++;
+            textStarts[piece] = poolSize;
+            textEnds[piece] = poolSize + end - start;
+            textCdata[piece] = cdata;
+            textNext[piece] = -1;
+            if (last >= 0) {
+                textNext[last] = piece;
+            } else {
+                firstTexts[current] = piece;
+            }
+            lastTexts[current] = piece;
+        }
+        copy(b, start, end);
+    }
+
+    /**
+     * Writes out any records still buffered.
+     */
+    @Override
+    public void endDocument() throws IOException {
+        current = -1;
+        out.write(buf, 0, size);
+        out.flush();
+        size = 0;
+    }
+
+    /**
+     * Adds the element at the current tag as a child of the current one,
+     * or as a new record if there is none.
+     *
+     * @return the element
+     */
+    private int add(byte[] b, int attributesStart, int attributesEnd) {
+        if (current < 0) {
+            elements = 0;
+            attributeCount = 0;
+            textCount = 0;
+            poolSize = 0;
+        }
+        if (elements == names.length) {
+            int n = elements * 2;
+            names = Arrays.copyOf(names, n);
+            parents = Arrays.copyOf(parents, n);
+            firstChildren = Arrays.copyOf(firstChildren, n);
+            lastChildren = Arrays.copyOf(lastChildren, n);
+            nextSiblings = Arrays.copyOf(nextSiblings, n);
+            firstAttributes = Arrays.copyOf(firstAttributes, n);
+            attributeCounts = Arrays.copyOf(attributeCounts, n);
+            firstTexts = Arrays.copyOf(firstTexts, n);
+            lastTexts = Arrays.copyOf(lastTexts, n);
+            written = Arrays.copyOf(written, n);
+        }
+        int element = elements++;
+        names[element] = locator.getNameId();
+        parents[element] = current;
+        firstChildren[element] = -1;
+        lastChildren[element] = -1;
+        nextSiblings[element] = -1;
+        firstTexts[element] = -1;
+        lastTexts[element] = -1;
+        written[element] = false;
+        if (current >= 0) {
+            if (lastChildren[current] >= 0) {
+                nextSiblings[lastChildren[current]] = element;
+            } else {
+                firstChildren[current] = element;
+            }
+            lastChildren[current] = element;
+        }
+        firstAttributes[element] = attributeCount;
+        attributeCounts[element] = addAttributes(b, attributesStart, attributesEnd);
+        return element;
+    }
+
+    /**
+     * Copies the attributes in b[start, end) into the pool. Malformed
+     * attributes end the list.
+     *
+     * @return the number of attributes
+     */
+    private int addAttributes(byte[] b, int start, int end) {
+        int n = 0;
+        int p = start;
+        while (p < end) {
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            int nameStart = p;
+            while (p < end && b[p] != '=' && !isSpace(b[p])) {
+                p++;
+            }
+            int nameEnd = p;
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            if (p >= end || b[p] != '=' || nameStart == nameEnd) {
+                break;
+            }
+            p++;
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            if (p >= end || (b[p] != '"' && b[p] != '\'')) {
+                break;
+            }
+            byte quote = b[p++];
+            int valueStart = p;
+            p = Bytes.indexOf(b, p, end, quote);
+            if (p >= end) {
+                break;
+            }
+            if (attributeCount * 4 == attributes.length) {
+                attributes = Arrays.copyOf(attributes, attributes.length * 2);
+            }
+            int a = attributeCount++ * 4;
+            attributes[a] = poolSize;
+            copy(b, nameStart, nameEnd);
+            attributes[a + 1] = poolSize;
+            attributes[a + 2] = poolSize;
+            copy(b, valueStart, p);
+            attributes[a + 3] = poolSize;
+            p++;
+            n++;
+        }
+        return n;
+    }
+
+    private void copy(byte[] b, int start, int end) {
+        int length = end - start;
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(poolSize + length, pool.length * 2));
+        }
+        System.arraycopy(b, start, pool, poolSize, length);
+        poolSize += length;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Appends the finished record to the buffer as one line, writing the
+     * buffer out once it is full.
+     */
+    private void writeRecord() throws IOException {
+        current = -1;
+        writeElement(0, true);
+        put((byte) '\n');
+        records++;
+        if (size >= FLUSH_SIZE) {
+            out.write(buf, 0, size);
+            size = 0;
+        }
+    }
+
+    /**
+     * Writes an element's JSON value.
+     *
+     * @param asObject true to write an object even for a plain string
+     */
+    private void writeElement(int element, boolean asObject) {
+        int attributeCount = attributeCounts[element];
+        if (!asObject && attributeCount == 0 && firstChildren[element] < 0) {
+            writeText(firstTexts[element]);
+            return;
+        }
+
+        put((byte) '{');
+        boolean first = true;
+        for (int i = 0; i < attributeCount; i++) {
+            int a = (firstAttributes[element] + i) * 4;
+            if (!first) {
+                put((byte) ',');
+            }
+            first = false;
+            put((byte) '"');
+            put((byte) '@');
+            putJson(pool, attributes[a], attributes[a + 1]);
+            put((byte) '"');
+            put((byte) ':');
+            put((byte) '"');
+            putXml(pool, attributes[a + 2], attributes[a + 3]);
+            put((byte) '"');
+        }
+
+        // Children with the same name are gathered into one array, in
+        // the position of the first of them.
+        for (int child = firstChildren[element]; child >= 0; child = nextSiblings[child]) {
+            if (written[child]) {
+                continue;
+            }
+            if (!first) {
+                put((byte) ',');
+            }
+            first = false;
+            putKey(names[child]);
+            int same = nextSiblings[child];
+            while (same >= 0 && names[same] != names[child]) {
+                same = nextSiblings[same];
+            }
+            if (same < 0) {
+                writeElement(child, false);
+                continue;
+            }
+            put((byte) '[');
+            writeElement(child, false);
+            for (; same >= 0; same = nextSiblings[same]) {
+                if (names[same] == names[child]) {
+                    put((byte) ',');
+                    writeElement(same, false);
+                    written[same] = true;
+                }
+            }
+            put((byte) ']');
+        }
+
+        if (!isBlank(firstTexts[element])) {
+            if (!first) {
+                put((byte) ',');
+            }
+            put(TEXT_KEY);
+            writeText(firstTexts[element]);
+        }
+        put((byte) '}');
+    }
+
+    /**
+     * Writes a chain of text pieces as one JSON string.
+     */
+    private void writeText(int piece) {
+        put((byte) '"');
+        for (; piece >= 0; piece = textNext[piece]) {
+            if (textCdata[piece]) {
+                putJson(pool, textStarts[piece], textEnds[piece]);
+            } else {
+                putXml(pool, textStarts[piece], textEnds[piece]);
+            }
+        }
+        put((byte) '"');
+    }
+
+    /**
+     * @return true if a chain of text pieces is empty or all whitespace
+     */
+    private boolean isBlank(int piece) {
+        for (; piece >= 0; piece = textNext[piece]) {
+            for (int i = textStarts[piece]; i < textEnds[piece]; i++) {
+                if (!isSpace(pool[i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes "name": for an element name, encoding it once per document.
+     */
+    private void putKey(int nameId) {
+        if (nameId >= keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(nameId + 1, keys.length * 2));
+        }
+        byte[] key = keys[nameId];
+        if (key == null) {
+            StringBuilder sb = new StringBuilder();
+            JsonLinesErrorReporter.appendString(sb, locator.getNameTable().getName(nameId));
+            key = keys[nameId] = sb.append(':').toString()
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        put(key);
+    }
+
+    /**
+     * Writes XML character data as the inside of a JSON string, expanding
+     * the predefined entities and character references. Other references
+     * are copied as they are.
+     */
+    private void putXml(byte[] b, int start, int end) {
+        int p = start;
+        while (p < end) {
+            int amp = Bytes.indexOf(b, p, end, (byte) '&');
+            putJson(b, p, amp);
+            if (amp == end) {
+                return;
+            }
+            int semi = Bytes.indexOf(b, amp + 1, Math.min(end, amp + 12), (byte) ';');
+            int code = semi < end && b[semi] == ';' ? reference(b, amp + 1, semi) : -1;
+            if (code < 0) {
+                putJson(b, amp, amp + 1);
+                p = amp + 1;
+            } else {
+                putCodePoint(code);
+                p = semi + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the character a reference given without '&' and ';' stands
+     * for, or -1 if it is not a predefined entity or a character reference
+     * to a character XML allows (surrogates, most controls and U+FFFE/FFFF
+     * are not).
+     */
+    private static int reference(byte[] b, int start, int end) {
+        int length = end - start;
+        if (length >= 2 && b[start] == '#') {
+            boolean hex = b[start + 1] == 'x';
+            int p = start + (hex ? 2 : 1);
+            if (p == end) {
+                return -1;
+            }
+            int code = 0;
+            for (; p < end; p++) {
+                int digit = Character.digit(b[p], hex ? 16 : 10);
+                if (digit < 0 || code > 0x10FFFF) {
+                    return -1;
+                }
+                code = code * (hex ? 16 : 10) + digit;
+            }
+            return ReferenceChecker.isXmlChar(code) ? code : -1;
+        }
+        if (length == 2 && b[start + 1] == 't') {
+            return b[start] == 'l' ? '<' : b[start] == 'g' ? '>' : -1;
+        }
+        if (length == 3 && b[start] == 'a' && b[start + 1] == 'm' && b[start + 2] == 'p') {
+            return '&';
+        }
+        if (length == 4 && b[start + 2] == 'o') {
+            if (b[start] == 'q' && b[start + 1] == 'u' && b[start + 3] == 't') {
+                return '"';
+            }
+            if (b[start] == 'a' && b[start + 1] == 'p' && b[start + 3] == 's') {
+                return '\'';
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a character as UTF-8, escaped for a JSON string if need be.
+     */
+    private void putCodePoint(int code) {
+        if (code < 0x80) {
+            ascii[0] = (byte) code;
+            putJson(ascii, 0, 1);
+        } else if (code < 0x800) {
+            put((byte) (0xC0 | code >> 6));
+            put((byte) (0x80 | code & 0x3F));
+        } else if (code < 0x10000) {
+            put((byte) (0xE0 | code >> 12));
+            put((byte) (0x80 | code >> 6 & 0x3F));
+            put((byte) (0x80 | code & 0x3F));
+        } else {
+            put((byte) (0xF0 | code >> 18));
+            put((byte) (0x80 | code >> 12 & 0x3F));
+            put((byte) (0x80 | code >> 6 & 0x3F));
+            put((byte) (0x80 | code & 0x3F));
+        }
+    }
+
+    /**
+     * Writes UTF-8 bytes as the inside of a JSON string, escaping quotes,
+     * backslashes and control characters.
+     */
+    private void putJson(byte[] b, int start, int end) {
+        ensure(end - start);
+        int p = start;
+        for (int i = start; i < end; i++) {
+            byte c = b[i];
+            // Bytes of multi-byte characters are negative and pass.
+            if ((c >= 0x20 || c < 0) && c != '"' && c != '\\') {
+                continue;
+            }
+            put(b, p, i);
+            ensure(6 + end - i);
+            buf[size++] = '\\';
+            switch (c) {
+                case '"':  buf[size++] = '"'; break;
+                case '\\': buf[size++] = '\\'; break;
+                case '\n': buf[size++] = 'n'; break;
+                case '\r': buf[size++] = 'r'; break;
+                case '\t': buf[size++] = 't'; break;
+                default:
+                    buf[size++] = 'u';
+                    buf[size++] = '0';
+                    buf[size++] = '0';
+                    buf[size++] = (byte) Character.forDigit(c >> 4, 16);
+                    buf[size++] = (byte) Character.forDigit(c & 0xF, 16);
+            }
+            p = i + 1;
+        }
+        put(b, p, end);
+    }
+
+    private void ensure(int length) {
+        if (size + length > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(size + length, buf.length * 2));
+        }
+    }
+
+    private void put(byte[] b, int start, int end) {
+        ensure(end - start);
+        System.arraycopy(b, start, buf, size, end - start);
+        size += end - start;
+    }
+
+    private void put(byte[] b) {
+        put(b, 0, b.length);
+    }
+
+    private void put(byte c) {
+        ensure(1);
+        buf[size++] = c;
+    }
+}
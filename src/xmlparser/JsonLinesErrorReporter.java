@@ -0,0 +1,103 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one JSON object per error (JSON Lines), carrying every field of
+ * the error record plus the document it came from, e.g.
+ *
+ *   {"source":"a.xml","line":8,"column":3,"offset":310,
+ *    "kind":"MISMATCHED_TAG","first":"i","second":"b","message":"..."}
+ *
+ * Unknown positions and absent tag names are written as null.
+ */
+public class JsonLinesErrorReporter extends BufferedErrorReporter {
+
+    private final StringBuilder record = new StringBuilder(256);
+    private String source;
+
+    /**
+     * Constructs a reporter writing to the given stream.
+     *
+     * @param out the underlying stream
+     */
+    public JsonLinesErrorReporter(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Remembers the document name for the records that follow.
+     */
+    @Override
+    public void startDocument(String source) throws IOException {
+        this.source = source;
+    }
+
+    /**
+     * Formats the error as a JSON object and appends it to the buffer.
+     */
+    @Override
+    public void report(XmlError error) throws IOException {
+        record.setLength(0);
+        record.append("{\"source\":");
+        appendString(record, source);
+        record.append(",\"line\":");
+        appendNumber(record, error.getLine());
+        record.append(",\"column\":");
+        appendNumber(record, error.getColumn());
+        record.append(",\"offset\":");
+        appendNumber(record, error.getOffset());
+        record.append(",\"kind\":\"").append(error.getKind().name()).append('"');
+        record.append(",\"first\":");
+        appendString(record, error.getFirst());
+        record.append(",\"second\":");
+        appendString(record, error.getSecond());
+        record.append(",\"message\":");
+        appendString(record, error.getMessage());
+        record.append("}\n");
+        writeText(record);
+        flushIfFull();
+    }
+
+    /**
+     * Appends a position, writing unknown (negative) values as null.
+     */
+    private static void appendNumber(StringBuilder sb, long value) {
+        if (value < 0) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+
+    /**
+     * Appends a JSON string literal, escaping as required, or null.
+     */
+    static void appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00");
+                        sb.append(Character.forDigit(c >> 4, 16));
+                        sb.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
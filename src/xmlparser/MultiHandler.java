@@ -0,0 +1,157 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import exceptions.StopParsingException;
+
+/**
+ * Hands every event to several handlers in turn, so validation,
+ * statistics and extraction can share a single pass over the bytes.
+ *
+ * A handler that throws StopParsingException is left out of the rest of
+ * the document (it still gets endDocument()); the document itself only
+ * stops once every handler has stopped, or at once if the exception is
+ * for the whole document (a resource limit was exceeded).
+ */
+public class MultiHandler implements XmlHandler {
+
+    private final XmlHandler[] handlers;
+    private final boolean[] stopped;
+    private int running;
+
+    /**
+     * Constructs a handler fanning out to the given handlers, which are
+     * called in the order given.
+     *
+     * @param handlers the receivers of every event
+     */
+    public MultiHandler(XmlHandler... handlers) {
+        this.handlers = handlers.clone();
+        this.stopped = new boolean[handlers.length];
+    }
+
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        running = handlers.length;
+        for (int i = 0; i < handlers.length; i++) {
+            stopped[i] = false;
+            try {
+                handlers[i].startDocument(locator);
+            } catch (StopParsingException ex) {
+                stop(i, ex);
+            }
+        }
+    }
+
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException {
+        for (int i = 0; i < handlers.length; i++) {
+            if (!stopped[i]) {
+                try {
+                    handlers[i].startElement(name, buf, attributesStart, attributesEnd);
+                } catch (StopParsingException ex) {
+                    stop(i, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException {
+        for (int i = 0; i < handlers.length; i++) {
+            if (!stopped[i]) {
+                try {
+                    handlers[i].emptyElement(name, buf, attributesStart, attributesEnd);
+                } catch (StopParsingException ex) {
+                    stop(i, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String name) throws IOException, StopParsingException {
+        for (int i = 0; i < handlers.length; i++) {
+            if (!stopped[i]) {
+                try {
+                    handlers[i].endElement(name);
+                } catch (StopParsingException ex) {
+                    stop(i, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, byte[] buf, int start, int end)
+            throws IOException, StopParsingException {
+        for (int i = 0; i < handlers.length; i++) {
+            if (!stopped[i]) {
+                try {
+                    handlers[i].processingInstruction(target, buf, start, end);
+                } catch (StopParsingException ex) {
+                    stop(i, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void text(byte[] buf, int start, int end) throws IOException, StopParsingException {
+        for (int i = 0; i < handlers.length; i++) {
+            if (!stopped[i]) {
+                try {
+                    handlers[i].text(buf, start, end);
+                } catch (StopParsingException ex) {
+                    stop(i, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void error(XmlError error) throws IOException, StopParsingException {
+        for (int i = 0; i < handlers.length; i++) {
+            if (!stopped[i]) {
+                try {
+                    handlers[i].error(error);
+                } catch (StopParsingException ex) {
+                    stop(i, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends the document for every handler, including stopped ones.
+     */
+    @Override
+    public void endDocument() throws IOException, StopParsingException {
+        for (XmlHandler handler : handlers) {
+            try {
+                handler.endDocument();
+            } catch (StopParsingException ex) {
+                // Nothing follows the end of the document anyway.
+            }
+        }
+    }
+
+    /**
+     * Leaves handler i out of the rest of the document, and stops the
+     * document once no handler is left, or if ex is for the whole document.
+     */
+    private void stop(int i, StopParsingException ex) throws StopParsingException {
+        if (ex.isWholeDocument()) {
+            Arrays.fill(stopped, true);
+            running = 0;
+            throw ex;
+        }
+        stopped[i] = true;
+        if (--running == 0) {
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package xmlparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns tag names straight from the tokenizer's byte buffer. Each
+ * distinct name is decoded into a String only once and given a small
+ * integer id (0, 1, 2, ...), so the thousands of repeated tags in a
+ * typical document cost a hash lookup instead of a new String, and
+ * consumers can key primitive arrays by name id.
+ *
+ * Lookups use open addressing over the raw name bytes, so no object is
+ * allocated to find a name that is already in the table.
+ */
+public class NameTable {
+
+    private int[] slots = new int[256];      // name id + 1, or 0 if empty
+    private int[] hashes = new int[64];
+    private int[] starts = new int[64];      // start of each name in pool
+    private int[] lengths = new int[64];
+    private String[] names = new String[64];
+    private byte[] pool = new byte[1024];    // the bytes of every name
+    private int poolSize;
+    private int count;
+
+    /**
+     * Returns the id of the name held in b[start, end), adding it if new.
+     *
+     * @param b the buffer holding the name
+     * @param start the index of the name's first byte
+     * @param end the index just past the name's last byte
+     * @return the name's id
+     */
+    public int intern(byte[] b, int start, int end) {
+        int hash = hash(b, start, end);
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        int slot;
+        while ((slot = slots[i]) != 0) {
+            int id = slot - 1;
+            if (hashes[id] == hash && equalBytes(id, b, start, end)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        return add(b, start, end, hash, i);
+    }
+
+    /**
+     * Returns the id of a name given as a String, adding it if new.
+     *
+     * @param name the name
+     * @return the name's id
+     */
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of a name if it is in the table.
+     *
+     * @param name the name
+     * @return the name's id, or -1 if the table does not hold it
+     */
+    public int find(String name) {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(b, 0, b.length);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (hashes[id] == hash && equalBytes(id, b, 0, b.length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the name with the given id.
+     *
+     * @param id a name id returned by intern()
+     * @return the name
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the number of distinct names in the table
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Adds a new name in the given empty slot.
+     */
+    private int add(byte[] b, int start, int end, int hash, int slot) {
+        int length = end - start;
+        if (count == names.length) {
+            int n = count * 2;
+            hashes = Arrays.copyOf(hashes, n);
+            starts = Arrays.copyOf(starts, n);
+            lengths = Arrays.copyOf(lengths, n);
+            names = Arrays.copyOf(names, n);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(b, start, pool, poolSize, length);
+
+        int id = count++;
+        hashes[id] = hash;
+        starts[id] = poolSize;
+        lengths[id] = length;
+        names[id] = new String(b, start, length, StandardCharsets.UTF_8);
+        poolSize += length;
+        slots[slot] = id + 1;
+
+        // Keep the table at most half full.
+        if (count * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Doubles the slot array and re-inserts every name.
+     */
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++) {
+            int i = hashes[id] & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+    }
+
+    /**
+     * Checks whether b[start, end) holds the name with the given id,
+     * without hashing; for callers that can guess the id.
+     *
+     * @param id a name id
+     * @param b the buffer holding the name
+     * @param start the index of the name's first byte
+     * @param end the index just past the name's last byte
+     * @return true if the bytes are that name
+     */
+    public boolean matches(int id, byte[] b, int start, int end) {
+        return equalBytes(id, b, start, end);
+    }
+
+    /**
+     * Compares the stored bytes of a name with b[start, end).
+     */
+    private boolean equalBytes(int id, byte[] b, int start, int end) {
+        int length = end - start;
+        if (lengths[id] != length) {
+            return false;
+        }
+        int p = starts[id];
+        for (int i = 0; i < length; i++) {
+            if (pool[p + i] != b[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of b[start, end), with the high bits folded down so they
+     * also affect the slot index.
+     */
+    private static int hash(byte[] b, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ b[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,423 @@
+package xmlparser;
+
+import java.util.Arrays;
+
+/**
+ * Resolves namespace prefixes while a document is scanned, and checks
+ * that every prefix used by an element or attribute has been declared.
+ *
+ * The xmlns declarations in scope are kept on a stack of bindings in
+ * parallel with the element stack: each binding records the depth of the
+ * element that declared it and is popped when that element ends. Prefixes,
+ * URIs and local names are interned in a NameTable, and each element's
+ * (prefix, URI, local name) triple can be interned to a single id, so
+ * namespace-aware consumers can compare names as ints.
+ *
+ * The reserved prefixes are guarded as Namespaces in XML 1.0 requires:
+ * xml may only be bound to its own namespace, xmlns never, no other
+ * prefix to either of theirs, and a prefix cannot be unbound with "".
+ *
+ * A document without namespaces costs one pass over each tag's name and
+ * attribute bytes looking for ':' and "xmlns"; nothing is interned and
+ * no binding is pushed.
+ */
+public class NamespaceResolver {
+
+    /** The namespace the "xml" prefix is always bound to. */
+    public static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+    /** The namespace of xmlns attributes, which nothing may be bound to. */
+    public static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    /** Every prefix in the tag is declared. */
+    public static final int OK = 0;
+
+    /** A prefix in the tag is not declared; see getUndeclaredPrefix(). */
+    public static final int UNDECLARED = 1;
+
+    /** A tag misuses a reserved prefix or namespace; see getUndeclaredPrefix(). */
+    public static final int RESERVED = 2;
+
+    private final NameTable names = new NameTable();
+    private final int noPrefix;          // id of ""
+    private final int xmlPrefix;
+    private final int xmlnsPrefix;
+    private final int xmlNamespace;
+    private final int xmlnsNamespace;
+
+    private int depth;                   // elements open, including the current one
+
+    // The binding stack
+    private int bindings;
+    private int[] bindingDepths = new int[16];
+    private int[] bindingPrefixes = new int[16];
+    private int[] bindingUris = new int[16];
+
+    // The current element
+    private byte[] buf;
+    private int nameStart;
+    private int nameEnd;
+    private int colon;                   // index of the ':' in its name, or -1
+    private int qnameId = -1;            // its interned triple, or -1 until asked for
+    private String undeclared;
+    private String misused;              // first reserved prefix misused by the tag
+
+    // Interned (prefix, URI, local name) triples
+    private int[] tripleSlots = new int[64];   // triple id + 1, or 0 if empty
+    private int[] triplePrefixes = new int[32];
+    private int[] tripleUris = new int[32];
+    private int[] tripleLocals = new int[32];
+    private int triples;
+
+    /**
+     * Constructs a resolver with only the "xml" prefix declared.
+     */
+    public NamespaceResolver() {
+        noPrefix = names.intern("");
+        xmlPrefix = names.intern("xml");
+        xmlnsPrefix = names.intern("xmlns");
+        xmlNamespace = names.intern(XML_NAMESPACE);
+        xmlnsNamespace = names.intern(XMLNS_NAMESPACE);
+    }
+
+    /**
+     * Enters an element: declares the prefixes its xmlns attributes bind,
+     * then checks the prefixes of its name and other attributes.
+     *
+     * @param buf the buffer holding the tag
+     * @param nameStart the index of the element name
+     * @param nameEnd the index just past the element name
+     * @param attributesStart the index of the attributes
+     * @param attributesEnd the index just past the attributes
+     * @return OK, RESERVED for a misused reserved prefix, or UNDECLARED
+     *         for the first undeclared prefix
+     */
+    public int startElement(byte[] buf, int nameStart, int nameEnd,
+            int attributesStart, int attributesEnd) {
+        depth++;
+        this.buf = buf;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+        this.qnameId = -1;
+
+        colon = -1;
+        for (int i = nameStart; i < nameEnd; i++) {
+            if (buf[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+
+        // Find out whether the attributes need a closer look.
+        boolean declares = false;
+        boolean prefixed = false;
+        for (int i = attributesStart; i < attributesEnd; i++) {
+            byte c = buf[i];
+            if (c == ':') {
+                prefixed = true;
+            } else if (c == 'x' && i + 5 <= attributesEnd && buf[i + 1] == 'm'
+                    && buf[i + 2] == 'l' && buf[i + 3] == 'n' && buf[i + 4] == 's') {
+                declares = true;
+            }
+        }
+
+        misused = null;
+        if (declares) {
+            scanAttributes(buf, attributesStart, attributesEnd, true);
+        }
+        if (misused == null && colon >= 0 && colon - nameStart == 5
+                && names.intern(buf, nameStart, colon) == xmlnsPrefix) {
+            misused = names.getName(xmlnsPrefix);
+        }
+        if (misused != null) {
+            undeclared = misused;
+            return RESERVED;
+        }
+        if ((declares || prefixed)
+                && !scanAttributes(buf, attributesStart, attributesEnd, false)) {
+            return UNDECLARED;
+        }
+        if (colon >= 0 && lookup(names.intern(buf, nameStart, colon)) < 0) {
+            undeclared = names.getName(names.intern(buf, nameStart, colon));
+            return UNDECLARED;
+        }
+        return OK;
+    }
+
+    /**
+     * Leaves the current element, dropping the prefixes it declared.
+     */
+    public void endElement() {
+        while (bindings > 0 && bindingDepths[bindings - 1] >= depth) {
+            bindings--;
+        }
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    /**
+     * @return the prefix of the last UNDECLARED or RESERVED result
+     */
+    public String getUndeclaredPrefix() {
+        return undeclared;
+    }
+
+    /**
+     * Returns the URI a prefix is bound to at the current element.
+     *
+     * @param prefix the prefix, or "" for the default namespace
+     * @return the URI, or null if the prefix is not declared ("" for an
+     *         undeclared default namespace)
+     */
+    public String getNamespaceUri(String prefix) {
+        int id = names.find(prefix);
+        int uri = id < 0 ? -1 : lookup(id);
+        if (uri < 0) {
+            return prefix.isEmpty() ? "" : null;
+        }
+        return names.getName(uri);
+    }
+
+    /**
+     * Interns the (prefix, URI, local name) triple of the element last
+     * passed to startElement(). Only valid until the next call.
+     *
+     * @return the triple's id
+     */
+    public int getQNameId() {
+        if (qnameId < 0) {
+            int prefix = colon < 0 ? noPrefix : names.intern(buf, nameStart, colon);
+            int local = names.intern(buf, colon < 0 ? nameStart : colon + 1, nameEnd);
+            int uri = lookup(prefix);
+            qnameId = internTriple(prefix, uri < 0 ? noPrefix : uri, local);
+        }
+        return qnameId;
+    }
+
+    /**
+     * @param qnameId an id returned by getQNameId()
+     * @return the prefix of that name, "" if it has none
+     */
+    public String getPrefix(int qnameId) {
+        return names.getName(triplePrefixes[qnameId]);
+    }
+
+    /**
+     * @param qnameId an id returned by getQNameId()
+     * @return the namespace URI of that name, "" if it has none
+     */
+    public String getUri(int qnameId) {
+        return names.getName(tripleUris[qnameId]);
+    }
+
+    /**
+     * @param qnameId an id returned by getQNameId()
+     * @return the local part of that name
+     */
+    public String getLocalName(int qnameId) {
+        return names.getName(tripleLocals[qnameId]);
+    }
+
+    /**
+     * Goes over the name="value" pairs in buf[start, end). Pairs that do
+     * not parse are left to AttributeChecker.
+     *
+     * @param declare true to push the xmlns bindings, false to check the
+     *        prefixes of the other attributes
+     * @return false if an undeclared prefix was found
+     */
+    private boolean scanAttributes(byte[] buf, int start, int end, boolean declare) {
+        int p = start;
+        while (true) {
+            while (p < end && isWhitespace(buf[p])) {
+                p++;
+            }
+            int ns = p;
+            int nameColon = -1;
+            while (p < end && !isWhitespace(buf[p]) && buf[p] != '=') {
+                if (buf[p] == ':' && nameColon < 0) {
+                    nameColon = p;
+                }
+                p++;
+            }
+            int ne = p;
+            while (p < end && isWhitespace(buf[p])) {
+                p++;
+            }
+            if (ns == ne || p >= end || buf[p] != '=') {
+                return true;
+            }
+            p++;
+            while (p < end && isWhitespace(buf[p])) {
+                p++;
+            }
+            if (p >= end || (buf[p] != '"' && buf[p] != '\'')) {
+                return true;
+            }
+            byte quote = buf[p++];
+            int vs = p;
+            while (p < end && buf[p] != quote) {
+                p++;
+            }
+            if (p >= end) {
+                return true;
+            }
+            int ve = p++;
+
+            int prefixEnd = nameColon < 0 ? ne : nameColon;
+            boolean isXmlns = prefixEnd - ns == 5 && names.intern(buf, ns, prefixEnd) == xmlnsPrefix;
+            if (declare) {
+                if (isXmlns) {
+                    int prefix = nameColon < 0 ? noPrefix : names.intern(buf, nameColon + 1, ne);
+                    int uri = names.intern(buf, vs, ve);
+                    if (prefix == xmlPrefix ? uri != xmlNamespace
+                            : prefix == xmlnsPrefix || uri == xmlNamespace
+                                    || uri == xmlnsNamespace
+                                    || (uri == noPrefix && prefix != noPrefix)) {
+                        if (misused == null) {
+                            misused = names.getName(prefix);
+                        }
+                    } else if (prefix != xmlPrefix) {
+                        bind(prefix, uri);
+                    }
+                }
+            } else if (nameColon >= 0 && !isXmlns) {
+                int prefix = names.intern(buf, ns, nameColon);
+                if (lookup(prefix) < 0) {
+                    undeclared = names.getName(prefix);
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes a binding declared by the current element.
+     */
+    private void bind(int prefix, int uri) {
+        if (bindings == bindingDepths.length) {
+            int n = bindings * 2;
+            bindingDepths = Arrays.copyOf(bindingDepths, n);
+            bindingPrefixes = Arrays.copyOf(bindingPrefixes, n);
+            bindingUris = Arrays.copyOf(bindingUris, n);
+        }
+        bindingDepths[bindings] = depth;
+        bindingPrefixes[bindings] = prefix;
+        bindingUris[bindings] = uri;
+        bindings++;
+    }
+
+    /**
+     * Finds the innermost binding of a prefix.
+     *
+     * @return the URI's id, or -1 if the prefix is not declared
+     */
+    private int lookup(int prefix) {
+        if (prefix == xmlPrefix) {
+            return xmlNamespace;
+        }
+        for (int i = bindings - 1; i >= 0; i--) {
+            if (bindingPrefixes[i] == prefix) {
+                return bindingUris[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of a triple, adding it if new.
+     */
+    private int internTriple(int prefix, int uri, int local) {
+        int hash = (prefix * 31 + uri) * 31 + local;
+        hash ^= hash >>> 16;
+        int mask = tripleSlots.length - 1;
+        int i = hash & mask;
+        while (tripleSlots[i] != 0) {
+            int id = tripleSlots[i] - 1;
+            if (triplePrefixes[id] == prefix && tripleUris[id] == uri && tripleLocals[id] == local) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        if (triples == triplePrefixes.length) {
+            int n = triples * 2;
+            triplePrefixes = Arrays.copyOf(triplePrefixes, n);
+            tripleUris = Arrays.copyOf(tripleUris, n);
+            tripleLocals = Arrays.copyOf(tripleLocals, n);
+        }
+        int id = triples++;
+        triplePrefixes[id] = prefix;
+        tripleUris[id] = uri;
+        tripleLocals[id] = local;
+        tripleSlots[i] = id + 1;
+        if (triples * 2 > tripleSlots.length) {
+            tripleSlots = new int[tripleSlots.length * 2];
+            int m = tripleSlots.length - 1;
+            for (int t = 0; t < triples; t++) {
+                int h = (triplePrefixes[t] * 31 + tripleUris[t]) * 31 + tripleLocals[t];
+                int j = (h ^ (h >>> 16)) & m;
+                while (tripleSlots[j] != 0) {
+                    j = (j + 1) & m;
+                }
+                tripleSlots[j] = t + 1;
+            }
+        }
+        return id;
+    }
+
+    // -----------------------------------------------------------------
+    //  Checkpoint support
+    // -----------------------------------------------------------------
+
+    /**
+     * @return the number of bindings in scope
+     */
+    int getBindingCount() {
+        return bindings;
+    }
+
+    /**
+     * @return the depth of the element that declared binding i
+     */
+    int getBindingDepth(int i) {
+        return bindingDepths[i];
+    }
+
+    /**
+     * @return the prefix of binding i
+     */
+    String getBindingPrefix(int i) {
+        return names.getName(bindingPrefixes[i]);
+    }
+
+    /**
+     * @return the URI of binding i
+     */
+    String getBindingUri(int i) {
+        return names.getName(bindingUris[i]);
+    }
+
+    /**
+     * Restores the scope saved in a checkpoint into this fresh resolver.
+     *
+     * @param openElements the number of elements open
+     * @param depths the depth of each binding, outermost first
+     * @param prefixes the prefix of each binding
+     * @param uris the URI of each binding
+     */
+    void restore(int openElements, int[] depths, String[] prefixes, String[] uris) {
+        depth = openElements;
+        bindings = 0;
+        for (int i = 0; i < depths.length; i++) {
+            int saved = depth;
+            depth = depths[i];
+            bind(names.intern(prefixes[i]), names.intern(uris[i]));
+            depth = saved;
+        }
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
@@ -0,0 +1,154 @@
+package xmlparser;
+
+/**
+ * Resource limits applied while parsing a single XML document.
+ * Each limit bounds the worst-case CPU and memory a document can cost:
+ *
+ *   - maxDepth:       deepest allowed element nesting (stack size)
+ *   - maxTagLength:   longest allowed "<...>" tag, in bytes
+ *   - maxLineLength:  longest allowed input line, in bytes
+ *   - maxTags:        total number of tags processed per document
+ *   - maxErrors:      number of errors reported before parsing stops
+ *
+ * When any limit is exceeded the parser stops immediately with a
+ * LimitExceededException describing which limit tripped.
+ */
+public class ParserLimits {
+
+    /** Default nesting depth limit. */
+    public static final int DEFAULT_MAX_DEPTH = 4096;
+
+    /** Default tag length limit (64 KiB). */
+    public static final int DEFAULT_MAX_TAG_LENGTH = 64 * 1024;
+
+    /** Default line length limit (8 MiB). */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 8 * 1024 * 1024;
+
+    private int maxDepth;
+    private int maxTagLength;
+    private int maxLineLength;
+    private long maxTags;
+    private long maxErrors;
+
+    /**
+     * Constructs limits with the default depth, tag length and line length
+     * limits, and no limit on the number of tags or errors.
+     */
+    public ParserLimits() {
+        maxDepth = DEFAULT_MAX_DEPTH;
+        maxTagLength = DEFAULT_MAX_TAG_LENGTH;
+        maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+        maxTags = Long.MAX_VALUE;
+        maxErrors = Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the maximum allowed element nesting depth.
+     *
+     * @return the maximum depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the maximum allowed element nesting depth.
+     *
+     * @param maxDepth the maximum depth, must be positive
+     * @throws IllegalArgumentException if maxDepth is not positive
+     */
+    public void setMaxDepth(int maxDepth) throws IllegalArgumentException {
+        checkPositive(maxDepth, "maxDepth");
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Returns the maximum allowed tag length in bytes.
+     *
+     * @return the maximum tag length
+     */
+    public int getMaxTagLength() {
+        return maxTagLength;
+    }
+
+    /**
+     * Sets the maximum allowed tag length in bytes, including the
+     * surrounding angle brackets.
+     *
+     * @param maxTagLength the maximum tag length, must be positive
+     * @throws IllegalArgumentException if maxTagLength is not positive
+     */
+    public void setMaxTagLength(int maxTagLength) throws IllegalArgumentException {
+        checkPositive(maxTagLength, "maxTagLength");
+        this.maxTagLength = maxTagLength;
+    }
+
+    /**
+     * Returns the maximum allowed line length in bytes.
+     *
+     * @return the maximum line length
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Sets the maximum allowed line length in bytes.
+     *
+     * @param maxLineLength the maximum line length, must be positive
+     * @throws IllegalArgumentException if maxLineLength is not positive
+     */
+    public void setMaxLineLength(int maxLineLength) throws IllegalArgumentException {
+        checkPositive(maxLineLength, "maxLineLength");
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Returns the maximum number of tags processed per document.
+     *
+     * @return the maximum tag count
+     */
+    public long getMaxTags() {
+        return maxTags;
+    }
+
+    /**
+     * Sets the maximum number of tags processed per document.
+     *
+     * @param maxTags the maximum tag count, must be positive
+     * @throws IllegalArgumentException if maxTags is not positive
+     */
+    public void setMaxTags(long maxTags) throws IllegalArgumentException {
+        checkPositive(maxTags, "maxTags");
+        this.maxTags = maxTags;
+    }
+
+    /**
+     * Returns the maximum number of errors reported per document.
+     *
+     * @return the maximum error count
+     */
+    public long getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * Sets the maximum number of errors reported per document.
+     *
+     * @param maxErrors the maximum error count, must be positive
+     * @throws IllegalArgumentException if maxErrors is not positive
+     */
+    public void setMaxErrors(long maxErrors) throws IllegalArgumentException {
+        checkPositive(maxErrors, "maxErrors");
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Rejects zero and negative limit values.
+     */
+    private static void checkPositive(long value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+    }
+}
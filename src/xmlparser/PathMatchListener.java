@@ -0,0 +1,24 @@
+package xmlparser;
+
+import java.io.IOException;
+
+/**
+ * Receives the matches of a PathQueryEngine, in document order.
+ */
+public interface PathMatchListener {
+
+    /**
+     * Called for each element or attribute matching a query.
+     *
+     * @param query the index of the matching query, in the order given
+     * @param element the name of the matching element (the owner of the
+     *        attribute, for an attribute query)
+     * @param value the attribute's value for an attribute query, with
+     *        references expanded; null for an element query
+     * @param line the 1-based line of the element's start tag
+     * @param offset the byte offset of the element's start tag
+     * @throws IOException if the listener fails to write
+     */
+    public void match(int query, String element, String value, int line, long offset)
+            throws IOException;
+}
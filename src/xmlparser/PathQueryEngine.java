@@ -0,0 +1,409 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import exceptions.StopParsingException;
+
+/**
+ * Evaluates many path queries over a document in the same single pass as
+ * validation (see MultiHandler). The supported XPath subset is:
+ *
+ *   /a/b/c      child steps from the root
+ *   //c, /a//c  descendant steps
+ *   //a/*       a wildcard step, matching any element
+ *   /a/b/@id    an attribute of the matched element, as the last step
+ *
+ * All queries are compiled into one nondeterministic automaton whose
+ * states are (query, steps matched so far). It is turned into a
+ * deterministic one lazily: each set of NFA states reached is interned as
+ * one DFA state, and its transition on each tag name id is computed the
+ * first time that name is seen there and cached. After warm-up an
+ * element costs one array lookup however many queries there are.
+ *
+ * The only per-document state is a stack holding the DFA state of each
+ * open element, so memory is bounded by the depth, not the document size.
+ * Elements below a DFA state that can no longer match are skipped with
+ * no work beyond the push and pop.
+ */
+public class PathQueryEngine extends DefaultXmlHandler {
+
+    private static final int DEAD = 0;      // DFA state with no live NFA states
+    private static final int UNKNOWN = -1;  // transition not computed yet
+
+    /**
+     * One compiled step: a name (null for '*') and whether it may match
+     * at any depth below the previous step.
+     */
+    private static final class Step {
+        final String name;
+        final boolean descendant;
+
+        Step(String name, boolean descendant) {
+            this.name = name;
+            this.descendant = descendant;
+        }
+
+        boolean matches(String element) {
+            return name == null || name.equals(element);
+        }
+    }
+
+    /**
+     * A set of NFA states, with what it matches and where it leads.
+     */
+    private static final class State {
+        final BitSet nfa;
+        final int[] elementMatches;     // element queries accepted here
+        final int[] attributeMatches;   // attribute queries accepted here
+        int[] next = new int[0];        // by name id; UNKNOWN if not computed
+
+        State(BitSet nfa, int[] elementMatches, int[] attributeMatches) {
+            this.nfa = nfa;
+            this.elementMatches = elementMatches;
+            this.attributeMatches = attributeMatches;
+        }
+    }
+
+    private final String[] paths;
+    private final Step[][] steps;          // element steps of each query
+    private final byte[][] attributes;     // attribute name of each query, or null
+    private final int[] firstState;        // NFA state number of each query's step 0
+    private final PathMatchListener listener;
+
+    private final List<State> states = new ArrayList<State>();
+    private final Map<BitSet, Integer> stateIds = new HashMap<BitSet, Integer>();
+    private final int initial;
+
+    private int[] stack = new int[64];     // DFA state of each open element
+    private int depth;
+    private long matches;
+
+    /**
+     * Compiles the given queries.
+     *
+     * @param paths the queries, in the syntax described above
+     * @param listener the receiver of every match
+     * @throws IllegalArgumentException if a query is malformed
+     */
+    public PathQueryEngine(String[] paths, PathMatchListener listener) {
+        this.paths = paths.clone();
+        this.listener = listener;
+        this.steps = new Step[paths.length][];
+        this.attributes = new byte[paths.length][];
+        this.firstState = new int[paths.length];
+
+        int nfaStates = 0;
+        for (int q = 0; q < paths.length; q++) {
+            compile(q, paths[q]);
+            firstState[q] = nfaStates;
+            nfaStates += steps[q].length + 1;
+        }
+
+        intern(new BitSet());             // DEAD
+        BitSet start = new BitSet();
+        for (int q = 0; q < paths.length; q++) {
+            start.set(firstState[q]);
+        }
+        initial = intern(start);
+    }
+
+    /**
+     * Parses one query into its steps and optional attribute.
+     */
+    private void compile(int q, String path) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Query must start with '/': " + path);
+        }
+        List<Step> list = new ArrayList<Step>();
+        int p = 0;
+        while (p < path.length()) {
+            boolean descendant = path.startsWith("//", p);
+            p += descendant ? 2 : 1;
+            int end = path.indexOf('/', p);
+            if (end < 0) {
+                end = path.length();
+            }
+            String name = path.substring(p, end);
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty step in " + path);
+            }
+            if (name.startsWith("@")) {
+                if (end != path.length() || descendant || name.length() == 1 || list.isEmpty()) {
+                    throw new IllegalArgumentException(
+                            "An attribute must be the last child step: " + path);
+                }
+                attributes[q] = name.substring(1).getBytes(StandardCharsets.UTF_8);
+            } else {
+                list.add(new Step(name.equals("*") ? null : name, descendant));
+            }
+            p = end;
+        }
+        steps[q] = list.toArray(new Step[0]);
+    }
+
+    /**
+     * @return the queries, in the order given
+     */
+    public String[] getPaths() {
+        return paths.clone();
+    }
+
+    /**
+     * @return the number of matches found so far
+     */
+    public long getMatchCount() {
+        return matches;
+    }
+
+    /**
+     * @return the number of DFA states built so far
+     */
+    public int getStateCount() {
+        return states.size();
+    }
+
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        super.startDocument(locator);
+        depth = 0;
+        stack[0] = initial;
+    }
+
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException {
+        int state = enter(name, buf, attributesStart, attributesEnd);
+        if (++depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = state;
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException {
+        enter(name, buf, attributesStart, attributesEnd);
+    }
+
+    @Override
+    public void endElement(String name) {
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    /**
+     * Moves from the parent's DFA state on the element's name, reporting
+     * the queries it matches.
+     *
+     * @return the element's DFA state
+     */
+    private int enter(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException {
+        int parent = stack[depth];
+        if (parent == DEAD) {
+            return DEAD;
+        }
+        int id = locator.getNameId();
+        State from = states.get(parent);
+        if (id >= from.next.length) {
+            int old = from.next.length;
+            from.next = Arrays.copyOf(from.next, Math.max(id + 1, old * 2));
+            Arrays.fill(from.next, old, from.next.length, UNKNOWN);
+        }
+        int state = from.next[id];
+        if (state == UNKNOWN) {
+            state = transition(from.nfa, name);
+            from.next[id] = state;
+        }
+
+        State to = states.get(state);
+        for (int q : to.elementMatches) {
+            matches++;
+            listener.match(q, name, null, locator.getTagLine(), locator.getTagOffset());
+        }
+        for (int q : to.attributeMatches) {
+            String value = attribute(buf, attributesStart, attributesEnd, attributes[q]);
+            if (value != null) {
+                matches++;
+                listener.match(q, name, value, locator.getTagLine(), locator.getTagOffset());
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Computes the NFA states reached from the given ones on an element
+     * with the given name, and interns them as a DFA state.
+     */
+    private int transition(BitSet from, String name) {
+        BitSet to = new BitSet();
+        for (int q = 0; q < steps.length; q++) {
+            Step[] query = steps[q];
+            for (int i = 0; i < query.length; i++) {
+                if (!from.get(firstState[q] + i)) {
+                    continue;
+                }
+                if (query[i].matches(name)) {
+                    to.set(firstState[q] + i + 1);
+                }
+                if (query[i].descendant) {
+                    to.set(firstState[q] + i);
+                }
+            }
+        }
+        return intern(to);
+    }
+
+    /**
+     * Returns the DFA state for a set of NFA states, creating it if new.
+     */
+    private int intern(BitSet nfa) {
+        Integer id = stateIds.get(nfa);
+        if (id != null) {
+            return id;
+        }
+        int[] elementMatches = new int[steps.length];
+        int[] attributeMatches = new int[steps.length];
+        int elementCount = 0;
+        int attributeCount = 0;
+        for (int q = 0; q < steps.length; q++) {
+            if (nfa.get(firstState[q] + steps[q].length)) {
+                if (attributes[q] == null) {
+                    elementMatches[elementCount++] = q;
+                } else {
+                    attributeMatches[attributeCount++] = q;
+                }
+            }
+        }
+        states.add(new State(nfa, Arrays.copyOf(elementMatches, elementCount),
+                Arrays.copyOf(attributeMatches, attributeCount)));
+        stateIds.put(nfa, states.size() - 1);
+        return states.size() - 1;
+    }
+
+    /**
+     * Finds an attribute's value in b[start, end), or returns null if the
+     * attribute is absent. Malformed attributes end the search.
+     */
+    static String attribute(byte[] b, int start, int end, byte[] wanted) {
+        int p = start;
+        while (p < end) {
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            int nameStart = p;
+            while (p < end && b[p] != '=' && !isSpace(b[p])) {
+                p++;
+            }
+            int nameEnd = p;
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            if (p >= end || b[p] != '=') {
+                return null;
+            }
+            p++;
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            if (p >= end || (b[p] != '"' && b[p] != '\'')) {
+                return null;
+            }
+            byte quote = b[p++];
+            int valueStart = p;
+            while (p < end && b[p] != quote) {
+                p++;
+            }
+            if (p >= end) {
+                return null;
+            }
+            if (equal(b, nameStart, nameEnd, wanted)) {
+                return unescape(new String(b, valueStart, p - valueStart, StandardCharsets.UTF_8));
+            }
+            p++;
+        }
+        return null;
+    }
+
+    private static boolean equal(byte[] b, int start, int end, byte[] name) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (b[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Expands the predefined entities and character references in an
+     * attribute value; anything else is left as it is.
+     */
+    static String unescape(String value) {
+        int amp = value.indexOf('&');
+        if (amp < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        int p = 0;
+        while (amp >= 0) {
+            out.append(value, p, amp);
+            int semi = value.indexOf(';', amp);
+            String replacement = semi < 0 ? null : expand(value.substring(amp + 1, semi));
+            if (replacement == null) {
+                out.append('&');
+                p = amp + 1;
+            } else {
+                out.append(replacement);
+                p = semi + 1;
+            }
+            amp = value.indexOf('&', p);
+        }
+        return out.append(value, p, value.length()).toString();
+    }
+
+    /**
+     * Returns the text of a reference given without '&' and ';', or null
+     * if it is not a predefined entity or a reference to a character XML
+     * allows (see ReferenceChecker).
+     */
+    private static String expand(String reference) {
+        switch (reference) {
+            case "lt":   return "<";
+            case "gt":   return ">";
+            case "amp":  return "&";
+            case "quot": return "\"";
+            case "apos": return "'";
+            default:
+                break;
+        }
+        if (!reference.startsWith("#") || reference.length() < 2) {
+            return null;
+        }
+        boolean hex = reference.charAt(1) == 'x';
+        String digits = reference.substring(hex ? 2 : 1);
+        if (digits.startsWith("+") || digits.startsWith("-")) {
+            return null;
+        }
+        try {
+            int code = Integer.parseInt(digits, hex ? 16 : 10);
+            return ReferenceChecker.isXmlChar(code) ? new String(Character.toChars(code)) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on a thread of its own, so slow work done by that
+ * stream (e.g. inflating gzip data) overlaps with the reader's own work
+ * (tag scanning). The thread fills fixed-size buffers and hands them over
+ * through a bounded queue; drained buffers go back through a second queue
+ * and are refilled, so no buffer is allocated after construction and the
+ * thread never runs more than QUEUE_DEPTH buffers ahead.
+ *
+ * Errors from the source are rethrown by read() once the data before
+ * them has been read. Closing this stream stops the thread and closes
+ * the source.
+ */
+public class PipelinedInputStream extends InputStream {
+
+    /** Size of each buffer handed over. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /** How many filled buffers may wait for the reader. */
+    public static final int QUEUE_DEPTH = 4;
+
+    /**
+     * A buffer and how much of it was filled; length -1 marks the end of
+     * the source and error an exception thrown by it.
+     */
+    private static final class Chunk {
+        final byte[] data = new byte[BUFFER_SIZE];
+        int length;
+        IOException error;
+    }
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<Chunk>(QUEUE_DEPTH);
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(QUEUE_DEPTH + 1);
+    private final Thread thread;
+    private IOException failure;  // thrown by the source after a partial buffer
+
+    private Chunk current;        // the chunk being read, or null
+    private int pos;              // next unread byte in current
+    private boolean done;         // the end or an error has been reached
+    private volatile boolean closed;
+
+    /**
+     * Starts reading the given stream in the background.
+     *
+     * @param source the stream to read ahead
+     * @param name the name of the reading thread
+     */
+    public PipelinedInputStream(InputStream source, String name) {
+        this.source = source;
+        for (int i = 0; i <= QUEUE_DEPTH; i++) {
+            free.add(new Chunk());
+        }
+        thread = new Thread(this::fill, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The reading thread: fills free buffers until the source ends.
+     */
+    private void fill() {
+        try {
+            while (!closed) {
+                Chunk chunk = free.take();
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    chunk.length = readFully(chunk.data);
+                } catch (IOException ex) {
+                    chunk.length = -1;
+                    chunk.error = ex;
+                }
+                if (closed) {
+                    break;      // nobody will take it, and the queue may be full
+                }
+                filled.put(chunk);
+                if (chunk.length < 0) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Closed by the reader.
+        } finally {
+            try {
+                source.close();
+            } catch (IOException ex) {
+                // Nothing more will be read.
+            }
+        }
+    }
+
+    /**
+     * Fills a buffer as far as the source allows, so the reader gets
+     * large chunks even from a source that returns small ones. If the
+     * source fails part way, the bytes before the failure are handed
+     * over first and the failure with the next buffer.
+     *
+     * @return the number of bytes read, or -1 at the end of the source
+     */
+    private int readFully(byte[] b) throws IOException {
+        int n = 0;
+        try {
+            while (n < b.length) {
+                int r = source.read(b, n, b.length - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+        } catch (IOException ex) {
+            if (n == 0) {
+                throw ex;
+            }
+            failure = ex;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current.data[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.data, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Makes sure the current chunk has unread bytes, waiting for the next
+     * one if needed.
+     *
+     * @return false at the end of the source
+     */
+    private boolean nextChunk() throws IOException {
+        if (current != null && pos < current.length) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        Chunk next;
+        try {
+            next = filled.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for input");
+        }
+        if (next.length < 0) {
+            done = true;
+            if (next.error != null) {
+                throw next.error;
+            }
+            return false;
+        }
+        current = next;
+        pos = 0;
+        return true;
+    }
+
+    /**
+     * Stops the reading thread, which closes the source, and waits for it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
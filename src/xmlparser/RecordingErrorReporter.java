@@ -0,0 +1,73 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reporter that passes every call on to another reporter while keeping
+ * the errors of the current document, e.g. so they can be cached.
+ */
+public class RecordingErrorReporter implements ErrorReporter {
+
+    private final ErrorReporter target;
+    private final List<XmlError> errors = new ArrayList<XmlError>();
+
+    /**
+     * Constructs a reporter forwarding to the given one.
+     *
+     * @param target the reporter that receives every call
+     */
+    public RecordingErrorReporter(ErrorReporter target) {
+        this.target = target;
+    }
+
+    /**
+     * Forgets the previous document's errors and forwards the call.
+     */
+    @Override
+    public void startDocument(String source) throws IOException {
+        errors.clear();
+        target.startDocument(source);
+    }
+
+    /**
+     * Keeps the error and forwards it.
+     */
+    @Override
+    public void report(XmlError error) throws IOException {
+        errors.add(error);
+        target.report(error);
+    }
+
+    /**
+     * Forwards the call.
+     */
+    @Override
+    public void endDocument(long errorCount) throws IOException {
+        target.endDocument(errorCount);
+    }
+
+    /**
+     * Forwards the call.
+     */
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    /**
+     * Forwards the call.
+     */
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+
+    /**
+     * @return the errors reported since the current document started
+     */
+    public List<XmlError> getErrors() {
+        return errors;
+    }
+}
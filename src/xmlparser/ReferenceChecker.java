@@ -0,0 +1,243 @@
+package xmlparser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the entity and character references in text and attribute
+ * values: every '&' must start one of the five predefined entities
+ * ({@code &amp; &lt; &gt; &quot; &apos;}) or a decimal or
+ * hexadecimal character reference to a character XML allows, and end
+ * with ';'.
+ *
+ * The scan jumps from one '&' to the next with a bulk byte search, so
+ * text without references costs little more than one pass at memory
+ * speed. Text may arrive in pieces: a reference cut off at the end of a
+ * piece is carried over (at most MAX_REFERENCE bytes) and completed by
+ * the next one.
+ */
+public class ReferenceChecker {
+
+    /** The longest reference looked at; anything longer is reported as unterminated. */
+    public static final int MAX_REFERENCE = 64;
+
+    private final byte[] pending = new byte[MAX_REFERENCE];
+    private int pendingLength;         // bytes of a reference cut off by the last piece
+    private boolean allowUnknown;
+
+    private String reference;
+    private String problem;
+    private int resume;
+    private boolean carried;           // the last bad reference began in an earlier piece
+
+    /**
+     * Chooses whether entity names other than the five predefined ones
+     * are accepted, e.g. because a DOCTYPE may declare them.
+     *
+     * @param allow true to accept any entity name
+     */
+    public void setAllowUnknownEntities(boolean allow) {
+        this.allowUnknown = allow;
+    }
+
+    /**
+     * Looks for the first bad reference in b[from, to).
+     *
+     * @param b the buffer
+     * @param from the index to start at
+     * @param to the index to stop before
+     * @param split true if the range may end part way through a
+     *        reference that the next range completes (text pieces)
+     * @return the index of the bad reference's '&', or -1 if there is
+     *         none; after a bad reference, continue from getResume()
+     */
+    public int scan(byte[] b, int from, int to, boolean split) {
+        int p = from;
+
+        // Complete a reference carried over from the previous piece.
+        if (pendingLength > 0) {
+            while (p < to && b[p] != ';' && pendingLength < MAX_REFERENCE - 1
+                    && !ends(b[p])) {
+                pending[pendingLength++] = b[p++];
+            }
+            if (p == to && split) {
+                return -1;
+            }
+            boolean terminated = p < to && b[p] == ';';
+            if (terminated) {
+                pending[pendingLength++] = ';';
+                p++;
+            }
+            String why = terminated ? check(pending, 0, pendingLength) : "not terminated by ';'";
+            int length = pendingLength;
+            pendingLength = 0;
+            if (why != null) {
+                fail(pending, 0, length, why, p);
+                carried = true;
+                return from;
+            }
+        }
+
+        while (true) {
+            p = Bytes.indexOf(b, p, to, (byte) '&');
+            if (p == to) {
+                return -1;
+            }
+            int amp = p;
+            int q = amp + 1;
+            int max = Math.min(to, amp + MAX_REFERENCE);
+            while (q < max && b[q] != ';' && !ends(b[q])) {
+                q++;
+            }
+            if (q < max && b[q] == ';') {
+                String why = check(b, amp, q + 1);
+                if (why != null) {
+                    fail(b, amp, q + 1, why, q + 1);
+                    return amp;
+                }
+                p = q + 1;
+                continue;
+            }
+            if (q == to && split && to - amp < MAX_REFERENCE) {
+                System.arraycopy(b, amp, pending, 0, to - amp);
+                pendingLength = to - amp;
+                return -1;
+            }
+            fail(b, amp, q, "not terminated by ';'", q);
+            return amp;
+        }
+    }
+
+    /**
+     * Ends the current run of text. A reference still cut off is bad.
+     *
+     * @return true if a reference was cut off; see getReference()
+     */
+    public boolean endText() {
+        if (pendingLength == 0) {
+            return false;
+        }
+        fail(pending, 0, pendingLength, "not terminated by ';'", 0);
+        carried = true;
+        pendingLength = 0;
+        return true;
+    }
+
+    /**
+     * @return the number of bytes of a reference cut off at the end of
+     *         the last piece, waiting for the next one
+     */
+    public int getPendingLength() {
+        return pendingLength;
+    }
+
+    /**
+     * @return true if the last bad reference began in an earlier piece
+     *         of text than the one scanned last
+     */
+    public boolean wasCarried() {
+        return carried;
+    }
+
+    /**
+     * @return the text of the last bad reference
+     */
+    public String getReference() {
+        return reference;
+    }
+
+    /**
+     * @return why the last bad reference is bad
+     */
+    public String getProblem() {
+        return problem;
+    }
+
+    /**
+     * @return the index to continue scanning from after a bad reference
+     */
+    public int getResume() {
+        return resume;
+    }
+
+    private void fail(byte[] b, int start, int end, String why, int resumeAt) {
+        carried = false;
+        reference = new String(b, start, end - start, StandardCharsets.UTF_8);
+        problem = why;
+        resume = resumeAt;
+    }
+
+    /**
+     * Checks the complete reference b[start, end), from '&' to ';'.
+     *
+     * @return null if it is good, else why not
+     */
+    private String check(byte[] b, int start, int end) {
+        int s = start + 1;
+        int e = end - 1;
+        if (s == e) {
+            return "empty reference";
+        }
+
+        if (b[s] != '#') {
+            if (is(b, s, e, "amp") || is(b, s, e, "lt") || is(b, s, e, "gt")
+                    || is(b, s, e, "quot") || is(b, s, e, "apos") || allowUnknown) {
+                return null;
+            }
+            return "unknown entity";
+        }
+
+        // &#ddd; or &#xhhh;
+        int radix = 10;
+        int p = s + 1;
+        if (p < e && b[p] == 'x') {
+            radix = 16;
+            p++;
+        }
+        if (p == e) {
+            return "no digits";
+        }
+        int value = 0;
+        for (; p < e; p++) {
+            int digit = Character.digit(b[p], radix);
+            if (digit < 0) {
+                return "bad digit '" + (char) (b[p] & 0xFF) + "'";
+            }
+            value = value * radix + digit;
+            if (value > Character.MAX_CODE_POINT) {
+                return "not a character XML allows";
+            }
+        }
+        return isXmlChar(value) ? null : "not a character XML allows";
+    }
+
+    /**
+     * Returns true for the code points XML 1.0 allows in a document.
+     */
+    static boolean isXmlChar(int c) {
+        return c == 0x9 || c == 0xA || c == 0xD
+                || (c >= 0x20 && c <= 0xD7FF)
+                || (c >= 0xE000 && c <= 0xFFFD)
+                || (c >= 0x10000 && c <= 0x10FFFF);
+    }
+
+    /**
+     * Returns true for bytes that cannot be part of a reference, which
+     * end an unterminated one early.
+     */
+    private static boolean ends(byte c) {
+        return c == '&' || c == '<' || c == ' ' || c == '\t' || c == '\n' || c == '\r'
+                || c == '"' || c == '\'';
+    }
+
+    private static boolean is(byte[] b, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (b[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,20 @@
+package xmlparser;
+
+import java.io.IOException;
+
+/**
+ * Receives each fix an XmlRepairer makes, in document order.
+ */
+public interface RepairListener {
+
+    /**
+     * Called for each tag inserted or dropped.
+     *
+     * @param fix what was done, e.g. "Inserted </b> before </a>"
+     * @param line the 1-based line of the tag that needed the fix
+     * @param offset the byte offset of that tag, or of the end of the
+     *        document for fixes made there
+     * @throws IOException if the listener fails to write
+     */
+    public void repaired(String fix, int line, long offset) throws IOException;
+}
@@ -0,0 +1,397 @@
+package xmlparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of validation results, so unchanged files are not
+ * parsed again. Each entry is keyed by the file's path and the settings
+ * it was validated with, and records the file's size, modification time
+ * and CRC-32 content hash along with the errors it produced.
+ *
+ * By default a lookup is a hit when the size, the modification time and
+ * a sampled hash all match. The sample is 16 blocks of 64 KiB spread
+ * evenly over the file (all of it up to 1 MiB), so a hit reads at most
+ * 1 MiB however large the file is. It catches most rewrites that keep the
+ * timestamp, as cp -p, rsync and rewrites within the file system's
+ * timestamp granularity do, but not a change of the same size between
+ * the blocks.
+ *
+ * With setFullHash(true) the whole file is hashed instead and timestamps
+ * are ignored, so any change is caught. Every lookup then reads the whole
+ * file: still cheaper than validating it, but on large files that is most
+ * of what the cache saves. Either way the hash taken by a lookup is kept
+ * for the store() that follows a miss, so each file is hashed at most
+ * once.
+ *
+ * Entries are evicted least-recently-used first once there are more than
+ * maxEntries of them or they take more than maxBytes on disk.
+ */
+public class ResultCache {
+
+    /** Default maximum number of entries. */
+    public static final long DEFAULT_MAX_ENTRIES = 100000;
+
+    /** Default maximum size of all entries (64 MiB). */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x58524333;    // "XRC3"
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int SAMPLE_COUNT = 16;
+
+    /**
+     * One cached result.
+     */
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final long hash;
+        final long errorCount;
+        final List<XmlError> errors;
+        final long bytes;            // approximate size on disk
+
+        Entry(long size, long modified, long hash, long errorCount, List<XmlError> errors,
+                long bytes) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.errorCount = errorCount;
+            this.errors = errors;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Path cacheFile;
+    private final long maxEntries;
+    private final long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    private long totalBytes;
+    private boolean fullHash;        // hash whole files and ignore timestamps
+    private String hashedKey;        // the key of the last lookup that hashed its file
+    private long hashedSize;
+    private long hashedModified;
+    private long hashedValue;
+    private long hits;
+    private long misses;
+    private boolean dirty;
+
+    /**
+     * Opens the cache stored in the given file, loading it if it exists.
+     * A missing or unreadable cache file simply starts an empty cache.
+     *
+     * @param cacheFile where the cache is stored
+     * @param maxEntries the most entries kept
+     * @param maxBytes the most bytes of entries kept
+     */
+    public ResultCache(Path cacheFile, long maxEntries, long maxBytes) {
+        this.cacheFile = cacheFile;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    /**
+     * Chooses whether whole files are hashed (see above). Entries stored
+     * in one mode are not found in the other.
+     *
+     * @param fullHash true to hash whole files and ignore timestamps
+     */
+    public void setFullHash(boolean fullHash) {
+        this.fullHash = fullHash;
+    }
+
+    /**
+     * Looks up the result for a file validated with the given settings.
+     * Counts a hit or a miss.
+     *
+     * @param file the file about to be validated
+     * @param settings a description of the settings that affect the result
+     * @return the cached result, or null on a miss
+     * @throws IOException if the file cannot be inspected
+     */
+    public Result lookup(Path file, String settings) throws IOException {
+        String key = key(file, settings);
+        Entry entry = entries.get(key);
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        if (entry != null && entry.size == size && (fullHash || entry.modified == modified)) {
+            hashedKey = key;
+            hashedSize = size;
+            hashedModified = modified;
+            hashedValue = fullHash ? hash(file) : sampledHash(file);
+            if (entry.hash == hashedValue) {
+                hits++;
+                return new Result(entry.errorCount, entry.errors);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Stores the result of validating a file, evicting old entries if the
+     * cache grows past its limits. The file is hashed unless the lookup
+     * that missed already did; that hash, taken before validating, keeps a
+     * file changed during validation from matching the stored result.
+     *
+     * @param file the file that was validated
+     * @param settings the settings it was validated with
+     * @param errorCount the number of errors found
+     * @param errors the errors reported (empty when only counting)
+     * @throws IOException if the file cannot be inspected
+     */
+    public void store(Path file, String settings, long errorCount, List<XmlError> errors)
+            throws IOException {
+        String key = key(file, settings);
+        long size;
+        long modified;
+        long hash;
+        if (key.equals(hashedKey)) {
+            size = hashedSize;
+            modified = hashedModified;
+            hash = hashedValue;
+        } else {
+            size = Files.size(file);
+            modified = Files.getLastModifiedTime(file).toMillis();
+            hash = fullHash ? hash(file) : sampledHash(file);
+        }
+        hashedKey = null;
+
+        long bytes = 64 + 2L * key.length();
+        for (XmlError error : errors) {
+            bytes += 32 + nameBytes(error.getFirst()) + nameBytes(error.getSecond());
+        }
+
+        Entry old = entries.put(key, new Entry(size, modified, hash, errorCount,
+                new ArrayList<XmlError>(errors), bytes));
+        if (old != null) {
+            totalBytes -= old.bytes;
+        }
+        totalBytes += bytes;
+        dirty = true;
+        evict();
+    }
+
+    /**
+     * Drops least recently used entries until both limits are met.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that were not
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the cache back to its file if it changed, replacing the old
+     * file atomically. Entries are written least recently used first, so
+     * the LRU order survives a reload.
+     *
+     * @throws IOException if writing fails
+     */
+    public void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.hash);
+                out.writeLong(entry.errorCount);
+                out.writeLong(entry.bytes);
+                out.writeInt(entry.errors.size());
+                for (XmlError error : entry.errors) {
+                    error.writeTo(out);
+                }
+            }
+        }
+        Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    /**
+     * Loads the cache file, keeping whatever was read before any damage.
+     */
+    private void load() {
+        try (InputStream is = Files.newInputStream(cacheFile);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                long hash = in.readLong();
+                long errorCount = in.readLong();
+                long bytes = in.readLong();
+                int n = in.readInt();
+                List<XmlError> errors = new ArrayList<XmlError>(Math.max(0, Math.min(n, 1024)));
+                for (int j = 0; j < n; j++) {
+                    errors.add(XmlError.readFrom(in));
+                }
+                entries.put(key, new Entry(size, modified, hash, errorCount, errors, bytes));
+                totalBytes += bytes;
+            }
+        } catch (NoSuchFileException ex) {
+            // No cache yet.
+        } catch (IOException ex) {
+            // A damaged cache only costs re-validation.
+            dirty = true;
+        }
+        evict();
+    }
+
+    /**
+     * Builds the lookup key from the file's absolute path, the settings
+     * and the hashing mode.
+     */
+    private String key(Path file, String settings) {
+        return file.toAbsolutePath().normalize() + "\u0000" + settings
+                + (fullHash ? "\u0000full" : "");
+    }
+
+    /**
+     * Rough in-memory size of an optional name.
+     */
+    private static long nameBytes(String name) {
+        return name == null ? 0 : 2L * name.length();
+    }
+
+    /**
+     * Computes the CRC-32 of a file's contents, reading it in large
+     * blocks through a direct buffer. CRC-32 runs at memory speed on
+     * current JVMs, so this is much cheaper than validating the file.
+     *
+     * @param file the file to hash
+     * @return the hash, combined with the file's length
+     * @throws IOException if the file cannot be read
+     */
+    public static long hash(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        long length = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                length += buffer.remaining();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (length << 32) ^ crc.getValue();
+    }
+
+    /**
+     * Computes the CRC-32 of SAMPLE_COUNT blocks of SAMPLE_SIZE bytes
+     * spread evenly over a file, the first at its start and the last at
+     * its end. A file no larger than the blocks together is hashed whole.
+     *
+     * @param file the file to hash
+     * @return the hash, combined with the file's length
+     * @throws IOException if the file cannot be read
+     */
+    public static long sampledHash(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SAMPLE_SIZE);
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size <= (long) SAMPLE_SIZE * SAMPLE_COUNT) {
+                return hash(file);
+            }
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                long position = (size - SAMPLE_SIZE) * i / (SAMPLE_COUNT - 1);
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;    // the file shrank meanwhile
+                    }
+                }
+                buffer.flip();
+                crc.update(buffer);
+            }
+        }
+        return (size << 32) ^ crc.getValue();
+    }
+
+    /**
+     * A cached validation result.
+     */
+    public static final class Result {
+        private final long errorCount;
+        private final List<XmlError> errors;
+
+        Result(long errorCount, List<XmlError> errors) {
+            this.errorCount = errorCount;
+            this.errors = errors;
+        }
+
+        /**
+         * @return the number of errors the file had
+         */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * @return the errors that were reported, in order
+         */
+        public List<XmlError> getErrors() {
+            return errors;
+        }
+    }
+}
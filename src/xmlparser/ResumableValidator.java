@@ -0,0 +1,176 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Validates a file while periodically checkpointing the validator state
+ * to a sidecar file (see Checkpoint). If a run is killed or preempted, the
+ * next run over the same, unchanged file resumes from the last checkpoint
+ * instead of from byte 0. Errors found before that checkpoint were already
+ * reported by the earlier run and are not reported again; the error count
+ * returned always covers the whole document.
+ *
+ * The sidecar file is deleted once the document has been validated to the
+ * end. A checkpoint for a file whose size or modification time changed,
+ * or one taken under other validation settings, is ignored: its error
+ * count and open-element and namespace state were gathered under other
+ * rules.
+ */
+public class ResumableValidator {
+
+    private final ParserLimits limits;
+    private final ErrorReporter reporter;
+    private final ErrorMode mode;
+    private final long stopAfter;
+    private final long intervalBytes;
+
+    private long resumedFrom = -1;   // offset of the last run's checkpoint, or -1
+    private ScanMetrics metrics;
+    private boolean checkAttributes;
+    private boolean checkNamespaces;
+    private boolean checkReferences;
+    private String settings = "";
+
+    /**
+     * Constructs a validator that checkpoints every intervalBytes bytes.
+     *
+     * @param limits the resource limits to enforce
+     * @param reporter the destination for errors
+     * @param mode how many errors to look for
+     * @param stopAfter number of errors after which FIRST_N mode stops
+     * @param intervalBytes the minimum number of bytes between checkpoints
+     */
+    public ResumableValidator(ParserLimits limits, ErrorReporter reporter, ErrorMode mode,
+            long stopAfter, long intervalBytes) {
+        this.limits = limits;
+        this.reporter = reporter;
+        this.mode = mode;
+        this.stopAfter = stopAfter;
+        this.intervalBytes = intervalBytes;
+    }
+
+    /**
+     * Validates the file, resuming from its checkpoint if it has one.
+     *
+     * @param file the document to validate
+     * @return the number of errors in the whole document
+     * @throws IOException if reading, reporting or checkpointing fails; the
+     *         last checkpoint is kept so a later run can resume
+     */
+    public long validate(Path file) throws IOException {
+
+        final Path sidecar = Checkpoint.sidecarFor(file);
+        final long size = Files.size(file);
+        final long modified = Files.getLastModifiedTime(file).toMillis();
+
+        Checkpoint checkpoint = Checkpoint.read(sidecar);
+        if (checkpoint != null
+                && (checkpoint.fileSize != size || checkpoint.fileModified != modified
+                    || checkpoint.offset > size || !checkpoint.settings.equals(settings))) {
+            checkpoint = null;
+        }
+
+        XmlValidator validator = new XmlValidator(limits, reporter, mode, stopAfter);
+        validator.setCheckAttributes(checkAttributes);
+        validator.setCheckNamespaces(checkNamespaces);
+        validator.setCheckReferences(checkReferences);
+        validator.setCheckpointListener(new CheckpointListener() {
+            @Override
+            public void checkpoint(Checkpoint state) throws IOException {
+                state.forFile(size, modified, settings).write(sidecar);
+            }
+        }, intervalBytes);
+
+        long start = checkpoint == null ? 0 : checkpoint.offset;
+        resumedFrom = checkpoint == null ? -1 : start;
+
+        try (InputStream in = openAt(file, start)) {
+            XmlTokenizer tokenizer = checkpoint == null
+                    ? new XmlTokenizer(in, limits)
+                    : validator.restore(checkpoint, in);
+            if (metrics != null) {
+                tokenizer.setMetrics(metrics);
+            }
+            new XmlEventScanner(tokenizer, validator).parse();
+            reporter.flush();
+            Files.deleteIfExists(sidecar);
+            return validator.getErrorCount();
+        }
+    }
+
+    /**
+     * Chooses whether attributes are checked (see XmlValidator).
+     *
+     * @param check true to check attributes
+     */
+    public void setCheckAttributes(boolean check) {
+        this.checkAttributes = check;
+    }
+
+    /**
+     * Chooses whether namespace prefixes are checked (see XmlValidator).
+     *
+     * @param check true to check namespaces
+     */
+    public void setCheckNamespaces(boolean check) {
+        this.checkNamespaces = check;
+    }
+
+    /**
+     * Chooses whether references are checked (see XmlValidator).
+     *
+     * @param check true to check references
+     */
+    public void setCheckReferences(boolean check) {
+        this.checkReferences = check;
+    }
+
+    /**
+     * Describes the validation settings in force, e.g. the error mode,
+     * the checks made and the limits. They are saved with each checkpoint,
+     * and a checkpoint saved under different settings is not resumed.
+     *
+     * @param settings a string that differs whenever the settings do
+     */
+    public void setSettings(String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Adds the scan counters of every file validated to the given ones.
+     *
+     * @param metrics the counters to add to
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the byte offset the last validate() resumed from, or -1 if
+     *         it started from the beginning of the file
+     */
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    /**
+     * Opens the file positioned at the given byte offset. The position is
+     * set directly on the channel, so nothing before it is read.
+     *
+     * @param file the document
+     * @param offset the byte offset to start reading at
+     * @return a stream over the rest of the file
+     * @throws IOException if the file cannot be opened
+     */
+    protected InputStream openAt(Path file, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+}
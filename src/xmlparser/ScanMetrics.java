@@ -0,0 +1,83 @@
+package xmlparser;
+
+/**
+ * Counters kept by XmlTokenizer while scanning: the comments, CDATA
+ * sections and DOCTYPE declarations it stepped over, and how many bytes
+ * they took. One instance can be shared by the tokenizers of several
+ * documents to total a whole run.
+ */
+public class ScanMetrics {
+
+    private long comments;
+    private long cdataSections;
+    private long doctypes;
+    private long skippedBytes;
+
+    /**
+     * Counts a comment, CDATA section or DOCTYPE declaration that has
+     * been scanned to its end.
+     *
+     * @param kind XmlTokenizer.COMMENT, CDATA or DOCTYPE
+     * @param bytes the bytes it took, delimiters included
+     */
+    void skipped(int kind, long bytes) {
+        switch (kind) {
+            case XmlTokenizer.COMMENT:
+                comments++;
+                break;
+            case XmlTokenizer.CDATA:
+                cdataSections++;
+                break;
+            default:
+                doctypes++;
+                break;
+        }
+        skippedBytes += bytes;
+    }
+
+    /**
+     * Adds another set of counters to this one.
+     *
+     * @param other the counters to add
+     */
+    public void add(ScanMetrics other) {
+        comments += other.comments;
+        cdataSections += other.cdataSections;
+        doctypes += other.doctypes;
+        skippedBytes += other.skippedBytes;
+    }
+
+    /**
+     * @return the number of comments skipped
+     */
+    public long getComments() {
+        return comments;
+    }
+
+    /**
+     * @return the number of CDATA sections skipped
+     */
+    public long getCdataSections() {
+        return cdataSections;
+    }
+
+    /**
+     * @return the number of DOCTYPE declarations skipped
+     */
+    public long getDoctypes() {
+        return doctypes;
+    }
+
+    /**
+     * @return the bytes taken by everything skipped
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "Skipped " + skippedBytes + " bytes in " + comments + " comment(s), "
+                + cdataSections + " CDATA section(s), " + doctypes + " DOCTYPE declaration(s)";
+    }
+}
@@ -0,0 +1,41 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes errors as plain text lines in the classic "[Line N] message"
+ * form, adding the byte column and byte offset when they are known:
+ * "[Line N, Col C, Byte B] message".
+ */
+public class TextErrorReporter extends BufferedErrorReporter {
+
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Constructs a reporter writing to the given stream.
+     *
+     * @param out the underlying stream
+     */
+    public TextErrorReporter(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Formats the error and appends it to the buffer.
+     */
+    @Override
+    public void report(XmlError error) throws IOException {
+        line.setLength(0);
+        line.append("[Line ").append(error.getLine());
+        if (error.getColumn() > 0) {
+            line.append(", Col ").append(error.getColumn());
+        }
+        if (error.getOffset() >= 0) {
+            line.append(", Byte ").append(error.getOffset());
+        }
+        line.append("] ").append(error.getMessage()).append('\n');
+        writeText(line);
+        flushIfFull();
+    }
+}
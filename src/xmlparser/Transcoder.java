@@ -0,0 +1,403 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opens XML documents for the tokenizer, which reads UTF-8. The encoding
+ * of each document is detected first (see XmlEncoding):
+ *
+ * - UTF-8 and US-ASCII documents are passed through untouched, so their
+ *   byte offsets stay file offsets. A UTF-8 byte order mark is left in
+ *   place; the tokenizer sees it as text before the root element.
+ * - Any other encoding is decoded and re-encoded as UTF-8 on the fly;
+ *   byte offsets in errors are then offsets into that UTF-8 text. Runs
+ *   of ASCII in a single-byte, ASCII-compatible charset (ISO-8859-x,
+ *   windows-125x) are copied straight through instead of being decoded.
+ *
+ * One decoder per charset and one set of buffers are kept and reused for
+ * every document, so a batch of files allocates them once. A Transcoder
+ * therefore serves one open document at a time.
+ *
+ * Each document is timed from open() to close() and totalled per
+ * encoding; getThroughput() describes the totals.
+ */
+public class Transcoder {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Map<Charset, CharsetDecoder> decoders = new HashMap<Charset, CharsetDecoder>();
+    private final Map<Charset, Boolean> singleByteAscii = new HashMap<Charset, Boolean>();
+    private final byte[] head = new byte[XmlEncoding.HEAD_SIZE];
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    // Totals per encoding: documents, input bytes, nanoseconds
+    private final Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+
+    private XmlEncoding encoding;
+
+    /**
+     * Detects a document's encoding and returns its content as UTF-8.
+     * Closing the returned stream closes the given one.
+     *
+     * @param in the document's raw bytes
+     * @return the document as UTF-8
+     * @throws IOException if reading fails or the encoding is unsupported
+     */
+    public InputStream open(InputStream in) throws IOException {
+        long started = System.nanoTime();
+        int n = XmlEncoding.readHead(in, head);
+        try {
+            encoding = XmlEncoding.detect(head, n);
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+
+        if (encoding.isUtf8()) {
+            return new PassThroughStream(in, n, started);
+        }
+
+        Charset charset = encoding.getCharset();
+        CharsetDecoder decoder = decoders.get(charset);
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.put(charset, decoder);
+            singleByteAscii.put(charset, isSingleByteAscii(charset));
+        }
+        decoder.reset();
+        bytes.clear();
+        bytes.put(head, encoding.getBomLength(), n - encoding.getBomLength());
+        bytes.flip();
+        chars.clear();
+        chars.flip();
+        return new TranscodingStream(in, decoder, singleByteAscii.get(charset), n, started);
+    }
+
+    /**
+     * @return the encoding of the document opened last, or null
+     */
+    public XmlEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Describes the documents read so far, one line per encoding: how many,
+     * how many input bytes, and how fast they were validated.
+     *
+     * @return the description, or "" if nothing has been read
+     */
+    public String getThroughput() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, long[]> e : totals.entrySet()) {
+            long[] t = e.getValue();
+            double seconds = Math.max(t[2], 1) / 1e9;
+            if (text.length() > 0) {
+                text.append(System.lineSeparator());
+            }
+            text.append(String.format("%s: %d file(s), %d bytes in %.1f ms (%.1f MB/s)",
+                    e.getKey(), t[0], t[1], t[2] / 1e6, t[1] / seconds / 1e6));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Adds a closed document to the totals of its encoding.
+     */
+    private void count(long inputBytes, long started) {
+        long[] t = totals.get(encoding.getCharset().name());
+        if (t == null) {
+            t = new long[3];
+            totals.put(encoding.getCharset().name(), t);
+        }
+        t[0]++;
+        t[1] += inputBytes;
+        t[2] += System.nanoTime() - started;
+    }
+
+    /**
+     * Tells whether a charset maps every byte to one char and the bytes
+     * 0-127 to ASCII, so ASCII bytes can be copied without decoding.
+     */
+    private static boolean isSingleByteAscii(Charset charset) {
+        if (charset.newEncoder().maxBytesPerChar() != 1) {
+            return false;
+        }
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        String decoded = new String(ascii, charset);
+        if (decoded.length() != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length; i++) {
+            if (decoded.charAt(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A UTF-8 document: the head already read, then the rest of the stream.
+     */
+    private final class PassThroughStream extends InputStream {
+        private final InputStream in;
+        private final int headLength;
+        private final long started;
+        private int headPos;
+        private long total;
+        private boolean closed;
+
+        PassThroughStream(InputStream in, int headLength, long started) {
+            this.in = in;
+            this.headLength = headLength;
+            this.started = started;
+            this.total = headLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (headPos < headLength) {
+                int n = Math.min(len, headLength - headPos);
+                System.arraycopy(head, headPos, b, off, n);
+                headPos += n;
+                return n;
+            }
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                total += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                count(total, started);
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Any other document: raw bytes are decoded into the shared char
+     * buffer, and chars are encoded into the caller's array as UTF-8.
+     * The shared byte buffer holds raw bytes not yet decoded.
+     */
+    private final class TranscodingStream extends InputStream {
+        private final InputStream in;
+        private final CharsetDecoder decoder;
+        private final boolean copyAscii;
+        private final long started;
+        private final byte[] spill = new byte[4];  // the rest of a char cut off by len
+        private int spillPos;
+        private int spillLength;
+        private long total;
+        private boolean eof;
+        private boolean flushed;
+        private boolean closed;
+
+        TranscodingStream(InputStream in, CharsetDecoder decoder, boolean copyAscii,
+                int headLength, long started) {
+            this.in = in;
+            this.decoder = decoder;
+            this.copyAscii = copyAscii;
+            this.started = started;
+            this.total = headLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (spillPos < spillLength) {
+                    int n = Math.min(len, spillLength - spillPos);
+                    System.arraycopy(spill, spillPos, b, off, n);
+                    spillPos += n;
+                    return n;
+                }
+                int n = encode(b, off, off + len);
+                if (n > 0) {
+                    return n;
+                }
+                if (copyAscii && !chars.hasRemaining()) {
+                    n = copyAscii(b, off, off + len);
+                    if (n > 0) {
+                        return n;
+                    }
+                }
+                if (!decode()) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Copies the run of ASCII bytes at the start of the byte buffer.
+         */
+        private int copyAscii(byte[] b, int from, int to) {
+            byte[] raw = bytes.array();
+            int p = bytes.position();
+            int limit = Math.min(bytes.limit(), p + (to - from));
+            int start = p;
+            while (p < limit && raw[p] >= 0) {
+                b[from++] = raw[p++];
+            }
+            bytes.position(p);
+            return p - start;
+        }
+
+        /**
+         * Encodes decoded chars into b[from, to) as UTF-8.
+         *
+         * @return the number of bytes written
+         */
+        private int encode(byte[] b, int from, int to) {
+            int start = from;
+            while (chars.hasRemaining() && from < to) {
+                char c = chars.get();
+                if (c < 0x80) {
+                    b[from++] = (byte) c;
+                    continue;
+                }
+                int code = c;
+                if (Character.isHighSurrogate(c)) {
+                    if (!chars.hasRemaining() && !flushed) {
+                        // Wait for the low surrogate.
+                        chars.position(chars.position() - 1);
+                        break;
+                    }
+                    char low = chars.hasRemaining() ? chars.get(chars.position()) : 0;
+                    if (Character.isLowSurrogate(low)) {
+                        code = Character.toCodePoint(c, chars.get());
+                    } else {
+                        code = 0xFFFD;
+                    }
+                } else if (Character.isLowSurrogate(c)) {
+                    code = 0xFFFD;
+                }
+                int n = utf8(code, spill);
+                int fit = Math.min(n, to - from);
+                System.arraycopy(spill, 0, b, from, fit);
+                from += fit;
+                spillPos = fit;
+                spillLength = n;
+                if (fit < n) {
+                    break;
+                }
+            }
+            return from - start;
+        }
+
+        /**
+         * Decodes more raw bytes into the char buffer.
+         *
+         * @return false once everything has been decoded and encoded
+         */
+        private boolean decode() throws IOException {
+            if (flushed) {
+                return false;
+            }
+            chars.compact();
+            if (!eof && bytes.remaining() < BUFFER_SIZE / 2) {
+                bytes.compact();
+                int r = in.read(bytes.array(), bytes.position(), bytes.remaining());
+                if (r < 0) {
+                    eof = true;
+                } else {
+                    bytes.position(bytes.position() + r);
+                    total += r;
+                }
+                bytes.flip();
+            }
+
+            // Only decode up to the next ASCII byte when those are copied.
+            int limit = bytes.limit();
+            if (copyAscii) {
+                byte[] raw = bytes.array();
+                int p = bytes.position();
+                while (p < limit && raw[p] < 0) {
+                    p++;
+                }
+                bytes.limit(p);
+            }
+            decoder.decode(bytes, chars, eof && bytes.limit() == limit);
+            bytes.limit(limit);
+
+            if (eof && !bytes.hasRemaining()) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+            chars.flip();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                count(total, started);
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a code point as UTF-8.
+     *
+     * @return the number of bytes written
+     */
+    private static int utf8(int code, byte[] out) {
+        if (code < 0x80) {
+            out[0] = (byte) code;
+            return 1;
+        }
+        if (code < 0x800) {
+            out[0] = (byte) (0xC0 | code >> 6);
+            out[1] = (byte) (0x80 | code & 0x3F);
+            return 2;
+        }
+        if (code < 0x10000) {
+            out[0] = (byte) (0xE0 | code >> 12);
+            out[1] = (byte) (0x80 | code >> 6 & 0x3F);
+            out[2] = (byte) (0x80 | code & 0x3F);
+            return 3;
+        }
+        out[0] = (byte) (0xF0 | code >> 18);
+        out[1] = (byte) (0x80 | code >> 12 & 0x3F);
+        out[2] = (byte) (0x80 | code >> 6 & 0x3F);
+        out[3] = (byte) (0x80 | code & 0x3F);
+        return 4;
+    }
+}
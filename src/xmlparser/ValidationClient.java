@@ -0,0 +1,154 @@
+package xmlparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Client side of ValidationServer's protocol: sends FILE and DATA
+ * requests over one connection and reads the replies, which come back in
+ * request order. Requests are only buffered until flush() or the next
+ * receive(), so several can be in flight at once.
+ *
+ * loadTest() uses this to measure the server's latency.
+ */
+public class ValidationClient implements Closeable {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final List<String> records = new ArrayList<>();
+
+    /**
+     * Connects to a server on the loopback interface.
+     *
+     * @param port the server's port
+     * @throws IOException if the connection fails
+     */
+    public ValidationClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Requests validation of a file, as the server sees it.
+     *
+     * @param path the file's path
+     * @throws IOException if sending fails
+     */
+    public void sendFile(String path) throws IOException {
+        out.write(("FILE " + path + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Requests validation of a document sent along with the request.
+     *
+     * @param document the document's bytes
+     * @throws IOException if sending fails
+     */
+    public void sendData(byte[] document) throws IOException {
+        out.write(("DATA " + document.length + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(document);
+    }
+
+    /**
+     * Sends the requests buffered so far.
+     *
+     * @throws IOException if sending fails
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Waits for the reply to the oldest request not yet answered.
+     *
+     * @return its summary line; its error records are in getRecords()
+     * @throws IOException if the connection fails or closes first
+     */
+    public String receive() throws IOException {
+        out.flush();
+        records.clear();
+        String line;
+        while ((line = ValidationServer.readLine(in)) != null) {
+            if (line.contains("\"result\":")) {
+                return line;
+            }
+            records.add(line);
+        }
+        throw new EOFException("Server closed the connection");
+    }
+
+    /**
+     * @return the error records of the reply received last, as JSON
+     */
+    public List<String> getRecords() {
+        return records;
+    }
+
+    /**
+     * Validates the files round-robin, keeping up to pipeline requests in
+     * flight, and times each from sending it to receiving its reply.
+     *
+     * @param paths the files to request
+     * @param requests the number of requests to make in all
+     * @param pipeline the most requests in flight at once
+     * @return each request's latency in nanoseconds, in ascending order
+     * @throws IOException if the connection fails
+     */
+    public long[] loadTest(List<String> paths, int requests, int pipeline) throws IOException {
+        long[] sent = new long[requests];
+        long[] latencies = new long[requests];
+        int next = 0;
+        for (int done = 0; done < requests; done++) {
+            if (next < requests && next - done < pipeline) {
+                while (next < requests && next - done < pipeline) {
+                    sendFile(paths.get(next % paths.size()));
+                    sent[next++] = System.nanoTime();
+                }
+                flush();
+            }
+            receive();
+            latencies[done] = System.nanoTime() - sent[done];
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Returns a percentile of sorted values, by the nearest-rank method.
+     *
+     * @param sorted values in ascending order, at least one
+     * @param percent the percentile, from 0 to 100
+     * @return the smallest value not below that share of the values
+     */
+    public static long percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    /**
+     * Sends QUIT and closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("QUIT\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+}
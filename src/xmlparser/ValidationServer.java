@@ -0,0 +1,781 @@
+package xmlparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import exceptions.StopParsingException;
+
+/**
+ * Validates documents for clients connecting over TCP on the loopback
+ * interface, so that a stream of small documents does not pay for a JVM
+ * start and JIT warm-up each. Documents are validated on a fixed pool of
+ * worker threads that is started, and warmed up on a generated document,
+ * before the first connection is accepted.
+ *
+ * A client sends requests, each one line of ASCII:
+ *
+ *   FILE path            validate the file at path (gzip and zlib files
+ *                        are inflated); relative paths are resolved
+ *                        against the server's working directory, and
+ *                        only regular files are read
+ *   DATA length          validate the length bytes after the newline
+ *
+ * and may send any number before reading a reply (pipelining): requests
+ * are validated in parallel, but replies come back in request order.
+ * Each reply is the document's errors as JSON Lines, in the form of
+ * JsonLinesErrorReporter, followed by a summary line, e.g.
+ *
+ *   {"source":"a.xml","result":"invalid","errors":2,"micros":850}
+ *
+ * where result is valid, invalid, timeout (the request was not done
+ * within the timeout, counted from its arrival; errors found until then
+ * are still listed) or failed (with a "message": the file could not be
+ * read, or the request was malformed). A malformed request is answered
+ * like any other and the connection stays open; only a DATA request cut
+ * short by the end of the connection is not followed by more. A client
+ * closes its connection, or sends QUIT, once it has what it needs.
+ *
+ * DATA bodies are held in memory until validated. A connection may hold
+ * at most MAX_DATA_LENGTH bytes of them at once, and all connections
+ * together at most MAX_DATA_IN_FLIGHT bytes or half the heap, whichever
+ * is less; reading the next body waits until enough are free.
+ *
+ * A request's own validation stops itself at its deadline, checking the
+ * clock on every read and every 1024 tags. A worker that does not (e.g.
+ * one blocked in a read) is interrupted shortly after the deadline, and
+ * the reply is written without waiting for it any longer.
+ */
+public class ValidationServer implements Closeable {
+
+    /** Largest DATA request accepted, in bytes. */
+    public static final int MAX_DATA_LENGTH = 256 * 1024 * 1024;
+
+    /** Most requests of a connection in progress at once. */
+    private static final int MAX_IN_FLIGHT = 256;
+
+    /** Most bytes of DATA bodies held by all connections at once. */
+    private static final long MAX_DATA_IN_FLIGHT = 1024L * 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int WARM_UP_ROUNDS = 200;
+
+    /** How long past its deadline the writer waits for a request to stop itself. */
+    private static final long GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ParserLimits limits;
+    private final ErrorMode mode;
+    private final long stopAfter;
+    private final long timeoutNanos;
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final ThreadLocal<Transcoder> transcoders = ThreadLocal.withInitial(Transcoder::new);
+    private final ByteBudget dataBudget = new ByteBudget(
+            Math.min(MAX_DATA_IN_FLIGHT, Runtime.getRuntime().maxMemory() / 2));
+    private boolean checkAttributes;
+    private boolean checkNamespaces;
+    private boolean checkReferences;
+
+    /**
+     * Opens the server's socket and starts its workers.
+     *
+     * @param port the loopback port to listen on, or 0 for any free port
+     * @param workerCount the number of documents validated at once
+     * @param timeoutMillis the longest a request may take
+     * @param limits the resource limits to enforce on every document
+     * @param mode how many errors to look for
+     * @param stopAfter number of errors after which FIRST_N mode stops
+     * @throws IOException if the port cannot be opened
+     * @throws IllegalArgumentException if workerCount or timeoutMillis is
+     *         not positive
+     */
+    public ValidationServer(int port, int workerCount, long timeoutMillis, ParserLimits limits,
+            ErrorMode mode, long stopAfter) throws IOException {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+        }
+        this.limits = limits;
+        this.mode = mode;
+        this.stopAfter = stopAfter;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.workerCount = workerCount;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task, "xml-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Chooses whether attributes are checked (see XmlValidator).
+     *
+     * @param check true to check attributes
+     */
+    public void setCheckAttributes(boolean check) {
+        checkAttributes = check;
+    }
+
+    /**
+     * Chooses whether namespace prefixes are checked (see XmlValidator).
+     *
+     * @param check true to check namespaces
+     */
+    public void setCheckNamespaces(boolean check) {
+        checkNamespaces = check;
+    }
+
+    /**
+     * Chooses whether references are checked (see XmlValidator).
+     *
+     * @param check true to check references
+     */
+    public void setCheckReferences(boolean check) {
+        checkReferences = check;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Warms the workers up, then accepts connections until the server is
+     * closed. Each connection is served by a thread reading its requests
+     * and one writing its replies.
+     *
+     * @throws IOException if warming up fails
+     */
+    public void serve() throws IOException {
+        warmUp();
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException ex) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw ex;
+            }
+            Thread thread = new Thread(() -> handle(socket), "xml-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting connections and stops the workers.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Validates a generated document repeatedly on every worker, so the
+     * scanning code is compiled before the first request.
+     */
+    private void warmUp() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<root>\n");
+        for (int i = 0; i < 500; i++) {
+            xml.append("  <record id=\"").append(i).append("\"><name>record &amp; ").append(i)
+                    .append("</name><!-- note --><empty/></record>\n");
+        }
+        byte[] document = xml.append("</root>\n").toString().getBytes(StandardCharsets.UTF_8);
+
+        long deadline = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+        Future<?>[] rounds = new Future<?>[workerCount];
+        for (int w = 0; w < workerCount; w++) {
+            rounds[w] = workers.submit(() -> {
+                for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                    validate("warm-up", () -> new ByteArrayInputStream(document), deadline);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<?> round : rounds) {
+                await(round);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads a connection's requests, handing each to the workers, while
+     * a second thread writes the replies in order. When too many requests
+     * are in progress, or their DATA bodies take too much memory, reading
+     * waits.
+     */
+    private void handle(Socket socket) {
+        BlockingQueue<Pending> replies = new ArrayBlockingQueue<>(MAX_IN_FLIGHT);
+        ByteBudget connectionBudget = new ByteBudget(MAX_DATA_LENGTH);
+        Pending end = new Pending(CompletableFuture.completedFuture(null), null, 0, null);
+        Thread writer = null;
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            writer = new Thread(() -> writeReplies(replies, out, s), "xml-replies");
+            writer.setDaemon(true);
+            writer.start();
+
+            long requests = 0;
+            while (true) {
+                String line;
+                try {
+                    line = readLine(in);
+                } catch (ProtocolException ex) {
+                    replies.put(failed("request#" + ++requests, ex.getMessage(),
+                            System.nanoTime()));
+                    continue;
+                }
+                if (line == null || line.equals("QUIT")) {
+                    break;
+                }
+                long arrived = System.nanoTime();
+                long deadline = arrived + timeoutNanos;
+                long number = ++requests;
+                if (line.startsWith("FILE ")) {
+                    String path = line.substring(5);
+                    replies.put(new Pending(workers.submit(() -> validate(path,
+                            () -> openFile(path), deadline)), path, arrived, null));
+                } else if (line.startsWith("DATA ")) {
+                    String source = "data#" + number;
+                    Reservation held = null;
+                    byte[] data;
+                    try {
+                        int length = dataLength(in, line.substring(5));
+                        held = new Reservation(connectionBudget, dataBudget, length);
+                        data = readData(in, length);
+                    } catch (ProtocolException ex) {
+                        replies.put(failed(source, ex.getMessage(), arrived));
+                        continue;
+                    } catch (IOException ex) {
+                        if (held != null) {
+                            held.release();
+                        }
+                        if (!(ex instanceof EOFException)) {
+                            throw ex;
+                        }
+                        replies.put(failed(source, ex.getMessage(), arrived));
+                        break;
+                    }
+                    Reservation reservation = held;
+                    replies.put(new Pending(workers.submit(() -> {
+                        try {
+                            return validate(source, () -> new ByteArrayInputStream(data),
+                                    deadline);
+                        } finally {
+                            reservation.release();
+                        }
+                    }), source, arrived, reservation));
+                } else {
+                    replies.put(failed("request#" + number, "Unknown request: " + line, arrived));
+                }
+            }
+            replies.put(end);
+            writer.join();
+
+        } catch (IOException ex) {
+            // The client went away or broke the protocol; drop the connection.
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes replies in request order, waiting for each in turn, until
+     * the end marker, a null reply, is taken.
+     */
+    private void writeReplies(BlockingQueue<Pending> replies, OutputStream out, Socket socket) {
+        try {
+            while (true) {
+                // Flush only when no reply is ready, so pipelined replies
+                // share writes.
+                Pending next = replies.poll();
+                if (next == null) {
+                    out.flush();
+                    next = replies.take();
+                }
+                byte[] reply = awaitReply(next);
+                if (next.reservation != null) {
+                    // Also covers a request cancelled before it started.
+                    next.reservation.release();
+                }
+                if (reply == null) {
+                    out.flush();
+                    return;
+                }
+                out.write(reply);
+            }
+        } catch (IOException ex) {
+            // Unblock the reader, which then fails on the closed socket.
+            closeQuietly(socket);
+            replies.clear();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for a request's reply until shortly after its deadline. A
+     * request that has not stopped itself by then is cancelled, which
+     * interrupts its worker, and answered with a timeout.
+     *
+     * @return the reply, or null for the end marker
+     */
+    private byte[] awaitReply(Pending pending) throws InterruptedException {
+        long wait = pending.arrived + timeoutNanos + GRACE_NANOS - System.nanoTime();
+        try {
+            return pending.reply.get(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            pending.reply.cancel(true);
+            return summary(new ByteArrayOutputStream(), pending.source, "timeout", 0, null,
+                    pending.arrived);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            return failure(pending.source, cause.getClass().getSimpleName() + ": "
+                    + cause.getMessage(), pending.arrived);
+        }
+    }
+
+    /**
+     * Opens a FILE request's document. Anything but a regular file (a
+     * directory, a FIFO or a device) is refused, since opening or reading
+     * it may block the worker indefinitely.
+     */
+    private static InputStream openFile(String path) throws IOException {
+        Path file = Paths.get(path);
+        if (Files.exists(file) && !Files.isRegularFile(file)) {
+            throw new IOException("Not a regular file: " + path);
+        }
+        return CompressedInput.open(file);
+    }
+
+    /**
+     * Validates one document, returning its errors and summary line as a
+     * reply. Requests still waiting at their deadline are not started.
+     */
+    private byte[] validate(String source, DocumentSource document, long deadline)
+            throws IOException {
+        long started = System.nanoTime();
+        if (started - deadline >= 0) {
+            return summary(new ByteArrayOutputStream(), source, "timeout", 0, null,
+                    deadline - timeoutNanos);
+        }
+
+        ByteArrayOutputStream reply = new ByteArrayOutputStream(256);
+        JsonLinesErrorReporter reporter = new JsonLinesErrorReporter(reply);
+        reporter.startDocument(source);
+        XmlValidator validator = new XmlValidator(limits, reporter, mode, stopAfter);
+        validator.setCheckAttributes(checkAttributes);
+        validator.setCheckNamespaces(checkNamespaces);
+        validator.setCheckReferences(checkReferences);
+        Deadline timer = new Deadline(validator, deadline);
+
+        try (InputStream in = transcoders.get().open(
+                new TimedInputStream(document.open(), timer))) {
+            new XmlEventScanner(new XmlTokenizer(in, limits), timer).parse();
+        } catch (IOException ex) {
+            if (!timer.expired) {
+                return failure(source, ex.getClass().getSimpleName() + ": " + ex.getMessage(),
+                        deadline - timeoutNanos);
+            }
+        }
+        long errors = validator.getErrorCount();
+        reporter.endDocument(errors);
+        reporter.flush();
+        String result = timer.expired ? "timeout" : errors == 0 ? "valid" : "invalid";
+        return summary(reply, source, result, errors, null, deadline - timeoutNanos);
+    }
+
+    private static byte[] failure(String source, String message, long arrived) {
+        return summary(new ByteArrayOutputStream(), source, "failed", 0,
+                message == null ? "failed" : message, arrived);
+    }
+
+    /**
+     * @return a request already answered with a failure
+     */
+    private static Pending failed(String source, String message, long arrived) {
+        return new Pending(CompletableFuture.completedFuture(failure(source, message, arrived)),
+                source, arrived, null);
+    }
+
+    /**
+     * Appends the summary line to a reply.
+     */
+    private static byte[] summary(ByteArrayOutputStream reply, String source, String result,
+            long errors, String message, long arrived) {
+        StringBuilder line = new StringBuilder(128);
+        line.append("{\"source\":");
+        JsonLinesErrorReporter.appendString(line, source);
+        line.append(",\"result\":\"").append(result).append('"');
+        line.append(",\"errors\":").append(errors);
+        if (message != null) {
+            line.append(",\"message\":");
+            JsonLinesErrorReporter.appendString(line, message);
+        }
+        line.append(",\"micros\":")
+                .append(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - arrived));
+        line.append("}\n");
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        reply.write(bytes, 0, bytes.length);
+        return reply.toByteArray();
+    }
+
+    /**
+     * Parses the length of a DATA request. A body longer than
+     * MAX_DATA_LENGTH is skipped, so the next request is still found.
+     *
+     * @throws ProtocolException if the length is not a number or too large
+     * @throws EOFException if the connection ends before the body does
+     */
+    private static int dataLength(InputStream in, String lengthText) throws IOException {
+        long length;
+        try {
+            length = Long.parseLong(lengthText.trim());
+        } catch (NumberFormatException ex) {
+            throw new ProtocolException("Bad DATA length: " + lengthText);
+        }
+        if (length < 0) {
+            throw new ProtocolException("Bad DATA length: " + lengthText);
+        }
+        if (length > MAX_DATA_LENGTH) {
+            long skipped = 0;
+            while (skipped < length) {
+                long n = in.skip(length - skipped);
+                if (n <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException("DATA request cut short");
+                    }
+                    n = 1;
+                }
+                skipped += n;
+            }
+            throw new ProtocolException("DATA longer than " + MAX_DATA_LENGTH + " bytes");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads the body of a DATA request.
+     *
+     * @throws EOFException if the connection ends before the body does
+     */
+    private static byte[] readData(InputStream in, int length) throws IOException {
+        byte[] data = new byte[length];
+        int n = 0;
+        while (n < data.length) {
+            int read = in.read(data, n, data.length - n);
+            if (read < 0) {
+                throw new EOFException("DATA request cut short");
+            }
+            n += read;
+        }
+        return data;
+    }
+
+    /**
+     * Reads one request line, without its line end.
+     *
+     * @return the line, or null at the end of the stream
+     * @throws ProtocolException if the line is too long; the rest of it
+     *         has been skipped
+     */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return line.length() == 0 ? null : line.toString();
+            }
+            if (line.length() == MAX_LINE_LENGTH) {
+                while (c >= 0 && c != '\n') {
+                    c = in.read();
+                }
+                throw new ProtocolException("Line longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+            line.append((char) c);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Closing anyway.
+        }
+    }
+
+    /**
+     * Opens a request's document on the worker validating it.
+     */
+    private interface DocumentSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * A request in progress, as the writer of its connection sees it.
+     */
+    private static final class Pending {
+        final Future<byte[]> reply;
+        final String source;
+        final long arrived;
+        final Reservation reservation;   // memory held by a DATA body, or null
+
+        Pending(Future<byte[]> reply, String source, long arrived, Reservation reservation) {
+            this.reply = reply;
+            this.source = source;
+            this.arrived = arrived;
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * A number of bytes that requests may hold in memory at once.
+     * acquire() waits until enough are free; a request for more than the
+     * whole budget waits for all of it.
+     */
+    private static final class ByteBudget {
+        private final long capacity;
+        private long used;
+
+        ByteBudget(long capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * @return the bytes actually taken, to be given back to release()
+         */
+        synchronized long acquire(long bytes) throws InterruptedException {
+            long n = Math.min(bytes, capacity);
+            while (used + n > capacity) {
+                wait();
+            }
+            used += n;
+            return n;
+        }
+
+        synchronized void release(long n) {
+            used -= n;
+            notifyAll();
+        }
+    }
+
+    /**
+     * The memory a DATA body holds against its connection's budget and
+     * the server's. It is released once, by whichever comes first: the
+     * worker finishing with the body, or the writer done with the request.
+     */
+    private static final class Reservation {
+        private final ByteBudget connection;
+        private final ByteBudget server;
+        private final long connectionBytes;
+        private final long serverBytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Takes the bytes from the connection's budget, then the server's,
+         * waiting for each.
+         */
+        Reservation(ByteBudget connection, ByteBudget server, long bytes)
+                throws InterruptedException {
+            this.connection = connection;
+            this.server = server;
+            connectionBytes = connection.acquire(bytes);
+            try {
+                serverBytes = server.acquire(bytes);
+            } catch (InterruptedException ex) {
+                connection.release(connectionBytes);
+                throw ex;
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                server.release(serverBytes);
+                connection.release(connectionBytes);
+            }
+        }
+    }
+
+    /**
+     * Stops reading a request's document once its deadline has passed,
+     * so a document with few or no tags cannot outlast it.
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+        private final Deadline deadline;
+
+        TimedInputStream(InputStream in, Deadline deadline) {
+            super(in);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            check();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            check();
+            return super.read(b, off, len);
+        }
+
+        private void check() throws InterruptedIOException {
+            if (deadline.due()) {
+                throw new InterruptedIOException("Request timed out");
+            }
+        }
+    }
+
+    /**
+     * Passes events on to a handler until the request's deadline has
+     * passed, then stops the scan. The clock is read on every text event
+     * but only every 1024 tags; TimedInputStream reads it on every read.
+     */
+    private static final class Deadline implements XmlHandler {
+        private final XmlHandler target;
+        private final long deadline;
+        private int countdown = 1024;
+        boolean expired;
+
+        Deadline(XmlHandler target, long deadline) {
+            this.target = target;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+            target.startDocument(locator);
+        }
+
+        @Override
+        public void startElement(String name, byte[] b, int start, int end)
+                throws IOException, StopParsingException {
+            tick();
+            target.startElement(name, b, start, end);
+        }
+
+        @Override
+        public void emptyElement(String name, byte[] b, int start, int end)
+                throws IOException, StopParsingException {
+            tick();
+            target.emptyElement(name, b, start, end);
+        }
+
+        @Override
+        public void endElement(String name) throws IOException, StopParsingException {
+            target.endElement(name);
+        }
+
+        @Override
+        public void processingInstruction(String target, byte[] b, int start, int end)
+                throws IOException, StopParsingException {
+            this.target.processingInstruction(target, b, start, end);
+        }
+
+        @Override
+        public void text(byte[] b, int start, int end) throws IOException, StopParsingException {
+            if (due()) {
+                throw new StopParsingException("Request timed out");
+            }
+            target.text(b, start, end);
+        }
+
+        @Override
+        public void error(XmlError error) throws IOException, StopParsingException {
+            target.error(error);
+        }
+
+        /**
+         * Skips the end-of-document checks of a document cut short,
+         * which would report its open elements as never closed.
+         */
+        @Override
+        public void endDocument() throws IOException, StopParsingException {
+            if (!expired) {
+                target.endDocument();
+            }
+        }
+
+        private void tick() throws StopParsingException {
+            if (--countdown > 0) {
+                return;
+            }
+            countdown = 1024;
+            if (due()) {
+                throw new StopParsingException("Request timed out");
+            }
+        }
+
+        /**
+         * @return true, and marks the request expired, once the deadline
+         *         has passed
+         */
+        boolean due() {
+            if (!expired && System.nanoTime() - deadline >= 0) {
+                expired = true;
+            }
+            return expired;
+        }
+    }
+}
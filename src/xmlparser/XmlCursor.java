@@ -0,0 +1,237 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import exceptions.LimitExceededException;
+
+/**
+ * Pull reader over an XmlTokenizer (a StAX-style cursor): the caller
+ * asks for each event with next() instead of receiving callbacks.
+ *
+ * Names, attributes and text are returned as CharSequence views into the
+ * tokenizer's buffer (see ByteSequence), so reading them creates no
+ * Strings. A view is only valid until the next call to next().
+ *
+ * A self-closing tag is returned as START_ELEMENT followed by
+ * END_ELEMENT, so callers need not treat it specially; isEmptyElement()
+ * tells the two apart. The cursor does not check nesting: end tags are
+ * reported as they appear.
+ */
+public class XmlCursor {
+
+    /** An opening or self-closing tag. */
+    public static final int START_ELEMENT = 1;
+
+    /** A closing tag, or the end of a self-closing tag. */
+    public static final int END_ELEMENT = 2;
+
+    /** A processing instruction. */
+    public static final int PROCESSING_INSTRUCTION = 3;
+
+    /** Character data between tags; only returned when text is read. */
+    public static final int CHARACTERS = 4;
+
+    /** The end of the input. */
+    public static final int END_DOCUMENT = 5;
+
+    private final XmlTokenizer tokenizer;
+    private final ByteSequence name = new ByteSequence();
+    private final ByteSequence content = new ByteSequence();
+
+    private int event;
+    private boolean empty;           // current START_ELEMENT is self-closing
+    private boolean pendingEnd;      // END_ELEMENT of a self-closing tag is next
+    private int depth;
+
+    /**
+     * Constructs a cursor over the given stream.
+     *
+     * @param in the XML input
+     * @param limits the limits to enforce
+     * @param readText true to return text between tags as CHARACTERS
+     */
+    public XmlCursor(InputStream in, ParserLimits limits, boolean readText) {
+        this(new XmlTokenizer(in, limits));
+        tokenizer.setReportText(readText);
+    }
+
+    /**
+     * Constructs a cursor over an existing tokenizer.
+     *
+     * @param tokenizer the tokenizer to read
+     */
+    public XmlCursor(XmlTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Advances to the next event.
+     *
+     * @return the type of the event
+     * @throws IOException if reading the input fails
+     * @throws LimitExceededException if a tag or line is longer than its limit
+     */
+    public int next() throws IOException, LimitExceededException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            empty = false;
+            depth--;
+            return event = END_ELEMENT;
+        }
+        empty = false;
+
+        XmlTokenizer t = tokenizer;
+        switch (t.next()) {
+            case XmlTokenizer.START_TAG:
+                depth++;
+                setTag();
+                return event = START_ELEMENT;
+            case XmlTokenizer.EMPTY_TAG:
+                depth++;
+                empty = true;
+                pendingEnd = true;
+                setTag();
+                return event = START_ELEMENT;
+            case XmlTokenizer.END_TAG:
+                depth--;
+                setTag();
+                return event = END_ELEMENT;
+            case XmlTokenizer.PROCESSING_INSTRUCTION:
+                setTag();
+                return event = PROCESSING_INSTRUCTION;
+            case XmlTokenizer.TEXT:
+                name.set(t.getBuffer(), 0, 0);
+                content.set(t.getBuffer(), t.getTokenStart(), t.getTokenEnd());
+                return event = CHARACTERS;
+            default:
+                return event = END_DOCUMENT;
+        }
+    }
+
+    /**
+     * Skips the rest of the element whose START_ELEMENT is the current
+     * event, leaving the cursor on its END_ELEMENT. Nothing inside it is
+     * named or handed out; the tokenizer only counts depth, and text is
+     * not reported while skipping.
+     *
+     * @return END_ELEMENT, or END_DOCUMENT if the input ends first
+     * @throws IOException if reading the input fails
+     * @throws LimitExceededException if a tag or line is longer than its limit
+     * @throws IllegalStateException if the current event is not START_ELEMENT
+     */
+    public int skipSubtree() throws IOException, LimitExceededException {
+        if (event != START_ELEMENT) {
+            throw new IllegalStateException("skipSubtree() needs a START_ELEMENT");
+        }
+        if (pendingEnd) {
+            return next();
+        }
+
+        XmlTokenizer t = tokenizer;
+        boolean readText = t.isReportingText();
+        t.setReportText(false);
+        try {
+            int open = 1;
+            while (true) {
+                switch (t.next()) {
+                    case XmlTokenizer.START_TAG:
+                        open++;
+                        break;
+                    case XmlTokenizer.END_TAG:
+                        if (--open == 0) {
+                            depth--;
+                            setTag();
+                            return event = END_ELEMENT;
+                        }
+                        break;
+                    case XmlTokenizer.END_OF_INPUT:
+                        return event = END_DOCUMENT;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            t.setReportText(readText);
+        }
+    }
+
+    /**
+     * Points the views at the current tag's name and attributes.
+     */
+    private void setTag() {
+        XmlTokenizer t = tokenizer;
+        byte[] b = t.getBuffer();
+        name.set(b, t.getNameStart(), t.getNameEnd());
+        content.set(b, t.getAttributesStart(), t.getAttributesEnd());
+    }
+
+    /**
+     * @return the type of the current event
+     */
+    public int getEventType() {
+        return event;
+    }
+
+    /**
+     * Returns the name of the current element, or the target of the
+     * current processing instruction, as a view into the buffer.
+     *
+     * @return the name (empty for CHARACTERS)
+     */
+    public ByteSequence getName() {
+        return name;
+    }
+
+    /**
+     * @return the id of the current name in the tokenizer's NameTable;
+     *         interns the name, so ids can be compared across events
+     */
+    public int getNameId() {
+        return tokenizer.getNameId();
+    }
+
+    /**
+     * Returns the raw attributes of the current START_ELEMENT, or the
+     * content of the current processing instruction, as a view into the
+     * buffer. May begin with whitespace.
+     *
+     * @return the attributes
+     */
+    public ByteSequence getAttributes() {
+        return content;
+    }
+
+    /**
+     * @return the text of the current CHARACTERS event, as a view into
+     *         the buffer
+     */
+    public ByteSequence getText() {
+        return content;
+    }
+
+    /**
+     * @return true if the current START_ELEMENT is a self-closing tag
+     */
+    public boolean isEmptyElement() {
+        return empty;
+    }
+
+    /**
+     * Returns the number of elements open, counting the current
+     * START_ELEMENT but not the current END_ELEMENT.
+     *
+     * @return the element depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the tokenizer, which gives the line, column and offset of
+     *         the current event
+     */
+    public XmlTokenizer getTokenizer() {
+        return tokenizer;
+    }
+}
@@ -0,0 +1,416 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import exceptions.StopParsingException;
+
+/**
+ * Compares two documents in one streaming pass over both. Each document
+ * has its own XmlEventScanner, and the two are stepped in turn. Every
+ * element is hashed as it closes, Merkle-style: its own hash covers its
+ * name, attributes and text, and its subtree hash combines that with its
+ * children's subtree hashes in order. The closing elements of each
+ * document form a stream of (path, hash) pairs, and the two streams are
+ * compared pair by pair.
+ *
+ * While the streams agree nothing is kept but the open elements of each
+ * side, so identical documents are compared about as fast as they can be
+ * read. Once an element is added or removed the streams no longer line
+ * up, and elements wait in a table of unmatched paths until the same
+ * path turns up on the other side. Whatever is still unmatched at the
+ * end was added or removed. Memory is bounded by the depth plus the
+ * differences.
+ *
+ * Each step of a path is the element's name and its position among
+ * siblings of that name, e.g. Driver[3]. With a key attribute it is the
+ * element's value of that attribute instead, e.g. Driver[@id='7'], so
+ * that adding a record does not make every later record look changed.
+ * Runs of whitespace in attributes and text count as one space, and
+ * whitespace at either end of a piece of text is ignored. Comments are
+ * not compared, since the tokenizer skips them.
+ */
+public class XmlDiff {
+
+    private static final long PRIME = 0x100000001B3L;          // FNV-1a
+    private static final long BASIS = 0xCBF29CE484222325L;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final String keyAttribute;
+    private final DiffListener listener;
+    private long differences;
+
+    /**
+     * Constructs a comparison.
+     *
+     * @param keyAttribute the attribute identifying elements among their
+     *        siblings, or null to identify them by position
+     * @param listener the receiver of every difference
+     */
+    public XmlDiff(String keyAttribute, DiffListener listener) {
+        this.keyAttribute = keyAttribute;
+        this.listener = listener;
+    }
+
+    /**
+     * Compares two documents, reading both to the end. Elements changed
+     * in place are reported as they are found; added and removed ones
+     * once both documents have been read.
+     *
+     * @param oldDocument the tokenizer over the original document
+     * @param newDocument the tokenizer over the document compared with it
+     * @return the number of differences reported
+     * @throws IOException if reading either document or the listener fails
+     */
+    public long compare(XmlTokenizer oldDocument, XmlTokenizer newDocument) throws IOException {
+        differences = 0;
+        Side a = new Side(oldDocument, keyAttribute);
+        Side b = new Side(newDocument, keyAttribute);
+        Map<String, Unmatched> removed = new LinkedHashMap<>();
+        Map<String, Unmatched> added = new LinkedHashMap<>();
+
+        boolean moreA = a.next();
+        boolean moreB = b.next();
+        while (moreA || moreB) {
+            if (moreA && moreB && removed.isEmpty() && added.isEmpty() && a.isSameElement(b)) {
+                // In step: equal subtrees need no further look.
+                if (a.subtreeHash != b.subtreeHash && a.ownHash != b.ownHash) {
+                    report(DiffListener.Change.CHANGED, a.path());
+                }
+            } else {
+                if (moreA) {
+                    match(a, added, removed);
+                }
+                if (moreB) {
+                    match(b, removed, added);
+                }
+            }
+            moreA = moreA && a.next();
+            moreB = moreB && b.next();
+        }
+
+        report(DiffListener.Change.REMOVED, removed);
+        report(DiffListener.Change.ADDED, added);
+        return differences;
+    }
+
+    /**
+     * Pairs the element just closed on one side with the same path from
+     * the other side, or keeps it until that turns up.
+     */
+    private void match(Side side, Map<String, Unmatched> other, Map<String, Unmatched> own)
+            throws IOException {
+        String path = side.path();
+        Unmatched twin = other.remove(path);
+        if (twin == null) {
+            own.put(path, new Unmatched(side.parentLength, side.ownHash));
+        } else if (twin.ownHash != side.ownHash) {
+            report(DiffListener.Change.CHANGED, path);
+        }
+    }
+
+    /**
+     * Reports the unmatched elements whose parent was matched; the rest
+     * lie inside one of them.
+     */
+    private void report(DiffListener.Change change, Map<String, Unmatched> unmatched)
+            throws IOException {
+        for (Map.Entry<String, Unmatched> entry : unmatched.entrySet()) {
+            String path = entry.getKey();
+            if (!unmatched.containsKey(path.substring(0, entry.getValue().parentLength))) {
+                report(change, path);
+            }
+        }
+    }
+
+    private void report(DiffListener.Change change, String path) throws IOException {
+        differences++;
+        listener.difference(change, path);
+    }
+
+    /**
+     * An element seen on one side only, so far.
+     */
+    private static final class Unmatched {
+        final int parentLength;     // of the path
+        final long ownHash;
+
+        Unmatched(int parentLength, long ownHash) {
+            this.parentLength = parentLength;
+            this.ownHash = ownHash;
+        }
+    }
+
+    /**
+     * One document: hashes its elements as they close and hands them out
+     * one at a time.
+     */
+    private static final class Side extends DefaultXmlHandler {
+
+        private final XmlEventScanner scanner;
+        private final String keyAttribute;
+        private final byte[] key;
+
+        // The open elements by depth; slot 0 stands for the document.
+        private String[] names = new String[16];
+        private String[] keys = new String[16];
+        private int[] positions = new int[16];
+        private int[] serials = new int[16];      // tells apart elements at a depth
+        private long[] paths = new long[16];      // hash of the path so far
+        private long[] own = new long[16];
+        private long[] children = new long[16];
+        private int[][] counts = new int[16][];   // siblings so far, by name id
+        private int[][] stamps = new int[16][];   // the parent each count is for
+        private int depth;
+        private int serial;
+        private int closing;                      // elements still to close
+
+        // Whitespace folding, across the pieces of a run of text.
+        private boolean inRun;
+        private boolean space;       // whitespace not yet folded in
+        private long word;           // folded bytes not yet hashed
+        private int wordLength;
+
+        // The element closed last; its slot stays filled until reused.
+        private int closedDepth;
+        long ownHash;
+        long subtreeHash;
+        int parentLength;
+
+        Side(XmlTokenizer tokenizer, String keyAttribute) {
+            this.scanner = new XmlEventScanner(tokenizer, this);
+            this.keyAttribute = keyAttribute;
+            this.key = keyAttribute == null ? null
+                    : keyAttribute.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Scans up to the next closing element. Elements left open at
+         * the end of the document close there, innermost first.
+         *
+         * @return false at the end of the document
+         */
+        boolean next() throws IOException {
+            while (closing == 0) {
+                if (!scanner.step()) {
+                    if (depth == 0) {
+                        scanner.finish();
+                        return false;
+                    }
+                    closing = depth;
+                }
+            }
+            closing--;
+            close();
+            return true;
+        }
+
+        boolean isSameElement(Side other) {
+            int d = closedDepth;
+            return d == other.closedDepth && paths[d] == other.paths[d]
+                    && positions[d] == other.positions[d]
+                    && names[d].equals(other.names[d]) && Objects.equals(keys[d], other.keys[d]);
+        }
+
+        /**
+         * Returns the path of the element closed last, and sets
+         * parentLength to the length of its parent's.
+         */
+        String path() {
+            StringBuilder path = new StringBuilder();
+            for (int d = 1; d <= closedDepth; d++) {
+                parentLength = path.length();
+                path.append('/').append(names[d]);
+                if (d == 1) {
+                    continue;
+                }
+                if (keys[d] != null) {
+                    path.append("[@").append(keyAttribute).append("='").append(keys[d])
+                            .append("']");
+                } else {
+                    path.append('[').append(positions[d]).append(']');
+                }
+            }
+            return path.toString();
+        }
+
+        @Override
+        public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+            super.startDocument(locator);
+            locator.setReportText(true);
+        }
+
+        @Override
+        public void startElement(String name, byte[] b, int attributesStart, int attributesEnd) {
+            open(name, b, attributesStart, attributesEnd);
+        }
+
+        @Override
+        public void emptyElement(String name, byte[] b, int attributesStart, int attributesEnd) {
+            open(name, b, attributesStart, attributesEnd);
+            closing = 1;
+        }
+
+        /**
+         * Closes the element named, and any left open inside it. A tag
+         * closing no open element is ignored.
+         */
+        @Override
+        public void endElement(String name) {
+            endRun();
+            for (int d = depth; d > 0; d--) {
+                if (names[d].equals(name)) {
+                    closing = depth - d + 1;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void text(byte[] b, int start, int end) {
+            if (depth > 0) {
+                fold(b, start, end);
+            }
+        }
+
+        private void open(String name, byte[] b, int attributesStart, int attributesEnd) {
+            endRun();
+            int d = ++depth;
+            if (d == names.length) {
+                grow();
+            }
+            names[d] = name;
+            keys[d] = key == null ? null
+                    : PathQueryEngine.attribute(b, attributesStart, attributesEnd, key);
+
+            // Position among the siblings of the same name
+            int id = locator.getNameId();
+            int[] count = counts[d];
+            if (count == null || id >= count.length) {
+                int length = Math.max(id + 1, count == null ? 16 : count.length * 2);
+                counts[d] = count = count == null ? new int[length] : Arrays.copyOf(count, length);
+                stamps[d] = stamps[d] == null ? new int[length] : Arrays.copyOf(stamps[d], length);
+            }
+            int[] stamp = stamps[d];
+            if (stamp[id] != serials[d - 1]) {
+                stamp[id] = serials[d - 1];
+                count[id] = 0;
+            }
+            positions[d] = ++count[id];
+            serials[d] = ++serial;
+
+            long h = BASIS;
+            for (int p = locator.getNameStart(); p < locator.getNameEnd(); p++) {
+                h = (h ^ (b[p] & 0xFF)) * PRIME;
+            }
+            h = (h ^ '>') * PRIME;
+            long path = (paths[d - 1] + h) * GOLDEN + positions[d];
+            paths[d] = (path + (keys[d] == null ? 0 : keys[d].hashCode())) * GOLDEN;
+            own[d] = h;
+            fold(b, attributesStart, attributesEnd);
+            children[d] = 0;
+            endRun();
+        }
+
+        private void close() {
+            endRun();
+            int d = depth--;
+            long h = own[d] * GOLDEN + children[d];
+            h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 29;
+            children[d - 1] = (children[d - 1] + h) * GOLDEN;
+            closedDepth = d;
+            ownHash = own[d];
+            subtreeHash = h;
+        }
+
+        /**
+         * Adds b[start, end) to the current element's own hash, with each
+         * run of whitespace as one space and none at either end of the
+         * current run of text. Bytes are gathered into words by their
+         * place in the folded run, so the hash does not depend on how the
+         * run is split into pieces; runs without whitespace are taken a
+         * word at a time.
+         */
+        private void fold(byte[] b, int start, int end) {
+            long h = own[depth];
+            long w = word;
+            int n = wordLength;
+            boolean run = inRun;
+            boolean pending = space;
+            int p = start;
+            while (p < end) {
+                if (n == 0 && !pending && p + 8 <= end) {
+                    long x = Bytes.word(b, p);
+                    if (!Bytes.hasSpace(x)) {
+                        h = mix(h, x);
+                        run = true;
+                        p += 8;
+                        continue;
+                    }
+                }
+                byte c = b[p++];
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    pending = run;
+                    continue;
+                }
+                if (pending) {
+                    w |= (long) ' ' << (n << 3);
+                    pending = false;
+                    if (++n == 8) {
+                        h = mix(h, w);
+                        w = 0;
+                        n = 0;
+                    }
+                }
+                w |= (c & 0xFFL) << (n << 3);
+                run = true;
+                if (++n == 8) {
+                    h = mix(h, w);
+                    w = 0;
+                    n = 0;
+                }
+            }
+            own[depth] = h;
+            word = w;
+            wordLength = n;
+            inRun = run;
+            space = pending;
+        }
+
+        /**
+         * Ends the current run of text, adding what is left of it and its
+         * length to the current element's own hash.
+         */
+        private void endRun() {
+            if (inRun) {
+                own[depth] = mix(own[depth], word | (0x80L | wordLength) << 56);
+            }
+            word = 0;
+            wordLength = 0;
+            inRun = false;
+            space = false;
+        }
+
+        private static long mix(long h, long word) {
+            return Long.rotateLeft((h ^ word) * GOLDEN, 29);
+        }
+
+        private void grow() {
+            int length = names.length * 2;
+            names = Arrays.copyOf(names, length);
+            keys = Arrays.copyOf(keys, length);
+            positions = Arrays.copyOf(positions, length);
+            serials = Arrays.copyOf(serials, length);
+            paths = Arrays.copyOf(paths, length);
+            own = Arrays.copyOf(own, length);
+            children = Arrays.copyOf(children, length);
+            counts = Arrays.copyOf(counts, length);
+            stamps = Arrays.copyOf(stamps, length);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The character encoding of an XML document, detected the way the XML
+ * specification (appendix F) describes: from a byte order mark if there
+ * is one, otherwise from the byte pattern of the opening "<?xml", and
+ * then from the encoding named in the XML declaration. A document with
+ * neither a byte order mark nor a declaration is UTF-8.
+ *
+ * Only the first HEAD_SIZE bytes are looked at.
+ */
+public final class XmlEncoding {
+
+    /** How many leading bytes detection needs. */
+    public static final int HEAD_SIZE = 512;
+
+    private static final Charset UTF_32BE = charset("UTF-32BE");
+    private static final Charset UTF_32LE = charset("UTF-32LE");
+    private static final Charset EBCDIC = charset("IBM037");
+    private static final String DECLARATION = "<?xml";
+
+    private final Charset charset;
+    private final int bomLength;
+    private final String source;
+    private final boolean utf8;
+
+    private XmlEncoding(Charset charset, int bomLength, String source) {
+        this.charset = charset;
+        this.bomLength = bomLength;
+        this.source = source;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Detects the encoding of a document from its first bytes.
+     *
+     * @param head the document's first bytes
+     * @param length how many of them are valid (up to HEAD_SIZE are used)
+     * @return the encoding
+     * @throws IOException if the declaration names an encoding this JVM
+     *         does not support
+     */
+    public static XmlEncoding detect(byte[] head, int length) throws IOException {
+        int b0 = length > 0 ? head[0] & 0xFF : -1;
+        int b1 = length > 1 ? head[1] & 0xFF : -1;
+        int b2 = length > 2 ? head[2] & 0xFF : -1;
+        int b3 = length > 3 ? head[3] & 0xFF : -1;
+
+        // Byte order marks
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return declared(head, length, StandardCharsets.UTF_8, 3, "byte order mark");
+        }
+        if (b0 == 0x00 && b1 == 0x00 && b2 == 0xFE && b3 == 0xFF && UTF_32BE != null) {
+            return new XmlEncoding(UTF_32BE, 4, "byte order mark");
+        }
+        if (b0 == 0xFF && b1 == 0xFE && b2 == 0x00 && b3 == 0x00 && UTF_32LE != null) {
+            return new XmlEncoding(UTF_32LE, 4, "byte order mark");
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            return new XmlEncoding(StandardCharsets.UTF_16BE, 2, "byte order mark");
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            return new XmlEncoding(StandardCharsets.UTF_16LE, 2, "byte order mark");
+        }
+
+        // "<?" without a byte order mark
+        if (b0 == 0x00 && b1 == 0x00 && b2 == 0x00 && b3 == 0x3C && UTF_32BE != null) {
+            return new XmlEncoding(UTF_32BE, 0, "declaration bytes");
+        }
+        if (b0 == 0x3C && b1 == 0x00 && b2 == 0x00 && b3 == 0x00 && UTF_32LE != null) {
+            return new XmlEncoding(UTF_32LE, 0, "declaration bytes");
+        }
+        if (b0 == 0x00 && b1 == 0x3C && b2 == 0x00 && b3 == 0x3F) {
+            return new XmlEncoding(StandardCharsets.UTF_16BE, 0, "declaration bytes");
+        }
+        if (b0 == 0x3C && b1 == 0x00 && b2 == 0x3F && b3 == 0x00) {
+            return new XmlEncoding(StandardCharsets.UTF_16LE, 0, "declaration bytes");
+        }
+        if (b0 == 0x4C && b1 == 0x6F && b2 == 0xA7 && b3 == 0x94 && EBCDIC != null) {
+            return declared(head, length, EBCDIC, 0, "declaration bytes");
+        }
+        return declared(head, length, StandardCharsets.UTF_8, 0, "default");
+    }
+
+    /**
+     * Detects the encoding of a file from its first bytes.
+     *
+     * @param file the document
+     * @return the encoding
+     * @throws IOException if the file cannot be read or names an
+     *         unsupported encoding
+     */
+    public static XmlEncoding detect(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return detect(in);
+        }
+    }
+
+    /**
+     * Detects the encoding of a document from the first bytes of a
+     * stream, which is left open and part-way read.
+     *
+     * @param in the document
+     * @return the encoding
+     * @throws IOException if the stream cannot be read or names an
+     *         unsupported encoding
+     */
+    public static XmlEncoding detect(InputStream in) throws IOException {
+        byte[] head = new byte[HEAD_SIZE];
+        return detect(head, readHead(in, head));
+    }
+
+    /**
+     * Reads up to head.length bytes, fewer only at the end of the stream.
+     *
+     * @param in the stream
+     * @param head where to put the bytes
+     * @return the number of bytes read
+     * @throws IOException if reading fails
+     */
+    static int readHead(InputStream in, byte[] head) throws IOException {
+        int n = 0;
+        while (n < head.length) {
+            int r = in.read(head, n, head.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    /**
+     * Uses the encoding named in the XML declaration, if there is one.
+     * The declaration is read in the encoding family found so far, which
+     * encodes it the same way as the encoding it names.
+     */
+    private static XmlEncoding declared(byte[] head, int length, Charset family, int bomLength,
+            String source) throws IOException {
+        int n = Math.max(0, Math.min(length, HEAD_SIZE) - bomLength);
+        String text = new String(head, bomLength, n, family);
+        if (!text.startsWith(DECLARATION)) {
+            return new XmlEncoding(family, bomLength, source);
+        }
+        int end = text.indexOf("?>");
+        int at = text.indexOf("encoding");
+        if (at < 0 || (end >= 0 && at > end)) {
+            return new XmlEncoding(family, bomLength, source);
+        }
+
+        // encoding = "name" or 'name'
+        int p = at + "encoding".length();
+        while (p < text.length() && Character.isWhitespace(text.charAt(p))) {
+            p++;
+        }
+        if (p >= text.length() || text.charAt(p) != '=') {
+            return new XmlEncoding(family, bomLength, source);
+        }
+        p++;
+        while (p < text.length() && Character.isWhitespace(text.charAt(p))) {
+            p++;
+        }
+        char quote = p < text.length() ? text.charAt(p) : 0;
+        int close = quote == '"' || quote == '\'' ? text.indexOf(quote, p + 1) : -1;
+        if (close < 0) {
+            return new XmlEncoding(family, bomLength, source);
+        }
+        String name = text.substring(p + 1, close);
+
+        Charset charset = charset(name);
+        if (charset == null) {
+            throw new IOException("Unsupported encoding: " + name);
+        }
+        // A byte order mark, or the bytes of the declaration itself,
+        // outrank a declaration that contradicts them.
+        if (bomLength > 0 && !charset.equals(family)
+                || !Arrays.equals(DECLARATION.getBytes(charset), DECLARATION.getBytes(family))) {
+            return new XmlEncoding(family, bomLength, source);
+        }
+        return new XmlEncoding(charset, bomLength, "declaration");
+    }
+
+    /**
+     * Looks up a charset, or returns null if this JVM does not have it.
+     */
+    private static Charset charset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the charset the document is written in
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the length of the byte order mark, or 0 if there is none
+     */
+    public int getBomLength() {
+        return bomLength;
+    }
+
+    /**
+     * @return how the encoding was found: "byte order mark", "declaration
+     *         bytes", "declaration" or "default"
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Tells whether the document's bytes can be tokenized as they are.
+     * UTF-8 and US-ASCII documents take this fast path; every other
+     * encoding is transcoded to UTF-8 first (see Transcoder).
+     *
+     * @return true for UTF-8 and US-ASCII
+     */
+    public boolean isUtf8() {
+        return utf8;
+    }
+
+    @Override
+    public String toString() {
+        return charset.name() + " (" + source + ")";
+    }
+}
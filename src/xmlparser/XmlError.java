@@ -0,0 +1,158 @@
+package xmlparser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A single well-formedness error, recorded as structured fields.
+ * The human-readable message is only built the first time it is asked
+ * for, so reporters that write structured output never format it.
+ *
+ * Positions that are not known are stored as -1.
+ */
+public final class XmlError {
+
+    private final ErrorKind kind;
+    private final int line;
+    private final int column;
+    private final long offset;
+    private final String first;
+    private final String second;
+    private String message;       // built lazily by getMessage()
+
+    /**
+     * Constructs an error record.
+     *
+     * @param kind the kind of error
+     * @param line the 1-based line number, or -1 if unknown
+     * @param column the 1-based column number, or -1 if unknown
+     * @param offset the 0-based byte offset of the tag, or -1 if unknown
+     * @param first the first tag name involved, or null
+     * @param second the second tag name involved, or null
+     */
+    public XmlError(ErrorKind kind, int line, int column, long offset,
+            String first, String second) {
+        this.kind = kind;
+        this.line = line;
+        this.column = column;
+        this.offset = offset;
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * @return the kind of error
+     */
+    public ErrorKind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the 1-based line number, or -1 if unknown
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the 1-based column number, or -1 if unknown
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the 0-based byte offset of the tag, or -1 if unknown
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the first tag name involved, or null
+     */
+    public String getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the second tag name involved, or null
+     */
+    public String getSecond() {
+        return second;
+    }
+
+    /**
+     * Returns the human-readable message, formatting it on first use.
+     *
+     * @return the error message
+     */
+    public String getMessage() {
+        if (message == null) {
+            message = kind.format(first, second);
+        }
+        return message;
+    }
+
+    /**
+     * Writes this error in the compact binary record format.
+     *
+     * @param out the destination
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(kind.ordinal());
+        out.writeInt(line);
+        out.writeInt(column);
+        out.writeLong(offset);
+        writeName(out, first);
+        writeName(out, second);
+    }
+
+    /**
+     * Reads an error written by writeTo().
+     *
+     * @param in the source
+     * @return the error read
+     * @throws IOException if reading fails or the record is corrupt
+     */
+    public static XmlError readFrom(DataInput in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        ErrorKind[] kinds = ErrorKind.values();
+        if (ordinal >= kinds.length) {
+            throw new IOException("Unknown error kind " + ordinal);
+        }
+        int line = in.readInt();
+        int column = in.readInt();
+        long offset = in.readLong();
+        String first = readName(in);
+        String second = readName(in);
+        return new XmlError(kinds[ordinal], line, column, offset, first, second);
+    }
+
+    /**
+     * Writes a nullable name as a presence flag followed by modified UTF-8.
+     */
+    private static void writeName(DataOutput out, String name) throws IOException {
+        out.writeBoolean(name != null);
+        if (name != null) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Reads a name written by writeName().
+     */
+    private static String readName(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Returns the error in the classic "[Line N] message" form.
+     */
+    @Override
+    public String toString() {
+        return "[Line " + line + "] " + getMessage();
+    }
+}
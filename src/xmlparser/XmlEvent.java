@@ -0,0 +1,134 @@
+package xmlparser;
+
+/**
+ * One element or error event of a document, as published by
+ * XmlEventPublisher. Unlike the buffer ranges of XmlHandler, an event
+ * owns its data, so it can be handed to another thread.
+ */
+public final class XmlEvent {
+
+    /** An opening tag. */
+    public static final int START_ELEMENT = XmlTokenizer.START_TAG;
+
+    /** A closing tag. */
+    public static final int END_ELEMENT = XmlTokenizer.END_TAG;
+
+    /** A self-closing tag. */
+    public static final int EMPTY_ELEMENT = XmlTokenizer.EMPTY_TAG;
+
+    /** A processing instruction. */
+    public static final int PROCESSING_INSTRUCTION = XmlTokenizer.PROCESSING_INSTRUCTION;
+
+    /** A well-formedness error or tripped limit. */
+    public static final int ERROR = 6;
+
+    private final int type;
+    private final String name;
+    private final String attributes;
+    private final int line;
+    private final int column;
+    private final long offset;
+    private final XmlError error;
+
+    /**
+     * Constructs a tag event.
+     *
+     * @param type the event type
+     * @param name the element name or processing instruction target
+     * @param attributes the raw attributes, or null if there are none
+     * @param line the 1-based line of the tag
+     * @param column the 1-based byte column of the tag
+     * @param offset the byte offset of the tag
+     */
+    public XmlEvent(int type, String name, String attributes, int line, int column, long offset) {
+        this.type = type;
+        this.name = name;
+        this.attributes = attributes;
+        this.line = line;
+        this.column = column;
+        this.offset = offset;
+        this.error = null;
+    }
+
+    /**
+     * Constructs an error event.
+     *
+     * @param error the error
+     */
+    public XmlEvent(XmlError error) {
+        this.type = ERROR;
+        this.name = null;
+        this.attributes = null;
+        this.line = error.getLine();
+        this.column = error.getColumn();
+        this.offset = error.getOffset();
+        this.error = error;
+    }
+
+    /**
+     * @return the event type
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return the element name or processing instruction target; null
+     *         for an error
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the raw attributes (or processing instruction content), or
+     *         null if there are none
+     */
+    public String getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the 1-based line of the event
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the 1-based byte column of the event, or -1 if unknown
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the byte offset of the event
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the error of an ERROR event, or null
+     */
+    public XmlError getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case START_ELEMENT:
+                return "<" + name + ">";
+            case END_ELEMENT:
+                return "</" + name + ">";
+            case EMPTY_ELEMENT:
+                return "<" + name + "/>";
+            case PROCESSING_INSTRUCTION:
+                return "<?" + name + "?>";
+            default:
+                return error.toString();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import exceptions.EmptyQueueException;
+import exceptions.StopParsingException;
+import implementations.MyQueue;
+
+/**
+ * Publishes the element and error events of a validated document to
+ * java.util.concurrent.Flow subscribers, only as fast as they request.
+ *
+ * The publisher is cold: every subscriber gets its own pass over a fresh
+ * stream from the source, validated by its own XmlValidator. Nothing is
+ * read ahead of demand except for a bounded buffer of events (a MyQueue
+ * holding at most bufferSize events, plus those of one tag), so a slow
+ * subscriber holds back the reading instead of making the document pile
+ * up in memory.
+ *
+ * All work for a subscription, reading included, runs as one serialized
+ * task on the given executor, and every subscriber signal is made from
+ * that task. The task never blocks waiting for demand; it simply ends and
+ * is resubmitted by the next request(), so even a single-threaded
+ * executor can serve many subscriptions.
+ */
+public class XmlEventPublisher implements Flow.Publisher<XmlEvent> {
+
+    /** Default number of events buffered ahead of demand. */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final Callable<InputStream> source;
+    private final ParserLimits limits;
+    private final Executor executor;
+    private final int bufferSize;
+
+    /**
+     * Constructs a publisher.
+     *
+     * @param source opens the document for each subscriber
+     * @param limits the resource limits to enforce
+     * @param executor runs the reading and all subscriber signals
+     * @param bufferSize the most events read ahead of demand
+     */
+    public XmlEventPublisher(Callable<InputStream> source, ParserLimits limits,
+            Executor executor, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.source = source;
+        this.limits = limits;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Starts a pass over the document for the subscriber. onSubscribe()
+     * is called from the executor, or from this call, followed by
+     * onError(), if the executor rejects the task.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super XmlEvent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        new EventSubscription(subscriber).schedule();
+    }
+
+    /**
+     * One subscriber's pass over the document. The queue, scanner and
+     * validator are only touched by run(), which the wip counter keeps
+     * to one thread at a time.
+     */
+    private final class EventSubscription extends DefaultXmlHandler
+            implements Flow.Subscription, Runnable, ErrorReporter {
+
+        private final Flow.Subscriber<? super XmlEvent> subscriber;
+        private final MyQueue<XmlEvent> queue = new MyQueue<XmlEvent>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable badRequest;
+
+        private boolean subscribed;
+        private boolean done;            // no more events will be queued
+        private InputStream in;
+        private XmlEventScanner scanner;
+
+        EventSubscription(Flow.Subscriber<? super XmlEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        // -------------------------------------------------------------
+        //  Flow.Subscription
+        // -------------------------------------------------------------
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         * Makes sure run() goes over the state again: starts it if it is
+         * not running, or makes the running one loop once more.
+         */
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    // Nothing runs for this subscription any more, so the
+                    // error is signalled from here, after onSubscribe() as
+                    // rule 1.9 requires. The wip count stays raised, so
+                    // requests made from onSubscribe() schedule nothing.
+                    cancelled = true;
+                    if (!subscribed) {
+                        subscribed = true;
+                        subscriber.onSubscribe(this);
+                    }
+                    subscriber.onError(ex);
+                }
+            }
+        }
+
+        // -------------------------------------------------------------
+        //  The serialized task
+        // -------------------------------------------------------------
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                if (drain()) {
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Delivers what has been requested and reads ahead while there
+         * is room in the buffer.
+         *
+         * @return true once the subscription has ended
+         */
+        private boolean drain() {
+            try {
+                while (true) {
+                    if (cancelled) {
+                        closeInput();
+                        return true;
+                    }
+                    if (badRequest != null) {
+                        cancelled = true;
+                        closeInput();
+                        subscriber.onError(badRequest);
+                        return true;
+                    }
+
+                    // Deliver from the buffer.
+                    long n = demand.get();
+                    long sent = 0;
+                    while (sent < n && !queue.isEmpty() && !cancelled) {
+                        subscriber.onNext(queue.dequeue());
+                        sent++;
+                    }
+                    if (sent > 0) {
+                        demand.addAndGet(-sent);
+                    }
+                    if (done && queue.isEmpty()) {
+                        if (!cancelled) {
+                            cancelled = true;
+                            closeInput();
+                            subscriber.onComplete();
+                        }
+                        return true;
+                    }
+
+                    // Refill the buffer, then deliver again if anyone is waiting.
+                    if (done || queue.size() >= bufferSize) {
+                        return false;
+                    }
+                    read();
+                    if (demand.get() == 0 && queue.size() >= bufferSize) {
+                        return false;
+                    }
+                }
+            } catch (IOException | EmptyQueueException | RuntimeException ex) {
+                cancelled = true;
+                closeQuietly();
+                subscriber.onError(ex);
+                return true;
+            }
+        }
+
+        /**
+         * Scans tags until the buffer is full or the document ends.
+         */
+        private void read() throws IOException {
+            if (scanner == null) {
+                try {
+                    in = source.call();
+                } catch (IOException | RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new IOException(ex);
+                }
+                XmlValidator validator = new XmlValidator(limits, this);
+                scanner = new XmlEventScanner(new XmlTokenizer(in, limits),
+                        new MultiHandler(this, validator));
+            }
+            while (queue.size() < bufferSize) {
+                if (!scanner.step()) {
+                    scanner.finish();
+                    done = true;
+                    return;
+                }
+            }
+        }
+
+        private void closeInput() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                closeInput();
+            } catch (IOException ex) {
+                // Already reporting a failure.
+            }
+        }
+
+        // -------------------------------------------------------------
+        //  XmlHandler: tag events
+        // -------------------------------------------------------------
+
+        @Override
+        public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+            tag(XmlEvent.START_ELEMENT, name, buf, attributesStart, attributesEnd);
+        }
+
+        @Override
+        public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+            tag(XmlEvent.EMPTY_ELEMENT, name, buf, attributesStart, attributesEnd);
+        }
+
+        @Override
+        public void endElement(String name) {
+            tag(XmlEvent.END_ELEMENT, name, null, 0, 0);
+        }
+
+        @Override
+        public void processingInstruction(String target, byte[] buf, int start, int end) {
+            tag(XmlEvent.PROCESSING_INSTRUCTION, target, buf, start, end);
+        }
+
+        /**
+         * Queues a tag event, copying its attributes out of the buffer.
+         */
+        private void tag(int type, String name, byte[] buf, int start, int end) {
+            while (start < end && buf[start] <= ' ' && buf[start] >= 0) {
+                start++;
+            }
+            String attributes = start < end
+                    ? new String(buf, start, end - start, StandardCharsets.UTF_8)
+                    : null;
+            queue.enqueue(new XmlEvent(type, name, attributes, locator.getTagLine(),
+                    locator.getTagColumn(), locator.getTagOffset()));
+        }
+
+        // -------------------------------------------------------------
+        //  ErrorReporter: the validator's errors
+        // -------------------------------------------------------------
+
+        /**
+         * The other reporter calls have nothing to do: the events are
+         * the report.
+         */
+        @Override
+        public void startDocument(String name) {
+        }
+
+        @Override
+        public void report(XmlError error) {
+            queue.enqueue(new XmlEvent(error));
+        }
+
+        @Override
+        public void endDocument(long errorCount) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package xmlparser;
+
+import java.io.IOException;
+
+import exceptions.LimitExceededException;
+import exceptions.StopParsingException;
+
+/**
+ * Drives an XmlHandler from an XmlTokenizer: each token becomes one
+ * handler call, so a document is scanned once however many consumers the
+ * handler stands for (see MultiHandler).
+ *
+ * A document can be pushed through in one call to parse(), or in pieces
+ * with feed() as its input grows, followed by finish().
+ */
+public class XmlEventScanner {
+
+    private final XmlTokenizer tokenizer;
+    private final XmlHandler handler;
+    private boolean started;
+    private boolean stopped;     // the handler or a limit ended the document
+    private boolean finished;
+
+    /**
+     * Constructs a scanner delivering the tokenizer's events to the handler.
+     *
+     * @param tokenizer the tokenizer over the document
+     * @param handler the receiver of the events
+     */
+    public XmlEventScanner(XmlTokenizer tokenizer, XmlHandler handler) {
+        this.tokenizer = tokenizer;
+        this.handler = handler;
+    }
+
+    /**
+     * Pushes a whole document through the handler.
+     *
+     * @throws IOException if reading the document or handling fails
+     */
+    public void parse() throws IOException {
+        feed();
+        finish();
+    }
+
+    /**
+     * Delivers an event for every token the tokenizer can currently
+     * supply. Does nothing once the document has been stopped.
+     *
+     * @throws IOException if reading the document or handling fails
+     */
+    public void feed() throws IOException {
+        while (step()) {
+            // Each step delivers one event.
+        }
+    }
+
+    /**
+     * Delivers the event for the next token only, for callers that pace
+     * the scan themselves (see XmlEventPublisher).
+     *
+     * @return false if there was no token to deliver: the input has run
+     *         out for now, or the document has been stopped
+     * @throws IOException if reading the document or handling fails
+     */
+    public boolean step() throws IOException {
+        if (stopped) {
+            return false;
+        }
+        try {
+            if (!started) {
+                started = true;
+                handler.startDocument(tokenizer);
+            }
+
+            XmlTokenizer t = tokenizer;
+            switch (t.next()) {
+                case XmlTokenizer.START_TAG:
+                    handler.startElement(t.getName(), t.getBuffer(),
+                            t.getAttributesStart(), t.getAttributesEnd());
+                    return true;
+                case XmlTokenizer.END_TAG:
+                    handler.endElement(t.getName());
+                    return true;
+                case XmlTokenizer.EMPTY_TAG:
+                    handler.emptyElement(t.getName(), t.getBuffer(),
+                            t.getAttributesStart(), t.getAttributesEnd());
+                    return true;
+                case XmlTokenizer.PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(t.getName(), t.getBuffer(),
+                            t.getAttributesStart(), t.getAttributesEnd());
+                    return true;
+                case XmlTokenizer.TEXT:
+                    handler.text(t.getBuffer(), t.getTokenStart(), t.getTokenEnd());
+                    return true;
+                default:
+                    return false;
+            }
+
+        } catch (LimitExceededException ex) {
+            stopped = true;
+            try {
+                handler.error(new XmlError(ErrorKind.LIMIT_EXCEEDED,
+                        tokenizer.getLine(), -1, tokenizer.getOffset(), ex.getMessage(), null));
+            } catch (StopParsingException stop) {
+                // Stopping anyway.
+            }
+            return false;
+
+        } catch (StopParsingException ex) {
+            stopped = true;
+            return false;
+        }
+    }
+
+    /**
+     * Ends the document: the handler's endDocument() is called once.
+     *
+     * @throws IOException if handling fails
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (!started) {
+                started = true;
+                handler.startDocument(tokenizer);
+            }
+            handler.endDocument();
+        } catch (StopParsingException ex) {
+            // Nothing follows the end of the document anyway.
+        }
+        stopped = true;
+    }
+
+    /**
+     * @return true once the handler or a limit has ended the document, or
+     *         the document has been finished
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return the tokenizer this scanner reads
+     */
+    public XmlTokenizer getTokenizer() {
+        return tokenizer;
+    }
+}
@@ -0,0 +1,427 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import exceptions.StopParsingException;
+import implementations.MyStack;
+
+/**
+ * XmlHandler that writes a normalized copy of the document, in the same
+ * pass as validation (see MultiHandler), so that two versions can be
+ * compared line by line:
+ *
+ * - every element, processing instruction and piece of text starts a
+ *   line, indented by its depth (the size of a MyStack of open names)
+ * - an element holding only text stays on one line: <a>text</a>
+ * - an element with no content becomes <a/>, however it was written
+ * - attributes are separated by one space, with no space around '=',
+ *   and quoted with '"'
+ * - text is trimmed and whitespace-only text dropped; CDATA sections are
+ *   kept as they are
+ *
+ * Comments and the DOCTYPE are not copied, since the tokenizer skips
+ * them. References are copied unexpanded. The copy is always UTF-8, so
+ * the encoding named by an XML declaration is replaced with UTF-8, and a
+ * byte order mark is dropped: the declaration must start the copy.
+ *
+ * Nothing is held but the open element names and the text since the last
+ * tag; output is gathered in a 64 KiB buffer before being written.
+ */
+public class XmlFormatter extends DefaultXmlHandler {
+
+    private static final int FLUSH_SIZE = 64 * 1024;
+    private static final byte[] CDATA_START = { '<', '!', '[', 'C', 'D', 'A', 'T', 'A', '[' };
+    private static final byte[] CDATA_END = { ']', ']', '>' };
+    private static final byte[] QUOT = { '&', 'q', 'u', 'o', 't', ';' };
+    private static final byte[] ENCODING = { 'e', 'n', 'c', 'o', 'd', 'i', 'n', 'g' };
+    private static final byte[] UTF_8 = { 'U', 'T', 'F', '-', '8' };
+    private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private final OutputStream out;
+    private final int indent;
+    private final MyStack<String> stack = new MyStack<>();
+
+    private byte[] buf = new byte[FLUSH_SIZE + 4096];
+    private int size;
+    private boolean lineStart = true;
+    private boolean startPending;      // a start tag is missing its '>'
+
+    private byte[] text = new byte[4096];   // text since the last tag
+    private int textLength;
+    private boolean inCdata;                 // text ends inside a CDATA section
+
+    /**
+     * Constructs a formatter.
+     *
+     * @param out where the formatted document goes; not closed
+     * @param indent the number of spaces per level of nesting
+     */
+    public XmlFormatter(OutputStream out, int indent) {
+        this.out = out;
+        this.indent = indent;
+    }
+
+    /**
+     * Returns the file that formatting a document writes to.
+     *
+     * @param file the document
+     * @return the path of its formatted copy
+     */
+    public static Path sidecarFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".pretty.xml");
+    }
+
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        super.startDocument(locator);
+        locator.setReportText(true);
+        stack.clear();
+        lineStart = true;
+        startPending = false;
+        textLength = 0;
+        inCdata = false;
+    }
+
+    @Override
+    public void startElement(String name, byte[] b, int attributesStart, int attributesEnd)
+            throws IOException {
+        writeText();
+        startLine(stack.size());
+        put((byte) '<');
+        putName(b);
+        putAttributes(b, attributesStart, attributesEnd);
+        startPending = true;
+        stack.push(name);
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] b, int attributesStart, int attributesEnd)
+            throws IOException {
+        writeText();
+        startLine(stack.size());
+        put((byte) '<');
+        putName(b);
+        putAttributes(b, attributesStart, attributesEnd);
+        put((byte) '/');
+        put((byte) '>');
+        flushIfFull();
+    }
+
+    @Override
+    public void endElement(String name) throws IOException {
+        endText();
+        if (startPending) {
+            startPending = false;
+            if (textLength == 0) {
+                put((byte) '/');
+                put((byte) '>');
+            } else {
+                put((byte) '>');
+                put(text, 0, textLength);
+                putEndTag();
+            }
+            textLength = 0;
+        } else {
+            writeText();
+            startLine(Math.max(stack.size() - 1, 0));
+            putEndTag();
+        }
+        if (!stack.isEmpty()) {
+            stack.pop();
+        }
+        flushIfFull();
+    }
+
+    @Override
+    public void processingInstruction(String target, byte[] b, int start, int end)
+            throws IOException {
+        writeText();
+        startLine(stack.size());
+        int quote = stack.isEmpty() && target.equals("xml") ? encodingValue(b, start, end) : -1;
+        if (quote < 0) {
+            put(locator.getBuffer(), locator.getTokenStart(), locator.getTokenEnd());
+        } else {
+            put(b, locator.getTokenStart(), quote + 1);
+            put(UTF_8, 0, UTF_8.length);
+            put(b, Bytes.indexOf(b, quote + 1, end, b[quote]), locator.getTokenEnd());
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Finds the encoding pseudo-attribute of an XML declaration whose
+     * pseudo-attributes are in b[start, end).
+     *
+     * @return the index of the quote opening its value, or -1 if there is
+     *         no complete one
+     */
+    private static int encodingValue(byte[] b, int start, int end) {
+        for (int p = start; p + ENCODING.length < end; p++) {
+            if ((p > start && !isSpace(b[p - 1]))
+                    || !Arrays.equals(b, p, p + ENCODING.length, ENCODING, 0, ENCODING.length)) {
+                continue;
+            }
+            int q = p + ENCODING.length;
+            while (q < end && isSpace(b[q])) {
+                q++;
+            }
+            if (q == end || b[q] != '=') {
+                continue;
+            }
+            q++;
+            while (q < end && isSpace(b[q])) {
+                q++;
+            }
+            if (q < end && (b[q] == '"' || b[q] == '\'')
+                    && Bytes.indexOf(b, q + 1, end, b[q]) < end) {
+                return q;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void text(byte[] b, int start, int end) {
+        // The transcoder leaves a UTF-8 byte order mark in place, as text
+        // at offset 0.
+        if (locator.getTagOffset() == 0 && end - start >= BOM.length
+                && Arrays.equals(b, start, start + BOM.length, BOM, 0, BOM.length)) {
+            start += BOM.length;
+        }
+        boolean cdata = locator.isCdataText();
+        if (cdata != inCdata) {
+            byte[] marker = cdata ? CDATA_START : CDATA_END;
+            appendText(marker, 0, marker.length);
+            inCdata = cdata;
+        }
+        if (textLength == 0) {
+            // Leading whitespace would be trimmed anyway.
+            while (start < end && isSpace(b[start])) {
+                start++;
+            }
+        }
+        appendText(b, start, end);
+    }
+
+    /**
+     * Ends the last line and writes out the buffer.
+     */
+    @Override
+    public void endDocument() throws IOException {
+        writeText();
+        if (!lineStart) {
+            put((byte) '\n');
+        }
+        out.write(buf, 0, size);
+        out.flush();
+        size = 0;
+    }
+
+    private void appendText(byte[] b, int start, int end) {
+        int length = end - start;
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(textLength + length, text.length * 2));
+        }
+        System.arraycopy(b, start, text, textLength, length);
+        textLength += length;
+    }
+
+    /**
+     * Closes an open CDATA section and trims the text since the last tag.
+     */
+    private void endText() {
+        if (inCdata) {
+            appendText(CDATA_END, 0, CDATA_END.length);
+            inCdata = false;
+        }
+        int start = 0;
+        int end = textLength;
+        while (start < end && isSpace(text[start])) {
+            start++;
+        }
+        while (end > start && isSpace(text[end - 1])) {
+            end--;
+        }
+        if (start > 0) {
+            System.arraycopy(text, start, text, 0, end - start);
+        }
+        textLength = end - start;
+    }
+
+    /**
+     * Writes the text since the last tag on a line of its own, completing
+     * the start tag before it.
+     */
+    private void writeText() {
+        endText();
+        if (startPending) {
+            put((byte) '>');
+            startPending = false;
+        }
+        if (textLength > 0) {
+            startLine(stack.size());
+            put(text, 0, textLength);
+            textLength = 0;
+        }
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Begins a new line indented for the given depth.
+     */
+    private void startLine(int depth) {
+        if (!lineStart) {
+            put((byte) '\n');
+        }
+        int spaces = depth * indent;
+        ensure(spaces);
+        Arrays.fill(buf, size, size + spaces, (byte) ' ');
+        size += spaces;
+        lineStart = false;
+    }
+
+    private void putName(byte[] b) {
+        put(b, locator.getNameStart(), locator.getNameEnd());
+    }
+
+    private void putEndTag() {
+        int start = locator.getNameStart();
+        int length = locator.getNameEnd() - start;
+        ensure(length + 3);
+        buf[size++] = '<';
+        buf[size++] = '/';
+        System.arraycopy(locator.getBuffer(), start, buf, size, length);
+        size += length;
+        buf[size++] = '>';
+    }
+
+    /**
+     * Writes the attributes in b[start, end) in normal form. If they are
+     * malformed, the rest is copied as it is.
+     */
+    private void putAttributes(byte[] b, int start, int end) {
+        while (end > start && isSpace(b[end - 1])) {
+            end--;
+        }
+        if (isNormal(b, start, end)) {
+            put(b, start, end);
+            return;
+        }
+        int p = start;
+        while (true) {
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            if (p >= end) {
+                return;
+            }
+            int rest = p;
+            int nameStart = p;
+            while (p < end && b[p] != '=' && !isSpace(b[p])) {
+                p++;
+            }
+            int nameEnd = p;
+            while (p < end && isSpace(b[p])) {
+                p++;
+            }
+            if (p < end && b[p] == '=') {
+                p++;
+                while (p < end && isSpace(b[p])) {
+                    p++;
+                }
+            }
+            int valueEnd = p < end && (b[p] == '"' || b[p] == '\'')
+                    ? Bytes.indexOf(b, p + 1, end, b[p]) : end;
+            if (nameStart == nameEnd || valueEnd == end) {
+                put((byte) ' ');
+                put(b, rest, end);
+                return;
+            }
+            byte quote = b[p];
+            put((byte) ' ');
+            put(b, nameStart, nameEnd);
+            put((byte) '=');
+            put((byte) '"');
+            if (quote == '"') {
+                put(b, p + 1, valueEnd);
+            } else {
+                putQuoted(b, p + 1, valueEnd);
+            }
+            put((byte) '"');
+            p = valueEnd + 1;
+        }
+    }
+
+    /**
+     * Checks whether attributes are already in normal form: each is one
+     * space, a name, '=' and a value in '"', so they can be copied whole.
+     */
+    private static boolean isNormal(byte[] b, int start, int end) {
+        int p = start;
+        while (p < end) {
+            if (b[p++] != ' ' || p == end || isNameEnd(b[p])) {
+                return false;
+            }
+            while (p < end && !isNameEnd(b[p])) {
+                p++;
+            }
+            if (end - p < 3 || b[p] != '=' || b[p + 1] != '"') {
+                return false;
+            }
+            p = Bytes.indexOf(b, p + 2, end, (byte) '"');
+            if (p == end) {
+                return false;
+            }
+            p++;
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte c) {
+        return c == '=' || c == '"' || c == '\'' || isSpace(c);
+    }
+
+    /**
+     * Writes a value that was in single quotes, escaping its '"'.
+     */
+    private void putQuoted(byte[] b, int start, int end) {
+        int p = start;
+        int quote;
+        while ((quote = Bytes.indexOf(b, p, end, (byte) '"')) < end) {
+            put(b, p, quote);
+            put(QUOT, 0, QUOT.length);
+            p = quote + 1;
+        }
+        put(b, p, end);
+    }
+
+    private void flushIfFull() throws IOException {
+        if (size >= FLUSH_SIZE) {
+            out.write(buf, 0, size);
+            size = 0;
+        }
+    }
+
+    private void ensure(int length) {
+        if (size + length > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(size + length, buf.length * 2));
+        }
+    }
+
+    private void put(byte[] b, int start, int end) {
+        ensure(end - start);
+        System.arraycopy(b, start, buf, size, end - start);
+        size += end - start;
+    }
+
+    private void put(byte c) {
+        ensure(1);
+        buf[size++] = c;
+    }
+}
@@ -0,0 +1,95 @@
+package xmlparser;
+
+import java.io.IOException;
+
+import exceptions.StopParsingException;
+
+/**
+ * Receives the events of an XML document as XmlEventScanner finds them,
+ * in document order (a SAX-style push API).
+ *
+ * To avoid copying, attributes, processing instruction content and text
+ * are passed as ranges of the tokenizer's buffer. A range is only valid
+ * during the call; copy it if it is needed later. Tag names are interned
+ * (see NameTable), so they may be compared with ==. The tokenizer passed
+ * to startDocument() gives the line, column and offset of the current
+ * event at any time.
+ *
+ * Any handler method may throw StopParsingException to end the document
+ * early; endDocument() is still called.
+ */
+public interface XmlHandler {
+
+    /**
+     * Called before any other event of a document.
+     *
+     * @param locator the tokenizer over the document, for event positions
+     */
+    void startDocument(XmlTokenizer locator) throws IOException, StopParsingException;
+
+    /**
+     * An opening tag: {@code <name attr="value">}.
+     *
+     * @param name the element name
+     * @param buf the buffer holding the attributes
+     * @param attributesStart index of the attributes, which may begin
+     *        with whitespace
+     * @param attributesEnd index just past the attributes
+     */
+    void startElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException;
+
+    /**
+     * A self-closing tag: {@code <name attr="value"/>}. Not followed by
+     * an endElement() call.
+     *
+     * @param name the element name
+     * @param buf the buffer holding the attributes
+     * @param attributesStart index of the attributes
+     * @param attributesEnd index just past the attributes
+     */
+    void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException;
+
+    /**
+     * A closing tag: {@code </name>}.
+     *
+     * @param name the element name
+     */
+    void endElement(String name) throws IOException, StopParsingException;
+
+    /**
+     * A processing instruction: {@code <?target content?>}.
+     *
+     * @param target the target, e.g. "xml"
+     * @param buf the buffer holding the content
+     * @param start index of the content
+     * @param end index just past the content
+     */
+    void processingInstruction(String target, byte[] buf, int start, int end)
+            throws IOException, StopParsingException;
+
+    /**
+     * Character data between tags. Only delivered when the tokenizer
+     * reports text (XmlTokenizer.setReportText()); one run of text may be
+     * split over several calls.
+     *
+     * @param buf the buffer holding the text
+     * @param start index of the first byte of text
+     * @param end index just past the text
+     */
+    void text(byte[] buf, int start, int end) throws IOException, StopParsingException;
+
+    /**
+     * An error found by the scanner itself, such as a tripped tag or line
+     * length limit. Scanning stops after it.
+     *
+     * @param error the error
+     */
+    void error(XmlError error) throws IOException, StopParsingException;
+
+    /**
+     * Called after the last event of a document.
+     */
+    void endDocument() throws IOException, StopParsingException;
+}
@@ -0,0 +1,179 @@
+package xmlparser;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import exceptions.StopParsingException;
+import implementations.MyStack;
+
+/**
+ * XmlHandler that writes a copy of the document with its nesting
+ * repaired, in the same pass as validation (see MultiHandler). Open
+ * elements are kept on a MyStack, as in XmlValidator, and:
+ *
+ * - a closing tag for an element further down the stack first closes
+ *   the elements above it:  <a><b></a>  becomes  <a><b></b></a>
+ * - a closing tag for no open element is dropped
+ * - elements still open at the end of the document are closed there,
+ *   after an unfinished tag at the very end is dropped
+ *
+ * Every other byte is copied as it is, comments and text included. The
+ * copy is read from a second stream over the same document, in large
+ * blocks between the fixes, so memory is bounded by the depth. Each fix
+ * is passed to a RepairListener.
+ *
+ * If the scan stops early (a limit, or stopping at an error), the rest
+ * of the document is copied unrepaired.
+ */
+public class XmlRepairer extends DefaultXmlHandler {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream copy;
+    private final OutputStream out;
+    private final RepairListener listener;
+    private final MyStack<String> stack = new MyStack<>();
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long copied;        // offset of the next byte of copy
+    private long repairs;
+
+    /**
+     * Constructs a repairer.
+     *
+     * @param copy the document again, as the tokenizer sees it (inflated
+     *        and UTF-8), from its first byte; not closed
+     * @param out where the repaired document goes; not closed
+     * @param listener the receiver of every fix
+     */
+    public XmlRepairer(InputStream copy, OutputStream out, RepairListener listener) {
+        this.copy = copy;
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the file that repairing a document writes to.
+     *
+     * @param file the document
+     * @return the path of its repaired copy
+     */
+    public static Path sidecarFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".fixed.xml");
+    }
+
+    /**
+     * @return the number of fixes made so far
+     */
+    public long getRepairCount() {
+        return repairs;
+    }
+
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        super.startDocument(locator);
+        stack.clear();
+    }
+
+    @Override
+    public void startElement(String name, byte[] b, int attributesStart, int attributesEnd) {
+        stack.push(name);
+    }
+
+    @Override
+    public void endElement(String name) throws IOException {
+        int distance = stack.isEmpty() ? -1 : stack.search(name);
+        if (distance == 1) {
+            stack.pop();
+            return;
+        }
+
+        copyTo(locator.getTagOffset());
+        if (distance < 0) {
+            skipTo(locator.getTagEndOffset());
+            fix("Dropped stray </" + name + ">", locator.getTagLine(), locator.getTagOffset());
+            return;
+        }
+        for (int i = 1; i < distance; i++) {
+            String open = stack.pop();
+            writeEndTag(open);
+            fix("Inserted </" + open + "> before </" + name + ">", locator.getTagLine(),
+                    locator.getTagOffset());
+        }
+        stack.pop();
+    }
+
+    /**
+     * Copies the rest of the document, closing what is still open.
+     */
+    @Override
+    public void endDocument() throws IOException {
+        if (locator.getType() != XmlTokenizer.END_OF_INPUT) {
+            copyTo(Long.MAX_VALUE);
+            out.flush();
+            return;
+        }
+
+        // The scan stops at the start of an unfinished tag.
+        copyTo(locator.getOffset());
+        long end = locator.getOffset();
+        skipTo(Long.MAX_VALUE);
+        if (copied > end) {
+            fix("Dropped unfinished markup at end of file", locator.getLine(), end);
+        }
+        while (!stack.isEmpty()) {
+            String open = stack.pop();
+            writeEndTag(open);
+            fix("Closed <" + open + "> at end of file", locator.getLine(), end);
+        }
+        out.flush();
+    }
+
+    private void fix(String description, int line, long offset) throws IOException {
+        repairs++;
+        listener.repaired(description, line, offset);
+    }
+
+    private void writeEndTag(String name) throws IOException {
+        out.write(("</" + name + ">").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies the document up to the given offset, or to its end.
+     */
+    private void copyTo(long offset) throws IOException {
+        transfer(offset, true);
+    }
+
+    /**
+     * Skips the document up to the given offset, or to its end.
+     */
+    private void skipTo(long offset) throws IOException {
+        transfer(offset, false);
+    }
+
+    private void transfer(long offset, boolean write) throws IOException {
+        while (copied < offset) {
+            if (pos == limit) {
+                int n = copy.read(buf);
+                if (n < 0) {
+                    return;
+                }
+                pos = 0;
+                limit = n;
+            }
+            int n = (int) Math.min(limit - pos, offset - copied);
+            if (write) {
+                out.write(buf, pos, n);
+            }
+            pos += n;
+            copied += n;
+        }
+    }
+}
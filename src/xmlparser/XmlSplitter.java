@@ -0,0 +1,248 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import exceptions.StopParsingException;
+
+/**
+ * XmlHandler that cuts a document into shards of a fixed number of
+ * elements at a chosen depth, in the same pass as validation (see
+ * MultiHandler). With depth 2 and 1000 elements per shard,
+ *
+ *   <?xml version="1.0"?>
+ *   <root a="1"><Driver/>...<Driver/></root>
+ *
+ * becomes files of 1000 Drivers each, every one holding the declaration
+ * and <root a="1"> before them and </root> after them, so each shard is
+ * well formed on its own if the document is. When the parents of the
+ * elements change within a shard, e.g. at depth 3 across two Category
+ * elements, the shard keeps the tags between them and starts and ends
+ * with the ancestors of its first and last element.
+ *
+ * The handler only tracks offsets: the elements are copied from the
+ * document file to each shard with FileChannel.transferTo() as soon as
+ * the shard is complete, so memory is bounded by the ancestors' start
+ * tags. Offsets must therefore be file offsets: the document must be
+ * neither compressed nor transcoded.
+ */
+public class XmlSplitter extends DefaultXmlHandler {
+
+    private final FileChannel source;
+    private final Path file;
+    private final int splitDepth;
+    private final long perShard;
+
+    private byte[] declaration;
+    private byte[][] startTags;       // of the open elements above splitDepth
+    private String[] names;
+    private String[] lastNames;       // ancestors of the shard's last element
+    private int depth;
+
+    private byte[] prologue;          // of the shard being gathered
+    private long shardStart;
+    private long shardEnd;
+    private long shardElements;
+    private int shards;
+    private long elements;
+
+    /**
+     * Constructs a splitter.
+     *
+     * @param source the document file, read again to copy the elements
+     * @param file its path, from which the shards are named
+     * @param splitDepth the depth of the elements to split between; the
+     *        root element is at depth 1
+     * @param perShard the number of elements in each shard but the last
+     * @throws IllegalArgumentException if splitDepth < 2 or perShard < 1
+     */
+    public XmlSplitter(FileChannel source, Path file, int splitDepth, long perShard) {
+        if (splitDepth < 2 || perShard < 1) {
+            throw new IllegalArgumentException(
+                    "Split depth must be at least 2 and shard size at least 1");
+        }
+        this.source = source;
+        this.file = file;
+        this.splitDepth = splitDepth;
+        this.perShard = perShard;
+        this.startTags = new byte[splitDepth - 1][];
+        this.names = new String[splitDepth - 1];
+        this.lastNames = new String[splitDepth - 1];
+    }
+
+    /**
+     * Returns the path of one shard of a document: a.xml gives a-0001.xml,
+     * a-0002.xml, ...
+     *
+     * @param file the document
+     * @param shard the 1-based shard number
+     * @return the shard's path
+     */
+    public static Path shardFor(Path file, int shard) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".xml")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return file.resolveSibling(String.format("%s-%04d.xml", name, shard));
+    }
+
+    /**
+     * @return the number of shards written so far
+     */
+    public int getShardCount() {
+        return shards;
+    }
+
+    /**
+     * @return the number of elements at the split depth written so far
+     */
+    public long getElementCount() {
+        return elements;
+    }
+
+    @Override
+    public void startDocument(XmlTokenizer locator) throws IOException, StopParsingException {
+        super.startDocument(locator);
+        declaration = null;
+        depth = 0;
+        shardElements = 0;
+    }
+
+    @Override
+    public void processingInstruction(String target, byte[] buf, int start, int end) {
+        if (depth == 0 && declaration == null && target.equals("xml")) {
+            declaration = tag();
+        }
+    }
+
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd) {
+        depth++;
+        if (depth < splitDepth) {
+            startTags[depth - 1] = tag();
+            names[depth - 1] = name;
+        } else if (depth == splitDepth) {
+            startShardElement();
+        }
+    }
+
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException {
+        if (depth + 1 == splitDepth) {
+            startShardElement();
+            endShardElement();
+        }
+    }
+
+    @Override
+    public void endElement(String name) throws IOException {
+        if (depth == splitDepth) {
+            endShardElement();
+        }
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    /**
+     * Writes the last, partial shard. An element left open is not
+     * included.
+     */
+    @Override
+    public void endDocument() throws IOException {
+        if (shardElements > 0) {
+            writeShard();
+        }
+    }
+
+    /**
+     * @return a copy of the current tag's bytes
+     */
+    private byte[] tag() {
+        return Arrays.copyOfRange(locator.getBuffer(), locator.getTokenStart(),
+                locator.getTokenEnd());
+    }
+
+    /**
+     * Notes the start of an element at the split depth, beginning a new
+     * shard with the current ancestors if need be.
+     */
+    private void startShardElement() {
+        if (shardElements > 0) {
+            return;
+        }
+        shardStart = locator.getTagOffset();
+        int length = declaration == null ? 0 : declaration.length + 1;
+        for (int d = 0; d < splitDepth - 1; d++) {
+            length += startTags[d].length + 1;
+        }
+        prologue = new byte[length];
+        int p = 0;
+        if (declaration != null) {
+            p = append(declaration, p);
+        }
+        for (int d = 0; d < splitDepth - 1; d++) {
+            p = append(startTags[d], p);
+        }
+    }
+
+    private int append(byte[] tag, int p) {
+        System.arraycopy(tag, 0, prologue, p, tag.length);
+        prologue[p + tag.length] = '\n';
+        return p + tag.length + 1;
+    }
+
+    /**
+     * Notes the end of an element at the split depth, writing the shard
+     * once it is full.
+     */
+    private void endShardElement() throws IOException {
+        shardEnd = locator.getTagEndOffset();
+        System.arraycopy(names, 0, lastNames, 0, names.length);
+        elements++;
+        if (++shardElements == perShard) {
+            writeShard();
+        }
+    }
+
+    /**
+     * Writes the prologue, the elements' bytes and the end tags of the
+     * last element's ancestors to the next shard file. Those are the names
+     * saved by endShardElement(): by the end of the document, later
+     * ancestors may have replaced them in names.
+     */
+    private void writeShard() throws IOException {
+        StringBuilder epilogue = new StringBuilder("\n");
+        for (int d = splitDepth - 2; d >= 0; d--) {
+            epilogue.append("</").append(lastNames[d]).append(">\n");
+        }
+
+        Path shard = shardFor(file, ++shards);
+        try (FileChannel out = FileChannel.open(shard, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(prologue));
+            long position = shardStart;
+            while (position < shardEnd) {
+                long copied = source.transferTo(position, shardEnd - position, out);
+                if (copied <= 0) {
+                    throw new IOException("Document ended early while writing " + shard);
+                }
+                position += copied;
+            }
+            writeFully(out, ByteBuffer.wrap(epilogue.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        shardElements = 0;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,831 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import exceptions.LimitExceededException;
+
+/**
+ * Pull tokenizer that finds the "<...>" tags of an XML byte stream.
+ * Replaces the old line-based extractTags(): the input is scanned as raw
+ * bytes in one pass, so tags may span lines and no per-line Strings are
+ * created.
+ *
+ * Positions come for free from the scan itself: the tokenizer knows the
+ * absolute offset of its buffer and of the current line start, so each
+ * tag's line, column and byte offset is simple arithmetic. Columns are
+ * 1-based and counted in bytes from the start of the line.
+ *
+ * The tag length and line length limits are enforced here, so no tag or
+ * line ever costs more than its limit in work or buffer space.
+ *
+ * Tokens are exposed as ranges of the internal buffer (getBuffer() and
+ * the start/end accessors), valid until the next call to next(). Text
+ * between tags is only reported as TEXT tokens when asked for with
+ * setReportText(); otherwise it is skipped. Tag names are interned in a
+ * NameTable, so repeated names cost no new String.
+ *
+ * Comments, CDATA sections and DOCTYPE declarations (with any internal
+ * subset) are stepped over by a small state machine, so a "<foo>" inside
+ * them is not taken for a tag. They may span lines and buffers and are
+ * never copied; only their count and size are kept, in ScanMetrics. The
+ * content of a CDATA section is reported as TEXT when text is asked for.
+ */
+public class XmlTokenizer {
+
+    /** No more tags: the end of the input was reached. */
+    public static final int END_OF_INPUT = 0;
+
+    /** An opening tag: {@code <name attr="value">}. */
+    public static final int START_TAG = 1;
+
+    /** A closing tag: {@code </name>}. */
+    public static final int END_TAG = 2;
+
+    /** A self-closing tag: {@code <name attr="value"/>}. */
+    public static final int EMPTY_TAG = 3;
+
+    /** A processing instruction: {@code <?target ...?>}. */
+    public static final int PROCESSING_INSTRUCTION = 4;
+
+    /**
+     * Character data between tags. Long text, or text cut by the end of
+     * the buffer, is reported as several consecutive TEXT tokens.
+     */
+    public static final int TEXT = 5;
+
+    // Markup skipped by the state machine; also counted in ScanMetrics.
+    static final int COMMENT = 1;
+    static final int CDATA = 2;
+    static final int DOCTYPE = 3;
+
+    private static final byte[] CDATA_OPEN = {'<', '!', '[', 'C', 'D', 'A', 'T', 'A', '['};
+    private static final byte[] DOCTYPE_OPEN = {'<', '!', 'D', 'O', 'C', 'T', 'Y', 'P', 'E'};
+    private static final byte[] COMMENT_OPEN = {'<', '!', '-', '-'};
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final int maxTagLength;
+    private final int maxLineLength;
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    private int pos;              // next unscanned byte in buf
+    private int limit;            // number of valid bytes in buf
+    private long base;            // absolute offset of buf[0]
+    private boolean eof;
+
+    private int line = 1;         // 1-based line of buf[pos]
+    private long lineStart;       // absolute offset of the first byte of that line
+
+    private boolean reportText;
+    private NameTable names = new NameTable();
+    private ScanMetrics metrics = new ScanMetrics();
+
+    // Markup being skipped; kept between calls, so a construct cut off by
+    // the end of the input can be continued after resume().
+    private int markup;           // 0, COMMENT, CDATA or DOCTYPE
+    private long markupStart;     // absolute offset of its '<'
+    private int run;              // consecutive '-' or ']' just seen
+    private byte quote;           // open quote inside a DOCTYPE, or 0
+    private int subsetDepth;      // '[' nesting inside a DOCTYPE
+    private int subsetMatch;      // bytes of "<!--" matched in the internal subset
+    private boolean subsetComment;
+    private boolean doctype;      // a DOCTYPE declaration has been skipped
+
+    // The current token
+    private int type = END_OF_INPUT;
+    private int tagStart;         // index of '<' in buf (or of the first text byte)
+    private int tagEnd;           // index just past '>' in buf (or the text)
+    private int nameStart;
+    private int nameEnd;
+    private int attributesEnd;    // index of the '/', '?' or '>' ending the attributes
+    private int nameId = -1;      // interned name, or -1 until asked for
+    private int tagLine;
+    private long tagLineStart;
+    private boolean cdataToken;   // the TEXT token is CDATA content
+
+    /**
+     * Constructs a tokenizer reading the given stream, enforcing the tag
+     * and line length limits of the given limits.
+     *
+     * @param in the XML input; read in large blocks, so it need not be buffered
+     * @param limits the limits to enforce
+     */
+    public XmlTokenizer(InputStream in, ParserLimits limits) {
+        this(in, limits, 0, 1, 0);
+    }
+
+    /**
+     * Constructs a tokenizer that continues a document part-way through,
+     * e.g. from a checkpoint. The stream must be positioned at the given
+     * offset, which must lie between tags.
+     *
+     * @param in the rest of the XML input, starting at offset
+     * @param limits the limits to enforce
+     * @param offset the absolute byte offset of the stream's first byte
+     * @param line the 1-based line at that offset
+     * @param lineStart the absolute byte offset at which that line starts
+     */
+    public XmlTokenizer(InputStream in, ParserLimits limits, long offset, int line, long lineStart) {
+        this.in = in;
+        this.maxTagLength = limits.getMaxTagLength();
+        this.maxLineLength = limits.getMaxLineLength();
+        this.base = offset;
+        this.line = line;
+        this.lineStart = lineStart;
+    }
+
+    /**
+     * Chooses whether text between tags is returned as TEXT tokens.
+     * Off by default, since checking nesting does not need it.
+     *
+     * @param reportText true to return TEXT tokens
+     */
+    public void setReportText(boolean reportText) {
+        this.reportText = reportText;
+    }
+
+    /**
+     * @return true if text between tags is returned as TEXT tokens
+     */
+    public boolean isReportingText() {
+        return reportText;
+    }
+
+    /**
+     * Shares a name table with other tokenizers, e.g. so name ids agree
+     * across every document of a run.
+     *
+     * @param names the table to intern names in
+     */
+    public void setNameTable(NameTable names) {
+        this.names = names;
+    }
+
+    /**
+     * @return the table tag names are interned in
+     */
+    public NameTable getNameTable() {
+        return names;
+    }
+
+    /**
+     * Shares scan counters with other tokenizers, e.g. to total a run.
+     *
+     * @param metrics the counters to add to
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the counters this tokenizer adds to
+     */
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return the type of the token found, or END_OF_INPUT
+     * @throws IOException if reading the input fails
+     * @throws LimitExceededException if a tag or line is longer than its limit
+     */
+    public int next() throws IOException, LimitExceededException {
+
+        int p;
+        while (true) {
+
+            // Finish any comment, CDATA section or DOCTYPE first.
+            if (markup != 0) {
+                int t = skipMarkup();
+                if (t >= 0) {
+                    return type = t;
+                }
+            }
+
+            // ---------------------------------------------------------
+            //  Skip text up to the next '<', counting line breaks.
+            // ---------------------------------------------------------
+            p = pos;
+            int textStart = p;
+            int textLine = line;
+            long textLineStart = lineStart;
+            while (true) {
+                if (p >= limit) {
+                    if (reportText && p > textStart) {
+                        return text(textStart, p, textLine, textLineStart);
+                    }
+                    pos = p;
+                    if (!fill(p)) {
+                        return type = END_OF_INPUT;
+                    }
+                    p = pos;
+                    textStart = p;
+                    textLine = line;
+                    textLineStart = lineStart;
+                }
+                byte[] b = buf;
+                int end = limit;
+                while (p < end) {
+                    byte c = b[p];
+                    if (c == '<') {
+                        break;
+                    }
+                    if (c == '\n') {
+                        newLine(p);
+                    }
+                    p++;
+                }
+                if (p < end) {
+                    break;
+                }
+            }
+            if (reportText && p > textStart) {
+                return text(textStart, p, textLine, textLineStart);
+            }
+
+            // A "<!" may open markup to skip rather than a tag.
+            pos = p;
+            if (!startMarkup()) {
+                break;
+            }
+        }
+
+        // ---------------------------------------------------------
+        //  Find the closing '>', which may not be inside a quoted
+        //  attribute value. Line breaks inside the tag are only
+        //  committed once the tag is complete, so a tag cut short by
+        //  the end of the buffer can simply be rescanned.
+        // ---------------------------------------------------------
+        p = pos;
+        int q = p + 1;
+        int breaks = 0;
+        int lastBreak = -1;
+        byte quote = 0;               // quote of the value being read, or 0
+        boolean afterEquals = false;  // a quote here would open a value
+        while (true) {
+            byte[] b = buf;
+            int end = (int) Math.min(limit, (long) pos + maxTagLength);
+            while (q < end) {
+                byte c = b[q];
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '>') {
+                    break;
+                } else if (c == '=') {
+                    afterEquals = true;
+                } else if ((c == '"' || c == '\'') && afterEquals) {
+                    quote = c;
+                    afterEquals = false;
+                } else if (!isWhitespace(c)) {
+                    afterEquals = false;
+                }
+                if (c == '\n') {
+                    breaks++;
+                    lastBreak = q;
+                }
+                q++;
+            }
+            if (q < end) {
+                break;
+            }
+            if (q - pos >= maxTagLength) {
+                throw new LimitExceededException(
+                        "Tag longer than " + maxTagLength + " bytes");
+            }
+
+            // Keep the partial tag and read more input behind it.
+            int shift = pos;
+            if (!fill(pos)) {
+                // An unterminated tag at end of input is ignored.
+                return type = END_OF_INPUT;
+            }
+            shift -= pos;
+            q -= shift;
+            if (lastBreak >= 0) {
+                lastBreak -= shift;
+            }
+        }
+
+        tagStart = pos;
+        tagEnd = q + 1;
+        tagLine = line;
+        tagLineStart = lineStart;
+        if (breaks > 0) {
+            line += breaks;
+            lineStart = base + lastBreak + 1;
+        }
+        pos = tagEnd;
+        nameId = -1;
+
+        return type = classify();
+    }
+
+    /**
+     * Makes buf[start, end) the current TEXT token and leaves the scan
+     * position at its end.
+     */
+    private int text(int start, int end, int textLine, long textLineStart) {
+        tagStart = start;
+        tagEnd = end;
+        nameStart = nameEnd = attributesEnd = start;
+        nameId = -1;
+        tagLine = textLine;
+        tagLineStart = textLineStart;
+        cdataToken = markup == CDATA;
+        pos = end;
+        return type = TEXT;
+    }
+
+    /**
+     * Checks whether the '<' at pos opens a comment, CDATA section or
+     * DOCTYPE declaration and if so, steps past its opening delimiter.
+     *
+     * @return true if markup to skip was opened
+     */
+    private boolean startMarkup() throws IOException, LimitExceededException {
+        if (!available(2) || buf[pos + 1] != '!') {
+            return false;
+        }
+        int kind;
+        int length;
+        if (matches(COMMENT_OPEN)) {
+            kind = COMMENT;
+            length = COMMENT_OPEN.length;
+        } else if (matches(CDATA_OPEN)) {
+            kind = CDATA;
+            length = CDATA_OPEN.length;
+        } else if (matches(DOCTYPE_OPEN)) {
+            kind = DOCTYPE;
+            length = DOCTYPE_OPEN.length;
+        } else {
+            return false;
+        }
+        markup = kind;
+        markupStart = base + pos;
+        run = 0;
+        quote = 0;
+        subsetDepth = 0;
+        subsetMatch = 0;
+        subsetComment = false;
+        pos += length;
+        return true;
+    }
+
+    /**
+     * Scans on through the current markup until its end.
+     *
+     * @return -1 once the markup has ended, TEXT for a piece of CDATA
+     *         content (when text is reported), or END_OF_INPUT
+     */
+    private int skipMarkup() throws IOException, LimitExceededException {
+        boolean cdataText = reportText && markup == CDATA;
+        int p = pos;
+        int chunkStart = p;
+        int chunkLine = line;
+        long chunkLineStart = lineStart;
+
+        while (true) {
+            if (p >= limit) {
+                int keep = p;
+                if (cdataText) {
+                    // Brackets that may begin "]]>" stay in the buffer and
+                    // are looked at again.
+                    keep = p - run;
+                    run = 0;
+                    if (keep > chunkStart) {
+                        int t = text(chunkStart, keep, chunkLine, chunkLineStart);
+                        pos = keep;
+                        return t;
+                    }
+                }
+                pos = keep;
+                if (!fill(keep)) {
+                    return END_OF_INPUT;
+                }
+                p = pos;
+                chunkStart = p;
+                chunkLine = line;
+                chunkLineStart = lineStart;
+            }
+
+            byte c = buf[p];
+            if (c == '\n') {
+                newLine(p);
+            }
+            if (endsMarkup(c)) {
+                int end = p + 1;
+                metrics.skipped(markup, base + end - markupStart);
+                if (markup == DOCTYPE) {
+                    doctype = true;
+                }
+                int t = -1;
+                if (cdataText && p - 2 > chunkStart) {
+                    t = text(chunkStart, p - 2, chunkLine, chunkLineStart);
+                }
+                markup = 0;
+                pos = end;
+                return t;
+            }
+            p++;
+        }
+    }
+
+    /**
+     * Feeds one byte of markup to the state machine.
+     *
+     * @return true if the byte is the '>' that ends the markup
+     */
+    private boolean endsMarkup(byte c) {
+        if (markup == DOCTYPE && !subsetComment) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                return false;
+            }
+            if (subsetDepth > 0) {
+                // A comment in the internal subset may hold anything.
+                subsetMatch = c == COMMENT_OPEN[subsetMatch] ? subsetMatch + 1 : (c == '<' ? 1 : 0);
+                if (subsetMatch == COMMENT_OPEN.length) {
+                    subsetComment = true;
+                    subsetMatch = 0;
+                    run = 0;
+                    return false;
+                }
+            }
+            switch (c) {
+                case '"':
+                case '\'':
+                    quote = c;
+                    return false;
+                case '[':
+                    subsetDepth++;
+                    return false;
+                case ']':
+                    subsetDepth--;
+                    return false;
+                case '>':
+                    return subsetDepth <= 0;
+                default:
+                    return false;
+            }
+        }
+
+        // Comments (also inside a DOCTYPE) end at "-->", CDATA at "]]>".
+        byte close = markup == CDATA ? (byte) ']' : (byte) '-';
+        if (c == close) {
+            run++;
+            return false;
+        }
+        boolean ended = c == '>' && run >= 2;
+        run = 0;
+        if (ended && subsetComment) {
+            subsetComment = false;
+            return false;
+        }
+        return ended;
+    }
+
+    /**
+     * Makes at least n bytes available from pos, reading more if needed.
+     *
+     * @return false if the input ends first
+     */
+    private boolean available(int n) throws IOException, LimitExceededException {
+        while (limit - pos < n) {
+            if (!fill(pos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the input at pos starts with the given bytes.
+     */
+    private boolean matches(byte[] open) throws IOException, LimitExceededException {
+        if (!available(open.length)) {
+            return false;
+        }
+        for (int i = 2; i < open.length; i++) {
+            if (buf[pos + i] != open[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Allows reading to continue after END_OF_INPUT, for input that is
+     * still growing (e.g. a file being appended to). Scanning resumes
+     * where it stopped: a tag that was cut off by the end of the input is
+     * rescanned from its '<', and no line break is counted twice.
+     */
+    public void resume() {
+        eof = false;
+    }
+
+    /**
+     * Works out the type and name range of the tag in buf[tagStart, tagEnd).
+     */
+    private int classify() {
+        byte[] b = buf;
+        int s = tagStart + 1;      // first byte after '<'
+        int e = tagEnd - 1;        // index of '>'
+
+        // Processing instruction: <?target ... ?>
+        if (s < e && b[s] == '?') {
+            nameStart = s + 1;
+            nameEnd = scanName(nameStart, e);
+            attributesEnd = (e > nameEnd && b[e - 1] == '?') ? e - 1 : e;
+            return PROCESSING_INSTRUCTION;
+        }
+
+        // A trailing slash (ignoring whitespace) marks a self-closing tag.
+        int last = e - 1;
+        while (last >= s && isWhitespace(b[last])) {
+            last--;
+        }
+        if (last >= s && b[last] == '/') {
+            nameStart = skipWhitespace(s, last);
+            nameEnd = scanName(nameStart, last);
+            attributesEnd = last;
+            return EMPTY_TAG;
+        }
+
+        // Closing tag: </name>
+        if (s < e && b[s] == '/') {
+            nameStart = s + 1;
+            nameEnd = last + 1;
+            attributesEnd = nameEnd;
+            return END_TAG;
+        }
+
+        // Opening tag: <name attr="value">
+        nameStart = skipWhitespace(s, e);
+        nameEnd = scanName(nameStart, e);
+        attributesEnd = e;
+        return START_TAG;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace byte in [from, to).
+     */
+    private int skipWhitespace(int from, int to) {
+        while (from < to && isWhitespace(buf[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Returns the index just past the name starting at from, which ends at
+     * whitespace, '/' or the given bound.
+     */
+    private int scanName(int from, int to) {
+        while (from < to && !isWhitespace(buf[from]) && buf[from] != '/') {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Returns true for the XML whitespace bytes: space, tab, CR and LF.
+     */
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Records a line break at buf[p], checking the finished line's length.
+     */
+    private void newLine(int p) throws LimitExceededException {
+        long breakOffset = base + p;
+        if (breakOffset - lineStart > maxLineLength) {
+            throw lineTooLong();
+        }
+        line++;
+        lineStart = breakOffset + 1;
+    }
+
+    /**
+     * Reads more input, keeping buf[keep, limit) and moving it to the front
+     * of the buffer. The buffer grows only when the kept bytes fill it.
+     *
+     * @return false if no more input is available
+     */
+    private boolean fill(int keep) throws IOException, LimitExceededException {
+        if (eof) {
+            return false;
+        }
+
+        // The current line can be checked before reading further into it.
+        if (base + limit - lineStart > maxLineLength) {
+            throw lineTooLong();
+        }
+
+        int kept = limit - keep;
+        if (kept == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, keep, bigger, 0, kept);
+            buf = bigger;
+        } else if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, kept);
+        }
+        base += keep;
+        pos -= keep;
+        limit = kept;
+
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Builds the exception thrown for an over-long line.
+     */
+    private LimitExceededException lineTooLong() {
+        return new LimitExceededException(
+                "Line longer than " + maxLineLength + " bytes");
+    }
+
+    /**
+     * @return the type of the current token
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the name of the current tag, decoded as UTF-8. For a
+     * processing instruction this is its target (e.g. "xml"). Names are
+     * interned, so equal names are the same String.
+     *
+     * @return the tag name
+     */
+    public String getName() {
+        return names.getName(getNameId());
+    }
+
+    /**
+     * @return the id of the current tag's name in the name table
+     */
+    public int getNameId() {
+        if (nameId < 0) {
+            nameId = names.intern(buf, nameStart, nameEnd);
+        }
+        return nameId;
+    }
+
+    /**
+     * Returns the buffer holding the current token. Its contents are only
+     * valid until the next call to next().
+     *
+     * @return the tokenizer's buffer
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * @return the buffer index of the current token's first byte: the '<'
+     *         of a tag, or the first byte of a TEXT token
+     */
+    public int getTokenStart() {
+        return tagStart;
+    }
+
+    /**
+     * @return the buffer index just past the current token
+     */
+    public int getTokenEnd() {
+        return tagEnd;
+    }
+
+    /**
+     * @return the buffer index of the current tag name's first byte
+     */
+    public int getNameStart() {
+        return nameStart;
+    }
+
+    /**
+     * @return the buffer index just past the current tag name
+     */
+    public int getNameEnd() {
+        return nameEnd;
+    }
+
+    /**
+     * @return the buffer index at which the current tag's attributes
+     *         (or a processing instruction's content) start, right after
+     *         the name; they may begin with whitespace
+     */
+    public int getAttributesStart() {
+        return nameEnd;
+    }
+
+    /**
+     * @return the buffer index just past the current tag's attributes:
+     *         the index of the closing '/', '?' or '>'
+     */
+    public int getAttributesEnd() {
+        return attributesEnd;
+    }
+
+    /**
+     * @return true if the current TEXT token is the content of a CDATA
+     *         section, where '&' and '<' have no special meaning
+     */
+    public boolean isCdataText() {
+        return cdataToken;
+    }
+
+    /**
+     * @return true once the document's DOCTYPE declaration has been
+     *         scanned; its internal subset may declare entities
+     */
+    public boolean hasDoctype() {
+        return doctype;
+    }
+
+    /**
+     * Records that a DOCTYPE declaration came before the offset this
+     * tokenizer continues from (see XmlValidator.restore()).
+     *
+     * @param doctype true if the document has a DOCTYPE declaration
+     */
+    void setDoctype(boolean doctype) {
+        this.doctype = doctype;
+    }
+
+    /**
+     * @return the 1-based line on which the current tag starts
+     */
+    public int getTagLine() {
+        return tagLine;
+    }
+
+    /**
+     * @return the 1-based byte column at which the current tag starts
+     */
+    public int getTagColumn() {
+        return (int) (base + tagStart - tagLineStart) + 1;
+    }
+
+    /**
+     * @return the absolute byte offset of the current tag's '<'
+     */
+    public long getTagOffset() {
+        return base + tagStart;
+    }
+
+    /**
+     * @return the absolute byte offset just past the current tag's '>'
+     */
+    public long getTagEndOffset() {
+        return base + tagEnd;
+    }
+
+    /**
+     * @return the 1-based line of the scan position
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the absolute byte offset of the scan position
+     */
+    public long getOffset() {
+        return base + pos;
+    }
+
+    /**
+     * @return the absolute byte offset at which the scan position's line starts
+     */
+    public long getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Returns the number of the last line that holds any input, which at
+     * end of input is the line count of the document (a final line break
+     * does not start a new line).
+     *
+     * @return the last line number
+     */
+    public int getLastLine() {
+        return (line > 1 && base + limit == lineStart) ? line - 1 : line;
+    }
+}
@@ -0,0 +1,698 @@
+package xmlparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import exceptions.LimitExceededException;
+import exceptions.StopParsingException;
+import implementations.MyStack;
+
+/**
+ * XML well-formedness checker built on MyStack and XmlTokenizer.
+ * Follows the assignment rules:
+ *   - Opening tags push onto the stack
+ *   - Closing tags pop from the stack
+ *   - Ensures proper nesting order
+ *   - Skips processing instructions and self-closing tags
+ *   - Reports unclosed tags at end-of-file
+ *   - Ensures exactly one root element exists
+ *
+ * Every error carries the line, byte column and byte offset of the tag
+ * that caused it. Errors found after end-of-file (unclosed tags, missing
+ * root) carry the end-of-file position.
+ *
+ * The validator is an XmlHandler, so it can share one pass over a
+ * document with other consumers (see MultiHandler). A validator checks
+ * one document; create a new one per document. The document can be
+ * checked in one call to validate(), or pushed through an
+ * XmlEventScanner, possibly in pieces as it grows.
+ */
+public class XmlValidator implements XmlHandler {
+
+    /**
+     * Thrown to abandon the current document once the error mode has seen
+     * enough errors. Preallocated, so stopping costs no stack trace.
+     */
+    private static final StopParsingException STOP =
+            new StopParsingException("Error mode has seen enough errors");
+
+    /**
+     * Thrown to end the scan once a resource limit is exceeded; it stops
+     * every handler sharing the scan, so limits bound all of its work.
+     */
+    private static final StopParsingException LIMIT =
+            new StopParsingException("A resource limit was exceeded", true);
+
+    private final ParserLimits limits;
+    private final ErrorReporter reporter;
+    private final ErrorMode mode;
+    private final long stopAfter;  // error count that ends parsing in FIRST_N mode
+
+    private XmlTokenizer tokenizer;
+    private final MyStack<String> stack = new MyStack<>();
+    private boolean hasRoot;       // has first root-level opening tag appeared?
+    private String rootName;       // name of root element
+    private long errorCount;       // errors found so far
+    private long tagCount;         // tags processed so far
+    private boolean stopped;       // a limit or the error mode ended parsing
+    private boolean limitExceeded; // a limit ended the scan before the end
+
+    private AttributeChecker attributeChecker;   // null unless attributes are checked
+    private NamespaceResolver namespaces;         // null unless namespaces are checked
+    private ReferenceChecker references;          // null unless references are checked
+    private int referenceLine;                    // where a reference cut off by the
+    private int referenceColumn;                  // end of a text piece started
+    private long referenceOffset;
+
+    private CheckpointListener checkpointListener;
+    private long checkpointInterval;
+    private long nextCheckpoint = Long.MAX_VALUE;
+
+    /**
+     * Constructs a validator that enforces the given resource limits and
+     * reports every error to the given reporter.
+     *
+     * @param limits the resource limits to enforce
+     * @param reporter the destination for errors
+     */
+    public XmlValidator(ParserLimits limits, ErrorReporter reporter) {
+        this(limits, reporter, ErrorMode.REPORT_ALL, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a validator that enforces the given resource limits and
+     * stops according to the given error mode.
+     *
+     * @param limits the resource limits to enforce
+     * @param reporter the destination for errors
+     * @param mode how many errors to look for
+     * @param stopAfter number of errors after which FIRST_N mode stops
+     */
+    public XmlValidator(ParserLimits limits, ErrorReporter reporter, ErrorMode mode, long stopAfter) {
+        this.limits = limits;
+        this.reporter = reporter;
+        this.mode = mode;
+        this.stopAfter = mode == ErrorMode.FAIL_FAST ? 1 : stopAfter;
+    }
+
+    /**
+     * Validates a whole document.
+     *
+     * Parsing stops as soon as a resource limit is exceeded; the limit
+     * that tripped is reported as the final error. It also stops once the
+     * error mode has seen enough errors.
+     *
+     * @param in the document's bytes
+     * @return the number of errors found, including a tripped limit
+     * @throws IOException if reading the document or reporting fails
+     */
+    public long validate(InputStream in) throws IOException {
+        return validate(new XmlTokenizer(in, limits));
+    }
+
+    /**
+     * Validates a whole document read by the given tokenizer, e.g. one
+     * sharing its ScanMetrics with other documents.
+     *
+     * @param tokenizer the tokenizer over the document
+     * @return the number of errors found, including a tripped limit
+     * @throws IOException if reading the document or reporting fails
+     */
+    public long validate(XmlTokenizer tokenizer) throws IOException {
+        new XmlEventScanner(tokenizer, this).parse();
+        return errorCount;
+    }
+
+    /**
+     * Chooses whether the attributes of each start and self-closing tag
+     * are checked for well-formedness and repeated names. Off by default.
+     *
+     * @param check true to check attributes
+     */
+    public void setCheckAttributes(boolean check) {
+        attributeChecker = check ? new AttributeChecker() : null;
+    }
+
+    /**
+     * Chooses whether namespace prefixes are resolved, reporting prefixes
+     * used without being declared. Off by default.
+     *
+     * @param check true to check namespaces
+     */
+    public void setCheckNamespaces(boolean check) {
+        namespaces = check ? new NamespaceResolver() : null;
+    }
+
+    /**
+     * @return the namespace resolver, which can name the current element
+     *         by its (prefix, URI, local name); null unless namespaces
+     *         are checked
+     */
+    public NamespaceResolver getNamespaceResolver() {
+        return namespaces;
+    }
+
+    /**
+     * Chooses whether entity and character references in text and
+     * attribute values are checked. Off by default, since it makes the
+     * tokenizer report text.
+     *
+     * @param check true to check references
+     */
+    public void setCheckReferences(boolean check) {
+        references = check ? new ReferenceChecker() : null;
+    }
+
+    /**
+     * Remembers the tokenizer, which locates every error, and asks it for
+     * text if references are checked.
+     */
+    @Override
+    public void startDocument(XmlTokenizer locator) {
+        this.tokenizer = locator;
+        if (references != null) {
+            locator.setReportText(true);
+        }
+    }
+
+    /**
+     * OPENING TAG: <tag> or <tag attr="value">
+     */
+    @Override
+    public void startElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException {
+        try {
+            countTag();
+            if (attributeChecker != null) {
+                checkAttributes(name, buf, attributesStart, attributesEnd);
+            }
+            if (namespaces != null) {
+                checkNamespaces(name, buf, attributesStart, attributesEnd);
+            }
+            if (references != null) {
+                endText();
+                checkReferences(buf, attributesStart, attributesEnd);
+            }
+            startTag(name);
+            tagDone();
+        } catch (LimitExceededException ex) {
+            limitExceeded(ex);
+        }
+    }
+
+    /**
+     * CLOSING TAG: </tag>
+     */
+    @Override
+    public void endElement(String name) throws IOException, StopParsingException {
+        try {
+            countTag();
+            if (references != null) {
+                endText();
+            }
+            endTag(name);
+            tagDone();
+        } catch (LimitExceededException ex) {
+            limitExceeded(ex);
+        }
+    }
+
+    /**
+     * Self-closing tags do not affect nesting.
+     */
+    @Override
+    public void emptyElement(String name, byte[] buf, int attributesStart, int attributesEnd)
+            throws IOException, StopParsingException {
+        try {
+            countTag();
+            if (attributeChecker != null) {
+                checkAttributes(name, buf, attributesStart, attributesEnd);
+            }
+            if (namespaces != null) {
+                checkNamespaces(name, buf, attributesStart, attributesEnd);
+                namespaces.endElement();
+            }
+            if (references != null) {
+                endText();
+                checkReferences(buf, attributesStart, attributesEnd);
+            }
+            tagDone();
+        } catch (LimitExceededException ex) {
+            limitExceeded(ex);
+        }
+    }
+
+    /**
+     * Processing instructions do not affect nesting.
+     */
+    @Override
+    public void processingInstruction(String target, byte[] buf, int start, int end)
+            throws IOException, StopParsingException {
+        try {
+            countTag();
+            if (references != null) {
+                endText();
+            }
+            tagDone();
+        } catch (LimitExceededException ex) {
+            limitExceeded(ex);
+        }
+    }
+
+    /**
+     * Text does not affect nesting; only its references are checked.
+     */
+    @Override
+    public void text(byte[] buf, int start, int end) throws IOException, StopParsingException {
+        if (references == null) {
+            return;
+        }
+        try {
+            if (tokenizer.isCdataText()) {
+                endText();
+                return;
+            }
+            references.setAllowUnknownEntities(tokenizer.hasDoctype());
+            boolean waiting = references.getPendingLength() > 0;
+            int p = start;
+            int amp;
+            while ((amp = references.scan(buf, p, end, true)) >= 0) {
+                if (references.wasCarried()) {
+                    carriedReferenceError();
+                } else {
+                    referenceError(amp);
+                }
+                p = references.getResume();
+            }
+
+            // Remember where a reference cut off by the end of this piece began.
+            int pending = references.getPendingLength();
+            if (pending > 0 && !waiting) {
+                int amp0 = end - pending;
+                referenceLine = lineAt(amp0);
+                referenceColumn = columnAt(amp0);
+                referenceOffset = offsetAt(amp0);
+            }
+        } catch (LimitExceededException ex) {
+            limitExceeded(ex);
+        }
+    }
+
+    /**
+     * An error found by the scanner (a tripped tag or line length limit):
+     * counted and reported, and parsing stops.
+     */
+    @Override
+    public void error(XmlError error) throws IOException {
+        stopped = true;
+        limitExceeded = true;
+        errorCount++;
+        if (mode != ErrorMode.COUNT_ONLY) {
+            reporter.report(error);
+        }
+    }
+
+    /**
+     * Bounds the total amount of work per document.
+     */
+    private void countTag() throws LimitExceededException {
+        if (++tagCount > limits.getMaxTags()) {
+            throw new LimitExceededException(
+                    "More than " + limits.getMaxTags() + " tags in document");
+        }
+    }
+
+    /**
+     * Reports malformed or repeated attributes of the current tag.
+     */
+    private void checkAttributes(String name, byte[] buf, int start, int end)
+            throws IOException, LimitExceededException, StopParsingException {
+        switch (attributeChecker.check(buf, start, end)) {
+            case AttributeChecker.MALFORMED:
+                error(ErrorKind.MALFORMED_ATTRIBUTE, name, attributeChecker.getProblem());
+                break;
+            case AttributeChecker.DUPLICATE:
+                error(ErrorKind.DUPLICATE_ATTRIBUTE, name, attributeChecker.getAttributeName());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Enters the current tag's namespace scope and reports an undeclared
+     * or misused prefix in it.
+     */
+    private void checkNamespaces(String name, byte[] buf, int start, int end)
+            throws IOException, LimitExceededException, StopParsingException {
+        switch (namespaces.startElement(buf, tokenizer.getNameStart(), tokenizer.getNameEnd(),
+                start, end)) {
+            case NamespaceResolver.UNDECLARED:
+                error(ErrorKind.UNDECLARED_PREFIX, name, namespaces.getUndeclaredPrefix());
+                break;
+            case NamespaceResolver.RESERVED:
+                error(ErrorKind.RESERVED_PREFIX, name, namespaces.getUndeclaredPrefix());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reports a reference left unfinished when the text ended.
+     */
+    private void endText() throws IOException, LimitExceededException, StopParsingException {
+        if (references.endText()) {
+            carriedReferenceError();
+        }
+    }
+
+    /**
+     * Reports every bad reference in the given attribute range.
+     */
+    private void checkReferences(byte[] buf, int start, int end)
+            throws IOException, LimitExceededException, StopParsingException {
+        references.setAllowUnknownEntities(tokenizer.hasDoctype());
+        int p = start;
+        int amp;
+        while ((amp = references.scan(buf, p, end, false)) >= 0) {
+            referenceError(amp);
+            p = references.getResume();
+        }
+    }
+
+    /**
+     * Reports the last bad reference, found at buf[amp] in the current token.
+     */
+    private void referenceError(int amp)
+            throws IOException, LimitExceededException, StopParsingException {
+        error(ErrorKind.BAD_REFERENCE, lineAt(amp), columnAt(amp), offsetAt(amp),
+                references.getReference(), references.getProblem());
+    }
+
+    /**
+     * Reports the last bad reference, which began in an earlier text piece.
+     */
+    private void carriedReferenceError()
+            throws IOException, LimitExceededException, StopParsingException {
+        error(ErrorKind.BAD_REFERENCE, referenceLine, referenceColumn, referenceOffset,
+                references.getReference(), references.getProblem());
+    }
+
+    /**
+     * Returns the line of buf[index], which lies in the current token.
+     */
+    private int lineAt(int index) {
+        byte[] b = tokenizer.getBuffer();
+        int line = tokenizer.getTagLine();
+        for (int i = tokenizer.getTokenStart(); i < index; i++) {
+            if (b[i] == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Returns the byte column of buf[index], which lies in the current token.
+     */
+    private int columnAt(int index) {
+        byte[] b = tokenizer.getBuffer();
+        int start = tokenizer.getTokenStart();
+        for (int i = index - 1; i >= start; i--) {
+            if (b[i] == '\n') {
+                return index - i;
+            }
+        }
+        return tokenizer.getTagColumn() + (index - start);
+    }
+
+    /**
+     * Returns the byte offset of buf[index], which lies in the current token.
+     */
+    private long offsetAt(int index) {
+        return tokenizer.getTagOffset() + (index - tokenizer.getTokenStart());
+    }
+
+    /**
+     * Saves the state every checkpointInterval bytes.
+     */
+    private void tagDone() throws IOException {
+        if (tokenizer.getOffset() >= nextCheckpoint) {
+            reporter.flush();
+            checkpointListener.checkpoint(snapshot(tokenizer));
+            nextCheckpoint = tokenizer.getOffset() + checkpointInterval;
+        }
+    }
+
+    /**
+     * Asks for the validator state to be handed to the listener each time
+     * at least intervalBytes more bytes have been validated.
+     *
+     * @param listener the receiver of checkpoints
+     * @param intervalBytes the minimum number of bytes between checkpoints
+     */
+    public void setCheckpointListener(CheckpointListener listener, long intervalBytes) {
+        this.checkpointListener = listener;
+        this.checkpointInterval = intervalBytes;
+        this.nextCheckpoint = intervalBytes;
+    }
+
+    /**
+     * Captures the current state; the tokenizer must be between tags.
+     * The document's size and modification time are left for the caller
+     * to fill in.
+     *
+     * @param tokenizer the tokenizer over the document
+     * @return the state as a checkpoint
+     */
+    public Checkpoint snapshot(XmlTokenizer tokenizer) {
+        int count = namespaces == null ? 0 : namespaces.getBindingCount();
+        int[] depths = new int[count];
+        String[] prefixes = new String[count];
+        String[] uris = new String[count];
+        for (int i = 0; i < count; i++) {
+            depths[i] = namespaces.getBindingDepth(i);
+            prefixes[i] = namespaces.getBindingPrefix(i);
+            uris[i] = namespaces.getBindingUri(i);
+        }
+        return new Checkpoint(-1, -1, "", tokenizer.getOffset(), tokenizer.getLine(),
+                tokenizer.getLineStart(), hasRoot, rootName, tokenizer.hasDoctype(),
+                errorCount, tagCount, getOpenElements(), depths, prefixes, uris);
+    }
+
+    /**
+     * Restores the state saved in a checkpoint into this fresh validator,
+     * and returns a tokenizer continuing from the checkpoint's offset.
+     *
+     * @param checkpoint the saved state
+     * @param in the document's bytes, positioned at the checkpoint's offset
+     * @return the tokenizer to scan the rest of the document with
+     */
+    public XmlTokenizer restore(Checkpoint checkpoint, InputStream in) {
+        hasRoot = checkpoint.hasRoot;
+        rootName = checkpoint.rootName;
+        errorCount = checkpoint.errorCount;
+        tagCount = checkpoint.tagCount;
+        stack.clear();
+        for (String name : checkpoint.openElements) {
+            stack.push(name);
+        }
+        if (namespaces != null) {
+            namespaces.restore(stack.size(), checkpoint.bindingDepths,
+                    checkpoint.bindingPrefixes, checkpoint.bindingUris);
+        }
+        if (checkpointListener != null) {
+            nextCheckpoint = checkpoint.offset + checkpointInterval;
+        }
+        XmlTokenizer resumed = new XmlTokenizer(in, limits, checkpoint.offset, checkpoint.line,
+                checkpoint.lineStart);
+        resumed.setDoctype(checkpoint.hasDoctype);
+        return resumed;
+    }
+
+    /**
+     * Completes the document: reports tags left open and a missing root.
+     * Nothing is reported if parsing had already stopped.
+     */
+    @Override
+    public void endDocument() throws IOException {
+
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+
+        try {
+            if (references != null) {
+                endText();
+            }
+
+            // ---------------------------------------------------------
+            //  AFTER REACHING END OF FILE
+            // ---------------------------------------------------------
+            int lastLine = tokenizer.getLastLine();
+            long endOffset = tokenizer.getOffset();
+
+            // Any tags left on stack were never closed.
+            while (!stack.isEmpty()) {
+                String unclosed = stack.pop();
+                error(ErrorKind.UNCLOSED_TAG, lastLine, -1, endOffset, unclosed, null);
+            }
+
+            // If no root element ever appeared → invalid XML
+            if (!hasRoot) {
+                error(ErrorKind.NO_ROOT, 1, -1, endOffset, null, null);
+            }
+
+        } catch (LimitExceededException ex) {
+            stopped = true;
+            errorCount++;
+            if (mode != ErrorMode.COUNT_ONLY) {
+                reporter.report(new XmlError(ErrorKind.LIMIT_EXCEEDED,
+                        tokenizer.getLine(), -1, tokenizer.getOffset(), ex.getMessage(), null));
+            }
+
+        } catch (StopParsingException ex) {
+            // The error mode has seen enough.
+        }
+    }
+
+    /**
+     * Reports a tripped limit and stops parsing.
+     * A tripped limit always makes the document invalid.
+     */
+    private void limitExceeded(LimitExceededException ex)
+            throws IOException, StopParsingException {
+        error(new XmlError(ErrorKind.LIMIT_EXCEEDED,
+                tokenizer.getLine(), -1, tokenizer.getOffset(), ex.getMessage(), null));
+        stopped = true;
+        limitExceeded = true;
+        throw LIMIT;
+    }
+
+    /**
+     * @return the number of errors found so far
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return true once a limit or the error mode has ended parsing, or
+     *         the document has been finished
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return true if a resource limit ended the scan before the end of
+     *         the document, so the handlers sharing it saw only part of it
+     */
+    public boolean isLimitExceeded() {
+        return limitExceeded;
+    }
+
+    /**
+     * @return true once the root element has been opened and closed again
+     */
+    public boolean isRootClosed() {
+        return hasRoot && stack.isEmpty();
+    }
+
+    /**
+     * Returns the names of the elements that are currently open,
+     * outermost first.
+     *
+     * @return the open element names
+     */
+    public String[] getOpenElements() {
+        return stack.toArray(new String[stack.size()]);
+    }
+
+    /**
+     * Checks an opening tag and pushes it.
+     */
+    private void startTag(String openingName)
+            throws IOException, LimitExceededException, StopParsingException {
+
+        // First root-level tag detected
+        if (!hasRoot) {
+            hasRoot = true;
+            rootName = openingName;
+
+        // If stack is empty but root already exists → another root
+        } else if (stack.isEmpty()) {
+            error(ErrorKind.MULTIPLE_ROOTS, rootName, openingName);
+        }
+
+        // Refuse to nest deeper than the limit
+        if (stack.size() >= limits.getMaxDepth()) {
+            throw new LimitExceededException(
+                    "Nesting deeper than " + limits.getMaxDepth() + " elements");
+        }
+
+        // Push opening tag onto the stack
+        stack.push(openingName);
+    }
+
+    /**
+     * Pops the element a closing tag ends and checks it matches.
+     */
+    private void endTag(String closingName)
+            throws IOException, LimitExceededException, StopParsingException {
+
+        // If stack is empty → no matching opening tag exists.
+        if (stack.isEmpty()) {
+            error(ErrorKind.UNMATCHED_CLOSE, closingName, null);
+            return;
+        }
+
+        // Pop most recent opening tag
+        String openingName = stack.pop();
+        if (namespaces != null) {
+            namespaces.endElement();
+        }
+
+        // If names differ → mismatched tags (names are interned, so
+        // matching names are usually the same String)
+        if (openingName != closingName && !openingName.equals(closingName)) {
+            error(ErrorKind.MISMATCHED_TAG, openingName, closingName);
+        }
+    }
+
+    /**
+     * Reports an error located at the tokenizer's current tag.
+     */
+    private void error(ErrorKind kind, String first, String second)
+            throws IOException, LimitExceededException, StopParsingException {
+        error(kind, tokenizer.getTagLine(), tokenizer.getTagColumn(), tokenizer.getTagOffset(),
+                first, second);
+    }
+
+    /**
+     * Hands an error record to the reporter.
+     * The record is formatted lazily by the reporter, and COUNT_ONLY mode
+     * never creates one at all. Stops parsing once the error mode or the
+     * configured error limit has seen enough errors.
+     */
+    private void error(ErrorKind kind, int line, int column, long offset, String first, String second)
+            throws IOException, LimitExceededException, StopParsingException {
+
+        errorCount++;
+
+        if (mode != ErrorMode.COUNT_ONLY) {
+            reporter.report(new XmlError(kind, line, column, offset, first, second));
+        }
+
+        if (errorCount >= stopAfter) {
+            stopped = true;
+            throw STOP;
+        }
+        if (errorCount >= limits.getMaxErrors()) {
+            throw new LimitExceededException(
+                    "Reached the limit of " + limits.getMaxErrors() + " errors");
+        }
+    }
+}
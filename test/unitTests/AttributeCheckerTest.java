@@ -0,0 +1,104 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.AttributeChecker;
+import xmlparser.ParserLimits;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the in-place attribute checker and for quoted '>' characters
+ * in the tokenizer.
+ */
+
+public class AttributeCheckerTest
+{
+	// Attributes
+	private AttributeChecker checker;
+
+	/**
+	 * Creates a fresh checker before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		checker = new AttributeChecker();
+	}
+
+	/**
+	 * Checks the attribute text of a tag, as the tokenizer would pass it.
+	 */
+	private int check( String attributes )
+	{
+		byte[] b = ( "<e" + attributes + ">" ).getBytes( StandardCharsets.UTF_8 );
+		return checker.check( b, 2, b.length - 1 );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.AttributeChecker#check(byte[], int, int)}
+	 * to accept well-formed attributes and reject malformed ones.
+	 */
+	@Test
+	public void testCheck_WellFormedness()
+	{
+		assertEquals( AttributeChecker.OK, check( "" ) );
+		assertEquals( AttributeChecker.OK, check( " a=\"1\" b = '2'\n c=\"x>y\" " ) );
+		assertEquals( AttributeChecker.MALFORMED, check( " a=\"1\"b=\"2\"" ) );
+		assertEquals( AttributeChecker.MALFORMED, check( " a=1" ) );
+		assertEquals( AttributeChecker.MALFORMED, check( " a" ) );
+		assertEquals( AttributeChecker.MALFORMED, check( " a=\"1" ) );
+		assertEquals( AttributeChecker.MALFORMED, check( " 1a=\"1\"" ) );
+		check( " a=1" );
+		assertEquals( "Wrong description.", "value of a is not quoted", checker.getProblem() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.AttributeChecker#check(byte[], int, int)}
+	 * to find repeated names, including in tags with many attributes, and
+	 * to forget the names of earlier tags.
+	 */
+	@Test
+	public void testCheck_Duplicates()
+	{
+		assertEquals( AttributeChecker.DUPLICATE, check( " a=\"1\" b=\"2\" a=\"3\"" ) );
+		assertEquals( "a", checker.getAttributeName() );
+		assertEquals( "Names of the previous tag must be forgotten.",
+				AttributeChecker.OK, check( " a=\"1\" b=\"2\"" ) );
+
+		StringBuilder many = new StringBuilder();
+		for ( int i = 0; i < 500; i++ )
+		{
+			many.append( " n" ).append( i ).append( "=\"v\"" );
+		}
+		assertEquals( AttributeChecker.OK, check( many.toString() ) );
+		assertEquals( AttributeChecker.DUPLICATE, check( many + " n250=\"v\"" ) );
+		assertEquals( "n250", checker.getAttributeName() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to not end a tag at a '>' inside a quoted attribute value.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_QuotedGreaterThan() throws Exception
+	{
+		XmlTokenizer t = new XmlTokenizer( new ByteArrayInputStream(
+				"<a x=\"1>2\" y='>'><don't/></a>".getBytes( StandardCharsets.UTF_8 ) ),
+				new ParserLimits() );
+
+		assertEquals( XmlTokenizer.START_TAG, t.next() );
+		assertEquals( "a", t.getName() );
+		assertEquals( "The tag ended inside a quoted value.", 17, t.getTagEndOffset() );
+		assertEquals( "A quote outside a value must not open one.", XmlTokenizer.EMPTY_TAG, t.next() );
+		assertEquals( XmlTokenizer.END_TAG, t.next() );
+	}
+}
@@ -0,0 +1,311 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.Checkpoint;
+import xmlparser.ErrorMode;
+import xmlparser.ErrorReporter;
+import xmlparser.ParserLimits;
+import xmlparser.ResumableValidator;
+import xmlparser.XmlError;
+import xmlparser.XmlValidator;
+
+/**
+ * Class Description:
+ * Kill-and-resume tests for checkpointed validation: a run that dies part
+ * way through a file, followed by a run that resumes from its checkpoint,
+ * must find exactly the errors of one uninterrupted run.
+ */
+
+public class CheckpointTest
+{
+	/**
+	 * Reporter that keeps every error it is given.
+	 */
+	private static class CollectingReporter implements ErrorReporter
+	{
+		private final List<String> errors = new ArrayList<String>();
+
+		public void startDocument( String source ) { }
+		public void report( XmlError error ) { errors.add( error.toString() + " @" + error.getOffset() ); }
+		public void endDocument( long errorCount ) { }
+		public void flush() { }
+		public void close() { }
+	}
+
+	// Attributes
+	private Path file;
+	private byte[] content;
+	private ParserLimits limits;
+
+	/**
+	 * Writes a document of about 700 KB with an error every 97 records.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		StringBuilder xml = new StringBuilder( "<?xml version=\"1.0\"?>\n<root>\n" );
+		for ( int i = 0; i < 20000; i++ )
+		{
+			xml.append( "  <Driver id=\"" ).append( i ).append( "\">" );
+			xml.append( i % 97 == 0 ? "<a>x</b>" : "<a>x</a>" );
+			xml.append( "</Driver>\n" );
+		}
+		xml.append( "</root>\n" );
+		content = xml.toString().getBytes( StandardCharsets.UTF_8 );
+
+		file = Files.createTempFile( "checkpoint", ".xml" );
+		Files.write( file, content );
+		limits = new ParserLimits();
+	}
+
+	/**
+	 * Removes the document and its sidecar file.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( Checkpoint.sidecarFor( file ) );
+		Files.deleteIfExists( file );
+		file = null;
+		content = null;
+		limits = null;
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResumableValidator#validate(Path)}
+	 * to resume a killed run and produce the same result as a full run.
+	 * @throws Exception
+	 */
+	@Test
+	public void testValidate_KillAndResume() throws Exception
+	{
+		// One uninterrupted run
+		CollectingReporter full = new CollectingReporter();
+		long fullCount = new XmlValidator( limits, full )
+				.validate( new ByteArrayInputStream( content ) );
+		assertTrue( "The document should contain errors.", fullCount > 100 );
+
+		// A run that dies after reading 60% of the file
+		final long killAt = content.length * 6L / 10;
+		CollectingReporter killed = new CollectingReporter();
+		ResumableValidator dying = new ResumableValidator( limits, killed,
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 )
+		{
+			@Override
+			protected InputStream openAt( Path path, long offset ) throws IOException
+			{
+				return new KillingInputStream( super.openAt( path, offset ), killAt - offset );
+			}
+		};
+		try
+		{
+			dying.validate( file );
+			fail( "The run should have been killed." );
+		}
+		catch ( IOException ex )
+		{
+			// expected
+		}
+
+		Checkpoint checkpoint = Checkpoint.read( Checkpoint.sidecarFor( file ) );
+		assertNotNull( "No checkpoint was left behind.", checkpoint );
+		assertTrue( "Checkpoint should be part way through the file.",
+				checkpoint.getOffset() > 0 && checkpoint.getOffset() <= killAt );
+
+		// A second run resumes from the checkpoint
+		CollectingReporter resumed = new CollectingReporter();
+		ResumableValidator resuming = new ResumableValidator( limits, resumed,
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 );
+		long resumedCount = resuming.validate( file );
+
+		assertEquals( "Second run did not resume from the checkpoint.",
+				checkpoint.getOffset(), resuming.getResumedFrom() );
+		assertEquals( "Error counts differ.", fullCount, resumedCount );
+
+		List<String> combined = new ArrayList<String>(
+				killed.errors.subList( 0, (int) checkpoint.getErrorCount() ) );
+		combined.addAll( resumed.errors );
+		assertEquals( "Errors differ from an uninterrupted run.", full.errors, combined );
+
+		assertFalse( "Sidecar file should be removed after completion.",
+				Files.exists( Checkpoint.sidecarFor( file ) ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResumableValidator#setSettings(String)}:
+	 * a checkpoint taken under other settings is not resumed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testValidate_OtherSettingsIgnored() throws Exception
+	{
+		ResumableValidator dying = new ResumableValidator( limits, new CollectingReporter(),
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 )
+		{
+			@Override
+			protected InputStream openAt( Path path, long offset ) throws IOException
+			{
+				return new KillingInputStream( super.openAt( path, offset ), content.length / 2 );
+			}
+		};
+		dying.setSettings( "REPORT_ALL" );
+		try
+		{
+			dying.validate( file );
+			fail( "The run should have been killed." );
+		}
+		catch ( IOException ex )
+		{
+			// expected
+		}
+		assertNotNull( "No checkpoint was left behind.",
+				Checkpoint.read( Checkpoint.sidecarFor( file ) ) );
+
+		CollectingReporter full = new CollectingReporter();
+		long fullCount = new XmlValidator( limits, full, ErrorMode.FIRST_N, 50 )
+				.validate( new ByteArrayInputStream( content ) );
+
+		CollectingReporter second = new CollectingReporter();
+		ResumableValidator rerun = new ResumableValidator( limits, second,
+				ErrorMode.FIRST_N, 50, 8192 );
+		rerun.setSettings( "FIRST_N/50" );
+		assertEquals( fullCount, rerun.validate( file ) );
+		assertEquals( "A checkpoint under other settings must not be resumed.",
+				-1, rerun.getResumedFrom() );
+		assertEquals( full.errors, second.errors );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResumableValidator#validate(Path)}
+	 * to ignore a checkpoint once the file has changed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testValidate_StaleCheckpointIgnored() throws Exception
+	{
+		CollectingReporter first = new CollectingReporter();
+		ResumableValidator dying = new ResumableValidator( limits, first,
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 )
+		{
+			@Override
+			protected InputStream openAt( Path path, long offset ) throws IOException
+			{
+				return new KillingInputStream( super.openAt( path, offset ), content.length / 2 );
+			}
+		};
+		try
+		{
+			dying.validate( file );
+			fail( "The run should have been killed." );
+		}
+		catch ( IOException ex )
+		{
+			// expected
+		}
+
+		// Modify the file; the checkpoint no longer applies.
+		Files.write( file, "<root></root>".getBytes( StandardCharsets.UTF_8 ) );
+
+		CollectingReporter second = new CollectingReporter();
+		ResumableValidator rerun = new ResumableValidator( limits, second,
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 );
+		assertEquals( 0, rerun.validate( file ) );
+		assertEquals( "A stale checkpoint must not be resumed.", -1, rerun.getResumedFrom() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResumableValidator#validate(Path)}
+	 * to resume a document with a DOCTYPE: entities its internal subset
+	 * may declare are still allowed after the resume.
+	 * @throws Exception
+	 */
+	@Test
+	public void testValidate_ResumeWithDoctype() throws Exception
+	{
+		StringBuilder xml = new StringBuilder(
+				"<?xml version=\"1.0\"?>\n<!DOCTYPE root [<!ENTITY who \"Driver\">]>\n<root>\n" );
+		for ( int i = 0; i < 20000; i++ )
+		{
+			xml.append( "  <Driver>&who; " ).append( i ).append( "</Driver>\n" );
+		}
+		xml.append( "</root>\n" );
+		content = xml.toString().getBytes( StandardCharsets.UTF_8 );
+		Files.write( file, content );
+
+		final long killAt = content.length / 2;
+		ResumableValidator dying = new ResumableValidator( limits, new CollectingReporter(),
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 )
+		{
+			@Override
+			protected InputStream openAt( Path path, long offset ) throws IOException
+			{
+				return new KillingInputStream( super.openAt( path, offset ), killAt - offset );
+			}
+		};
+		dying.setCheckReferences( true );
+		try
+		{
+			dying.validate( file );
+			fail( "The run should have been killed." );
+		}
+		catch ( IOException ex )
+		{
+			// expected
+		}
+
+		CollectingReporter resumed = new CollectingReporter();
+		ResumableValidator resuming = new ResumableValidator( limits, resumed,
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE, 8192 );
+		resuming.setCheckReferences( true );
+		assertEquals( 0, resuming.validate( file ) );
+		assertTrue( resumed.errors.isEmpty() );
+		assertTrue( "Second run did not resume.", resuming.getResumedFrom() > 0 );
+	}
+
+	/**
+	 * Stream that fails with an IOException once a byte budget is spent,
+	 * standing in for a process being killed.
+	 */
+	private static class KillingInputStream extends FilterInputStream
+	{
+		private long remaining;
+
+		KillingInputStream( InputStream in, long budget )
+		{
+			super( in );
+			remaining = budget;
+		}
+
+		@Override
+		public int read( byte[] b, int off, int len ) throws IOException
+		{
+			if ( remaining <= 0 )
+			{
+				throw new IOException( "killed" );
+			}
+			int n = super.read( b, off, (int) Math.min( len, remaining ) );
+			if ( n > 0 )
+			{
+				remaining -= n;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.CompressedInput;
+
+/**
+ * Class Description:
+ * Tests for opening compressed documents: gzip, zlib and plain files told
+ * apart by their first bytes, and truncated data reported as an error.
+ */
+
+public class CompressedInputTest
+{
+	// Attributes
+	private Path file;
+	private byte[] content;
+
+	/**
+	 * Builds a document of about 1 MB that does not compress to nothing.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		Random random = new Random( 42 );
+		StringBuilder xml = new StringBuilder( "<root>\n" );
+		for ( int i = 0; i < 50000; i++ )
+		{
+			xml.append( "<e>" ).append( random.nextInt() ).append( "</e>\n" );
+		}
+		content = xml.append( "</root>\n" ).toString().getBytes( StandardCharsets.UTF_8 );
+		file = Files.createTempFile( "compressed", ".xml" );
+	}
+
+	/**
+	 * Removes the document.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( file );
+		file = null;
+		content = null;
+	}
+
+	private static byte[] gzip( byte[] data ) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( GZIPOutputStream out = new GZIPOutputStream( bytes ) )
+		{
+			out.write( data );
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] zlib( byte[] data ) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( DeflaterOutputStream out = new DeflaterOutputStream( bytes ) )
+		{
+			out.write( data );
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the file through CompressedInput to the end.
+	 */
+	private byte[] readAll() throws IOException
+	{
+		try ( InputStream in = CompressedInput.open( file ) )
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[10000];
+			int n;
+			while ( ( n = in.read( buffer ) ) > 0 )
+			{
+				bytes.write( buffer, 0, n );
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.CompressedInput#open(Path)} on gzip
+	 * data, including a file of several gzip members.
+	 * @throws Exception
+	 */
+	@Test
+	public void testOpen_Gzip() throws Exception
+	{
+		Files.write( file, gzip( content ) );
+		assertTrue( CompressedInput.isCompressed( file ) );
+		assertArrayEquals( content, readAll() );
+
+		int half = content.length / 2;
+		ByteArrayOutputStream members = new ByteArrayOutputStream();
+		members.write( gzip( Arrays.copyOfRange( content, 0, half ) ) );
+		members.write( gzip( Arrays.copyOfRange( content, half, content.length ) ) );
+		Files.write( file, members.toByteArray() );
+		assertArrayEquals( content, readAll() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.CompressedInput#open(Path)} on zlib
+	 * data and on an uncompressed document.
+	 * @throws Exception
+	 */
+	@Test
+	public void testOpen_ZlibAndPlain() throws Exception
+	{
+		Files.write( file, zlib( content ) );
+		assertTrue( CompressedInput.isCompressed( file ) );
+		assertArrayEquals( content, readAll() );
+
+		Files.write( file, content );
+		assertFalse( CompressedInput.isCompressed( file ) );
+		assertArrayEquals( content, readAll() );
+
+		Files.write( file, new byte[] { '<' } );
+		assertArrayEquals( new byte[] { '<' }, readAll() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.CompressedInput#open(Path)} on
+	 * truncated gzip and zlib data: an IOException, not a short document.
+	 * @throws Exception
+	 */
+	@Test
+	public void testOpen_Truncated() throws Exception
+	{
+		for ( byte[] compressed : new byte[][] { gzip( content ), zlib( content ) } )
+		{
+			Files.write( file, Arrays.copyOf( compressed, compressed.length / 2 ) );
+			try
+			{
+				readAll();
+				fail( "Truncated data should not read as the end of the document." );
+			}
+			catch ( IOException ex )
+			{
+				assertTrue( ex.getMessage(), ex.getMessage().contains( "Unexpected end" ) );
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import xmlparser.DocumentStats;
+import xmlparser.ParserLimits;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the document statistics collector: counts, depths, text,
+ * structure, and merging collectors that saw different documents.
+ */
+
+public class DocumentStatsTest
+{
+	/**
+	 * Scans a document into the given collector.
+	 */
+	private static DocumentStats scan( DocumentStats stats, String xml ) throws Exception
+	{
+		XmlTokenizer tokenizer = new XmlTokenizer(
+				new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ), new ParserLimits() );
+		new XmlEventScanner( tokenizer, stats ).parse();
+		return stats;
+	}
+
+	/**
+	 * Test method for {@link xmlparser.DocumentStats} counts of one
+	 * document.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCounts() throws Exception
+	{
+		DocumentStats stats = scan( new DocumentStats(),
+				"<r><a x=\"1\" y='2'>hi</a><a x=\"3\"/><b><a/></b></r>" );
+
+		assertEquals( 1, stats.getDocumentCount() );
+		assertEquals( 5, stats.getElementCount() );
+		assertEquals( 3, stats.getElementCount( "a" ) );
+		assertEquals( 0, stats.getElementCount( "x" ) );
+		assertEquals( 3, stats.getMaxDepth() );
+		assertEquals( 2, stats.getTextBytes() );
+
+		assertEquals( 1, stats.getEdgeCount( null, "r" ) );
+		assertEquals( 2, stats.getEdgeCount( "r", "a" ) );
+		assertEquals( 1, stats.getEdgeCount( "b", "a" ) );
+		assertEquals( 0, stats.getEdgeCount( "a", "b" ) );
+
+		String report = stats.toString();
+		assertTrue( report, report.contains( "Depths: 1=1 2=3 3=1" ) );
+		assertTrue( report, report.contains( "Child elements per element: 0=3 1=1 2-3=1" ) );
+		assertTrue( report, report.contains( "Attributes per element: 0=3 1=1 2=1" ) );
+		assertTrue( report, report.contains( "@x 2" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.DocumentStats#merge(DocumentStats)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMerge() throws Exception
+	{
+		DocumentStats first = scan( new DocumentStats(), "<r><a/><b/></r>" );
+		DocumentStats second = scan( new DocumentStats(), "<b><c/><a/><a/></b>" );
+		scan( second, "<r><c/></r>" );
+
+		DocumentStats total = new DocumentStats();
+		total.merge( first );
+		total.merge( second );
+
+		assertEquals( 3, total.getDocumentCount() );
+		assertEquals( 9, total.getElementCount() );
+		assertEquals( 3, total.getElementCount( "a" ) );
+		assertEquals( 2, total.getElementCount( "c" ) );
+		assertEquals( 2, total.getEdgeCount( null, "r" ) );
+		assertEquals( 1, total.getEdgeCount( null, "b" ) );
+		assertEquals( 2, total.getEdgeCount( "b", "a" ) );
+		assertEquals( 1, total.getEdgeCount( "r", "c" ) );
+	}
+}
@@ -0,0 +1,169 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ElementIndex;
+import xmlparser.ElementIndexBuilder;
+import xmlparser.ParserLimits;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the element index: building it in a scan, looking elements
+ * up by name and path, and reopening it from its sidecar file, however
+ * large.
+ */
+
+public class ElementIndexTest
+{
+	// Attributes
+	private static final String XML =
+			"<r>\n<d id=\"0\"><a/></d>\n<d id=\"1\"><d><a/></d><a>x</a></d>\n<e/>\n</r>\n";
+	private Path file;
+
+	/**
+	 * Writes the document to a temporary file.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		file = Files.createTempFile( "index", ".xml" );
+		Files.write( file, XML.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Removes the document and its index.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( ElementIndex.sidecarFor( file ) );
+		Files.deleteIfExists( file );
+		file = null;
+	}
+
+	/**
+	 * Builds the index of the document in one scan.
+	 */
+	private ElementIndex build() throws Exception
+	{
+		ElementIndexBuilder builder = new ElementIndexBuilder();
+		XmlTokenizer tokenizer = new XmlTokenizer(
+				new ByteArrayInputStream( XML.getBytes( StandardCharsets.UTF_8 ) ), new ParserLimits() );
+		new XmlEventScanner( tokenizer, builder ).parse();
+		return builder.build( Files.size( file ), Files.getLastModifiedTime( file ).toMillis() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ElementIndex#select(String)} and
+	 * {@link xmlparser.ElementIndex#find(String, int)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSelectAndFind() throws Exception
+	{
+		ElementIndex index = build();
+		assertEquals( 8, index.size() );
+		assertEquals( 3, index.count( "a" ) );
+
+		int second = index.select( "/r/d[2]" );
+		assertEquals( "d", index.getName( second ) );
+		assertEquals( XML.indexOf( "<d id=\"1\">" ), index.getStart( second ) );
+		assertEquals( XML.indexOf( "\n<e/>" ), index.getEnd( second ) );
+		assertEquals( 2, index.getDepth( second ) );
+
+		// The nested <d> is not a child of <r>, and <a> children skip it.
+		assertEquals( -1, index.select( "/r/d[3]" ) );
+		int a = index.select( "/r/d[2]/a" );
+		assertEquals( XML.indexOf( "<a>x" ), index.getStart( a ) );
+		assertEquals( index.select( "/r/d[2]/d/a" ), index.find( "a", 1 ) );
+		assertEquals( -1, index.find( "a", 3 ) );
+		assertEquals( index.size(), index.getSubtreeEnd( index.select( "/r" ) ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ElementIndex#open(Path)} to map a
+	 * written index back in, and to ignore it once the document changes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteAndOpen() throws Exception
+	{
+		ElementIndex built = build();
+		built.write( ElementIndex.sidecarFor( file ) );
+
+		ElementIndex opened = ElementIndex.open( file );
+		assertNotNull( "The index should open.", opened );
+		assertEquals( built.size(), opened.size() );
+		for ( int i = 0; i < built.size(); i++ )
+		{
+			assertEquals( built.getStart( i ), opened.getStart( i ) );
+			assertEquals( built.getEnd( i ), opened.getEnd( i ) );
+			assertEquals( built.getName( i ), opened.getName( i ) );
+			assertEquals( built.getSubtreeEnd( i ), opened.getSubtreeEnd( i ) );
+		}
+		assertEquals( built.select( "/r/e" ), opened.select( "/r/e" ) );
+
+		Files.write( file, "<r></r>\n".getBytes( StandardCharsets.UTF_8 ) );
+		assertNull( "A stale index must not be opened.", ElementIndex.open( file ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ElementIndex#open(Path)} with a
+	 * sidecar larger than one mapping can hold: 70 million elements of
+	 * zeros, in a sparse file of over 2 GiB. A damaged one is no index.
+	 * @throws Exception
+	 */
+	@Test
+	public void testOpenLarge() throws Exception
+	{
+		int count = 70000000;
+		try ( RandomAccessFile sidecar =
+				new RandomAccessFile( ElementIndex.sidecarFor( file ).toFile(), "rw" ) )
+		{
+			sidecar.writeInt( 0x58494458 );
+			sidecar.writeInt( 1 );
+			sidecar.writeLong( Files.size( file ) );
+			sidecar.writeLong( Files.getLastModifiedTime( file ).toMillis() );
+			sidecar.writeInt( count );
+			sidecar.writeInt( 1 );
+			sidecar.writeInt( 1 );
+			sidecar.write( 'a' );
+			// Header padded to 40 bytes, then 32 bytes per element and
+			// the two name group starts.
+			sidecar.setLength( 40 + 32L * count + 8 );
+		}
+
+		ElementIndex index = ElementIndex.open( file );
+		assertNotNull( "A large index should open.", index );
+		assertEquals( count, index.size() );
+		assertEquals( 0, index.getStart( count - 1 ) );
+		assertEquals( "a", index.getName( count - 1 ) );
+
+		try ( RandomAccessFile sidecar =
+				new RandomAccessFile( ElementIndex.sidecarFor( file ).toFile(), "rw" ) )
+		{
+			sidecar.setLength( 40 + 32L * count + 9 );
+		}
+		assertNull( "A damaged index must not be opened.", ElementIndex.open( file ) );
+		try ( RandomAccessFile sidecar =
+				new RandomAccessFile( ElementIndex.sidecarFor( file ).toFile(), "rw" ) )
+		{
+			sidecar.setLength( 20 );
+		}
+		assertNull( "A truncated index must not be opened.", ElementIndex.open( file ) );
+	}
+}
@@ -0,0 +1,132 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import xmlparser.ErrorMode;
+import xmlparser.ErrorReporter;
+import xmlparser.ParserLimits;
+import xmlparser.XmlError;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+import xmlparser.XmlValidator;
+
+/**
+ * Class Description:
+ * Tests for the error modes: how many errors each one reports and counts,
+ * and where it stops reading the document.
+ */
+
+public class ErrorModeTest
+{
+	/**
+	 * Reporter that keeps the offset of every error it is given.
+	 */
+	private static class CollectingReporter implements ErrorReporter
+	{
+		private final List<Long> offsets = new ArrayList<Long>();
+
+		public void startDocument( String source ) { }
+		public void report( XmlError error ) { offsets.add( error.getOffset() ); }
+		public void endDocument( long errorCount ) { }
+		public void flush() { }
+		public void close() { }
+	}
+
+	// Attributes
+	private CollectingReporter reporter;
+	private XmlTokenizer tokenizer;
+	private static final String XML;
+
+	static
+	{
+		// 10 records, every other one with a mismatched tag: 5 errors.
+		StringBuilder xml = new StringBuilder( "<root>\n" );
+		for ( int i = 0; i < 10; i++ )
+		{
+			xml.append( i % 2 == 0 ? "<d><a>x</b></d>\n" : "<d><a>x</a></d>\n" );
+		}
+		XML = xml.append( "</root>\n" ).toString();
+	}
+
+	/**
+	 * Validates XML under the given mode.
+	 */
+	private long validate( ErrorMode mode, long stopAfter ) throws Exception
+	{
+		ParserLimits limits = new ParserLimits();
+		reporter = new CollectingReporter();
+		tokenizer = new XmlTokenizer(
+				new ByteArrayInputStream( XML.getBytes( StandardCharsets.UTF_8 ) ), limits );
+		XmlValidator validator = new XmlValidator( limits, reporter, mode, stopAfter );
+		new XmlEventScanner( tokenizer, validator ).parse();
+		return validator.getErrorCount();
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ErrorMode#REPORT_ALL}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReportAll() throws Exception
+	{
+		// Each bad record also leaves <d> closed by </d> after </b>.
+		long errors = validate( ErrorMode.REPORT_ALL, Long.MAX_VALUE );
+		assertTrue( errors >= 5 );
+		assertEquals( errors, reporter.offsets.size() );
+		assertEquals( XML.length(), tokenizer.getOffset() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ErrorMode#FAIL_FAST}: one error,
+	 * and the rest of the document is not read.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailFast() throws Exception
+	{
+		assertEquals( 1, validate( ErrorMode.FAIL_FAST, Long.MAX_VALUE ) );
+		assertEquals( 1, reporter.offsets.size() );
+		assertEquals( XML.indexOf( "</b>" ), (long) reporter.offsets.get( 0 ) );
+		assertTrue( tokenizer.getOffset() < XML.indexOf( "\n<d>", XML.indexOf( "</b>" ) ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ErrorMode#FIRST_N}: N errors, and
+	 * reading stops at the Nth.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFirstN() throws Exception
+	{
+		long all = validate( ErrorMode.REPORT_ALL, Long.MAX_VALUE );
+		List<Long> allOffsets = reporter.offsets;
+
+		assertEquals( 3, validate( ErrorMode.FIRST_N, 3 ) );
+		assertEquals( allOffsets.subList( 0, 3 ), reporter.offsets );
+		assertTrue( tokenizer.getOffset() < XML.length() );
+
+		assertEquals( all, validate( ErrorMode.FIRST_N, all + 10 ) );
+		assertEquals( XML.length(), tokenizer.getOffset() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ErrorMode#COUNT_ONLY}: every error
+	 * counted, none reported.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCountOnly() throws Exception
+	{
+		long all = validate( ErrorMode.REPORT_ALL, Long.MAX_VALUE );
+		assertEquals( all, validate( ErrorMode.COUNT_ONLY, Long.MAX_VALUE ) );
+		assertTrue( reporter.offsets.isEmpty() );
+		assertEquals( XML.length(), tokenizer.getOffset() );
+	}
+}
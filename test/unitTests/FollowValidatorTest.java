@@ -0,0 +1,233 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ErrorMode;
+import xmlparser.ErrorReporter;
+import xmlparser.FollowValidator;
+import xmlparser.ParserLimits;
+import xmlparser.XmlError;
+import xmlparser.XmlValidator;
+
+/**
+ * Class Description:
+ * Tests for following a growing file: appends of any size, tags split
+ * between appends, and a file truncated or replaced while it is followed.
+ */
+
+public class FollowValidatorTest
+{
+	/**
+	 * Reporter that keeps every error it is given.
+	 */
+	private static class CollectingReporter implements ErrorReporter
+	{
+		private final List<String> errors = new ArrayList<String>();
+
+		public void startDocument( String source ) { }
+		public void report( XmlError error ) { errors.add( error.toString() + " @" + error.getOffset() ); }
+		public void endDocument( long errorCount ) { }
+		public void flush() { }
+		public void close() { }
+	}
+
+	// Attributes
+	private Path file;
+	private ParserLimits limits;
+	private CollectingReporter reporter;
+	private FollowValidator follower;
+
+	/**
+	 * Creates an empty file and starts following it.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		file = Files.createTempFile( "follow", ".xml" );
+		limits = new ParserLimits();
+		reporter = new CollectingReporter();
+		follower = new FollowValidator( file, limits, reporter, ErrorMode.REPORT_ALL, Long.MAX_VALUE );
+	}
+
+	/**
+	 * Stops following and removes the file.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		follower.close();
+		Files.deleteIfExists( file );
+		file = null;
+		reporter = null;
+	}
+
+	private void append( String text ) throws IOException
+	{
+		Files.write( file, text.getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+	}
+
+	/**
+	 * Validates a whole document in one run, for comparison.
+	 */
+	private List<String> validateAtOnce( String xml ) throws Exception
+	{
+		CollectingReporter once = new CollectingReporter();
+		new XmlValidator( limits, once ).validate(
+				new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ) );
+		return once.errors;
+	}
+
+	/**
+	 * Test method for {@link xmlparser.FollowValidator#poll()} with a
+	 * document appended in pieces that end anywhere, several buffers long.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPoll_AppendsAcrossChunks() throws Exception
+	{
+		StringBuilder builder = new StringBuilder( "<root>\n" );
+		for ( int i = 0; i < 10000; i++ )
+		{
+			builder.append( "  <d id=\"" ).append( i ).append( "\">" );
+			builder.append( i % 501 == 0 ? "<a>x</b>" : "<a>x</a>" ).append( "</d>\n" );
+		}
+		String xml = builder.append( "</root>\n" ).toString();
+
+		for ( int start = 0; start < xml.length(); start += 7919 )
+		{
+			assertFalse( follower.isComplete() );
+			append( xml.substring( start, Math.min( start + 7919, xml.length() ) ) );
+			follower.poll();
+		}
+
+		assertTrue( follower.isComplete() );
+		assertEquals( xml.length(), follower.getOffset() );
+		assertEquals( validateAtOnce( xml ), reporter.errors );
+		assertEquals( reporter.errors.size(), follower.finish() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.FollowValidator#poll()} with tags
+	 * split between appends: each error is reported once, when the tag
+	 * causing it is complete.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPoll_TagSplitAcrossAppends() throws Exception
+	{
+		append( "<root><a>x</" );
+		assertEquals( 0, follower.poll() );
+		assertEquals( "[root, a]", Arrays.toString( follower.getOpenElements() ) );
+
+		append( "b" );
+		assertEquals( 0, follower.poll() );
+		append( "><c attr=\"1" );
+		assertEquals( 1, follower.poll() );
+		append( "\"/></ro" );
+		assertEquals( 1, follower.poll() );
+		assertFalse( follower.isComplete() );
+
+		append( "ot>" );
+		follower.poll();
+		assertTrue( follower.isComplete() );
+		assertEquals( validateAtOnce( "<root><a>x</b><c attr=\"1\"/></root>" ), reporter.errors );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.FollowValidator#finish()} when the
+	 * producer gives up with elements still open.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFinish_Unclosed() throws Exception
+	{
+		append( "<root><a>" );
+		assertEquals( 0, follower.poll() );
+		assertFalse( follower.isComplete() );
+		assertEquals( 2, follower.finish() );
+		assertEquals( validateAtOnce( "<root><a>" ), reporter.errors );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.FollowValidator#poll()} when the
+	 * file is truncated under it.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPoll_Truncated() throws Exception
+	{
+		append( "<root><a>x</a>" );
+		follower.poll();
+		try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.WRITE ) )
+		{
+			channel.truncate( 3 );
+		}
+		try
+		{
+			follower.poll();
+			fail( "Truncation should end the run." );
+		}
+		catch ( IOException ex )
+		{
+			assertTrue( ex.getMessage(), ex.getMessage().contains( "truncated" ) );
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.FollowValidator#poll()} when the
+	 * file is rotated: moved away and replaced by a new, longer one.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPoll_Rotated() throws Exception
+	{
+		append( "<root><a>x</a>" );
+		follower.poll();
+		Path rotated = file.resolveSibling( file.getFileName() + ".1" );
+		try
+		{
+			Files.move( file, rotated );
+			try
+			{
+				follower.poll();
+				fail( "A missing file should end the run." );
+			}
+			catch ( IOException ex )
+			{
+				assertTrue( ex.getMessage(), ex.getMessage().contains( "replaced" ) );
+			}
+
+			Files.write( file, "<other><b>y</b><b>y</b></other>".getBytes( StandardCharsets.UTF_8 ) );
+			try
+			{
+				follower.poll();
+				fail( "A replaced file should end the run." );
+			}
+			catch ( IOException ex )
+			{
+				assertTrue( ex.getMessage(), ex.getMessage().contains( "replaced" ) );
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists( rotated );
+		}
+	}
+}
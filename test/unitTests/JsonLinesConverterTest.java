@@ -0,0 +1,82 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import xmlparser.JsonLinesConverter;
+import xmlparser.ParserLimits;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the streaming XML to JSON Lines converter: the mapping of
+ * attributes, children and text, escaping, and records longer than the
+ * tokenizer's buffer.
+ */
+
+public class JsonLinesConverterTest
+{
+	/**
+	 * Converts the records of the given document.
+	 */
+	private static String convert( String record, String xml ) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlTokenizer tokenizer = new XmlTokenizer(
+				new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ), new ParserLimits() );
+		new XmlEventScanner( tokenizer, new JsonLinesConverter( record, out ) ).parse();
+		return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.JsonLinesConverter} mapping and
+	 * escaping.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMapping() throws Exception
+	{
+		assertEquals( "{\"@id\":\"7\",\"a\":\"x\",\"b\":[\"\",\"y\"]}\n",
+				convert( "Driver", "<r><Driver id=\"7\"><a>x</a><b/><b>y</b></Driver></r>" ) );
+
+		assertEquals( "{}\n{\"@k\":\"1\",\"#text\":\"only\"}\n",
+				convert( "Driver", "<r>skipped<Driver/>\n<x><Driver k='1'>only</Driver></x></r>" ) );
+
+		assertEquals( "{\"@n\":\"a & α\",\"c\":{\"d\":\"\\\"q\\\"\\t\\\\\"},"
+				+ "\"#text\":\"\\n  <raw> &amp;\"}\n",
+				convert( "Driver", "<Driver n='a &amp; &#x3b1;'>\n  <c><d>&quot;q\"\t\\</d></c>"
+						+ "<![CDATA[<raw> &amp;]]></Driver>" ) );
+
+		// References to characters XML does not allow are copied as they are.
+		assertEquals( "{\"#text\":\"&#xD800; &#55296; &#0; &#xFFFE; &#x110000; \\t\"}\n",
+				convert( "a", "<a>&#xD800; &#55296; &#0; &#xFFFE; &#x110000; &#9;</a>" ) );
+
+		// An unfinished record is not written.
+		assertEquals( "", convert( "Driver", "<r><Driver><a>x</a>" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.JsonLinesConverter} text spanning
+	 * several of the tokenizer's reads.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLongRecord() throws Exception
+	{
+		StringBuilder text = new StringBuilder();
+		while ( text.length() < 200000 )
+		{
+			text.append( "abc &lt; " );
+		}
+		String json = convert( "a", "<r><a>" + text + "</a><a>z</a></r>" );
+
+		String expected = text.toString().replace( "&lt;", "<" );
+		assertEquals( "{\"#text\":\"" + expected + "\"}\n{\"#text\":\"z\"}\n", json );
+	}
+}
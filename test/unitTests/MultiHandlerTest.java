@@ -0,0 +1,175 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import exceptions.StopParsingException;
+import xmlparser.DefaultXmlHandler;
+import xmlparser.ErrorReporter;
+import xmlparser.MultiHandler;
+import xmlparser.ParserLimits;
+import xmlparser.XmlError;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+import xmlparser.XmlValidator;
+
+/**
+ * Class Description:
+ * Tests for MultiHandler: several handlers sharing one scan, and how a
+ * stop by one of them affects the others.
+ */
+
+public class MultiHandlerTest
+{
+	/**
+	 * Reporter that keeps every error it is given.
+	 */
+	private static class CollectingReporter implements ErrorReporter
+	{
+		private final List<String> errors = new ArrayList<String>();
+
+		public void startDocument( String source ) { }
+		public void report( XmlError error ) { errors.add( error.getKind().name() ); }
+		public void endDocument( long errorCount ) { }
+		public void flush() { }
+		public void close() { }
+	}
+
+	/**
+	 * Handler counting the elements it is given, and stopping once it has
+	 * seen stopAt of them.
+	 */
+	private static class CountingHandler extends DefaultXmlHandler
+	{
+		private final int stopAt;
+		private int elements;
+		private boolean ended;
+
+		CountingHandler()
+		{
+			this( Integer.MAX_VALUE );
+		}
+
+		CountingHandler( int stopAt )
+		{
+			this.stopAt = stopAt;
+		}
+
+		@Override
+		public void startElement( String name, byte[] b, int start, int end )
+				throws StopParsingException
+		{
+			count();
+		}
+
+		@Override
+		public void emptyElement( String name, byte[] b, int start, int end )
+				throws StopParsingException
+		{
+			count();
+		}
+
+		private void count() throws StopParsingException
+		{
+			if ( ++elements == stopAt )
+			{
+				throw new StopParsingException( "enough" );
+			}
+		}
+
+		@Override
+		public void endDocument()
+		{
+			ended = true;
+		}
+	}
+
+	private static XmlTokenizer tokenizer( String xml, ParserLimits limits )
+	{
+		return new XmlTokenizer( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ),
+				limits );
+	}
+
+	/**
+	 * Builds a root element holding the given number of empty children.
+	 */
+	private static String records( int count )
+	{
+		StringBuilder xml = new StringBuilder( "<root>" );
+		for ( int i = 0; i < count; i++ )
+		{
+			xml.append( "<e/>" );
+		}
+		return xml.append( "</root>" ).toString();
+	}
+
+	/**
+	 * Test method for {@link xmlparser.MultiHandler} when the validator
+	 * exceeds a resource limit: the whole scan ends, not just validation.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLimitStopsEveryHandler() throws Exception
+	{
+		ParserLimits limits = new ParserLimits();
+		limits.setMaxTags( 5 );
+		CollectingReporter reporter = new CollectingReporter();
+		XmlValidator validator = new XmlValidator( limits, reporter );
+		CountingHandler counter = new CountingHandler();
+
+		new XmlEventScanner( tokenizer( records( 20000 ), limits ),
+				new MultiHandler( validator, counter ) ).parse();
+
+		assertEquals( "[LIMIT_EXCEEDED]", reporter.errors.toString() );
+		assertTrue( validator.isLimitExceeded() );
+		assertEquals( 5, counter.elements );
+		assertTrue( counter.ended );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.MultiHandler} when one handler
+	 * stops: it gets no more events but endDocument, the others go on.
+	 * @throws Exception
+	 */
+	@Test
+	public void testOneHandlerStops() throws Exception
+	{
+		CountingHandler early = new CountingHandler( 3 );
+		CountingHandler all = new CountingHandler();
+		XmlTokenizer tokenizer = tokenizer( records( 100 ), new ParserLimits() );
+
+		new XmlEventScanner( tokenizer, new MultiHandler( early, all ) ).parse();
+
+		assertEquals( 3, early.elements );
+		assertTrue( early.ended );
+		assertEquals( 101, all.elements );
+		assertTrue( all.ended );
+		assertEquals( records( 100 ).length(), tokenizer.getOffset() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.MultiHandler} when every handler
+	 * has stopped: the scan ends at the last stop.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEveryHandlerStops() throws Exception
+	{
+		CountingHandler first = new CountingHandler( 10 );
+		CountingHandler second = new CountingHandler( 4 );
+		XmlTokenizer tokenizer = tokenizer( records( 100 ), new ParserLimits() );
+
+		new XmlEventScanner( tokenizer, new MultiHandler( first, second ) ).parse();
+
+		assertEquals( 10, first.elements );
+		assertEquals( 4, second.elements );
+		assertTrue( first.ended && second.ended );
+		assertEquals( "<root>".length() + 9 * "<e/>".length(), tokenizer.getOffset() );
+	}
+}
@@ -0,0 +1,79 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import xmlparser.NameTable;
+
+/**
+ * Class Description:
+ * Tests for NameTable: ids handed out in order and kept through the
+ * table's growth, and lookups by bytes and by String agreeing.
+ */
+
+public class NameTableTest
+{
+	/**
+	 * Test method for {@link xmlparser.NameTable#intern(java.lang.String)}
+	 * and {@link xmlparser.NameTable#getName(int)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIntern() throws Exception
+	{
+		NameTable table = new NameTable();
+		assertEquals( 0, table.intern( "root" ) );
+		assertEquals( 1, table.intern( "Driver" ) );
+		assertEquals( 0, table.intern( "root" ) );
+		assertEquals( 2, table.intern( "ns:driver" ) );
+		assertEquals( 3, table.size() );
+		assertEquals( "Driver", table.getName( 1 ) );
+		assertEquals( -1, table.find( "driver" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.NameTable#intern(byte[], int, int)}
+	 * on a name in the middle of a larger buffer, including non-ASCII bytes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIntern_Bytes() throws Exception
+	{
+		NameTable table = new NameTable();
+		byte[] buf = "<café attr=\"1\">".getBytes( StandardCharsets.UTF_8 );
+		int end = 1 + "café".getBytes( StandardCharsets.UTF_8 ).length;
+
+		int id = table.intern( buf, 1, end );
+		assertEquals( "café", table.getName( id ) );
+		assertEquals( id, table.intern( "café" ) );
+		assertEquals( id, table.find( "café" ) );
+		assertTrue( table.matches( id, buf, 1, end ) );
+		assertFalse( table.matches( id, buf, 1, end - 1 ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.NameTable#intern(java.lang.String)}
+	 * through many rehashes: every id stays the same and is still found.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIntern_Rehash() throws Exception
+	{
+		NameTable table = new NameTable();
+		for ( int i = 0; i < 5000; i++ )
+		{
+			assertEquals( i, table.intern( "name" + i ) );
+		}
+		assertEquals( 5000, table.size() );
+		for ( int i = 0; i < 5000; i++ )
+		{
+			assertEquals( i, table.intern( "name" + i ) );
+			assertEquals( i, table.find( "name" + i ) );
+			assertEquals( "name" + i, table.getName( i ) );
+		}
+		assertEquals( 5000, table.size() );
+	}
+}
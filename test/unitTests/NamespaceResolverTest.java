@@ -0,0 +1,237 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.Checkpoint;
+import xmlparser.ErrorReporter;
+import xmlparser.NamespaceResolver;
+import xmlparser.ParserLimits;
+import xmlparser.XmlError;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+import xmlparser.XmlValidator;
+
+/**
+ * Class Description:
+ * Tests for NamespaceResolver: scoping of declarations, undeclared
+ * prefixes, unbinding the default namespace, the reserved xml and xmlns
+ * prefixes, and the scope restored from a checkpoint.
+ */
+
+public class NamespaceResolverTest
+{
+	/**
+	 * Reporter that keeps every error it is given.
+	 */
+	private static class CollectingReporter implements ErrorReporter
+	{
+		private final List<String> errors = new ArrayList<String>();
+
+		public void startDocument( String source ) { }
+		public void report( XmlError error ) { errors.add( error.getKind() + " " + error.getSecond() ); }
+		public void endDocument( long errorCount ) { }
+		public void flush() { }
+		public void close() { }
+	}
+
+	// Attributes
+	private NamespaceResolver resolver;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		resolver = new NamespaceResolver();
+	}
+
+	/**
+	 * Enters the element of a start tag written out in full, e.g.
+	 * {@code <p:a xmlns:p="u">}.
+	 */
+	private int start( String tag )
+	{
+		byte[] buf = tag.getBytes( StandardCharsets.UTF_8 );
+		int nameEnd = 1;
+		while ( buf[nameEnd] != ' ' && buf[nameEnd] != '>' && buf[nameEnd] != '/' )
+		{
+			nameEnd++;
+		}
+		int end = buf.length - ( tag.endsWith( "/>" ) ? 2 : 1 );
+		return resolver.startElement( buf, 1, nameEnd, nameEnd, end );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.NamespaceResolver#startElement(byte[], int, int, int, int)}
+	 * with a prefix redeclared in a nested element.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNestedRedeclaration() throws Exception
+	{
+		assertEquals( NamespaceResolver.OK, start( "<p:a xmlns:p=\"u1\">" ) );
+		assertEquals( "u1", resolver.getUri( resolver.getQNameId() ) );
+		assertEquals( NamespaceResolver.OK, start( "<p:a xmlns:p='u2' p:x=\"1\">" ) );
+		int inner = resolver.getQNameId();
+		assertEquals( "u2", resolver.getUri( inner ) );
+		assertEquals( "p", resolver.getPrefix( inner ) );
+		assertEquals( "a", resolver.getLocalName( inner ) );
+
+		assertEquals( NamespaceResolver.OK, start( "<p:a>" ) );
+		assertEquals( inner, resolver.getQNameId() );
+		resolver.endElement();
+		resolver.endElement();
+
+		assertEquals( "u1", resolver.getNamespaceUri( "p" ) );
+		assertEquals( NamespaceResolver.OK, start( "<p:a>" ) );
+		assertTrue( inner != resolver.getQNameId() );
+		resolver.endElement();
+		resolver.endElement();
+		assertNull( resolver.getNamespaceUri( "p" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.NamespaceResolver#startElement(byte[], int, int, int, int)}
+	 * with undeclared prefixes on elements and attributes, including one
+	 * whose declaration has gone out of scope.
+	 * @throws Exception
+	 */
+	@Test
+	public void testUndeclared() throws Exception
+	{
+		assertEquals( NamespaceResolver.UNDECLARED, start( "<q:a>" ) );
+		assertEquals( "q", resolver.getUndeclaredPrefix() );
+		resolver.endElement();
+
+		assertEquals( NamespaceResolver.UNDECLARED, start( "<a x=\"1\" r:y=\"2\">" ) );
+		assertEquals( "r", resolver.getUndeclaredPrefix() );
+		resolver.endElement();
+
+		assertEquals( NamespaceResolver.OK, start( "<a>" ) );
+		assertEquals( NamespaceResolver.OK, start( "<s:b xmlns:s=\"u\" s:x=\"1\"/>" ) );
+		resolver.endElement();
+		assertEquals( NamespaceResolver.UNDECLARED, start( "<s:c>" ) );
+		assertEquals( "s", resolver.getUndeclaredPrefix() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.NamespaceResolver#getNamespaceUri(java.lang.String)}
+	 * when a nested element unbinds the default namespace with xmlns="".
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnbindDefault() throws Exception
+	{
+		assertEquals( "", resolver.getNamespaceUri( "" ) );
+		assertEquals( NamespaceResolver.OK, start( "<a xmlns=\"u\">" ) );
+		assertEquals( "u", resolver.getUri( resolver.getQNameId() ) );
+
+		assertEquals( NamespaceResolver.OK, start( "<b xmlns=\"\">" ) );
+		assertEquals( "", resolver.getNamespaceUri( "" ) );
+		assertEquals( "", resolver.getUri( resolver.getQNameId() ) );
+		resolver.endElement();
+
+		assertEquals( "u", resolver.getNamespaceUri( "" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.NamespaceResolver#startElement(byte[], int, int, int, int)}
+	 * with the reserved xml and xmlns prefixes and namespaces misused.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReserved() throws Exception
+	{
+		String[] misuses = {
+			"<a xmlns:xml=\"u\">",
+			"<a xmlns:xmlns=\"u\">",
+			"<a xmlns:p=\"" + NamespaceResolver.XML_NAMESPACE + "\">",
+			"<a xmlns:p=\"" + NamespaceResolver.XMLNS_NAMESPACE + "\">",
+			"<a xmlns=\"" + NamespaceResolver.XMLNS_NAMESPACE + "\">",
+			"<a xmlns:p=\"\">",
+			"<xmlns:a>",
+		};
+		String[] prefixes = { "xml", "xmlns", "p", "p", "", "p", "xmlns" };
+		for ( int i = 0; i < misuses.length; i++ )
+		{
+			assertEquals( misuses[i], NamespaceResolver.RESERVED, start( misuses[i] ) );
+			assertEquals( prefixes[i], resolver.getUndeclaredPrefix() );
+			resolver.endElement();
+		}
+		assertNull( "A misused declaration binds nothing.", resolver.getNamespaceUri( "p" ) );
+
+		// The xml prefix is always declared, and may be declared as itself.
+		assertEquals( NamespaceResolver.OK, start( "<xml:a xml:lang=\"en\">" ) );
+		assertEquals( NamespaceResolver.XML_NAMESPACE, resolver.getUri( resolver.getQNameId() ) );
+		assertEquals( NamespaceResolver.OK,
+				start( "<a xmlns:xml=\"" + NamespaceResolver.XML_NAMESPACE + "\">" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlValidator#setCheckNamespaces(boolean)}:
+	 * undeclared and misused prefixes reported as errors.
+	 * @throws Exception
+	 */
+	@Test
+	public void testValidatorErrors() throws Exception
+	{
+		CollectingReporter reporter = new CollectingReporter();
+		XmlValidator validator = new XmlValidator( new ParserLimits(), reporter );
+		validator.setCheckNamespaces( true );
+		validator.validate( new ByteArrayInputStream(
+				"<r xmlns:p=\"u\"><p:a/><q:b/><c xmlns:xmlns=\"v\"/></r>"
+						.getBytes( StandardCharsets.UTF_8 ) ) );
+		assertEquals( "[UNDECLARED_PREFIX q, RESERVED_PREFIX xmlns]", reporter.errors.toString() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlValidator#restore(Checkpoint, java.io.InputStream)}:
+	 * the declarations in scope at a checkpoint are in scope after it.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCheckpointRestore() throws Exception
+	{
+		String head = "<r xmlns=\"d\" xmlns:p=\"u\"><a xmlns:p=\"v\">";
+		String tail = "<p:b/></a><p:c/><q:e/></r>";
+		ParserLimits limits = new ParserLimits();
+
+		CollectingReporter first = new CollectingReporter();
+		XmlValidator dying = new XmlValidator( limits, first );
+		dying.setCheckNamespaces( true );
+		XmlTokenizer tokenizer = new XmlTokenizer( new ByteArrayInputStream(
+				( head + tail ).getBytes( StandardCharsets.UTF_8 ) ), limits );
+		XmlEventScanner scanner = new XmlEventScanner( tokenizer, dying );
+		scanner.step();
+		scanner.step();
+		assertEquals( head.length(), tokenizer.getOffset() );
+		Checkpoint checkpoint = dying.snapshot( tokenizer );
+
+		CollectingReporter second = new CollectingReporter();
+		XmlValidator resumed = new XmlValidator( limits, second );
+		resumed.setCheckNamespaces( true );
+		XmlTokenizer rest = resumed.restore( checkpoint,
+				new ByteArrayInputStream( tail.getBytes( StandardCharsets.UTF_8 ) ) );
+		NamespaceResolver restored = resumed.getNamespaceResolver();
+		assertEquals( "v", restored.getNamespaceUri( "p" ) );
+		assertEquals( "d", restored.getNamespaceUri( "" ) );
+
+		XmlEventScanner resuming = new XmlEventScanner( rest, resumed );
+		resuming.step();
+		resuming.step();
+		assertEquals( "u", restored.getNamespaceUri( "p" ) );
+		resuming.feed();
+		resuming.finish();
+		assertEquals( "[UNDECLARED_PREFIX q]", second.errors.toString() );
+		assertEquals( 1, resumed.getErrorCount() );
+	}
+}
@@ -0,0 +1,77 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Class Description:
+ * Tests for the command line options of Parser: unknown options and
+ * unusable numeric values.
+ */
+
+public class ParserArgsTest
+{
+	/**
+	 * Reads the arguments as main() would, and returns what was printed,
+	 * including the message of a rejected option value.
+	 */
+	private static String parseArgs( String... args ) throws Exception
+	{
+		Class<?> type = Class.forName( "Parser" );
+		Object parser = type.getDeclaredConstructor().newInstance();
+		Method parseArgs = type.getDeclaredMethod( "parseArgs", String[].class );
+		parseArgs.setAccessible( true );
+
+		PrintStream original = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut( new PrintStream( bytes, true, "UTF-8" ) );
+		try
+		{
+			parseArgs.invoke( parser, (Object) args );
+		}
+		catch ( InvocationTargetException ex )
+		{
+			assertTrue( ex.getCause() instanceof IllegalArgumentException );
+			System.out.println( "Error: " + ex.getCause().getMessage() );
+		}
+		finally
+		{
+			System.setOut( original );
+		}
+		return new String( bytes.toByteArray(), StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Test method for Parser.parseArgs() given an unknown option.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParseArgs_UnknownOption() throws Exception
+	{
+		assertTrue( parseArgs( "--max-dept", "abc", "a.xml" )
+				.startsWith( "Error: Unknown option --max-dept" ) );
+		assertTrue( parseArgs( "--max-dept", "10", "a.xml" )
+				.startsWith( "Error: Unknown option --max-dept" ) );
+	}
+
+	/**
+	 * Test method for Parser.parseArgs() given unusable numeric values.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParseArgs_BadNumber() throws Exception
+	{
+		assertEquals( "Error: --max-depth takes a number: abc\n",
+				parseArgs( "--max-depth", "abc", "a.xml" ) );
+		assertEquals( "Error: --workers must be positive: 0\n",
+				parseArgs( "--workers", "0", "a.xml" ) );
+		assertEquals( "", parseArgs( "--max-depth", "10", "a.xml" ) );
+	}
+}
@@ -0,0 +1,118 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import xmlparser.ParserLimits;
+import xmlparser.PathQueryEngine;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the streaming path-query engine: child, descendant, wildcard
+ * and attribute steps, several queries sharing one pass.
+ */
+
+public class PathQueryTest
+{
+	// Attributes
+	private static final String XML =
+			"<r><s id=\"1\"><d n=\"a &amp; b\"><x/></d><c><d n='c'/></c></s><d n=\"top\"/></r>";
+
+	/**
+	 * Runs the given queries over the document, returning each match as
+	 * "query:element" or "query:element=value".
+	 */
+	private List<String> run( String... paths ) throws Exception
+	{
+		return query( XML, paths );
+	}
+
+	/**
+	 * Runs the given queries over a document of its own.
+	 */
+	private List<String> query( String xml, String... paths ) throws Exception
+	{
+		final List<String> matches = new ArrayList<String>();
+		PathQueryEngine engine = new PathQueryEngine( paths,
+				( query, element, value, line, offset ) ->
+						matches.add( query + ":" + element + ( value == null ? "" : "=" + value ) ) );
+		XmlTokenizer tokenizer = new XmlTokenizer(
+				new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ), new ParserLimits() );
+		new XmlEventScanner( tokenizer, engine ).parse();
+		return matches;
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PathQueryEngine} child, descendant,
+	 * wildcard and attribute steps.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSteps() throws Exception
+	{
+		assertEquals( "[0:d=a & b]", run( "/r/s/d/@n" ).toString() );
+		assertEquals( "[0:d=a & b, 0:d=c, 0:d=top]", run( "//d/@n" ).toString() );
+		assertEquals( "[0:d, 0:d]", run( "/r/s//d" ).toString() );
+		assertEquals( "[0:d, 0:c]", run( "/r/s/*" ).toString() );
+		assertEquals( "[0:x]", run( "//s//*/x" ).toString() );
+		assertEquals( "[]", run( "/s" ).toString() );
+		assertEquals( "[]", run( "/r/s/@missing" ).toString() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PathQueryEngine} expanding
+	 * references in attribute values: only to characters XML allows;
+	 * others are left as they are.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReferences() throws Exception
+	{
+		assertEquals( "[0:r=A\uD83D\uDE00 <>&\"']",
+				query( "<r a='&#65;&#x1F600; &lt;&gt;&amp;&quot;&apos;'/>", "/r/@a" ).toString() );
+		assertEquals( "[0:r=&#xD800;&#0;&#x-41;&#+65;&#xFFFE;]",
+				query( "<r a='&#xD800;&#0;&#x-41;&#+65;&#xFFFE;'/>", "/r/@a" ).toString() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PathQueryEngine} to answer several
+	 * queries in one pass, in document order.
+	 * @throws Exception
+	 */
+	@Test
+	public void testManyQueries() throws Exception
+	{
+		assertEquals( "[1:s=1, 0:d, 2:d=a & b, 0:d, 2:d=c, 0:d, 2:d=top]",
+				run( "//d", "/r/s/@id", "//d/@n" ).toString() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PathQueryEngine} to reject queries
+	 * it cannot compile.
+	 */
+	@Test
+	public void testMalformed()
+	{
+		String[] bad = { "r/s", "/r//", "/r/@a/b", "//@a" };
+		for ( String path : bad )
+		{
+			try
+			{
+				new PathQueryEngine( new String[] { path }, null );
+				fail( "Should reject " + path );
+			}
+			catch ( IllegalArgumentException ex )
+			{
+				// expected
+			}
+		}
+	}
+}
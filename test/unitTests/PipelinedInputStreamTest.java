@@ -0,0 +1,188 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import xmlparser.PipelinedInputStream;
+
+/**
+ * Class Description:
+ * Tests for PipelinedInputStream: bytes handed over unchanged, a failing
+ * source reported after the bytes before it, and close() while the
+ * reading thread is blocked.
+ */
+
+public class PipelinedInputStreamTest
+{
+	/**
+	 * Source returning at most 1000 bytes a read, failing with an
+	 * IOException after failAt bytes, or blocking until interrupted once
+	 * its data runs out if block is set; notes whether it was closed.
+	 */
+	private static class TestSource extends InputStream
+	{
+		private final ByteArrayInputStream data;
+		private final long failAt;
+		private final boolean block;
+		private volatile long read;
+		private volatile boolean closed;
+
+		TestSource( byte[] content, long failAt, boolean block )
+		{
+			this.data = new ByteArrayInputStream( content );
+			this.failAt = failAt;
+			this.block = block;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read( byte[] b, int off, int len ) throws IOException
+		{
+			if ( read >= failAt )
+			{
+				throw new IOException( "Unexpected end of ZLIB input stream" );
+			}
+			int n = data.read( b, off, (int) Math.min( Math.min( len, 1000 ), failAt - read ) );
+			if ( n < 0 && block )
+			{
+				try
+				{
+					Thread.sleep( Long.MAX_VALUE );
+				}
+				catch ( InterruptedException ex )
+				{
+					throw new InterruptedIOException();
+				}
+			}
+			if ( n > 0 )
+			{
+				read += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+	}
+
+	private static byte[] random( int length )
+	{
+		byte[] bytes = new byte[length];
+		new Random( 7 ).nextBytes( bytes );
+		return bytes;
+	}
+
+	private static byte[] readAll( InputStream in, ByteArrayOutputStream bytes ) throws IOException
+	{
+		byte[] buffer = new byte[7777];
+		int n;
+		while ( ( n = in.read( buffer ) ) > 0 )
+		{
+			bytes.write( buffer, 0, n );
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PipelinedInputStream#read(byte[], int, int)}
+	 * over many buffers, and {@link xmlparser.PipelinedInputStream#read()}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRead_RoundTrip() throws Exception
+	{
+		byte[] content = random( 10 * PipelinedInputStream.BUFFER_SIZE + 123 );
+		TestSource source = new TestSource( content, Long.MAX_VALUE, false );
+		try ( PipelinedInputStream in = new PipelinedInputStream( source, "test" ) )
+		{
+			assertEquals( content[0] & 0xFF, in.read() );
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			bytes.write( content[0] );
+			assertArrayEquals( content, readAll( in, bytes ) );
+			assertEquals( -1, in.read() );
+		}
+		assertTrue( source.closed );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PipelinedInputStream#read(byte[], int, int)}
+	 * on a source failing part way: the bytes before the failure, then
+	 * the source's IOException rather than the end of the stream.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRead_SourceFails() throws Exception
+	{
+		byte[] content = random( 5 * PipelinedInputStream.BUFFER_SIZE );
+		int failAt = 2 * PipelinedInputStream.BUFFER_SIZE + 500;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( PipelinedInputStream in = new PipelinedInputStream(
+				new TestSource( content, failAt, false ), "test" ) )
+		{
+			readAll( in, bytes );
+			fail( "The source's failure should be rethrown." );
+		}
+		catch ( IOException ex )
+		{
+			assertEquals( "Unexpected end of ZLIB input stream", ex.getMessage() );
+		}
+		assertEquals( failAt, bytes.size() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PipelinedInputStream#close()} while
+	 * the reading thread waits for the reader to drain the queue.
+	 * @throws Exception
+	 */
+	@Test( timeout = 10000 )
+	public void testClose_QueueFull() throws Exception
+	{
+		TestSource source = new TestSource(
+				random( 20 * PipelinedInputStream.BUFFER_SIZE ), Long.MAX_VALUE, false );
+		PipelinedInputStream in = new PipelinedInputStream( source, "test" );
+		in.read();
+
+		// One buffer held by the reader, the others all filled.
+		long ahead = ( PipelinedInputStream.QUEUE_DEPTH + 1L ) * PipelinedInputStream.BUFFER_SIZE;
+		while ( source.read < ahead )
+		{
+			Thread.sleep( 10 );
+		}
+		in.close();
+		assertTrue( source.closed );
+		assertEquals( ahead, source.read );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.PipelinedInputStream#close()} while
+	 * the reading thread is blocked in the source.
+	 * @throws Exception
+	 */
+	@Test( timeout = 10000 )
+	public void testClose_SourceBlocked() throws Exception
+	{
+		TestSource source = new TestSource( random( 100 ), Long.MAX_VALUE, true );
+		PipelinedInputStream in = new PipelinedInputStream( source, "test" );
+		Thread.sleep( 100 );
+		in.close();
+		assertTrue( source.closed );
+		in.close();
+	}
+}
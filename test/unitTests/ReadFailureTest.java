@@ -0,0 +1,185 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.BinaryErrorReporter;
+import xmlparser.CompressedInput;
+import xmlparser.ParserLimits;
+import xmlparser.XmlError;
+import xmlparser.XmlValidator;
+
+/**
+ * Class Description:
+ * Tests for a file of a batch whose reading fails part way through: the
+ * errors found before the failure are reported under its own header, and
+ * its end-of-document count is -1.
+ */
+
+public class ReadFailureTest
+{
+	// Attributes
+	private Path broken;
+	private Path valid;
+
+	/**
+	 * Writes a gzip file cut in half, with two errors near its start, and
+	 * a document with one error.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		Random random = new Random( 42 );
+		StringBuilder xml = new StringBuilder( "<root>\n<a></b>\n<c></d>\n" );
+		for ( int i = 0; i < 50000; i++ )
+		{
+			xml.append( "<e>" ).append( random.nextInt() ).append( "</e>\n" );
+		}
+		byte[] content = xml.append( "</root>\n" ).toString().getBytes( StandardCharsets.UTF_8 );
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( GZIPOutputStream out = new GZIPOutputStream( bytes ) )
+		{
+			out.write( content );
+		}
+		byte[] gzip = bytes.toByteArray();
+		broken = Files.createTempFile( "broken", ".xml.gz" );
+		Files.write( broken, Arrays.copyOf( gzip, gzip.length / 2 ) );
+
+		valid = Files.createTempFile( "valid", ".xml" );
+		Files.write( valid, "<root><f></g></root>\n".getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Removes the files.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		Files.deleteIfExists( broken );
+		Files.deleteIfExists( valid );
+		broken = null;
+		valid = null;
+	}
+
+	/**
+	 * Runs the command line tool on the given arguments, as main() would
+	 * without exiting, and returns what it printed.
+	 */
+	private static String runParser( String... args ) throws Exception
+	{
+		Class<?> type = Class.forName( "Parser" );
+		Object parser = type.getDeclaredConstructor().newInstance();
+		Method parseArgs = type.getDeclaredMethod( "parseArgs", String[].class );
+		Method run = type.getDeclaredMethod( "run" );
+		parseArgs.setAccessible( true );
+		run.setAccessible( true );
+
+		PrintStream original = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut( new PrintStream( bytes, true, "UTF-8" ) );
+		try
+		{
+			assertEquals( true, parseArgs.invoke( parser, (Object) args ) );
+			run.invoke( parser );
+		}
+		finally
+		{
+			System.setOut( original );
+		}
+		return new String( bytes.toByteArray(), StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Test method for the text output of a batch whose first file cannot
+	 * be read to the end.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBatch_Text() throws Exception
+	{
+		String output = runParser( broken.toString(), valid.toString() );
+
+		int brokenHeader = output.indexOf( "== " + broken );
+		int failure = output.indexOf( "Error: Couldn't read file: " + broken );
+		int validHeader = output.indexOf( "== " + valid );
+		assertTrue( output, brokenHeader >= 0 );
+		assertTrue( output, failure > brokenHeader );
+		assertTrue( output, validHeader > failure );
+
+		// The broken file's errors come before its failure, the valid
+		// file's after its header.
+		String first = output.substring( brokenHeader, failure );
+		String second = output.substring( validHeader );
+		assertTrue( output, first.contains( "</b>" ) );
+		assertTrue( output, first.contains( "</d>" ) );
+		assertFalse( output, second.contains( "</b>" ) );
+		assertTrue( output, second.contains( "</g>" ) );
+		assertTrue( output, output.contains( "Checked 2 files: 0 valid, 2 invalid" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.BinaryErrorReporter#endDocument(long)}
+	 * ending a document that could not be read to the end.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEndDocument_Binary() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryErrorReporter reporter = new BinaryErrorReporter( bytes );
+		XmlValidator validator = new XmlValidator( new ParserLimits(), reporter );
+
+		reporter.startDocument( "broken" );
+		try ( InputStream in = CompressedInput.open( broken ) )
+		{
+			validator.validate( in );
+			fail( "Expected the truncated file to fail" );
+		}
+		catch ( IOException expected )
+		{
+			reporter.endDocument( -1 );
+		}
+		reporter.startDocument( "valid" );
+		reporter.endDocument( 0 );
+		reporter.flush();
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+		assertEquals( BinaryErrorReporter.DOCUMENT, in.readUnsignedByte() );
+		assertEquals( "broken", in.readUTF() );
+		int errors = 0;
+		int tag;
+		while ( ( tag = in.readUnsignedByte() ) == BinaryErrorReporter.ERROR )
+		{
+			XmlError.readFrom( in );
+			errors++;
+		}
+		assertEquals( 2, errors );
+		assertEquals( BinaryErrorReporter.END, tag );
+		assertEquals( -1, in.readLong() );
+		assertEquals( BinaryErrorReporter.DOCUMENT, in.readUnsignedByte() );
+		assertEquals( "valid", in.readUTF() );
+		assertEquals( BinaryErrorReporter.END, in.readUnsignedByte() );
+		assertEquals( 0, in.readLong() );
+		assertEquals( -1, in.read() );
+	}
+}
@@ -0,0 +1,85 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ReferenceChecker;
+
+/**
+ * Class Description:
+ * Tests for the entity and character reference checker, including
+ * references cut in two by the end of a text piece.
+ */
+
+public class ReferenceCheckerTest
+{
+	// Attributes
+	private ReferenceChecker checker;
+
+	/**
+	 * Creates a fresh checker before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		checker = new ReferenceChecker();
+	}
+
+	/**
+	 * Returns the index of the first bad reference in a whole string.
+	 */
+	private int scan( String text )
+	{
+		byte[] b = text.getBytes( StandardCharsets.UTF_8 );
+		return checker.scan( b, 0, b.length, false );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ReferenceChecker#scan(byte[], int, int, boolean)}
+	 * to accept good references and locate bad ones.
+	 */
+	@Test
+	public void testScan_GoodAndBad()
+	{
+		assertEquals( -1, scan( "a &amp; b &lt;&gt;&quot;&apos; &#65; &#x1F600;" ) );
+		assertEquals( 2, scan( "a & b" ) );
+		assertEquals( 0, scan( "&#0;" ) );
+		assertEquals( "Wrong reference.", "&#0;", checker.getReference() );
+		assertEquals( 1, scan( "x&#x110000;" ) );
+		assertEquals( 0, scan( "&#12a;" ) );
+		assertEquals( 0, scan( "&foo;" ) );
+		assertEquals( "Wrong description.", "unknown entity", checker.getProblem() );
+
+		checker.setAllowUnknownEntities( true );
+		assertEquals( -1, scan( "&foo;" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ReferenceChecker#scan(byte[], int, int, boolean)}
+	 * to complete a reference split across two text pieces.
+	 */
+	@Test
+	public void testScan_SplitReference()
+	{
+		byte[] first = "text &am".getBytes( StandardCharsets.UTF_8 );
+		byte[] second = "p; &bo".getBytes( StandardCharsets.UTF_8 );
+		byte[] third = "gus; end".getBytes( StandardCharsets.UTF_8 );
+
+		assertEquals( -1, checker.scan( first, 0, first.length, true ) );
+		assertEquals( 3, checker.getPendingLength() );
+		assertEquals( -1, checker.scan( second, 0, second.length, true ) );
+		assertEquals( 0, checker.scan( third, 0, third.length, true ) );
+		assertTrue( "The reference began in the previous piece.", checker.wasCarried() );
+		assertEquals( "&bogus;", checker.getReference() );
+		assertEquals( -1, checker.scan( third, checker.getResume(), third.length, true ) );
+		assertFalse( checker.endText() );
+
+		assertEquals( -1, checker.scan( first, 0, first.length, true ) );
+		assertTrue( "A cut-off reference at the end of the text is bad.", checker.endText() );
+	}
+}
@@ -0,0 +1,215 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ErrorKind;
+import xmlparser.ResultCache;
+import xmlparser.XmlError;
+
+/**
+ * Class Description:
+ * Tests for the persistent result cache: hits on unchanged content,
+ * misses on changed content or settings, sampled and full hashing, LRU
+ * eviction, and saving and loading the cache file.
+ */
+
+public class ResultCacheTest
+{
+	// Attributes
+	private Path dir;
+	private Path cacheFile;
+	private Path file;
+	private List<XmlError> errors;
+
+	/**
+	 * Creates a directory holding one document and no cache file yet.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = Files.createTempDirectory( "cache" );
+		cacheFile = dir.resolve( "results.cache" );
+		file = write( "a.xml", "<r><a>x</b></r>" );
+		errors = Collections.singletonList(
+				new XmlError( ErrorKind.MISMATCHED_TAG, 1, 7, 7, "a", "b" ) );
+	}
+
+	/**
+	 * Removes the directory and everything in it.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		for ( Path path : Files.list( dir ).toArray( Path[]::new ) )
+		{
+			Files.delete( path );
+		}
+		Files.delete( dir );
+		dir = null;
+	}
+
+	private Path write( String name, String content ) throws Exception
+	{
+		return Files.write( dir.resolve( name ), content.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResultCache#lookup(Path, String)}
+	 * on an unchanged file, and on one whose timestamp changed: a miss
+	 * unless whole files are hashed.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLookup_Hit() throws Exception
+	{
+		ResultCache cache = new ResultCache( cacheFile, 10, 1 << 20 );
+		assertNull( cache.lookup( file, "s" ) );
+		cache.store( file, "s", 1, errors );
+
+		ResultCache.Result result = cache.lookup( file, "s" );
+		assertNotNull( result );
+		assertEquals( 1, result.getErrorCount() );
+		assertEquals( errors.toString(), result.getErrors().toString() );
+		assertEquals( 1, cache.getHits() );
+		assertEquals( 1, cache.getMisses() );
+
+		ResultCache full = new ResultCache( cacheFile, 10, 1 << 20 );
+		full.setFullHash( true );
+		full.store( file, "s", 1, errors );
+
+		Files.setLastModifiedTime( file, FileTime.fromMillis( 1000000 ) );
+		assertNull( cache.lookup( file, "s" ) );
+		assertNotNull( full.lookup( file, "s" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResultCache#sampledHash(Path)}:
+	 * a large file is hashed in blocks, so a change between them keeping
+	 * the size and timestamp is only caught by hashing the whole file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLookup_SampledHash() throws Exception
+	{
+		byte[] content = new byte[4 * 1024 * 1024];
+		Files.write( file, content );
+		FileTime modified = Files.getLastModifiedTime( file );
+		ResultCache sampled = new ResultCache( cacheFile, 10, 1 << 20 );
+		sampled.store( file, "s", 1, errors );
+		ResultCache full = new ResultCache( cacheFile, 10, 1 << 20 );
+		full.setFullHash( true );
+		full.store( file, "s", 1, errors );
+
+		// Between the first two blocks, at 0 and about 270 KB
+		content[200000] = 1;
+		Files.write( file, content );
+		Files.setLastModifiedTime( file, modified );
+		assertNotNull( sampled.lookup( file, "s" ) );
+		assertNull( full.lookup( file, "s" ) );
+
+		// In the last block
+		content[200000] = 0;
+		content[content.length - 1] = 1;
+		Files.write( file, content );
+		Files.setLastModifiedTime( file, modified );
+		assertNull( sampled.lookup( file, "s" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResultCache#lookup(Path, String)}
+	 * on a file rewritten with the same size and timestamp, as cp -p or a
+	 * quick rewrite can leave it.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLookup_MissOnChange() throws Exception
+	{
+		ResultCache cache = new ResultCache( cacheFile, 10, 1 << 20 );
+		cache.store( file, "s", 1, errors );
+		FileTime modified = Files.getLastModifiedTime( file );
+
+		write( "a.xml", "<r><a>x</a></r>" );
+		Files.setLastModifiedTime( file, modified );
+		assertNull( cache.lookup( file, "s" ) );
+
+		cache.store( file, "s", 0, Collections.<XmlError>emptyList() );
+		assertEquals( 0, cache.lookup( file, "s" ).getErrorCount() );
+		assertEquals( 1, cache.size() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResultCache#lookup(Path, String)}
+	 * under different settings.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLookup_SettingsChange() throws Exception
+	{
+		ResultCache cache = new ResultCache( cacheFile, 10, 1 << 20 );
+		cache.store( file, "attributes", 1, errors );
+		assertNull( cache.lookup( file, "attributes namespaces" ) );
+		assertNotNull( cache.lookup( file, "attributes" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResultCache#store(Path, String, long, List)}
+	 * evicting the least recently used entry.
+	 * @throws Exception
+	 */
+	@Test
+	public void testStore_EvictsLeastRecentlyUsed() throws Exception
+	{
+		Path b = write( "b.xml", "<b/>" );
+		Path c = write( "c.xml", "<c/>" );
+		ResultCache cache = new ResultCache( cacheFile, 2, 1 << 20 );
+		cache.store( file, "s", 1, errors );
+		cache.store( b, "s", 0, Collections.<XmlError>emptyList() );
+		assertNotNull( cache.lookup( file, "s" ) );
+
+		cache.store( c, "s", 0, Collections.<XmlError>emptyList() );
+		assertEquals( 2, cache.size() );
+		assertNotNull( cache.lookup( file, "s" ) );
+		assertNull( cache.lookup( b, "s" ) );
+		assertNotNull( cache.lookup( c, "s" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ResultCache#save()} and loading the
+	 * saved file, with the LRU order kept.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSave_RoundTrip() throws Exception
+	{
+		Path b = write( "b.xml", "<b/>" );
+		ResultCache cache = new ResultCache( cacheFile, 2, 1 << 20 );
+		cache.store( file, "s", 1, errors );
+		cache.store( b, "s", 0, Collections.<XmlError>emptyList() );
+		assertNotNull( cache.lookup( file, "s" ) );
+		cache.save();
+
+		ResultCache loaded = new ResultCache( cacheFile, 2, 1 << 20 );
+		assertEquals( 2, loaded.size() );
+		ResultCache.Result result = loaded.lookup( file, "s" );
+		assertEquals( 1, result.getErrorCount() );
+		assertEquals( errors.toString(), result.getErrors().toString() );
+
+		// b.xml was used least recently before saving, so it goes first.
+		loaded.store( write( "c.xml", "<c/>" ), "s", 0, Collections.<XmlError>emptyList() );
+		assertNull( loaded.lookup( b, "s" ) );
+		assertNotNull( loaded.lookup( file, "s" ) );
+	}
+}
@@ -0,0 +1,285 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ErrorMode;
+import xmlparser.ParserLimits;
+import xmlparser.ValidationClient;
+import xmlparser.ValidationServer;
+
+/**
+ * Class Description:
+ * Tests for the validation server: pipelined FILE and DATA requests
+ * answered in order, malformed requests, timeouts, DATA bodies beyond a
+ * connection's memory budget, and the load-test client.
+ */
+
+public class ValidationServerTest
+{
+	// Attributes
+	private ValidationServer server;
+	private Thread serving;
+	private Path file;
+
+	/**
+	 * Serves on a new thread until the server is closed.
+	 */
+	private static Thread serve( ValidationServer server )
+	{
+		Thread serving = new Thread( () -> {
+			try
+			{
+				server.serve();
+			}
+			catch ( Exception ex )
+			{
+				// Closed by the test.
+			}
+		} );
+		serving.start();
+		return serving;
+	}
+
+	/**
+	 * Writes raw requests to a connection.
+	 */
+	private interface Requests
+	{
+		void writeTo( OutputStream out ) throws Exception;
+	}
+
+	/**
+	 * Sends raw request bytes and reads one summary line per expected
+	 * reply, returning their results.
+	 */
+	private static String exchange( int port, byte[] requests, int replies ) throws Exception
+	{
+		return exchange( port, out -> out.write( requests ), replies );
+	}
+
+	/**
+	 * Sends raw requests and reads one summary line per expected reply,
+	 * returning their results.
+	 */
+	private static String exchange( int port, Requests requests, int replies ) throws Exception
+	{
+		try ( Socket socket = new Socket( InetAddress.getLoopbackAddress(), port ) )
+		{
+			OutputStream out = socket.getOutputStream();
+			requests.writeTo( out );
+			out.flush();
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+			StringBuilder results = new StringBuilder();
+			for ( int i = 0; i < replies; )
+			{
+				String line = in.readLine();
+				assertNotNull( "connection closed after " + i + " replies", line );
+				int start = line.indexOf( "\"result\":\"" );
+				if ( start >= 0 )
+				{
+					start += "\"result\":\"".length();
+					results.append( i++ == 0 ? "" : " " )
+							.append( line, start, line.indexOf( '"', start ) );
+				}
+			}
+			return results.toString();
+		}
+	}
+
+	/**
+	 * Starts a server with two workers on a free port, and writes a
+	 * document to a temporary file.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		server = new ValidationServer( 0, 2, 10000, new ParserLimits(), ErrorMode.REPORT_ALL,
+				Long.MAX_VALUE );
+		serving = serve( server );
+		file = Files.createTempFile( "server", ".xml" );
+		Files.write( file, "<r><a/></r>".getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Stops the server and removes the document.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		server.close();
+		serving.join();
+		Files.deleteIfExists( file );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ValidationClient#receive()} with
+	 * several requests in flight.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipelined() throws Exception
+	{
+		try ( ValidationClient client = new ValidationClient( server.getPort() ) )
+		{
+			client.sendData( "<r><b></r>".getBytes( StandardCharsets.UTF_8 ) );
+			client.sendFile( file.toString() );
+			client.sendData( "<r></r>".getBytes( StandardCharsets.UTF_8 ) );
+			client.sendFile( file + ".missing" );
+
+			String reply = client.receive();
+			assertTrue( reply, reply.startsWith( "{\"source\":\"data#1\",\"result\":\"invalid\","
+					+ "\"errors\":2," ) );
+			assertEquals( 2, client.getRecords().size() );
+			assertTrue( client.getRecords().get( 0 ).contains( "\"kind\":\"MISMATCHED_TAG\"" ) );
+
+			reply = client.receive();
+			assertTrue( reply, reply.contains( "\"result\":\"valid\",\"errors\":0," ) );
+			assertTrue( client.getRecords().isEmpty() );
+			assertTrue( client.receive().startsWith( "{\"source\":\"data#3\",\"result\":\"valid\"" ) );
+			assertTrue( client.receive().contains( "\"result\":\"failed\"" ) );
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ValidationClient#loadTest(java.util.List, int, int)}
+	 * and {@link xmlparser.ValidationClient#percentile(long[], double)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLoadTest() throws Exception
+	{
+		try ( ValidationClient client = new ValidationClient( server.getPort() ) )
+		{
+			long[] latencies = client.loadTest( Collections.singletonList( file.toString() ), 50, 4 );
+			assertEquals( 50, latencies.length );
+			assertTrue( latencies[0] > 0 );
+			assertTrue( latencies[0] <= latencies[49] );
+		}
+
+		long[] sorted = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+		assertEquals( 5, ValidationClient.percentile( sorted, 50 ) );
+		assertEquals( 10, ValidationClient.percentile( sorted, 99 ) );
+		assertEquals( 1, ValidationClient.percentile( sorted, 0 ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ValidationServer#serve()} with
+	 * malformed requests and a path that is not a regular file: each is
+	 * answered with a failure, and the connection stays open for the
+	 * requests after it.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMalformed() throws Exception
+	{
+		StringBuilder longLine = new StringBuilder( "FILE " );
+		for ( int i = 0; i < 10000; i++ )
+		{
+			longLine.append( 'x' );
+		}
+		String requests = "DATA abc\n"
+				+ "BOGUS\n"
+				+ "DATA 7\n<r></r>"
+				+ "DATA -1\n"
+				+ longLine + "\n"
+				+ "FILE " + file.getParent() + "\n"
+				+ "DATA 7\n<r></r>"
+				+ "QUIT\n";
+
+		assertEquals( "failed failed valid failed failed failed valid",
+				exchange( server.getPort(), requests.getBytes( StandardCharsets.UTF_8 ), 7 ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ValidationServer#serve()} with
+	 * a document with no tags that outlasts the timeout: its reading
+	 * stops, it is answered with a timeout, and the request after it
+	 * still is answered.
+	 * @throws Exception
+	 */
+	@Test( timeout = 10000 )
+	public void testTimeout() throws Exception
+	{
+		ValidationServer strict = new ValidationServer( 0, 1, 5, new ParserLimits(),
+				ErrorMode.REPORT_ALL, Long.MAX_VALUE );
+		Thread strictServing = serve( strict );
+		Path text = Files.createTempFile( "server", ".txt" );
+		try
+		{
+			byte[] chunk = new byte[1024 * 1024];
+			Arrays.fill( chunk, (byte) 'x' );
+			try ( OutputStream out = Files.newOutputStream( text ) )
+			{
+				for ( int i = 0; i < 64; i++ )
+				{
+					out.write( chunk );
+				}
+			}
+			String requests = "FILE " + text + "\nBOGUS\nQUIT\n";
+
+			assertEquals( "timeout failed",
+					exchange( strict.getPort(), requests.getBytes( StandardCharsets.UTF_8 ), 2 ) );
+		}
+		finally
+		{
+			strict.close();
+			strictServing.join();
+			Files.deleteIfExists( text );
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.ValidationServer#serve()} with
+	 * pipelined DATA bodies that together exceed what a connection may
+	 * hold: reading waits for memory to be freed, and every request is
+	 * still answered in order.
+	 * @throws Exception
+	 */
+	@Test( timeout = 60000 )
+	public void testDataBudget() throws Exception
+	{
+		final byte[] lines = new byte[1024 * 1024];
+		Arrays.fill( lines, (byte) ' ' );
+		for ( int i = 63; i < lines.length; i += 64 )
+		{
+			lines[i] = '\n';
+		}
+		final int megabytes = ValidationServer.MAX_DATA_LENGTH / lines.length / 2 + 1;
+		final byte[] start = "<r>".getBytes( StandardCharsets.UTF_8 );
+		final byte[] end = "</r>".getBytes( StandardCharsets.UTF_8 );
+		final long length = start.length + (long) megabytes * lines.length + end.length;
+
+		// Two bodies of just over half the budget each, then a small one.
+		assertEquals( "valid valid valid", exchange( server.getPort(), out -> {
+			for ( int i = 0; i < 2; i++ )
+			{
+				out.write( ( "DATA " + length + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+				out.write( start );
+				for ( int m = 0; m < megabytes; m++ )
+				{
+					out.write( lines );
+				}
+				out.write( end );
+			}
+			out.write( "DATA 7\n<r></r>QUIT\n".getBytes( StandardCharsets.UTF_8 ) );
+		}, 3 ) );
+	}
+}
@@ -0,0 +1,89 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import xmlparser.ParserLimits;
+import xmlparser.XmlCursor;
+
+/**
+ * Class Description:
+ * Tests for the pull-based XmlCursor: event order, the zero-copy name and
+ * text views, and skipping subtrees.
+ */
+
+public class XmlCursorTest
+{
+	/**
+	 * Creates a cursor over the given document text.
+	 */
+	private XmlCursor cursor( String xml, boolean readText )
+	{
+		return new XmlCursor( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ),
+				new ParserLimits(), readText );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlCursor#next()}
+	 * to return each event with its name, attributes and text.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_Events() throws Exception
+	{
+		XmlCursor c = cursor( "<?xml version=\"1.0\"?><a x=\"1\">hi<b/><é>ü</é></a>", true );
+
+		assertEquals( XmlCursor.PROCESSING_INSTRUCTION, c.next() );
+		assertTrue( "Wrong processing instruction target.", c.getName().contentEquals( "xml" ) );
+		assertEquals( XmlCursor.START_ELEMENT, c.next() );
+		assertEquals( "Wrong element name.", "a", c.getName().toString() );
+		assertEquals( "Wrong attributes.", " x=\"1\"", c.getAttributes().toString() );
+		assertEquals( XmlCursor.CHARACTERS, c.next() );
+		assertEquals( "Wrong text.", "hi", c.getText().toString() );
+
+		assertEquals( XmlCursor.START_ELEMENT, c.next() );
+		assertTrue( "Self-closing tag not flagged.", c.isEmptyElement() );
+		assertEquals( "Wrong depth inside the self-closing tag.", 2, c.getDepth() );
+		assertEquals( XmlCursor.END_ELEMENT, c.next() );
+		assertEquals( "Wrong name for the end of the self-closing tag.", "b", c.getName().toString() );
+
+		assertEquals( XmlCursor.START_ELEMENT, c.next() );
+		assertEquals( "Non-ASCII name not decoded.", 1, c.getName().length() );
+		assertTrue( "Non-ASCII name not decoded.", c.getName().contentEquals( "é" ) );
+		assertEquals( XmlCursor.CHARACTERS, c.next() );
+		assertEquals( "Non-ASCII text not decoded.", 'ü', c.getText().charAt( 0 ) );
+		assertEquals( XmlCursor.END_ELEMENT, c.next() );
+		assertEquals( XmlCursor.END_ELEMENT, c.next() );
+		assertEquals( "Wrong depth after the root closed.", 0, c.getDepth() );
+		assertEquals( XmlCursor.END_DOCUMENT, c.next() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlCursor#skipSubtree()}
+	 * to land on the matching end tag of the skipped element.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipSubtree() throws Exception
+	{
+		XmlCursor c = cursor( "<r><skip><a><b/>text</a><a/></skip><keep/></r>", true );
+
+		assertEquals( XmlCursor.START_ELEMENT, c.next() );
+		assertEquals( XmlCursor.START_ELEMENT, c.next() );
+		assertEquals( XmlCursor.END_ELEMENT, c.skipSubtree() );
+		assertEquals( "Skipping stopped at the wrong tag.", "skip", c.getName().toString() );
+		assertEquals( "Wrong depth after skipping.", 1, c.getDepth() );
+
+		assertEquals( XmlCursor.START_ELEMENT, c.next() );
+		assertEquals( "keep", c.getName().toString() );
+		assertEquals( "Skipping a self-closing tag should end it.", XmlCursor.END_ELEMENT,
+				c.skipSubtree() );
+		assertEquals( XmlCursor.END_ELEMENT, c.next() );
+		assertEquals( "r", c.getName().toString() );
+		assertEquals( XmlCursor.END_DOCUMENT, c.next() );
+	}
+}
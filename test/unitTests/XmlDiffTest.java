@@ -0,0 +1,86 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import xmlparser.ParserLimits;
+import xmlparser.XmlDiff;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the streaming comparison of two documents: changed elements,
+ * added and removed ones by key, and what counts as no difference.
+ */
+
+public class XmlDiffTest
+{
+	// Attributes
+	private final List<String> changes = new ArrayList<String>();
+
+	/**
+	 * Compares two documents, collecting the differences as "CHANGE path".
+	 */
+	private long diff( String oldXml, String newXml, String key ) throws Exception
+	{
+		XmlDiff diff = new XmlDiff( key, ( change, path ) -> changes.add( change + " " + path ) );
+		long count = diff.compare( tokenizer( oldXml ), tokenizer( newXml ) );
+		assertEquals( changes.size(), count );
+		return count;
+	}
+
+	private static XmlTokenizer tokenizer( String xml )
+	{
+		return new XmlTokenizer( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ),
+				new ParserLimits() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlDiff#compare(XmlTokenizer, XmlTokenizer)}
+	 * on documents differing only in layout.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSame() throws Exception
+	{
+		assertEquals( 0, diff( "<r><a x='1'>some text</a><b/><!-- c --></r>",
+				"<r>\n  <a  x='1'> some\n\ttext </a>\n  <b></b>\n</r>\n", null ) );
+		assertEquals( 1, diff( "<r><a>some text</a></r>", "<r><a>sometext</a></r>", null ) );
+		assertEquals( "[CHANGED /r/a[1]]", changes.toString() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlDiff#compare(XmlTokenizer, XmlTokenizer)}
+	 * on elements changed in place.
+	 * @throws Exception
+	 */
+	@Test
+	public void testChanged() throws Exception
+	{
+		assertEquals( 2, diff( "<r><a x='1'>t</a><a><c/></a><b/></r>",
+				"<r><a x='2'>t</a><a><c/></a><b>u</b></r>", null ) );
+		assertEquals( "[CHANGED /r/a[1], CHANGED /r/b[1]]", changes.toString() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlDiff#compare(XmlTokenizer, XmlTokenizer)}
+	 * with records identified by a key attribute.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAddedRemoved() throws Exception
+	{
+		assertEquals( 3, diff(
+				"<r><d id='1'><n>a</n></d><d id='2'><n>b</n></d><d id='3'/><d id='4'/></r>",
+				"<r><d id='1'><n>a</n></d><d id='9'><n>z</n></d><d id='2'><n>c</n></d>"
+						+ "<d id='4'/></r>", "id" ) );
+		assertEquals( "[CHANGED /r/d[@id='2']/n[1], REMOVED /r/d[@id='3'], "
+				+ "ADDED /r/d[@id='9']]", changes.toString() );
+	}
+}
@@ -0,0 +1,106 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import xmlparser.Transcoder;
+import xmlparser.XmlEncoding;
+
+/**
+ * Class Description:
+ * Tests for encoding detection and for transcoding documents to UTF-8.
+ */
+
+public class XmlEncodingTest
+{
+	/**
+	 * Detects the encoding of the given bytes.
+	 */
+	private XmlEncoding detect( byte[] bytes ) throws IOException
+	{
+		return XmlEncoding.detect( bytes, bytes.length );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEncoding#detect(byte[], int)}
+	 * to honour byte order marks, declaration bytes and declarations.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDetect() throws Exception
+	{
+		byte[] plain = "<root/>".getBytes( StandardCharsets.US_ASCII );
+		assertEquals( StandardCharsets.UTF_8, detect( plain ).getCharset() );
+		assertTrue( detect( plain ).isUtf8() );
+
+		byte[] latin = "<?xml version='1.0' encoding='ISO-8859-1'?><r/>"
+				.getBytes( StandardCharsets.ISO_8859_1 );
+		assertEquals( StandardCharsets.ISO_8859_1, detect( latin ).getCharset() );
+		assertFalse( detect( latin ).isUtf8() );
+
+		byte[] utf16 = "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-16\"?><r/>"
+				.getBytes( StandardCharsets.UTF_16LE );
+		assertEquals( StandardCharsets.UTF_16LE, detect( utf16 ).getCharset() );
+		assertEquals( 2, detect( utf16 ).getBomLength() );
+
+		byte[] utf16be = "<?xml version=\"1.0\"?><r/>".getBytes( StandardCharsets.UTF_16BE );
+		assertEquals( StandardCharsets.UTF_16BE, detect( utf16be ).getCharset() );
+
+		byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '<', 'r', '/', '>' };
+		assertEquals( StandardCharsets.UTF_8, detect( bom ).getCharset() );
+		assertEquals( 3, detect( bom ).getBomLength() );
+
+		try
+		{
+			detect( "<?xml version='1.0' encoding='no-such-thing'?>".getBytes( StandardCharsets.US_ASCII ) );
+			fail( "An unsupported encoding should be rejected." );
+		}
+		catch ( IOException ex )
+		{
+			// expected
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.Transcoder#open(InputStream)}
+	 * to turn documents in several encodings into the same UTF-8 text.
+	 * @throws Exception
+	 */
+	@Test
+	public void testOpen_Transcodes() throws Exception
+	{
+		StringBuilder body = new StringBuilder();
+		for ( int i = 0; i < 20000; i++ )
+		{
+			body.append( "<e n=\"" ).append( i ).append( "\">café €</e>\n" );
+		}
+		Transcoder transcoder = new Transcoder();
+		String[] names = { "UTF-8", "UTF-16BE", "UTF-16LE", "windows-1252" };
+		for ( String name : names )
+		{
+			String document = "<?xml version=\"1.0\" encoding=\"" + name + "\"?>\n<r>\n" + body + "</r>\n";
+			byte[] raw = document.getBytes( Charset.forName( name ) );
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try ( InputStream in = transcoder.open( new ByteArrayInputStream( raw ) ) )
+			{
+				byte[] buf = new byte[1000];
+				int n;
+				while ( ( n = in.read( buf, 0, buf.length ) ) >= 0 )
+				{
+					out.write( buf, 0, n );
+				}
+			}
+			assertEquals( "Wrong text for " + name + ".", document,
+					new String( out.toByteArray(), StandardCharsets.UTF_8 ) );
+		}
+	}
+}
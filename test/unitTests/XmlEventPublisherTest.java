@@ -0,0 +1,314 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ErrorKind;
+import xmlparser.ParserLimits;
+import xmlparser.XmlEvent;
+import xmlparser.XmlEventPublisher;
+
+/**
+ * Class Description:
+ * Tests for XmlEventPublisher against the Flow rules it promises: events
+ * only on demand with a bounded read-ahead, cancel closing the stream,
+ * I/O failures, bad requests and rejected tasks signalled with onError
+ * after onSubscribe, and serving several subscriptions from one thread.
+ */
+
+public class XmlEventPublisherTest
+{
+	/**
+	 * Subscriber keeping every signal, requesting the given number of
+	 * events on subscribing and then one more per event if refill is set.
+	 */
+	private static class CollectingSubscriber implements Flow.Subscriber<XmlEvent>
+	{
+		private final long initial;
+		private final boolean refill;
+		private final List<XmlEvent> events = new ArrayList<XmlEvent>();
+		private final CountDownLatch ended = new CountDownLatch( 1 );
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable error;
+		private volatile boolean completed;
+		private volatile Thread thread;
+
+		CollectingSubscriber( long initial, boolean refill )
+		{
+			this.initial = initial;
+			this.refill = refill;
+		}
+
+		public void onSubscribe( Flow.Subscription subscription )
+		{
+			this.subscription = subscription;
+			thread = Thread.currentThread();
+			subscription.request( initial );
+		}
+
+		public void onNext( XmlEvent event )
+		{
+			assertSame( thread, Thread.currentThread() );
+			events.add( event );
+			if ( refill )
+			{
+				subscription.request( 1 );
+			}
+		}
+
+		public void onError( Throwable error )
+		{
+			assertNotNull( "onError before onSubscribe", subscription );
+			this.error = error;
+			ended.countDown();
+		}
+
+		public void onComplete()
+		{
+			completed = true;
+			ended.countDown();
+		}
+	}
+
+	/**
+	 * Stream counting the bytes read from it, failing once failAt bytes
+	 * have been read, and noting whether it was closed.
+	 */
+	private static class WatchedInputStream extends FilterInputStream
+	{
+		private final long failAt;
+		private long read;
+		private volatile boolean closed;
+
+		WatchedInputStream( byte[] content, long failAt )
+		{
+			super( new ByteArrayInputStream( content ) );
+			this.failAt = failAt;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read( byte[] b, int off, int len ) throws IOException
+		{
+			if ( read >= failAt )
+			{
+				throw new IOException( "Disk on fire" );
+			}
+			int n = super.read( b, off, (int) Math.min( len, failAt - read ) );
+			if ( n > 0 )
+			{
+				read += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			closed = true;
+			super.close();
+		}
+	}
+
+	// Attributes
+	private static final Executor DIRECT = Runnable::run;
+	private byte[] content;
+	private WatchedInputStream stream;
+
+	/**
+	 * Builds a document of 20000 records with an error every 1000.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		StringBuilder xml = new StringBuilder( "<root>\n" );
+		for ( int i = 0; i < 20000; i++ )
+		{
+			xml.append( i % 1000 == 999 ? "<d><a>x</b></d>\n" : "<d><a>x</a></d>\n" );
+		}
+		content = xml.append( "</root>\n" ).toString().getBytes( StandardCharsets.UTF_8 );
+	}
+
+	private XmlEventPublisher publisher( long failAt, Executor executor, int bufferSize )
+	{
+		return new XmlEventPublisher( () -> stream = new WatchedInputStream( content, failAt ),
+				new ParserLimits(), executor, bufferSize );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventPublisher#subscribe(Flow.Subscriber)}:
+	 * no more than the requested events are delivered, and reading stops
+	 * once the buffer is full.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRequest_Backpressure() throws Exception
+	{
+		CollectingSubscriber subscriber = new CollectingSubscriber( 5, false );
+		publisher( Long.MAX_VALUE, DIRECT, 16 ).subscribe( subscriber );
+
+		assertEquals( 5, subscriber.events.size() );
+		assertEquals( "root", subscriber.events.get( 0 ).getName() );
+		assertTrue( "Read " + stream.read + " bytes ahead of demand.",
+				stream.read < content.length / 4 );
+		long readAhead = stream.read;
+
+		subscriber.subscription.request( 3 );
+		assertEquals( 8, subscriber.events.size() );
+		assertEquals( readAhead, stream.read );
+
+		subscriber.subscription.request( Long.MAX_VALUE );
+		assertTrue( subscriber.completed );
+		assertNull( subscriber.error );
+		// root, 4 tags per record, /root and one error event per bad record
+		assertEquals( 2 + 4 * 20000 + 20, subscriber.events.size() );
+		int errors = 0;
+		for ( XmlEvent event : subscriber.events )
+		{
+			if ( event.getType() == XmlEvent.ERROR )
+			{
+				assertEquals( ErrorKind.MISMATCHED_TAG, event.getError().getKind() );
+				errors++;
+			}
+		}
+		assertEquals( 20, errors );
+		assertTrue( stream.closed );
+	}
+
+	/**
+	 * Test method for {@link java.util.concurrent.Flow.Subscription#cancel()}
+	 * part way through: the stream is closed and nothing more is signalled.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancel() throws Exception
+	{
+		CollectingSubscriber subscriber = new CollectingSubscriber( 10, false );
+		publisher( Long.MAX_VALUE, DIRECT, 16 ).subscribe( subscriber );
+		assertFalse( stream.closed );
+
+		subscriber.subscription.cancel();
+		assertTrue( stream.closed );
+		subscriber.subscription.request( 100 );
+		assertEquals( 10, subscriber.events.size() );
+		assertFalse( subscriber.completed );
+		assertNull( subscriber.error );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventPublisher#subscribe(Flow.Subscriber)}
+	 * when reading fails: onError with the IOException, after the events
+	 * read before it.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadFailure() throws Exception
+	{
+		CollectingSubscriber subscriber = new CollectingSubscriber( Long.MAX_VALUE, false );
+		publisher( content.length / 2, DIRECT, 16 ).subscribe( subscriber );
+
+		assertTrue( subscriber.error instanceof IOException );
+		assertEquals( "Disk on fire", subscriber.error.getMessage() );
+		assertFalse( subscriber.completed );
+		assertFalse( subscriber.events.isEmpty() );
+		assertTrue( stream.closed );
+	}
+
+	/**
+	 * Test method for {@link java.util.concurrent.Flow.Subscription#request(long)}
+	 * with a count that is not positive (rule 3.9).
+	 * @throws Exception
+	 */
+	@Test
+	public void testRequest_NotPositive() throws Exception
+	{
+		for ( long n : new long[] { 0, -1 } )
+		{
+			CollectingSubscriber subscriber = new CollectingSubscriber( 2, false );
+			publisher( Long.MAX_VALUE, DIRECT, 16 ).subscribe( subscriber );
+			subscriber.subscription.request( n );
+
+			assertTrue( subscriber.error instanceof IllegalArgumentException );
+			assertEquals( 2, subscriber.events.size() );
+			assertTrue( stream.closed );
+			subscriber.subscription.request( 5 );
+			assertEquals( 2, subscriber.events.size() );
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventPublisher#subscribe(Flow.Subscriber)}
+	 * with two subscribers sharing one thread, each asking for one event
+	 * at a time.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSingleThreadExecutor() throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			XmlEventPublisher publisher = publisher( Long.MAX_VALUE, executor, 4 );
+			CollectingSubscriber first = new CollectingSubscriber( 1, true );
+			CollectingSubscriber second = new CollectingSubscriber( 1, true );
+			publisher.subscribe( first );
+			publisher.subscribe( second );
+
+			assertTrue( first.ended.await( 30, TimeUnit.SECONDS ) );
+			assertTrue( second.ended.await( 30, TimeUnit.SECONDS ) );
+			assertTrue( first.completed && second.completed );
+			assertEquals( first.events.size(), second.events.size() );
+			assertEquals( first.thread, second.thread );
+			assertNotSame( Thread.currentThread(), first.thread );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventPublisher#subscribe(Flow.Subscriber)}
+	 * with an executor that rejects the task: onSubscribe, then onError
+	 * (rule 1.9), and the document is never opened.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRejectedExecution() throws Exception
+	{
+		Executor full = command -> { throw new RejectedExecutionException( "Full" ); };
+		CollectingSubscriber subscriber = new CollectingSubscriber( 5, false );
+		publisher( Long.MAX_VALUE, full, 16 ).subscribe( subscriber );
+
+		assertNotNull( subscriber.subscription );
+		assertTrue( subscriber.error instanceof RejectedExecutionException );
+		assertTrue( subscriber.events.isEmpty() );
+		assertNull( stream );
+		subscriber.subscription.request( 5 );
+		assertTrue( subscriber.events.isEmpty() );
+	}
+}
@@ -0,0 +1,161 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import exceptions.StopParsingException;
+import xmlparser.ParserLimits;
+import xmlparser.XmlError;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlHandler;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for XmlEventScanner: the order of the events it delivers, and how
+ * a handler's stop and a resource limit end the scan.
+ */
+
+public class XmlEventScannerTest
+{
+	/**
+	 * Handler writing every event down as one short string, and throwing
+	 * StopParsingException at the element named "stop".
+	 */
+	private static class RecordingHandler implements XmlHandler
+	{
+		private final List<String> events = new ArrayList<String>();
+
+		public void startDocument( XmlTokenizer locator ) { events.add( "startDocument" ); }
+
+		public void startElement( String name, byte[] buf, int start, int end )
+				throws StopParsingException
+		{
+			events.add( "start " + name + content( buf, start, end ) );
+			if ( name.equals( "stop" ) )
+			{
+				throw new StopParsingException( "stop" );
+			}
+		}
+
+		public void emptyElement( String name, byte[] buf, int start, int end )
+		{
+			events.add( "empty " + name + content( buf, start, end ) );
+		}
+
+		public void endElement( String name ) { events.add( "end " + name ); }
+
+		public void processingInstruction( String target, byte[] buf, int start, int end )
+		{
+			events.add( "pi " + target + content( buf, start, end ) );
+		}
+
+		public void text( byte[] buf, int start, int end )
+		{
+			events.add( "text" + content( buf, start, end ) );
+		}
+
+		public void error( XmlError error ) { events.add( "error " + error.getKind() ); }
+		public void endDocument() { events.add( "endDocument" ); }
+
+		private static String content( byte[] buf, int start, int end )
+		{
+			String text = new String( buf, start, end - start, StandardCharsets.UTF_8 ).trim();
+			return text.isEmpty() ? "" : " [" + text + "]";
+		}
+	}
+
+	private static XmlTokenizer tokenizer( String xml, ParserLimits limits )
+	{
+		return new XmlTokenizer( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ),
+				limits );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventScanner#parse()}: one event
+	 * per token, in document order, between startDocument and endDocument.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParse_EventOrder() throws Exception
+	{
+		RecordingHandler handler = new RecordingHandler();
+		XmlTokenizer tokenizer = tokenizer(
+				"<?xml version=\"1.0\"?><r a=\"1\">x<e b=\"2\"/><s>y</s></r>", new ParserLimits() );
+		tokenizer.setReportText( true );
+		XmlEventScanner scanner = new XmlEventScanner( tokenizer, handler );
+		scanner.parse();
+
+		assertEquals( "[startDocument, pi xml [version=\"1.0\"], start r [a=\"1\"], text [x], "
+				+ "empty e [b=\"2\"], start s, text [y], end s, end r, endDocument]",
+				handler.events.toString() );
+		assertTrue( scanner.isStopped() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventScanner#step()}: one event
+	 * per call, and false once the input runs out.
+	 * @throws Exception
+	 */
+	@Test
+	public void testStep() throws Exception
+	{
+		RecordingHandler handler = new RecordingHandler();
+		XmlEventScanner scanner = new XmlEventScanner(
+				tokenizer( "<r><e/></r>", new ParserLimits() ), handler );
+
+		assertTrue( scanner.step() );
+		assertEquals( "[startDocument, start r]", handler.events.toString() );
+		assertTrue( scanner.step() );
+		assertTrue( scanner.step() );
+		assertFalse( scanner.step() );
+		assertEquals( 4, handler.events.size() );
+
+		scanner.finish();
+		scanner.finish();
+		assertEquals( "endDocument", handler.events.get( 4 ) );
+		assertEquals( 5, handler.events.size() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventScanner#parse()} with a
+	 * handler that stops: no more events except endDocument.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParse_HandlerStops() throws Exception
+	{
+		RecordingHandler handler = new RecordingHandler();
+		XmlTokenizer tokenizer = tokenizer( "<r><a/><stop><b/></stop></r>", new ParserLimits() );
+		XmlEventScanner scanner = new XmlEventScanner( tokenizer, handler );
+		scanner.parse();
+
+		assertEquals( "[startDocument, start r, empty a, start stop, endDocument]",
+				handler.events.toString() );
+		assertEquals( "<r><a/><stop>".length(), tokenizer.getOffset() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlEventScanner#parse()} when the
+	 * tokenizer exceeds a limit: one LIMIT_EXCEEDED error, then the end.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParse_LimitExceeded() throws Exception
+	{
+		ParserLimits limits = new ParserLimits();
+		limits.setMaxTagLength( 16 );
+		RecordingHandler handler = new RecordingHandler();
+		new XmlEventScanner( tokenizer( "<r><a><b name=\"far too long\"><c/></b></a></r>", limits ),
+				handler ).parse();
+
+		assertEquals( "[startDocument, start r, start a, error LIMIT_EXCEEDED, endDocument]",
+				handler.events.toString() );
+	}
+}
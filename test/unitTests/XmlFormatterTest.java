@@ -0,0 +1,100 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import xmlparser.ParserLimits;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlFormatter;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the streaming formatter: indentation, self-closing forms,
+ * attribute normalization, and that formatting is idempotent.
+ */
+
+public class XmlFormatterTest
+{
+	/**
+	 * Formats a document with an indent of 2.
+	 */
+	private static String format( String xml ) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlTokenizer tokenizer = new XmlTokenizer(
+				new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ), new ParserLimits() );
+		new XmlEventScanner( tokenizer, new XmlFormatter( out, 2 ) ).parse();
+		return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlFormatter} copying an XML
+	 * declaration: the output is UTF-8, whatever the declaration said.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeclarationEncoding() throws Exception
+	{
+		assertEquals( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<r/>\n",
+				format( "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><r/>" ) );
+		assertEquals( "<?xml version='1.0' encoding = 'UTF-8' standalone='yes'?>\n<r/>\n",
+				format( "<?xml version='1.0' encoding = 'windows-1252' standalone='yes'?><r/>" ) );
+		assertEquals( "<?xml version=\"1.0\"?>\n<r>\n  <?xml-stylesheet encoding=\"x\"?>\n</r>\n",
+				format( "<?xml version=\"1.0\"?><r><?xml-stylesheet encoding=\"x\"?></r>" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlFormatter} copying a document
+	 * with a byte order mark: the mark is dropped, so the declaration
+	 * starts the copy, but the same character in content is kept.
+	 * @throws Exception
+	 */
+	@Test
+	public void testByteOrderMark() throws Exception
+	{
+		assertEquals( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<r>\uFEFFx</r>\n",
+				format( "\uFEFF<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<r>\uFEFFx</r>" ) );
+		assertEquals( "<r/>\n", format( "\uFEFF<r/>" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlFormatter} layout.
+	 * @throws Exception
+	 */
+	@Test
+	public void testLayout() throws Exception
+	{
+		assertEquals( "<?xml version=\"1.0\"?>\n"
+				+ "<r a=\"x&quot;y\" b=\"2\">\n"
+				+ "  <e/>\n"
+				+ "  <f k=\"1\"/>\n"
+				+ "  <t>some  text</t>\n"
+				+ "  <p>\n"
+				+ "    mixed\n"
+				+ "    <b>bold</b>\n"
+				+ "    content\n"
+				+ "  </p>\n"
+				+ "  <c><![CDATA[ <raw> ]]></c>\n"
+				+ "</r>\n",
+				format( "<?xml version=\"1.0\"?><!-- dropped -->\n<r  a = 'x\"y'\tb=\"2\" >\n"
+						+ "<e></e><f  k='1' />\n\t<t>  some  text\n</t>"
+						+ "<p>mixed <b>bold</b> content</p><c> <![CDATA[ <raw> ]]></c></r>" ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlFormatter} on its own output.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIdempotent() throws Exception
+	{
+		String once = format( "<a><b x='1'><c>t</c><d/></b>text<e></e></a>" );
+		assertEquals( once, format( once ) );
+	}
+}
@@ -0,0 +1,77 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import xmlparser.ParserLimits;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlRepairer;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the repair mode: inserting missing closing tags, dropping
+ * stray ones and closing what is open at the end of the document.
+ */
+
+public class XmlRepairerTest
+{
+	// Attributes
+	private final List<String> fixes = new ArrayList<String>();
+
+	/**
+	 * Repairs a document, collecting the fixes as "line:offset fix".
+	 */
+	private String repair( String xml ) throws Exception
+	{
+		byte[] bytes = xml.getBytes( StandardCharsets.UTF_8 );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlRepairer repairer = new XmlRepairer( new ByteArrayInputStream( bytes ), out,
+				( fix, line, offset ) -> fixes.add( line + ":" + offset + " " + fix ) );
+		XmlTokenizer tokenizer = new XmlTokenizer( new ByteArrayInputStream( bytes ),
+				new ParserLimits() );
+		new XmlEventScanner( tokenizer, repairer ).parse();
+		assertEquals( fixes.size(), repairer.getRepairCount() );
+		return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlRepairer} on mismatched and
+	 * stray closing tags.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMismatched() throws Exception
+	{
+		assertEquals( "<r><b>x<i>y</i></b> z\n<!-- </b> --></r>",
+				repair( "<r><b>x<i>y</b> z</i>\n<!-- </b> --></r>" ) );
+		assertEquals( "[1:11 Inserted </i> before </b>, 1:17 Dropped stray </i>]",
+				fixes.toString() );
+
+		fixes.clear();
+		String valid = "<?xml version=\"1.0\"?>\n<r a='1'><![CDATA[</x>]]><e/></r>\n";
+		assertEquals( valid, repair( valid ) );
+		assertTrue( fixes.isEmpty() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlRepairer} at the end of the
+	 * document.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEndOfFile() throws Exception
+	{
+		assertEquals( "<r><a>t\n</a></r>", repair( "<r><a>t\n<b x=\"1" ) );
+		assertEquals( "[2:8 Dropped unfinished markup at end of file, "
+				+ "2:8 Closed <a> at end of file, 2:8 Closed <r> at end of file]",
+				fixes.toString() );
+	}
+}
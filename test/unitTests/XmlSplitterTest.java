@@ -0,0 +1,133 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import xmlparser.ParserLimits;
+import xmlparser.XmlEventScanner;
+import xmlparser.XmlSplitter;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the document splitter: shards of N elements at a depth, with
+ * their ancestors' tags replayed around them.
+ */
+
+public class XmlSplitterTest
+{
+	// Attributes
+	private static final String XML = "<?xml version=\"1.0\"?>\n<r a=\"1\">\n"
+			+ "<c n=\"x\"><d>1</d><d/><!-- note --><d>3</d></c>\n"
+			+ "<c n=\"y\"><d>4</d></c>\n</r>\n";
+	private Path file;
+
+	/**
+	 * Writes the document to a temporary file.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		file = Files.createTempFile( "split", ".xml" );
+		Files.write( file, XML.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Removes the document and its shards.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		for ( int shard = 1; shard <= 4; shard++ )
+		{
+			Files.deleteIfExists( XmlSplitter.shardFor( file, shard ) );
+		}
+		Files.deleteIfExists( file );
+		file = null;
+	}
+
+	/**
+	 * Splits the document, returning the splitter.
+	 */
+	private XmlSplitter split( int depth, long perShard ) throws Exception
+	{
+		try ( InputStream in = Files.newInputStream( file );
+				FileChannel source = FileChannel.open( file ) )
+		{
+			XmlSplitter splitter = new XmlSplitter( source, file, depth, perShard );
+			new XmlEventScanner( new XmlTokenizer( in, new ParserLimits() ), splitter ).parse();
+			return splitter;
+		}
+	}
+
+	private String shard( int n ) throws Exception
+	{
+		return new String( Files.readAllBytes( XmlSplitter.shardFor( file, n ) ),
+				StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlSplitter} at the root's children.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSplitChildren() throws Exception
+	{
+		XmlSplitter splitter = split( 2, 1 );
+
+		assertEquals( 2, splitter.getShardCount() );
+		assertEquals( 2, splitter.getElementCount() );
+		assertEquals( "<?xml version=\"1.0\"?>\n<r a=\"1\">\n<c n=\"y\"><d>4</d></c>\n</r>\n",
+				shard( 2 ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlSplitter} below elements whose
+	 * parents change within a shard.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSplitAcrossParents() throws Exception
+	{
+		XmlSplitter splitter = split( 3, 3 );
+
+		assertEquals( 2, splitter.getShardCount() );
+		assertEquals( 4, splitter.getElementCount() );
+		assertEquals( "<?xml version=\"1.0\"?>\n<r a=\"1\">\n<c n=\"x\">\n"
+				+ "<d>1</d><d/><!-- note --><d>3</d>\n</c>\n</r>\n", shard( 1 ) );
+		assertEquals( "<?xml version=\"1.0\"?>\n<r a=\"1\">\n<c n=\"y\">\n"
+				+ "<d>4</d>\n</c>\n</r>\n", shard( 2 ) );
+
+		splitter = split( 3, 2 );
+		assertEquals( "<?xml version=\"1.0\"?>\n<r a=\"1\">\n<c n=\"x\">\n"
+				+ "<d>3</d></c>\n<c n=\"y\"><d>4</d>\n</c>\n</r>\n", shard( 2 ) );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlSplitter} when the last shard's
+	 * parent is followed by another element before the document ends.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSplitLastShardAncestors() throws Exception
+	{
+		Files.write( file, "<r><A><D>1</D><D>2</D><D>3</D></A><B></B></r>"
+				.getBytes( StandardCharsets.UTF_8 ) );
+		XmlSplitter splitter = split( 3, 2 );
+
+		assertEquals( 2, splitter.getShardCount() );
+		assertEquals( "<r>\n<A>\n<D>1</D><D>2</D>\n</A>\n</r>\n", shard( 1 ) );
+		assertEquals( "<r>\n<A>\n<D>3</D>\n</A>\n</r>\n", shard( 2 ) );
+	}
+}
@@ -0,0 +1,258 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import exceptions.LimitExceededException;
+import xmlparser.ParserLimits;
+import xmlparser.XmlTokenizer;
+
+/**
+ * Class Description:
+ * Tests for the byte-level XmlTokenizer used by the Parser, covering tag
+ * classification and the line, column and byte offset of each tag.
+ */
+
+public class XmlTokenizerTest
+{
+	// Attributes
+	private ParserLimits limits;
+
+	/**
+	 * Initializes default limits before each test.
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		limits = new ParserLimits();
+	}
+
+	/**
+	 * Cleans up instances used after each test.
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		limits = null;
+	}
+
+	/**
+	 * Creates a tokenizer over the given document text.
+	 */
+	private XmlTokenizer tokenizer( String xml )
+	{
+		return new XmlTokenizer(
+				new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ), limits );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to classify each kind of tag and extract its name.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_TagTypesAndNames() throws Exception
+	{
+		XmlTokenizer t = tokenizer( "<?xml version=\"1.0\"?><a x=\"1\"><b/><c /></a>" );
+
+		assertEquals( "Failed to find the processing instruction.",
+				XmlTokenizer.PROCESSING_INSTRUCTION, t.next() );
+		assertEquals( "Wrong processing instruction target.", "xml", t.getName() );
+		assertEquals( "Failed to find the opening tag.", XmlTokenizer.START_TAG, t.next() );
+		assertEquals( "Wrong opening tag name.", "a", t.getName() );
+		assertEquals( "Failed to find the self-closing tag.", XmlTokenizer.EMPTY_TAG, t.next() );
+		assertEquals( "Wrong self-closing tag name.", "b", t.getName() );
+		assertEquals( "Failed to find the spaced self-closing tag.", XmlTokenizer.EMPTY_TAG, t.next() );
+		assertEquals( "Wrong spaced self-closing tag name.", "c", t.getName() );
+		assertEquals( "Failed to find the closing tag.", XmlTokenizer.END_TAG, t.next() );
+		assertEquals( "Wrong closing tag name.", "a", t.getName() );
+		assertEquals( "Failed to reach the end of input.", XmlTokenizer.END_OF_INPUT, t.next() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#getTagLine()},
+	 * {@link xmlparser.XmlTokenizer#getTagColumn()} and
+	 * {@link xmlparser.XmlTokenizer#getTagOffset()}
+	 * to report the position of each tag.
+	 * @throws Exception
+	 */
+	@Test
+	public void testPositions() throws Exception
+	{
+		XmlTokenizer t = tokenizer( "<a>\n  <b>\n\t\t</b></a>" );
+
+		t.next();
+		assertEquals( 1, t.getTagLine() );
+		assertEquals( 1, t.getTagColumn() );
+		assertEquals( 0, t.getTagOffset() );
+
+		t.next();
+		assertEquals( 2, t.getTagLine() );
+		assertEquals( 3, t.getTagColumn() );
+		assertEquals( 6, t.getTagOffset() );
+
+		t.next();
+		assertEquals( 3, t.getTagLine() );
+		assertEquals( 3, t.getTagColumn() );
+		assertEquals( 12, t.getTagOffset() );
+
+		t.next();
+		assertEquals( 3, t.getTagLine() );
+		assertEquals( 7, t.getTagColumn() );
+		assertEquals( 16, t.getTagOffset() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to read a tag whose attributes span several lines.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_TagSpanningLines() throws Exception
+	{
+		XmlTokenizer t = tokenizer( "<a\n x=\"1\"\n y=\"2\">\n<b/></a>\n" );
+
+		assertEquals( XmlTokenizer.START_TAG, t.next() );
+		assertEquals( "a", t.getName() );
+		assertEquals( 1, t.getTagLine() );
+
+		assertEquals( XmlTokenizer.EMPTY_TAG, t.next() );
+		assertEquals( "Line breaks inside a tag were not counted.", 4, t.getTagLine() );
+		assertEquals( 1, t.getTagColumn() );
+
+		t.next();
+		assertEquals( XmlTokenizer.END_OF_INPUT, t.next() );
+		assertEquals( "A final line break must not start a new line.", 4, t.getLastLine() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to find tags that straddle the tokenizer's internal buffer boundary.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_LargeInput() throws Exception
+	{
+		StringBuilder xml = new StringBuilder( "<root>\n" );
+		int count = 20000;
+		for ( int i = 0; i < count; i++ )
+		{
+			xml.append( "<item id=\"" ).append( i ).append( "\">text</item>\n" );
+		}
+		xml.append( "</root>" );
+
+		XmlTokenizer t = tokenizer( xml.toString() );
+		int starts = 0;
+		int type;
+		while ( (type = t.next()) != XmlTokenizer.END_OF_INPUT )
+		{
+			if ( type == XmlTokenizer.START_TAG && t.getName().equals( "item" ) )
+			{
+				starts++;
+				assertEquals( "Wrong line for item " + starts, starts + 1, t.getTagLine() );
+			}
+		}
+		assertEquals( count, starts );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to stop on a tag longer than the limit.
+	 * @throws Exception
+	 */
+	@Test( expected = LimitExceededException.class )
+	public void testNext_TagTooLong() throws Exception
+	{
+		limits.setMaxTagLength( 16 );
+		XmlTokenizer t = tokenizer( "<a><b attribute=\"far too long for the limit\"/></a>" );
+		t.next();
+		t.next();
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to stop on a line longer than the limit.
+	 * @throws Exception
+	 */
+	@Test( expected = LimitExceededException.class )
+	public void testNext_LineTooLong() throws Exception
+	{
+		limits.setMaxLineLength( 16 );
+		XmlTokenizer t = tokenizer( "<a>\nthis line of text is far too long\n</a>" );
+		while ( t.next() != XmlTokenizer.END_OF_INPUT )
+		{
+		}
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to skip comments, CDATA sections and DOCTYPE declarations, even
+	 * when they hold tags, span lines or are larger than the buffer.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_SkipsMarkup() throws Exception
+	{
+		StringBuilder big = new StringBuilder();
+		for ( int i = 0; i < 20000; i++ )
+		{
+			big.append( "<x>- ]\n" );
+		}
+		String doctype = "<!DOCTYPE r [\n<!ELEMENT r ANY>\n<!-- ]> '\" -->\n<!ENTITY e \"a>b\">\n]>";
+		String xml = doctype + "\n<r><!-- <foo> -->\n<!--" + big + "--><![CDATA[ </bar> ]]]>"
+				+ "<![CDATA[" + big + "]]></r>";
+		XmlTokenizer t = tokenizer( xml );
+
+		assertEquals( XmlTokenizer.START_TAG, t.next() );
+		assertEquals( "r", t.getName() );
+		assertEquals( "Wrong line after the DOCTYPE.", 6, t.getTagLine() );
+		assertEquals( "Tags inside comments and CDATA must be skipped.", XmlTokenizer.END_TAG, t.next() );
+		assertEquals( "r", t.getName() );
+		assertEquals( "Wrong line after the skipped markup.", 6 + 1 + 20000 * 2, t.getTagLine() );
+		assertEquals( XmlTokenizer.END_OF_INPUT, t.next() );
+
+		assertEquals( "Wrong comment count.", 2, t.getMetrics().getComments() );
+		assertEquals( "Wrong CDATA count.", 2, t.getMetrics().getCdataSections() );
+		assertEquals( "Wrong DOCTYPE count.", 1, t.getMetrics().getDoctypes() );
+		assertEquals( "Wrong skipped byte count.",
+				xml.length() - "\n<r>\n</r>".length(), t.getMetrics().getSkippedBytes() );
+	}
+
+	/**
+	 * Test method for {@link xmlparser.XmlTokenizer#next()}
+	 * to return the content of CDATA sections as text, in pieces when it
+	 * is cut by the end of the buffer.
+	 * @throws Exception
+	 */
+	@Test
+	public void testNext_CdataText() throws Exception
+	{
+		StringBuilder big = new StringBuilder();
+		for ( int i = 0; i < 30000; i++ )
+		{
+			big.append( "]]x" );
+		}
+		String content = " </bar> ]" + big + "]";
+		XmlTokenizer t = tokenizer( "<r>a<![CDATA[" + content + "]]>b</r>" );
+		t.setReportText( true );
+
+		assertEquals( XmlTokenizer.START_TAG, t.next() );
+		StringBuilder text = new StringBuilder();
+		int type;
+		while ( (type = t.next()) == XmlTokenizer.TEXT )
+		{
+			text.append( new String( t.getBuffer(), t.getTokenStart(),
+					t.getTokenEnd() - t.getTokenStart(), StandardCharsets.UTF_8 ) );
+		}
+		assertEquals( "CDATA content was not reported as text.", "a" + content + "b", text.toString() );
+		assertEquals( XmlTokenizer.END_TAG, type );
+	}
+}